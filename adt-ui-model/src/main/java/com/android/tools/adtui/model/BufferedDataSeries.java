@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * A {@link DataSeries} of long values that can fill a reusable {@link LongSeriesBuffer} instead of allocating a list of boxed values,
+ * so that charts redrawn every frame don't produce garbage proportional to the number of points they show.
+ */
+public interface BufferedDataSeries extends DataSeries<Long> {
+  /**
+   * Replaces the content of the buffer with the same data {@link #getDataForXRange(Range)} returns for the range.
+   *
+   * @param targetPixelWidth if positive, the width of the chart the data is for, so that implementations can reduce the data to what can
+   *                         be shown on that many pixels, see {@link LongSeriesBuffer#reduceToPixels(double, double, int)}
+   */
+  void getDataForXRange(@NotNull Range xRange, int targetPixelWidth, @NotNull LongSeriesBuffer buffer);
+
+  @Override
+  default List<SeriesData<Long>> getDataForXRange(@NotNull Range xRange) {
+    LongSeriesBuffer buffer = new LongSeriesBuffer();
+    getDataForXRange(xRange, 0, buffer);
+    return buffer.toList();
+  }
+}
@@ -15,14 +15,17 @@
  */
 package com.android.tools.adtui.model;
 
+import com.android.tools.adtui.model.updater.RenderSnapshotBuilder;
 import com.android.tools.adtui.model.updater.Updatable;
 import com.android.tools.adtui.model.updater.Updater;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class LineChartModel extends AspectModel<LineChartModel.Aspect> implements Updatable {
 
@@ -34,39 +37,52 @@ public class LineChartModel extends AspectModel<LineChartModel.Aspect> implement
   private final List<RangedContinuousSeries> mySeries = new ArrayList<>();
 
   /**
-   * During the first update, skip the y range interpolation and snap to the initial max value.
+   * Builds the max of the data in view for each y range, as querying the data every update would block the thread running the updates.
    */
-  private boolean myFirstUpdate = true;
+  @NotNull
+  private final RenderSnapshotBuilder<Map<Range, Double>> myMaxPerRangeBuilder = new RenderSnapshotBuilder<>(() -> {
+    // The next update applies the latest snapshot.
+  });
 
-  @Override
-  public void update(long elapsedNs) {
-    Map<Range, Double> maxPerRangeObject = new HashMap<>();
+  /**
+   * Reused by every build of the maxes, which never run concurrently, see {@link RenderSnapshotBuilder}.
+   */
+  @NotNull
+  private final LongSeriesBuffer mySeriesData = new LongSeriesBuffer();
 
-    // TODO Handle stacked configs
-    for (RangedContinuousSeries ranged : mySeries) {
-      Range range = ranged.getYRange();
-      double yMax = -Double.MAX_VALUE;
+  /**
+   * During the first update with maxes, skip the y range interpolation and snap to the initial max value.
+   */
+  private boolean myFirstUpdate = true;
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
-      if (seriesList.isEmpty()) {
-        continue;
-      }
+  /**
+   * Sets the executor the maxes of the data are computed on, by default the thread running the updates.
+   */
+  public void setMaxExecutor(@NotNull Executor executor) {
+    myMaxPerRangeBuilder.setExecutor(executor);
+  }
 
-      for (SeriesData<Long> series : seriesList) {
-        double value = series.value;
-        if (yMax < value) {
-          yMax = value;
-        }
-      }
+  @Override
+  public void update(long elapsedNs) {
+    // The ranges are captured here, as the maxes may be computed on another thread while they keep changing.
+    List<RangedContinuousSeries> series = new ArrayList<>(mySeries);
+    List<Range> xRanges = new ArrayList<>(series.size());
+    for (RangedContinuousSeries ranged : series) {
+      xRanges.add(new Range(ranged.getXRange()));
+    }
+    myMaxPerRangeBuilder.request(() -> buildMaxPerRange(series, xRanges));
 
-      Double rangeMax = maxPerRangeObject.get(range);
-      if (rangeMax == null || yMax > rangeMax) {
-        maxPerRangeObject.put(range, yMax);
+    Map<Range, Double> maxPerRange = myMaxPerRangeBuilder.getSnapshot();
+    if (maxPerRange == null) {
+      // Always fire aspect on first update.
+      if (myFirstUpdate) {
+        changed(Aspect.LINE_CHART);
       }
+      return;
     }
 
     boolean changed = myFirstUpdate; // Always fire aspect on first update.
-    for (Map.Entry<Range, Double> entry : maxPerRangeObject.entrySet()) {
+    for (Map.Entry<Range, Double> entry : maxPerRange.entrySet()) {
       Range range = entry.getKey();
       // Prevent the LineChart to update the range below its current max.
       if (range.getMax() < entry.getValue()) {
@@ -86,6 +102,26 @@ public class LineChartModel extends AspectModel<LineChartModel.Aspect> implement
     }
   }
 
+  @NotNull
+  private Map<Range, Double> buildMaxPerRange(@NotNull List<RangedContinuousSeries> series, @NotNull List<Range> xRanges) {
+    Map<Range, Double> maxPerRange = new HashMap<>();
+    // TODO Handle stacked configs
+    for (int i = 0; i < series.size(); i++) {
+      series.get(i).fillSeriesBuffer(xRanges.get(i), 0, mySeriesData);
+      if (mySeriesData.isEmpty()) {
+        continue;
+      }
+      double yMax = mySeriesData.getMaxY();
+
+      Range range = series.get(i).getYRange();
+      Double rangeMax = maxPerRange.get(range);
+      if (rangeMax == null || yMax > rangeMax) {
+        maxPerRange.put(range, yMax);
+      }
+    }
+    return Collections.unmodifiableMap(maxPerRange);
+  }
+
   public void addAll(@NotNull List<RangedContinuousSeries> series) {
     series.forEach(this::add);
   }
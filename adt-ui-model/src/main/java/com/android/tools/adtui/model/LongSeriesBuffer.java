@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A reusable view of the data of a series as parallel arrays of x and y values, sorted by x. Unlike the lists of {@link SeriesData}
+ * returned by {@link DataSeries#getDataForXRange(Range)}, filling a buffer again every frame allocates nothing once it has grown to
+ * the size of the series.
+ */
+public final class LongSeriesBuffer {
+  private static final int INITIAL_CAPACITY = 64;
+
+  @NotNull private long[] myX = new long[INITIAL_CAPACITY];
+  @NotNull private long[] myY = new long[INITIAL_CAPACITY];
+  private int mySize;
+
+  public void clear() {
+    mySize = 0;
+  }
+
+  public void add(long x, long y) {
+    if (mySize == myX.length) {
+      myX = Arrays.copyOf(myX, mySize * 2);
+      myY = Arrays.copyOf(myY, mySize * 2);
+    }
+    myX[mySize] = x;
+    myY[mySize] = y;
+    mySize++;
+  }
+
+  public void addAll(@NotNull List<SeriesData<Long>> data) {
+    for (SeriesData<Long> point : data) {
+      add(point.x, point.value);
+    }
+  }
+
+  public void copyFrom(@NotNull LongSeriesBuffer other) {
+    clear();
+    for (int i = 0; i < other.mySize; i++) {
+      add(other.myX[i], other.myY[i]);
+    }
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  public long getX(int index) {
+    assert index < mySize;
+    return myX[index];
+  }
+
+  public long getY(int index) {
+    assert index < mySize;
+    return myY[index];
+  }
+
+  public void set(int index, long x, long y) {
+    assert index < mySize;
+    myX[index] = x;
+    myY[index] = y;
+  }
+
+  public void setY(int index, long y) {
+    assert index < mySize;
+    myY[index] = y;
+  }
+
+  /**
+   * Drops the points from {@code size} on.
+   */
+  public void truncate(int size) {
+    assert size <= mySize;
+    mySize = size;
+  }
+
+  /**
+   * @return the largest y value, or {@link Long#MIN_VALUE} if the buffer is empty.
+   */
+  public long getMaxY() {
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < mySize; i++) {
+      max = Math.max(max, myY[i]);
+    }
+    return max;
+  }
+
+  /**
+   * Reduces in place the points within [xMin, xMax] to at most four per pixel column of a chart {@code pixelWidth} wide: the first and
+   * last points of the column and the points with the minimum and maximum y values. As lines are drawn 1px wide, the line drawn from the
+   * reduced points looks the same as the original one. Points outside the range are kept, the charts need them to draw the line up to the
+   * edges.
+   */
+  public void reduceToPixels(double xMin, double xMax, int pixelWidth) {
+    if (pixelWidth <= 0 || xMax <= xMin || mySize <= 4) {
+      return;
+    }
+
+    double pixelsPerX = pixelWidth / (xMax - xMin);
+    int size = 0;
+    int i = 0;
+    while (i < mySize) {
+      if (myX[i] < xMin || myX[i] > xMax) {
+        size = keep(i, size);
+        i++;
+        continue;
+      }
+
+      long pixel = getPixel(myX[i], xMin, pixelsPerX, pixelWidth);
+      int first = i;
+      int min = i;
+      int max = i;
+      i++;
+      while (i < mySize && myX[i] <= xMax && getPixel(myX[i], xMin, pixelsPerX, pixelWidth) == pixel) {
+        if (myY[i] < myY[min]) {
+          min = i;
+        }
+        if (myY[i] >= myY[max]) {
+          max = i;
+        }
+        i++;
+      }
+      int last = i - 1;
+
+      // Points are moved towards the start of the arrays only, so the ones of the column not written yet are still in place.
+      size = keep(first, size);
+      int lower = Math.min(min, max);
+      int upper = Math.max(min, max);
+      if (lower != first) {
+        size = keep(lower, size);
+      }
+      if (upper != lower && upper != first) {
+        size = keep(upper, size);
+      }
+      if (last != upper && last != first) {
+        size = keep(last, size);
+      }
+    }
+    mySize = size;
+  }
+
+  private static long getPixel(long x, double xMin, double pixelsPerX, int pixelWidth) {
+    // Points at xMax belong to the last column.
+    return Math.min(pixelWidth - 1, (long)Math.floor((x - xMin) * pixelsPerX));
+  }
+
+  private int keep(int index, int size) {
+    myX[size] = myX[index];
+    myY[size] = myY[index];
+    return size + 1;
+  }
+
+  @NotNull
+  public List<SeriesData<Long>> toList() {
+    List<SeriesData<Long>> list = new ArrayList<>(mySize);
+    for (int i = 0; i < mySize; i++) {
+      list.add(new SeriesData<>(myX[i], myY[i]));
+    }
+    return list;
+  }
+}
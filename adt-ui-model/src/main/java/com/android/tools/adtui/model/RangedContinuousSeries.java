@@ -30,6 +30,9 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
   @NotNull
   private final Range mYRange;
 
+  @NotNull
+  private final LongSeriesBuffer myBuffer = new LongSeriesBuffer();
+
   public RangedContinuousSeries(@NotNull String name, @NotNull Range xRange, @NotNull Range yRange, @NotNull DataSeries<Long> series) {
     super(xRange, series);
     mYRange = yRange;
@@ -41,6 +44,32 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
     return mYRange;
   }
 
+  /**
+   * Same as {@link #getSeries()}, but reusing the same buffer every call when the series is a {@link BufferedDataSeries}. The buffer is
+   * only valid until the next call.
+   *
+   * @param targetPixelWidth the width of the chart the data is for, or 0 to get all the data in range
+   */
+  @NotNull
+  public LongSeriesBuffer getSeriesBuffer(int targetPixelWidth) {
+    fillSeriesBuffer(mXRange, targetPixelWidth, myBuffer);
+    return myBuffer;
+  }
+
+  /**
+   * Replaces the content of the given buffer with the data of the series within a range captured by the caller, e.g. to prepare what to
+   * draw on another thread while {@link #getXRange()} keeps changing.
+   */
+  public void fillSeriesBuffer(@NotNull Range xRange, int targetPixelWidth, @NotNull LongSeriesBuffer buffer) {
+    if (mSeries instanceof BufferedDataSeries) {
+      ((BufferedDataSeries)mSeries).getDataForXRange(xRange, targetPixelWidth, buffer);
+    }
+    else {
+      buffer.clear();
+      buffer.addAll(mSeries.getDataForXRange(xRange));
+    }
+  }
+
   @NotNull
   public String getName() {
     return myName;
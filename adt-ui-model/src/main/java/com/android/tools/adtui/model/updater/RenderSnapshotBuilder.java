@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model.updater;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Builds the immutable render snapshots of a chart, e.g. its lines or rectangles, on an executor so that querying the data and computing
+ * the geometry can happen off the UI thread. The chart keeps painting the latest snapshot built while the next one is being built, and
+ * gets notified once it is ready.
+ * <p>
+ * Requests made while a snapshot is being built are coalesced, only the latest of them is built afterwards. Builders should therefore
+ * capture everything they read from mutable state, such as ranges, when they are requested and not when they run.
+ * <p>
+ * With {@link #SYNCHRONOUS}, the default, snapshots are built by {@link #request(Supplier)} itself. This is what charts used as cell
+ * renderers need, as they paint different data for every cell.
+ *
+ * @param <S> the type of the snapshots, which shouldn't be modified once built
+ */
+public final class RenderSnapshotBuilder<S> {
+  public static final Executor SYNCHRONOUS = Runnable::run;
+
+  @NotNull private final Runnable myOnSnapshotReady;
+  @NotNull private Executor myExecutor = SYNCHRONOUS;
+  @Nullable private volatile S mySnapshot;
+
+  /**
+   * The thread inside {@link #request(Supplier)}, to only notify of snapshots built asynchronously.
+   */
+  @Nullable private volatile Thread myRequestingThread;
+
+  /**
+   * The latest builder not run yet. Guarded by {@code this}.
+   */
+  @Nullable private Supplier<S> myPendingBuilder;
+
+  /**
+   * Whether a task running the pending builders was submitted and is not done yet. Guarded by {@code this}.
+   */
+  private boolean myBuilding;
+
+  /**
+   * @param onSnapshotReady called from the thread that built a snapshot when it is ready, unless it was built synchronously
+   */
+  public RenderSnapshotBuilder(@NotNull Runnable onSnapshotReady) {
+    myOnSnapshotReady = onSnapshotReady;
+  }
+
+  public void setExecutor(@NotNull Executor executor) {
+    myExecutor = executor;
+  }
+
+  /**
+   * Builds a new snapshot with the given builder, replacing any request not started yet.
+   */
+  public void request(@NotNull Supplier<S> builder) {
+    synchronized (this) {
+      myPendingBuilder = builder;
+      if (myBuilding) {
+        return;
+      }
+      myBuilding = true;
+    }
+
+    myRequestingThread = Thread.currentThread();
+    try {
+      myExecutor.execute(this::buildPendingSnapshots);
+    }
+    finally {
+      myRequestingThread = null;
+    }
+  }
+
+  /**
+   * @return the latest snapshot built, or null if none was built yet.
+   */
+  @Nullable
+  public S getSnapshot() {
+    return mySnapshot;
+  }
+
+  private void buildPendingSnapshots() {
+    while (true) {
+      Supplier<S> builder;
+      synchronized (this) {
+        builder = myPendingBuilder;
+        myPendingBuilder = null;
+        if (builder == null) {
+          myBuilding = false;
+          return;
+        }
+      }
+
+      try {
+        mySnapshot = builder.get();
+      }
+      catch (RuntimeException | Error e) {
+        synchronized (this) {
+          myBuilding = false;
+        }
+        throw e;
+      }
+      if (Thread.currentThread() != myRequestingThread) {
+        myOnSnapshotReady.run();
+      }
+    }
+  }
+}
@@ -18,6 +18,9 @@ package com.android.tools.adtui.model;
 import com.android.tools.adtui.model.updater.Updater;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class LineChartModelTest {
@@ -43,6 +46,33 @@ public class LineChartModelTest {
     assertEquals(100, yRange.getMax(), 0);  // after update.
   }
 
+  @Test
+  public void testMaxIsAppliedOnceComputedOnExecutor() {
+    Range xRange = new Range(0, 100);
+    Range yRange = new Range(0, 50);
+    DefaultDataSeries<Long> testSeries = new DefaultDataSeries<>();
+    for (int i = 0; i < 101; i++) {
+      testSeries.add(i, (long)i);
+    }
+    RangedContinuousSeries rangedSeries = new RangedContinuousSeries("test", xRange, yRange, testSeries);
+    FakeTimer t = new FakeTimer();
+    Updater updater = new Updater(t);
+
+    List<Runnable> pendingTasks = new ArrayList<>();
+    LineChartModel model = new LineChartModel();
+    model.setMaxExecutor(pendingTasks::add);
+    model.add(rangedSeries);
+    updater.register(model);
+
+    t.step();
+    assertEquals(50, yRange.getMax(), 0);  // max not computed yet.
+    assertEquals(1, pendingTasks.size());
+
+    pendingTasks.remove(0).run();
+    t.step();
+    assertEquals(100, yRange.getMax(), 0);  // snaps to the computed max.
+  }
+
   @Test
   public void testNoUpdateOnZeroYValue() {
     Range xRange = new Range(0, 10);
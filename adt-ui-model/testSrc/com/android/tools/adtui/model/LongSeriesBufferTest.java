@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LongSeriesBufferTest {
+  @Test
+  public void testBufferGrowsAndIsReused() {
+    LongSeriesBuffer buffer = new LongSeriesBuffer();
+    for (int i = 0; i < 1000; i++) {
+      buffer.add(i, i * 2);
+    }
+    assertEquals(1000, buffer.size());
+    assertEquals(999, buffer.getX(999));
+    assertEquals(1998, buffer.getMaxY());
+
+    buffer.clear();
+    assertTrue(buffer.isEmpty());
+    assertEquals(Long.MIN_VALUE, buffer.getMaxY());
+    buffer.add(5, 7);
+    assertEquals(1, buffer.toList().size());
+    assertEquals(7, (long)buffer.toList().get(0).value);
+  }
+
+  @Test
+  public void testReduceToPixelsKeepsFirstMinMaxAndLastPerPixel() {
+    LongSeriesBuffer buffer = new LongSeriesBuffer();
+    // Point outside the range, kept as is.
+    buffer.add(-5, 100);
+    // 10 points per pixel, for 2 pixels.
+    long[] values = {3, 1, 8, 2, 9, 4, 0, 5, 6, 7};
+    for (int i = 0; i < 20; i++) {
+      buffer.add(i, values[i % 10] + i / 10 * 10);
+    }
+    buffer.add(25, -100);
+
+    buffer.reduceToPixels(0, 20, 2);
+
+    long[][] expected = {{-5, 100}, {0, 3}, {4, 9}, {6, 0}, {9, 7}, {10, 13}, {14, 19}, {16, 10}, {19, 17}, {25, -100}};
+    assertEquals(expected.length, buffer.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i][0], buffer.getX(i));
+      assertEquals(expected[i][1], buffer.getY(i));
+    }
+  }
+
+  @Test
+  public void testReduceToPixelsKeepsSparseData() {
+    LongSeriesBuffer buffer = new LongSeriesBuffer();
+    for (int i = 0; i < 10; i++) {
+      buffer.add(i * 100, i);
+    }
+    // Fewer points than pixels, nothing to reduce.
+    buffer.reduceToPixels(0, 1000, 100);
+    assertEquals(10, buffer.size());
+
+    // Without a width, nothing is reduced either.
+    buffer.reduceToPixels(0, 1000, 0);
+    assertEquals(10, buffer.size());
+  }
+
+  @Test
+  public void testRangedSeriesFillsTheSameBuffer() {
+    LongDataSeries series = new LongDataSeries();
+    for (int i = 0; i <= 100; i++) {
+      series.add(i, (long)i);
+    }
+    RangedContinuousSeries ranged = new RangedContinuousSeries("test", new Range(10, 20), new Range(0, 100), series);
+
+    LongSeriesBuffer buffer = ranged.getSeriesBuffer(0);
+    assertEquals(11, buffer.size());
+    assertEquals(10, buffer.getX(0));
+    assertEquals(20, buffer.getMaxY());
+
+    ranged.getXRange().set(0, 100);
+    assertTrue(buffer == ranged.getSeriesBuffer(1));
+    // A single column keeps its first, min, max and last points, which are the first and last ones for an increasing series.
+    assertEquals(2, buffer.size());
+    assertEquals(100, buffer.getMaxY());
+  }
+}
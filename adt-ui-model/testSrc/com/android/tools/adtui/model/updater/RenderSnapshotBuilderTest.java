@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model.updater;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static org.junit.Assert.*;
+
+public class RenderSnapshotBuilderTest {
+  private int mySnapshotsReady;
+  private RenderSnapshotBuilder<String> myBuilder;
+
+  @Before
+  public void setUp() {
+    mySnapshotsReady = 0;
+    myBuilder = new RenderSnapshotBuilder<>(() -> mySnapshotsReady++);
+  }
+
+  @Test
+  public void testSnapshotsAreBuiltSynchronouslyByDefault() {
+    assertNull(myBuilder.getSnapshot());
+    myBuilder.request(() -> "first");
+    assertEquals("first", myBuilder.getSnapshot());
+    myBuilder.request(() -> "second");
+    assertEquals("second", myBuilder.getSnapshot());
+    // The caller paints the snapshot right after requesting it, there is nothing to notify.
+    assertEquals(0, mySnapshotsReady);
+  }
+
+  @Test
+  public void testRequestsMadeWhileBuildingAreCoalesced() {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    myBuilder.setExecutor(tasks::add);
+
+    myBuilder.request(() -> "first");
+    myBuilder.request(() -> "second");
+    myBuilder.request(() -> "third");
+    assertEquals(1, tasks.size());
+    assertNull(myBuilder.getSnapshot());
+
+    tasks.poll().run();
+    // Only the latest request is built.
+    assertEquals("third", myBuilder.getSnapshot());
+    assertEquals(1, mySnapshotsReady);
+
+    myBuilder.request(() -> "fourth");
+    assertEquals(1, tasks.size());
+    assertEquals("third", myBuilder.getSnapshot());
+    tasks.poll().run();
+    assertEquals("fourth", myBuilder.getSnapshot());
+    assertEquals(2, mySnapshotsReady);
+  }
+
+  @Test
+  public void testRequestMadeDuringBuildIsBuiltBySameTask() {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    myBuilder.setExecutor(tasks::add);
+
+    myBuilder.request(() -> {
+      myBuilder.request(() -> "second");
+      return "first";
+    });
+    tasks.poll().run();
+    assertTrue(tasks.isEmpty());
+    assertEquals("second", myBuilder.getSnapshot());
+    assertEquals(2, mySnapshotsReady);
+  }
+
+  @Test
+  public void testFailedBuildDoesNotBlockLaterRequests() {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    myBuilder.setExecutor(tasks::add);
+
+    myBuilder.request(() -> {
+      throw new IllegalStateException();
+    });
+    try {
+      tasks.poll().run();
+      fail();
+    }
+    catch (IllegalStateException expected) {
+    }
+
+    myBuilder.request(() -> "second");
+    assertEquals(1, tasks.size());
+    tasks.poll().run();
+    assertEquals("second", myBuilder.getSnapshot());
+  }
+}
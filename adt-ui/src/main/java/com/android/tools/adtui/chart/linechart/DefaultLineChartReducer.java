@@ -15,6 +15,7 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeriesBuffer;
 import com.android.tools.adtui.model.SeriesData;
 import org.jetbrains.annotations.NotNull;
 
@@ -66,6 +67,30 @@ class DefaultLineChartReducer implements LineChartReducer {
     return reduced;
   }
 
+  @Override
+  public void reduceData(@NotNull LongSeriesBuffer data, @NotNull LineConfig config) {
+    if (config.getDataBucketInterval() > 0) {
+      return;
+    }
+
+    // Same as above, the reduced points are written over the ones already read.
+    int size = 0;
+    for (int i = 0; i < data.size(); i++) {
+      long x = data.getX(i);
+      long y = data.getY(i);
+      while (size >= 2 && data.getY(size - 2) == data.getY(size - 1) && (config.isStepped() || data.getY(size - 1) == y)) {
+        size--;
+      }
+      data.set(size++, x, y);
+    }
+    data.truncate(size);
+  }
+
+  @Override
+  public boolean reducesToPixels() {
+    return true;
+  }
+
   /**
   * The basic idea behind this algorithm is to reduce number of points to available pixels.
   * For every pixel it draws 4 points: the first point, the last point,
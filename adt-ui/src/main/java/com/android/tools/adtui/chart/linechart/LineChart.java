@@ -19,8 +19,10 @@ package com.android.tools.adtui.chart.linechart;
 import com.android.annotations.VisibleForTesting;
 import com.android.tools.adtui.AnimatedComponent;
 import com.android.tools.adtui.model.LineChartModel;
+import com.android.tools.adtui.model.LongSeriesBuffer;
+import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
-import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.updater.RenderSnapshotBuilder;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.*;
@@ -29,7 +31,9 @@ import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
 
 import static java.awt.BasicStroke.CAP_SQUARE;
 import static java.awt.BasicStroke.JOIN_MITER;
@@ -63,10 +67,8 @@ public class LineChart extends AnimatedComponent {
   private final Map<RangedContinuousSeries, LineConfig> myLinesConfig = new LinkedHashMap<>();
 
   @NotNull
-  private final ArrayList<Path2D> myLinePaths;
-
-  @NotNull
-  private final ArrayList<RangedContinuousSeries> myLinePathSeries;
+  private final RenderSnapshotBuilder<Lines> myLinesBuilder =
+    new RenderSnapshotBuilder<>(() -> SwingUtilities.invokeLater(this::opaqueRepaint));
 
   @NotNull
   private final List<LineChartCustomRenderer> myCustomRenderers = new ArrayList<>();
@@ -115,10 +117,16 @@ public class LineChart extends AnimatedComponent {
 
   private Map<LineConfig, DashInfo> myDashInfoCache = new HashMap<>();
 
+  /**
+   * Buffers reused by every redraw, for the data of the current series, the sum of the stacked series drawn so far and the reduced data
+   * of the current series. Redraws never run concurrently, see {@link RenderSnapshotBuilder}.
+   */
+  @NotNull private final LongSeriesBuffer mySeriesData = new LongSeriesBuffer();
+  @NotNull private final LongSeriesBuffer myStackedSeries = new LongSeriesBuffer();
+  @NotNull private final LongSeriesBuffer myReducedSeries = new LongSeriesBuffer();
+
   @VisibleForTesting
   public LineChart(@NotNull LineChartModel model, @NotNull LineChartReducer reducer) {
-    myLinePaths = new ArrayList<>();
-    myLinePathSeries = new ArrayList<>();
     myReducer = reducer;
     myModel = model;
     myRedraw = true;
@@ -162,32 +170,57 @@ public class LineChart extends AnimatedComponent {
     return config;
   }
 
+  /**
+   * Sets the executor the lines and the y maxes of the model are computed on, by default the threads painting and updating the chart.
+   */
+  public void setGeometryExecutor(@NotNull Executor executor) {
+    myLinesBuilder.setExecutor(executor);
+    myModel.setMaxExecutor(executor);
+  }
+
   private void modelChanged() {
     myRedraw = true;
     opaqueRepaint();
   }
 
   private void redraw(@NotNull Dimension dim) {
+    // Everything the lines depend on is captured here, as they may be computed on another thread while the ranges keep changing.
+    List<LineSnapshot> lines = new ArrayList<>(myModel.getSeries().size());
+    for (RangedContinuousSeries ranged : myModel.getSeries()) {
+      if (ranged.getXRange().isEmpty() || ranged.getXRange().isPoint()
+          || ranged.getYRange().isEmpty() || ranged.getYRange().isPoint()) {
+        continue;
+      }
+      lines.add(new LineSnapshot(ranged, getLineConfig(ranged)));
+    }
+    Dimension size = new Dimension(dim);
+    boolean fillEndGap = myFillEndGap;
+    myLinesBuilder.request(() -> buildLines(lines, size, fillEndGap));
+  }
+
+  @NotNull
+  private Lines buildLines(@NotNull List<LineSnapshot> lines, @NotNull Dimension dim, boolean fillEndGap) {
     long duration = System.nanoTime();
 
     // Store the last stacked series to use them to increment the Y values
     // of the current stacked series.
-    List<SeriesData<Long>> lastStackedSeries = null;
+    boolean hasStackedSeries = false;
 
-    Deque<Path2D> orderedPaths = new ArrayDeque<>(myLinesConfig.size());
-    Deque<RangedContinuousSeries> orderedSeries = new ArrayDeque<>(myLinesConfig.size());
+    Deque<Path2D> orderedPaths = new ArrayDeque<>(lines.size());
+    Deque<RangedContinuousSeries> orderedSeries = new ArrayDeque<>(lines.size());
 
-    for (RangedContinuousSeries ranged : myModel.getSeries()) {
-      if (ranged.getXRange().isEmpty() || ranged.getXRange().isPoint()
-          || ranged.getYRange().isEmpty() || ranged.getYRange().isPoint()) {
-        continue;
-      }
-      final LineConfig config = getLineConfig(ranged);
+    for (LineSnapshot line : lines) {
+      RangedContinuousSeries ranged = line.mySeries;
+      final LineConfig config = line.myConfig;
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
+      // Stacked series are summed point by point, which assumes their x values are aligned, so they can't be reduced separately.
+      boolean reduceToPixels = myReducer.reducesToPixels() && !config.isStacked() && config.getDataBucketInterval() == 0;
+      ranged.fillSeriesBuffer(line.myXRange, reduceToPixels ? dim.width : 0, mySeriesData);
+      LongSeriesBuffer seriesData = mySeriesData;
       if (config.isStacked()) {
-        if (lastStackedSeries == null) {
-          lastStackedSeries = new ArrayList<>(seriesList);
+        if (!hasStackedSeries) {
+          hasStackedSeries = true;
+          myStackedSeries.copyFrom(seriesData);
         }
         else {
           // If the current series is stacked, increment its value by the value of the last stacked
@@ -195,37 +228,39 @@ public class LineChart extends AnimatedComponent {
           // points than the last stacked series (meaning that the last one was populated in a
           // prior iteration). In this case, ignore the new points (i.e. we take only the intersection
           // across all series).
-          for (int i = 0; i < seriesList.size() && i < lastStackedSeries.size(); ++i) {
+          for (int i = 0; i < seriesData.size() && i < myStackedSeries.size(); ++i) {
             // An assumption is made here that the x values across series are aligned.
-            lastStackedSeries.get(i).value += seriesList.get(i).value;
+            myStackedSeries.setY(i, myStackedSeries.getY(i) + seriesData.getY(i));
           }
-          seriesList = lastStackedSeries;
+          seriesData = myStackedSeries;
         }
       }
 
       Path2D path = new Path2D.Float();
-      double xMin = ranged.getXRange().getMin();
-      double xLength = ranged.getXRange().getLength();
-      double yMin = ranged.getYRange().getMin();
-      double yLength = ranged.getYRange().getLength();
+      double xMin = line.myXRange.getMin();
+      double xLength = line.myXRange.getLength();
+      double yMin = line.myYRange.getMin();
+      double yLength = line.myYRange.getLength();
 
       // X coordinate of the first point
       double firstXd = 0f;
       // Actual value of first point
       double firstX = 0;
-      seriesList = myReducer.reduceData(seriesList, config);
+      // Reduced in a copy, the stacked series is still needed by the next ones.
+      myReducedSeries.copyFrom(seriesData);
+      myReducer.reduceData(myReducedSeries, config);
+      LongSeriesBuffer seriesList = myReducedSeries;
       double xBucketInterval = config.getDataBucketInterval() / xLength;
       double xBucketBarWidth = xBucketInterval * BUCKET_BAR_PERCENTAGE;
       // If we are a stepped chart or bar chart, we don't need to worry about start and end points' Y value.
       boolean optimizeYZooming = !config.isStepped() && xBucketInterval == 0;
       for (int i = 0; i < seriesList.size(); i++) {
-        SeriesData<Long> data = seriesList.get(i);
-        SeriesData<Long> dataNext = seriesList.get(i + 1 == seriesList.size() ? i : i + 1);
-        SeriesData<Long> dataPrev = seriesList.get(i - 1 < 0 ? i : i - 1);
+        int next = i + 1 == seriesList.size() ? i : i + 1;
+        int prev = i - 1 < 0 ? i : i - 1;
         // TODO: refactor to allow different types (e.g. double)
-        double xd = (data.x - xMin) / xLength;
+        double xd = (seriesList.getX(i) - xMin) / xLength;
         // Swing's (0, 0) coordinate is in top-left. As we use bottom-left (0, 0), we need to adjust the y coordinate.
-        double yd = 1 - (data.value - yMin) / yLength;
+        double yd = 1 - (seriesList.getY(i) - yMin) / yLength;
 
         // This change significantly speeds up drawing when zoomed into the chart. Without this change a line could extend
         // a few thousand pixels off the screen in both directions. The fill/draw function would then spend a lot of time
@@ -242,14 +277,14 @@ public class LineChart extends AnimatedComponent {
 
         double originalXd = xd;
         if (xd < 0) {
-          double xdNext = (dataNext.x - xMin) / xLength;
+          double xdNext = (seriesList.getX(next) - xMin) / xLength;
           // If our next point is also offscreen then ignore this point and continue.
           if (xdNext < 0) {
             continue;
           }
 
           //Get the Y offset of our next point.
-          double ydNext = 1 - (dataNext.value - yMin) / yLength;
+          double ydNext = 1 - (seriesList.getY(next) - yMin) / yLength;
 
           // If we are a dash line we get the closest normalized point to are graph otherwise we just set our point to 0.
           double newPosition = 0;
@@ -264,13 +299,13 @@ public class LineChart extends AnimatedComponent {
           // Set our new X position and carry on.
           xd = newPosition;
         } else if (xd > 1) {
-          double xdPrev = (dataPrev.x - xMin) / xLength;
+          double xdPrev = (seriesList.getX(prev) - xMin) / xLength;
           if (xdPrev > 1) {
             break;
           }
           if (optimizeYZooming) {
             double ratio = (1 - xdPrev) / (xd - xdPrev);
-            double ydPrev = 1 - (dataPrev.value - yMin) / yLength;
+            double ydPrev = 1 - (seriesList.getY(prev) - yMin) / yLength;
             yd = (1 - ratio) * ydPrev + (ratio * yd);
           }
           xd = 1;
@@ -278,7 +313,7 @@ public class LineChart extends AnimatedComponent {
 
         if (path.getCurrentPoint() == null) {
           firstXd = xd;
-          firstX = data.x;
+          firstX = seriesList.getX(i);
           // If for bucket data, because the previous ending x value is next data point's starting
           // x value, i.e. (xd + interval, 1), move the path start point to (xd, 1).
           // Otherwise, move the path start point to (xd, yd).
@@ -307,7 +342,7 @@ public class LineChart extends AnimatedComponent {
         }
       }
 
-      if (myFillEndGap && path.getCurrentPoint() != null) {
+      if (fillEndGap && path.getCurrentPoint() != null) {
         // Extends the last point on the path to the end
         path.lineTo(Math.max(path.getCurrentPoint().getX(), 1f), path.getCurrentPoint().getY());
       }
@@ -352,13 +387,8 @@ public class LineChart extends AnimatedComponent {
       }
     }
 
-    myLinePaths.clear();
-    myLinePaths.addAll(orderedPaths);
-
-    myLinePathSeries.clear();
-    myLinePathSeries.addAll(orderedSeries);
-
-    addDebugInfo("postAnimate time: %d ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - duration));
+    return new Lines(new ArrayList<>(orderedPaths), new ArrayList<>(orderedSeries),
+                     TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - duration));
   }
 
   @Override
@@ -379,9 +409,14 @@ public class LineChart extends AnimatedComponent {
       redraw(dim);
       myRedraws++;
     }
-    else {
-      addDebugInfo("postAnimate time: 0 ms");
+    Lines lines = myLinesBuilder.getSnapshot();
+    if (lines == null) {
+      // The first lines are still being computed.
+      return;
     }
+    List<Path2D> linePaths = lines.myPaths;
+    List<RangedContinuousSeries> linePathSeries = lines.mySeries;
+    addDebugInfo("postAnimate time: %d ms", lines.myBuildTimeMs);
     addDebugInfo("Draws in the last second %d", myLastDraws);
     addDebugInfo("Redraws in the last second %d", myLastRedraws);
 
@@ -395,12 +430,12 @@ public class LineChart extends AnimatedComponent {
     }
 
     // Cache the transformed line paths for reuse below.
-    List<Path2D> transformedPaths = new ArrayList<>(myLinePaths.size());
-    List<LineConfig> configs = new ArrayList<>(myLinePaths.size());
+    List<Path2D> transformedPaths = new ArrayList<>(linePaths.size());
+    List<LineConfig> configs = new ArrayList<>(linePaths.size());
 
-    for (int i = 0; i < myLinePaths.size(); ++i) {
-      Path2D scaledPath = new Path2D.Float(myLinePaths.get(i), scale);
-      LineConfig config = getLineConfig(myLinePathSeries.get(i));
+    for (int i = 0; i < linePaths.size(); ++i) {
+      Path2D scaledPath = new Path2D.Float(linePaths.get(i), scale);
+      LineConfig config = getLineConfig(linePathSeries.get(i));
       configs.add(config);
       scaledPath = myReducer.reducePath(scaledPath, config);
       transformedPaths.add(scaledPath);
@@ -422,7 +457,7 @@ public class LineChart extends AnimatedComponent {
     }
 
     // 2nd pass - call each custom renderer instances to redraw any regions/lines as needed.
-    myCustomRenderers.forEach(renderer -> renderer.renderLines(this, g2d, transformedPaths, myLinePathSeries));
+    myCustomRenderers.forEach(renderer -> renderer.renderLines(this, g2d, transformedPaths, linePathSeries));
 
     addDebugInfo("Draw time: %.2fms", (System.nanoTime() - drawStartTime) / 1e6);
   }
@@ -574,4 +609,36 @@ public class LineChart extends AnimatedComponent {
   public void setFillEndGap(boolean fillEndGap) {
     myFillEndGap = fillEndGap;
   }
+
+  /**
+   * A series to draw, with its ranges as they were when the redraw was requested.
+   */
+  private static final class LineSnapshot {
+    @NotNull private final RangedContinuousSeries mySeries;
+    @NotNull private final LineConfig myConfig;
+    @NotNull private final Range myXRange;
+    @NotNull private final Range myYRange;
+
+    private LineSnapshot(@NotNull RangedContinuousSeries series, @NotNull LineConfig config) {
+      mySeries = series;
+      myConfig = config;
+      myXRange = new Range(series.getXRange());
+      myYRange = new Range(series.getYRange());
+    }
+  }
+
+  /**
+   * The paths of the lines in normalized space, in the order they are drawn, and the series of each.
+   */
+  private static final class Lines {
+    @NotNull private final List<Path2D> myPaths;
+    @NotNull private final List<RangedContinuousSeries> mySeries;
+    private final long myBuildTimeMs;
+
+    private Lines(@NotNull List<Path2D> paths, @NotNull List<RangedContinuousSeries> series, long buildTimeMs) {
+      myPaths = paths;
+      mySeries = series;
+      myBuildTimeMs = buildTimeMs;
+    }
+  }
 }
@@ -15,7 +15,9 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeriesBuffer;
 import com.android.tools.adtui.model.SeriesData;
+import org.jetbrains.annotations.NotNull;
 
 import java.awt.geom.Path2D;
 import java.util.List;
@@ -31,6 +33,23 @@ public interface LineChartReducer {
    */
   List<SeriesData<Long>> reduceData(List<SeriesData<Long>> data, LineConfig config);
 
+  /**
+   * Same as {@link #reduceData(List, LineConfig)}, reducing the buffer in place.
+   */
+  default void reduceData(@NotNull LongSeriesBuffer data, @NotNull LineConfig config) {
+    List<SeriesData<Long>> reduced = reduceData(data.toList(), config);
+    data.clear();
+    data.addAll(reduced);
+  }
+
+  /**
+   * Whether the chart can ask its series for data already reduced to its width in pixels, which looks the same once drawn as the result
+   * of {@link #reducePath(Path2D, LineConfig)}, see {@link LongSeriesBuffer#reduceToPixels(double, double, int)}.
+   */
+  default boolean reducesToPixels() {
+    return false;
+  }
+
   /**
    * Reduces the given path in a pixel level, i.e when dimensions are available.
    * The result shouldn't affect the looking of the line when it's drawn.
@@ -19,10 +19,12 @@ package com.android.tools.adtui.chart.statechart;
 import com.android.annotations.VisibleForTesting;
 import com.android.tools.adtui.AnimatedComponent;
 import com.android.tools.adtui.common.AdtUiUtils;
+import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedSeries;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.adtui.model.StateChartModel;
 import com.android.tools.adtui.model.Stopwatch;
+import com.android.tools.adtui.model.updater.RenderSnapshotBuilder;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.ui.ColorUtil;
 import com.intellij.util.ui.MouseEventHandler;
@@ -39,7 +41,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import javax.swing.JList;
+import javax.swing.SwingUtilities;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -77,8 +81,9 @@ public final class StateChart<T> extends AnimatedComponent {
   @NotNull
   private final StateChartTextConverter<T> myTextConverter;
 
-  private final List<Rectangle2D.Float> myRectangles = new ArrayList<>();
-  private final List<T> myRectangleValues = new ArrayList<>();
+  @NotNull
+  private final RenderSnapshotBuilder<Geometry<T>> myGeometryBuilder =
+    new RenderSnapshotBuilder<>(() -> SwingUtilities.invokeLater(this::opaqueRepaint));
 
   /**
    * In some cases, StateChart is delegated to by a parent containing component (e.g. a JList or
@@ -174,14 +179,18 @@ public final class StateChart<T> extends AnimatedComponent {
     myHeightGap = gap;
   }
 
-  private void clearRectangles() {
-    myRectangles.clear();
-    myRectangleValues.clear();
+  /**
+   * Sets the executor the rectangles are computed on, by default the thread painting the chart. Charts used as cell renderers must keep
+   * the default, as they paint different data for every cell.
+   */
+  public void setGeometryExecutor(@NotNull Executor executor) {
+    myGeometryBuilder.setExecutor(executor);
   }
 
   /**
    * Creates a rectangle with the supplied dimensions. This function will normalize the x and width values.
    *
+   * @param geometry  geometry the created rectangle is added to.
    * @param value     value used to associate with the created rectangle..
    * @param previousX value used to determine the x position and width of the rectangle. This value should be relative to the currentX param.
    * @param currentX  value used to determine the width of the rectangle. This value should be relative to the previousX param.
@@ -190,13 +199,14 @@ public final class StateChart<T> extends AnimatedComponent {
    * @param rectY     rectangle height offset from max growth of rectangle. This value is expressed as a percentage from 0-1
    * @param height    height of rectangle
    */
-  private void addRectangleDelta(@NotNull T value,
-                                 double previousX,
-                                 double currentX,
-                                 double minX,
-                                 double invRange,
-                                 float rectY,
-                                 float height) {
+  private static <T> void addRectangleDelta(@NotNull Geometry<T> geometry,
+                                            @NotNull T value,
+                                            double previousX,
+                                            double currentX,
+                                            double minX,
+                                            double invRange,
+                                            float rectY,
+                                            float height) {
     // Because we start our activity line from the bottom and grow up we offset the height from the bottom of the component
     // instead of the top by subtracting our height from 1.
     Rectangle2D.Float rect = new Rectangle2D.Float(
@@ -204,8 +214,8 @@ public final class StateChart<T> extends AnimatedComponent {
       rectY,
       (float)((currentX - previousX) * invRange),
       height);
-    myRectangles.add(rect);
-    myRectangleValues.add(value);
+    geometry.myRectangles.add(rect);
+    geometry.myRectangleValues.add(value);
   }
 
   private void transformToViewSpace() {
@@ -215,28 +225,38 @@ public final class StateChart<T> extends AnimatedComponent {
 
     myNeedsTransformToViewSpace = false;
 
-    List<RangedSeries<T>> series = myModel.getSeries();
+    // The ranges are captured now, the geometry may be built on another thread while they keep changing.
+    List<RangedSeries<T>> series = new ArrayList<>(myModel.getSeries());
+    List<Range> ranges = new ArrayList<>(series.size());
+    for (RangedSeries<T> data : series) {
+      ranges.add(new Range(data.getXRange()));
+    }
+    float heightGap = myHeightGap;
+    myGeometryBuilder.request(() -> buildGeometry(series, ranges, heightGap));
+  }
+
+  @NotNull
+  private static <T> Geometry<T> buildGeometry(@NotNull List<RangedSeries<T>> series, @NotNull List<Range> ranges, float heightGap) {
+    Geometry<T> geometry = new Geometry<>();
     int seriesSize = series.size();
     if (seriesSize == 0) {
-      return;
+      return geometry;
     }
 
     // TODO support interpolation.
     float rectHeight = 1.0f / seriesSize;
-    float gap = rectHeight * myHeightGap;
+    float gap = rectHeight * heightGap;
     float barHeight = rectHeight - gap;
 
-    clearRectangles();
-
     for (int seriesIndex = 0; seriesIndex < seriesSize; seriesIndex++) {
-      RangedSeries<T> data = series.get(seriesIndex);
+      Range xRange = ranges.get(seriesIndex);
 
-      final double min = data.getXRange().getMin();
-      final double max = data.getXRange().getMax();
+      final double min = xRange.getMin();
+      final double max = xRange.getMax();
       final double invRange = 1.0 / (max - min);
       float startHeight = 1.0f - (rectHeight * (seriesIndex + 1));
 
-      List<SeriesData<T>> seriesDataList = data.getSeries();
+      List<SeriesData<T>> seriesDataList = series.get(seriesIndex).getDataSeries().getDataForXRange(xRange);
       if (seriesDataList.isEmpty()) {
         continue;
       }
@@ -259,7 +279,8 @@ public final class StateChart<T> extends AnimatedComponent {
         // Don't draw if this block doesn't intersect with [min..max]
         if (x >= min) {
           // Draw the previous block.
-          addRectangleDelta(previousValue, Math.max(min, previousX), Math.min(max, x), min, invRange, startHeight + gap * 0.5f, barHeight);
+          addRectangleDelta(geometry, previousValue, Math.max(min, previousX), Math.min(max, x), min, invRange, startHeight + gap * 0.5f,
+                            barHeight);
         }
 
         // Start a new block.
@@ -273,9 +294,10 @@ public final class StateChart<T> extends AnimatedComponent {
       }
       // The last data point continues till max
       if (previousX < max && previousValue != null) {
-        addRectangleDelta(previousValue, Math.max(min, previousX), max, min, invRange, startHeight + gap * 0.5f, barHeight);
+        addRectangleDelta(geometry, previousValue, Math.max(min, previousX), max, min, invRange, startHeight + gap * 0.5f, barHeight);
       }
     }
+    return geometry;
   }
 
   @Override
@@ -286,23 +308,31 @@ public final class StateChart<T> extends AnimatedComponent {
 
     long transformTime = stopwatch.getElapsedSinceLastDeltaNs();
 
+    Geometry<T> geometry = myGeometryBuilder.getSnapshot();
+    if (geometry == null) {
+      // The first rectangles are still being computed.
+      return;
+    }
+    List<Rectangle2D.Float> rectangles = geometry.myRectangles;
+    List<T> rectangleValues = geometry.myRectangleValues;
+
     g2d.setFont(getFont());
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
 
-    assert myRectangles.size() == myRectangleValues.size();
-    List<Rectangle2D.Float> transformedShapes = new ArrayList<>(myRectangles.size());
-    List<T> transformedValues = new ArrayList<>(myRectangleValues.size());
+    assert rectangles.size() == rectangleValues.size();
+    List<Rectangle2D.Float> transformedShapes = new ArrayList<>(rectangles.size());
+    List<T> transformedValues = new ArrayList<>(rectangleValues.size());
 
     float scaleX = (float)getWidth();
     float scaleY = (float)getHeight();
 
     Rectangle clipRect = g2d.getClipBounds();
     int startIndexInclusive = 0;
-    int endIndexExclusive = myRectangles.size();
+    int endIndexExclusive = rectangles.size();
     if (clipRect != null) {
       if (clipRect.x != 0) {
         startIndexInclusive = Collections.binarySearch(
-          myRectangles,
+          rectangles,
           new Rectangle2D.Float(clipRect.x / scaleX, 0, 0, 0),
           (value, key) -> (value.x + value.width < key.x) ? -1 : (value.x > key.x ? 1 : 0));
         if (startIndexInclusive < 0) {
@@ -311,7 +341,7 @@ public final class StateChart<T> extends AnimatedComponent {
       }
       if (clipRect.width != getWidth()) {
         endIndexExclusive = Collections.binarySearch(
-          myRectangles,
+          rectangles,
           new Rectangle2D.Float((clipRect.x + clipRect.width) / scaleX, 0, 0, 0),
           (value, key) -> (value.x + value.width < key.x) ? -1 : (value.x > key.x ? 1 : 0));
         if (endIndexExclusive < 0) {
@@ -326,7 +356,7 @@ public final class StateChart<T> extends AnimatedComponent {
     }
 
     for (int i = startIndexInclusive; i < endIndexExclusive; i++) {
-      Rectangle2D.Float rectangle = myRectangles.get(i);
+      Rectangle2D.Float rectangle = rectangles.get(i);
       // Manually scaling the rectangle results in ~6x performance improvement over calling
       // AffineTransform::createTransformedShape. The reason for this is the shape created is a Point2D.Double.
       // This shape has to support all types of points as such cannot be transformed as efficiently as a
@@ -336,7 +366,7 @@ public final class StateChart<T> extends AnimatedComponent {
                                                   rectangle.y * scaleY,
                                                   rectangle.width * scaleX,
                                                   rectangle.height * scaleY));
-      transformedValues.add(myRectangleValues.get(i));
+      transformedValues.add(rectangleValues.get(i));
     }
 
     long scalingTime = stopwatch.getElapsedSinceLastDeltaNs();
@@ -564,4 +594,12 @@ public final class StateChart<T> extends AnimatedComponent {
 
     return new Rectangle2D.Float((float)screenXLeftFloor, (float)screenYTopCeil, (float)screenWidth, (float)screenHeight);
   }
+
+  /**
+   * The rectangles of the chart in normalized space, and the value of each.
+   */
+  private static final class Geometry<T> {
+    private final List<Rectangle2D.Float> myRectangles = new ArrayList<>();
+    private final List<T> myRectangleValues = new ArrayList<>();
+  }
 }
@@ -15,6 +15,7 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeriesBuffer;
 import com.android.tools.adtui.model.SeriesData;
 import com.google.common.collect.ImmutableList;
 import org.junit.Before;
@@ -89,6 +90,27 @@ public class DefaultLineChartReducerTest {
     assertSeriesEquals(expected, result);
   }
 
+  @Test
+  public void reduceDataInBufferMatchesReduceData() {
+    List<SeriesData<Long>> data = new ImmutableList.Builder<SeriesData<Long>>()
+      .add(new SeriesData<>(0, 10L))
+      .add(new SeriesData<>(1, 10L))
+      .add(new SeriesData<>(2, 13L))
+      .add(new SeriesData<>(3, 13L))
+      .add(new SeriesData<>(4, 13L))
+      .add(new SeriesData<>(5, 13L))
+      .add(new SeriesData<>(6, 5L))
+      .add(new SeriesData<>(7, 5L)).build();
+    LongSeriesBuffer buffer = new LongSeriesBuffer();
+    for (boolean stepped : new boolean[]{false, true}) {
+      myConfig.setStepped(stepped);
+      buffer.clear();
+      buffer.addAll(data);
+      myReducer.reduceData(buffer, myConfig);
+      assertSeriesEquals(myReducer.reduceData(data, myConfig), buffer.toList());
+    }
+  }
+
   @Test
   public void simpleReducePath() {
     float[][] given = {{0, 0}, {0.1f, 1}, {0.2f, 6}, {0.3f, 4}, {1, 2}, {1.1f, 5}};
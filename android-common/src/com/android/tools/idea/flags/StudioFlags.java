@@ -142,6 +142,12 @@ public final class StudioFlags {
     "For Android O or newer, supports single-point selection which shows a snapshot of the heap at the specific time.",
     true);
 
+  public static final Flag<Boolean> PROFILER_MEMORY_MAPPED_HEAP_DUMP = Flag.create(
+    PROFILER, "memory.heapdump.mapped", "Enable Memory Mapped Heap Dumps",
+    "Downloaded heap dumps are written to a temporary file and memory mapped while their snapshot is built, so that the dump can be " +
+    "collected before the analysis finishes. The dump is still downloaded whole and the snapshot is still built in memory.",
+    true);
+
   public static final Flag<Boolean> PROFILER_SAMPLE_LIVE_ALLOCATIONS = Flag.create(
     PROFILER, "memory.livealloc.sampled", "Enable Sampled Live Allocation Tracking",
     "For Android O or newer, allows users to configure the sampling mode of live allocation tracking",
@@ -157,6 +163,12 @@ public final class StudioFlags {
     "For Android O or newer, JNI references are tracked in Memory Profiler and shown in JNI heap.",
     true);
 
+  public static final Flag<Boolean> PROFILER_NATIVE_SYMBOL_LINES = Flag.create(
+    PROFILER, "native.symbols.lines", "Symbolize the source lines of native frames",
+    "Native frames are symbolized with llvm-symbolizer to find their source files and lines. Otherwise only the names of their functions " +
+    "are found, from the symbol tables of their libraries, which is much faster.",
+    false);
+
   public static final Flag<Boolean> PROFILER_PERFORMANCE_MONITORING = Flag.create(
     PROFILER, "performance.monitoring", "Enable Profiler Performance Monitoring Options",
     "Toggles if profiler performance metrics options are enabled.",
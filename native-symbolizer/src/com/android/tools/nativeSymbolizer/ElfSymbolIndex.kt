@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+
+/**
+ * Functions of an ELF file, from its .symtab and .dynsym sections, sorted by address so that the function containing an address is found
+ * with a binary search.
+ *
+ * The file is memory mapped, and the names of the functions are only read from it when they are looked up. They are the names in the
+ * symbol tables, i.e. mangled for C++ functions.
+ */
+class ElfSymbolIndex private constructor(private val buffer: ByteBuffer,
+                                         private val starts: LongArray,
+                                         private val sizes: LongArray,
+                                         private val nameOffsets: IntArray) {
+
+  companion object {
+    private const val SHT_SYMTAB = 2
+    private const val SHT_DYNSYM = 11
+    private const val STT_FUNC = 2
+    private const val SHN_UNDEF = 0
+    private const val EM_ARM = 40
+
+    /**
+     * @return the index of the functions of an ELF file, or null if it isn't one
+     */
+    @Throws(IOException::class)
+    fun create(elfFile: File): ElfSymbolIndex? {
+      val buffer: MappedByteBuffer = FileChannel.open(elfFile.toPath(), StandardOpenOption.READ).use {
+        it.map(FileChannel.MapMode.READ_ONLY, 0, it.size())
+      }
+      return try {
+        parse(buffer)
+      }
+      catch (e: IndexOutOfBoundsException) {
+        throw IOException("Malformed ELF file: ${elfFile.path}", e)
+      }
+      catch (e: IllegalArgumentException) {
+        throw IOException("Malformed ELF file: ${elfFile.path}", e)
+      }
+    }
+
+    private fun parse(buffer: ByteBuffer): ElfSymbolIndex? {
+      if (buffer.limit() < 52 || buffer.getInt(0) != 0x7f454c46) { // "\u007fELF"
+        return null
+      }
+      val is64Bit = buffer.get(4).toInt() == 2
+      buffer.order(if (buffer.get(5).toInt() == 2) ByteOrder.BIG_ENDIAN else ByteOrder.LITTLE_ENDIAN)
+      // The lowest bit of the addresses of ARM functions tells whether they are Thumb code.
+      val addressMask = if (buffer.getShort(18).toInt() == EM_ARM) 1L.inv() else -1L
+
+      val sectionHeadersOffset = if (is64Bit) buffer.getLong(40).toInt() else buffer.getInt(32)
+      val sectionHeaderSize = buffer.getShort(if (is64Bit) 58 else 46).toInt() and 0xffff
+      val sectionCount = buffer.getShort(if (is64Bit) 60 else 48).toInt() and 0xffff
+      val sections = (0 until sectionCount).map { Section(buffer, sectionHeadersOffset + it * sectionHeaderSize, is64Bit) }
+
+      val functions = ArrayList<ElfFunction>()
+      // .symtab first, as the functions found at the same address in .dynsym are skipped.
+      for (type in intArrayOf(SHT_SYMTAB, SHT_DYNSYM)) {
+        for (section in sections.filter { it.type == type && it.entrySize > 0 }) {
+          val stringTableOffset = sections[section.link].offset.toInt()
+          for (i in 0 until (section.size / section.entrySize).toInt()) {
+            val symbolOffset = (section.offset + i * section.entrySize).toInt()
+            val info = buffer.get(symbolOffset + if (is64Bit) 4 else 12).toInt()
+            val sectionIndex = buffer.getShort(symbolOffset + if (is64Bit) 6 else 14).toInt() and 0xffff
+            if (info and 0xf != STT_FUNC || sectionIndex == SHN_UNDEF) {
+              continue
+            }
+            val address = if (is64Bit) buffer.getLong(symbolOffset + 8) else buffer.getInt(symbolOffset + 4).toLong() and 0xffffffffL
+            val size = if (is64Bit) buffer.getLong(symbolOffset + 16) else buffer.getInt(symbolOffset + 8).toLong() and 0xffffffffL
+            functions.add(ElfFunction(address and addressMask, size, stringTableOffset + buffer.getInt(symbolOffset)))
+          }
+        }
+      }
+
+      // Stable, so that the first function at an address is kept.
+      functions.sortBy { it.address }
+      val unique = functions.filterIndexed { index, function -> index == 0 || functions[index - 1].address != function.address }
+      return ElfSymbolIndex(buffer,
+                            LongArray(unique.size) { unique[it].address },
+                            LongArray(unique.size) { unique[it].size },
+                            IntArray(unique.size) { unique[it].nameOffset })
+    }
+  }
+
+  val functionCount: Int
+    get() = starts.size
+
+  /**
+   * @return the function containing the given address, or null if there is none
+   */
+  fun findFunction(address: Long): ElfFunction? {
+    var low = 0
+    var high = starts.size
+    // Finds how many functions start at or before the address, the last of them being the only one which may contain it.
+    while (low < high) {
+      val mid = (low + high) ushr 1
+      if (starts[mid] <= address) {
+        low = mid + 1
+      }
+      else {
+        high = mid
+      }
+    }
+    val index = low - 1
+    // A function without a size, e.g. one written in assembly, is assumed to end where the next one starts.
+    if (index < 0 || (sizes[index] > 0 && address >= starts[index] + sizes[index])) {
+      return null
+    }
+    return ElfFunction(starts[index], sizes[index], nameOffsets[index])
+  }
+
+  fun getName(function: ElfFunction): String {
+    var end = function.nameOffset
+    while (buffer.get(end) != 0.toByte()) {
+      end++
+    }
+    val bytes = ByteArray(end - function.nameOffset)
+    for (i in bytes.indices) {
+      bytes[i] = buffer.get(function.nameOffset + i)
+    }
+    return String(bytes, Charsets.UTF_8)
+  }
+
+  /**
+   * A function of the file, where nameOffset is the position of its name in the file.
+   */
+  data class ElfFunction(val address: Long, val size: Long, val nameOffset: Int)
+
+  private class Section(buffer: ByteBuffer, headerOffset: Int, is64Bit: Boolean) {
+    val type = buffer.getInt(headerOffset + 4)
+    val offset = if (is64Bit) buffer.getLong(headerOffset + 24) else buffer.getInt(headerOffset + 16).toLong() and 0xffffffffL
+    val size = if (is64Bit) buffer.getLong(headerOffset + 32) else buffer.getInt(headerOffset + 20).toLong() and 0xffffffffL
+    val link = buffer.getInt(headerOffset + if (is64Bit) 40 else 24)
+    val entrySize = if (is64Bit) buffer.getLong(headerOffset + 56) else buffer.getInt(headerOffset + 36).toLong() and 0xffffffffL
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import java.io.IOException
+
+/**
+ * Implementation of NativeSymbolizer that only finds the names of functions, without their source files and lines, from the symbol tables
+ * of the native libraries.
+ *
+ * The functions of a library are indexed on first use, and each offset is then looked up with a binary search. C++ names are mangled in the
+ * symbol tables, so they are demangled by the given symbolizer, which is only asked once for each function rather than for every offset.
+ * Libraries without a symbol table are left to the given symbolizer entirely.
+ */
+class ElfSymbolizer(private val symLocator: SymbolFilesLocator,
+                    private val symbolizer: NativeSymbolizer) : NativeSymbolizer {
+
+  /**
+   * Indexes of the modules which were looked up, by ABI and module. Null values are the modules without symbol tables.
+   */
+  private val indexes = HashMap<Pair<String, String>, ElfSymbolIndex?>()
+
+  override fun symbolize(abiArch: String, module: String, offset: Long): Symbol? {
+    return symbolize(abiArch, module, listOf(offset))[0]
+  }
+
+  @Synchronized
+  override fun symbolize(abiArch: String, module: String, offsets: List<Long>): List<Symbol?> {
+    val index = indexes.getOrPut(Pair(abiArch, module)) { createIndex(abiArch, module) }
+                ?: return symbolizer.symbolize(abiArch, module, offsets)
+
+    val functions = offsets.map { index.findFunction(it) }
+    val names = HashMap<ElfSymbolIndex.ElfFunction, String>()
+    val mangledFunctions = ArrayList<ElfSymbolIndex.ElfFunction>()
+    for (function in functions.filterNotNull().distinct()) {
+      val name = index.getName(function)
+      names[function] = name
+      if (name.startsWith("_Z")) {
+        mangledFunctions.add(function)
+      }
+    }
+
+    if (mangledFunctions.isNotEmpty()) {
+      try {
+        val demangledSymbols = symbolizer.symbolize(abiArch, module, mangledFunctions.map { it.address })
+        for ((function, symbol) in mangledFunctions.zip(demangledSymbols)) {
+          if (symbol != null) {
+            names[function] = symbol.name
+          }
+        }
+      }
+      catch (e: IOException) {
+        // The names are still better mangled than missing.
+        getLogger().warn("Failed to demangle the functions of $module", e)
+      }
+    }
+
+    return functions.map { function -> function?.let { Symbol(names[it]!!, module) } }
+  }
+
+  /**
+   * @return the index of the first symbol file of a module which has functions, or null if there is none
+   */
+  private fun createIndex(abiArch: String, module: String): ElfSymbolIndex? {
+    for (symFile in symLocator.findSymbolFiles(abiArch, module)) {
+      try {
+        val index = ElfSymbolIndex.create(symFile)
+        if (index != null && index.functionCount > 0) {
+          return index
+        }
+      }
+      catch (e: IOException) {
+        getLogger().warn("Failed to index the functions of ${symFile.path}", e)
+      }
+    }
+    return null
+  }
+
+  @Synchronized
+  override fun stop() {
+    // The libraries may be rebuilt before the next session.
+    indexes.clear()
+    symbolizer.stop()
+  }
+}
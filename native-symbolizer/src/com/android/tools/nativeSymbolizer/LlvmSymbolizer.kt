@@ -17,6 +17,7 @@ package com.android.tools.nativeSymbolizer
 
 import com.intellij.openapi.Disposable
 import java.io.*
+import java.util.ArrayDeque
 import java.util.concurrent.*
 
 /**
@@ -33,26 +34,97 @@ import java.util.concurrent.*
  * TestSimpleMethodCall(_JNIEnv*, _jobject*)
  * /usr/local/google/home/ezemtsov/projects/android-apps/sum/app/src/main/cpp/native-lib.cpp:36:7
  *
+ * Requests for many offsets are written to a process at once, as it answers them in order, and are spread across a few processes.
+ * The symbols found are kept in an optional [SymbolCache], so that they are only looked up once.
+ *
  * More info about llvm-symbolizer: https://llvm.org/docs/CommandGuide/llvm-symbolizer.html
  */
 class LlvmSymbolizer(private val symbolizerExe: String,
                      private val symLocator: SymbolFilesLocator,
-                     private val timeoutMsc: Long = 5000) : NativeSymbolizer {
+                     private val timeoutMsc: Long = 5000,
+                     private val processCount: Int = DEFAULT_PROCESS_COUNT,
+                     private val symbolCache: SymbolCache? = null) : NativeSymbolizer {
+
+  companion object {
+    private val DEFAULT_PROCESS_COUNT = Math.min(4, Runtime.getRuntime().availableProcessors())
+
+    /**
+     * Requests written to a process before reading its responses. Each batch is given the timeout, as the responses come in one by one.
+     */
+    private const val MAX_REQUESTS_PER_BATCH = 64
+  }
 
-  private var procHolder : ProcessHolder? = null
-  private val executor : ExecutorService = Executors.newSingleThreadExecutor()
+  /**
+   * The processes batches are sent to, which are started on first use. Each of them only has one batch at a time.
+   */
+  private val procHolders = arrayOfNulls<ProcessHolder>(processCount)
+  // Two threads per batch, as requests are written while the responses are read so that neither of the pipes fills up.
+  private val executor : ExecutorService = Executors.newCachedThreadPool()
 
   override fun symbolize(abiArch: String, module: String, offset: Long): Symbol? {
-    val symFiles = symLocator.findSymbolFiles(abiArch, module)
+    return symbolize(abiArch, module, listOf(offset))[0]
+  }
+
+  @Synchronized
+  override fun symbolize(abiArch: String, module: String, offsets: List<Long>): List<Symbol?> {
+    val symbols = arrayOfNulls<Symbol>(offsets.size)
+    var unresolved = offsets.indices.toList()
+    for (symFile in symLocator.findSymbolFiles(abiArch, module)) {
+      if (unresolved.isEmpty()) {
+        break
+      }
+      val fileSymbols = symbolize(symFile, unresolved.map { offsets[it] }.distinct())
+      for (index in unresolved) {
+        symbols[index] = fileSymbols[offsets[index]]?.copy(module = module)
+      }
+      unresolved = unresolved.filter { symbols[it] == null }
+    }
+    return symbols.asList()
+  }
+
+  /**
+   * @return the symbols found in a symbol file for the given offsets, without their module, and which are missing if they can't be found
+   */
+  private fun symbolize(symFile: File, offsets: List<Long>): Map<Long, Symbol> {
+    val cachedSymbols = symbolCache?.get(symFile, offsets) ?: emptyMap()
+    val uncachedOffsets = offsets.filter { !cachedSymbols.containsKey(it) }
+    val newSymbols = HashMap<Long, Symbol?>()
+
+    // Spread the offsets across the processes, and keep all of them busy when there are more batches than processes. A batch is only sent
+    // to a process after its previous batch is done or timed out, as the batches are waited for in order.
+    val batchSize = Math.min(MAX_REQUESTS_PER_BATCH, (uncachedOffsets.size + processCount - 1) / processCount)
+    val pendingBatches = ArrayDeque<PendingBatch>()
+    for ((index, batch) in uncachedOffsets.chunked(Math.max(batchSize, 1)).withIndex()) {
+      if (pendingBatches.size == processCount) {
+        pendingBatches.removeFirst().await(newSymbols)
+      }
+      pendingBatches.addLast(sendBatch(index % processCount, symFile, batch))
+    }
+    while (pendingBatches.isNotEmpty()) {
+      pendingBatches.removeFirst().await(newSymbols)
+    }
+    symbolCache?.put(symFile, newSymbols)
 
-    for (symFile in symFiles) {
-      val request = formatRequest(symFile, offset)
+    val result = HashMap<Long, Symbol>()
+    for ((offset, symbol) in cachedSymbols + newSymbols) {
+      if (symbol != null) {
+        result[offset] = symbol
+      }
+    }
+    return result
+  }
 
-      val holder = getProcHolder()
-      val future = executor.submit( Callable<List<String>> {
-        holder.stdin.write(request)
+  private fun sendBatch(processIndex: Int, symFile: File, offsets: List<Long>): PendingBatch {
+    val holder = getProcHolder(processIndex)
+    val requests = offsets.joinToString("") { formatRequest(symFile, it) }
+    val future = executor.submit( Callable<List<List<String>>> {
+      val writing = executor.submit {
+        holder.stdin.write(requests)
         holder.stdin.flush()
+      }
 
+      val responses: MutableList<List<String>> = mutableListOf()
+      for (offset in offsets) {
         val response: MutableList<String> = mutableListOf()
         var responseLine: String?
         while (true) {
@@ -62,34 +134,47 @@ class LlvmSymbolizer(private val symbolizerExe: String,
           }
           response.add(responseLine)
         }
-        response
-      })
-      val response : List<String>
+        if (responseLine == null) {
+          throw IOException("llvm-symbolizer exited")
+        }
+        responses.add(response)
+      }
+      writing.get()
+      responses
+    })
+    return PendingBatch(processIndex, offsets, future)
+  }
+
+  private inner class PendingBatch(val processIndex: Int, val offsets: List<Long>, val future: Future<List<List<String>>>) {
+    /**
+     * Waits for the responses to the batch, and adds the symbols parsed from them to the given ones. Nothing is added for a batch which
+     * failed, so that its offsets aren't cached.
+     */
+    fun await(symbols: MutableMap<Long, Symbol?>) {
+      val responses : List<List<String>>
       try {
-        response = future.get(timeoutMsc, TimeUnit.MILLISECONDS)
+        responses = future.get(timeoutMsc, TimeUnit.MILLISECONDS)
       } catch (e: TimeoutException) {
         getLogger().warn("llvm-symbolizer timed out", e)
-        stop()
-        continue
+        stop(processIndex)
+        return
       } catch (e: ExecutionException) {
         getLogger().warn("llvm-symbolizer communication failed", e)
-        stop()
-        continue
+        stop(processIndex)
+        return
       }
 
-      val result = parseResponse(response, module)
-      if (result != null)
-        return result
+      for ((offset, response) in offsets.zip(responses)) {
+        symbols[offset] = parseResponse(response, "")
+      }
     }
-
-    return null
   }
 
-  private fun getProcHolder() : ProcessHolder {
-    var holder = procHolder
+  private fun getProcHolder(processIndex: Int) : ProcessHolder {
+    var holder = procHolders[processIndex]
     if (holder == null || !holder.process.isAlive) {
-      start()
-      holder = procHolder!! // procHolder must't be null after start()
+      start(processIndex)
+      holder = procHolders[processIndex]!! // procHolder must't be null after start()
     }
     return holder
   }
@@ -126,9 +211,9 @@ class LlvmSymbolizer(private val symbolizerExe: String,
     return Symbol(name, module, sourceFile, lineNumber)
   }
 
-  private fun start() {
-    if (procHolder != null)
-      stop()
+  private fun start(processIndex: Int) {
+    if (procHolders[processIndex] != null)
+      stop(processIndex)
 
     val builder = ProcessBuilder(symbolizerExe)
     val process = builder.start()
@@ -138,12 +223,17 @@ class LlvmSymbolizer(private val symbolizerExe: String,
 
     val stdin = OutputStreamWriter(process.outputStream, Charsets.UTF_8)
     val stdout = BufferedReader(InputStreamReader(process.inputStream, Charsets.UTF_8))
-    procHolder = ProcessHolder(process, stdout, stdin)
+    procHolders[processIndex] = ProcessHolder(process, stdout, stdin)
+  }
+
+  private fun stop(processIndex: Int) {
+    procHolders[processIndex]?.dispose()
+    procHolders[processIndex] = null
   }
 
+  @Synchronized
   override fun stop() {
-    procHolder?.dispose()
-    procHolder = null
+    procHolders.indices.forEach { stop(it) }
   }
 
   private class ProcessHolder(val process: Process,
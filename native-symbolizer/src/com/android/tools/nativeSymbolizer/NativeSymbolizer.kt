@@ -15,6 +15,7 @@
  */
 package com.android.tools.nativeSymbolizer
 
+import com.android.tools.idea.flags.StudioFlags
 import com.intellij.ide.plugins.PluginManagerCore
 import com.intellij.openapi.application.PathManager
 import com.intellij.openapi.diagnostic.Logger
@@ -39,6 +40,16 @@ interface NativeSymbolizer {
    */
   @Throws(IOException::class)
   fun symbolize(abiArch: String, module: String, offset: Long): Symbol?
+
+  /**
+   * Obtains information about the functions located at the given offsets in a given module, which implementations can look up together
+   * @return symbols info for each offset, which is null if it can't be found
+   */
+  @Throws(IOException::class)
+  fun symbolize(abiArch: String, module: String, offsets: List<Long>): List<Symbol?> {
+    return offsets.map { symbolize(abiArch, module, it) }
+  }
+
   fun stop()
 }
 
@@ -51,7 +62,9 @@ fun createNativeSymbolizer(project: Project): NativeSymbolizer {
     log.debug("Native symbolizer paths for $arch is [$dirs]")
   }
   val symLocator = SymbolFilesLocator(symDirMap)
-  return LlvmSymbolizer(symbolizerPath, symLocator)
+  val symbolCache = SymbolCache(Paths.get(PathManager.getSystemPath(), "native-symbols").toFile())
+  val llvmSymbolizer = LlvmSymbolizer(symbolizerPath, symLocator, symbolCache = symbolCache)
+  return if (StudioFlags.PROFILER_NATIVE_SYMBOL_LINES.get()) llvmSymbolizer else ElfSymbolizer(symLocator, llvmSymbolizer)
 }
 
 /**
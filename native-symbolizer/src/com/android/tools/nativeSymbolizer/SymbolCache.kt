@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.google.common.hash.Hashing
+import com.google.common.io.Files
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStreamWriter
+import java.util.concurrent.TimeUnit
+
+/**
+ * Symbols found in symbol files, persisted in a directory so that each offset of a file is only symbolized once, across sessions.
+ *
+ * The symbols of a file are kept in a cache file named after the hash of its content, so that a rebuilt library doesn't get the
+ * symbols of the previous build, while copies of the same one share them. Offsets which couldn't be symbolized are cached as well.
+ * A cache file has a line per offset, which looks like this: 0x<hex offset>\t<function name>\t<line number>\t<path to source file>
+ *
+ * The cached symbols don't have a module, as it is the one on the device which differs between the processes using the file.
+ *
+ * Cache files are touched when loaded. When first used, the cache deletes the files which haven't been used for [maxFileAgeMs], then the
+ * least recently used ones until all of them fit in [maxSizeBytes].
+ */
+class SymbolCache(private val cacheDir: File,
+                  private val maxSizeBytes: Long = DEFAULT_MAX_SIZE_BYTES,
+                  private val maxFileAgeMs: Long = DEFAULT_MAX_FILE_AGE_MS) {
+
+  companion object {
+    /**
+     * How much disk space the cache files may take, beyond which the least recently used ones are deleted.
+     */
+    private const val DEFAULT_MAX_SIZE_BYTES = 64L * 1024 * 1024
+
+    /**
+     * How long a cache file is kept without being used, as the symbol files of old builds are rarely looked up again.
+     */
+    private val DEFAULT_MAX_FILE_AGE_MS = TimeUnit.DAYS.toMillis(30)
+  }
+
+  /**
+   * The symbols of the files which were looked up, by the hash of their content. Null values are the offsets which couldn't be symbolized.
+   */
+  private val symbolsByHash = HashMap<String, MutableMap<Long, Symbol?>>()
+
+  /**
+   * Hashes of the files which were looked up, so that they are only hashed again when they change.
+   */
+  private val hashes = HashMap<FileStamp, String>()
+
+  private var isCacheDirTrimmed = false
+
+  /**
+   * @return the symbols cached for the given offsets of a symbol file, which has no entry for the offsets which aren't cached.
+   */
+  @Synchronized
+  fun get(symFile: File, offsets: Collection<Long>): Map<Long, Symbol?> {
+    val symbols = getSymbols(symFile) ?: return emptyMap()
+    val result = HashMap<Long, Symbol?>()
+    for (offset in offsets) {
+      if (symbols.containsKey(offset)) {
+        result[offset] = symbols[offset]
+      }
+    }
+    return result
+  }
+
+  /**
+   * Caches the symbols of the given offsets of a symbol file, where the ones mapped to null couldn't be symbolized.
+   */
+  @Synchronized
+  fun put(symFile: File, newSymbols: Map<Long, Symbol?>) {
+    val symbols = getSymbols(symFile) ?: return
+    val added = newSymbols.filterKeys { !symbols.containsKey(it) }
+    if (added.isEmpty()) {
+      return
+    }
+    symbols.putAll(added)
+
+    try {
+      cacheDir.mkdirs()
+      OutputStreamWriter(FileOutputStream(getCacheFile(symFile), true), Charsets.UTF_8).buffered().use { writer ->
+        for ((offset, symbol) in added) {
+          writer.write(formatLine(offset, symbol))
+          writer.newLine()
+        }
+      }
+    }
+    catch (e: IOException) {
+      // The symbols are still cached for this session.
+      getLogger().warn("Failed to write the symbols of ${symFile.path} to the cache", e)
+    }
+  }
+
+  /**
+   * @return the symbols of a file, loaded from its cache file on first use, or null if the file can't be read.
+   */
+  private fun getSymbols(symFile: File): MutableMap<Long, Symbol?>? {
+    trimCacheDir()
+    val hash = getHash(symFile) ?: return null
+    return symbolsByHash.getOrPut(hash) {
+      val symbols = HashMap<Long, Symbol?>()
+      val cacheFile = File(cacheDir, hash)
+      if (cacheFile.exists()) {
+        // Keeps the file from being deleted as unused, as it may not be appended to.
+        cacheFile.setLastModified(System.currentTimeMillis())
+        try {
+          cacheFile.forEachLine(Charsets.UTF_8) { line -> parseLine(line, symbols) }
+        }
+        catch (e: IOException) {
+          getLogger().warn("Failed to read the cached symbols of ${symFile.path}", e)
+        }
+      }
+      symbols
+    }
+  }
+
+  /**
+   * Deletes the cache files which are too old, then the least recently used ones while they don't fit in the maximum size. This is only
+   * done once, before any file is loaded, so that the files in use are kept and can still be appended to.
+   */
+  private fun trimCacheDir() {
+    if (isCacheDirTrimmed) {
+      return
+    }
+    isCacheDirTrimmed = true
+
+    val cacheFiles = cacheDir.listFiles()?.filter { it.isFile }?.sortedByDescending { it.lastModified() } ?: return
+    val oldestTimeMs = System.currentTimeMillis() - maxFileAgeMs
+    var sizeBytes = 0L
+    for (cacheFile in cacheFiles) {
+      if (cacheFile.lastModified() >= oldestTimeMs && sizeBytes + cacheFile.length() <= maxSizeBytes) {
+        sizeBytes += cacheFile.length()
+      }
+      else if (!cacheFile.delete()) {
+        getLogger().warn("Failed to delete the symbol cache file ${cacheFile.path}")
+      }
+    }
+  }
+
+  private fun getCacheFile(symFile: File): File = File(cacheDir, getHash(symFile)!!)
+
+  private fun getHash(symFile: File): String? {
+    val stamp = FileStamp(symFile.path, symFile.length(), symFile.lastModified())
+    hashes[stamp]?.let { return it }
+    return try {
+      Files.asByteSource(symFile).hash(Hashing.sha256()).toString().also { hashes[stamp] = it }
+    }
+    catch (e: IOException) {
+      getLogger().warn("Failed to hash ${symFile.path}", e)
+      null
+    }
+  }
+
+  private fun formatLine(offset: Long, symbol: Symbol?): String {
+    // An offset which couldn't be symbolized has an empty function name.
+    return String.format("0x%x\t%s\t%d\t%s", offset, symbol?.name ?: "", symbol?.lineNumber ?: 0, symbol?.sourceFile ?: "")
+  }
+
+  private fun parseLine(line: String, symbols: MutableMap<Long, Symbol?>) {
+    // A line cut short by a failed write is skipped, so that its offset is symbolized again.
+    val parts = line.split('\t', limit = 4)
+    if (parts.size < 4) {
+      return
+    }
+    val offset = parts[0].removePrefix("0x").toLongOrNull(16) ?: return
+    val lineNumber = parts[2].toIntOrNull() ?: return
+    symbols[offset] = if (parts[1].isEmpty()) null else Symbol(parts[1], "", parts[3], lineNumber)
+  }
+
+  private data class FileStamp(val path: String, val length: Long, val lastModified: Long)
+}
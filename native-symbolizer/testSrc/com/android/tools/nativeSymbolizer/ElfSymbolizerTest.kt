@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.android.testutils.TestUtils
+import org.junit.Assert
+import org.junit.Test
+import java.io.File
+import java.nio.file.Paths
+
+class ElfSymbolizerTest {
+
+  val testDataDir = TestUtils.getWorkspaceFile("tools/adt/idea/native-symbolizer/testData/bin/").absolutePath
+  val LIB_FILE_NAME = "libnative-lib.so"
+  val EXPECTED_SYMBOLS_FILE_NAME = "symbols.txt"
+  val architectures = listOf("arm", "arm64", "x86", "x86_64")
+
+  @Test
+  fun testIndexFindsFunctions() {
+    for (arch in architectures) {
+      val index = ElfSymbolIndex.create(Paths.get(testDataDir, arch, LIB_FILE_NAME).toFile())!!
+      for (line in Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile().readLines()) {
+        val symParts = line.split('|')
+        // The lowest bit of the addresses of ARM functions is only set in the symbol table.
+        val offset = symParts[0].toLong(16) and 1L.inv()
+        val function = index.findFunction(offset + 2)
+        Assert.assertNotNull(function)
+        Assert.assertEquals(offset, function!!.address)
+        Assert.assertNotEquals(-1, index.getName(function).indexOf(symParts[1].substringBefore('(')))
+      }
+      Assert.assertNull(index.findFunction(0xffffffffff))
+    }
+  }
+
+  @Test
+  fun testNotElfFile() {
+    Assert.assertNull(ElfSymbolIndex.create(Paths.get(testDataDir, "x86", EXPECTED_SYMBOLS_FILE_NAME).toFile()))
+  }
+
+  @Test
+  fun testSymbolizeAll() {
+    val symbolizer = createSymbolizer()
+    for (arch in architectures) {
+      val expectedSymbols = Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile().readLines().map { it.split('|') }
+      val module = "/data/app/com.someapp.name-abcd09876abds==/lib/arm64/" + LIB_FILE_NAME
+
+      // +2 to get an address within the function, rather than function start address
+      val offsets = expectedSymbols.map { (it[0].toLong(16) and 1L.inv()) + 2 } + 0xffffffffff
+      val symbols = symbolizer.symbolize(arch, module, offsets)
+      for ((symParts, symbol) in expectedSymbols.zip(symbols)) {
+        Assert.assertNotNull(symbol)
+        // C++ names are demangled.
+        Assert.assertEquals(symParts[1], symbol!!.name)
+        Assert.assertEquals(module, symbol.module)
+        Assert.assertEquals("", symbol.sourceFile)
+      }
+      Assert.assertNull(symbols.last())
+    }
+  }
+
+  @Test
+  fun testUnknownModule() {
+    val symbolizer = createSymbolizer()
+    Assert.assertNull(symbolizer.symbolize("arm", "/p/libnotexists.so", 12345))
+  }
+
+  fun createSymbolizer(): NativeSymbolizer {
+    val symDirMap: Map<String, Set<File>> = architectures.associate { Pair(it, setOf(File(testDataDir, it))) }
+    val symLocator = SymbolFilesLocator(symDirMap)
+    return ElfSymbolizer(symLocator, LlvmSymbolizer(getLlvmSymbolizerPath(), symLocator))
+  }
+}
@@ -117,6 +117,47 @@ class LlvmSymbolizerTest {
     }
   }
 
+  @Test
+  fun testSymbolizeBatch() {
+    val symbolizer = createSymbolizer()
+    for (arch in architectures) {
+      val expectedSymbolsFile = Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile()
+      val expectedSymbols = expectedSymbolsFile.readLines().map { it.split('|') }
+      val module = "/data/app/com.someapp.name-abcd09876abds==/lib/arm64/" + LIB_FILE_NAME
+
+      // +1 to get an address within the function, rather than function start address
+      val offsets = expectedSymbols.map { it[0].toLong(16) + 1 } + 0xffffffffff
+      val symbols = symbolizer.symbolize(arch, module, offsets)
+      Assert.assertEquals(offsets.size, symbols.size)
+      for ((symParts, symbol) in expectedSymbols.zip(symbols)) {
+        Assert.assertNotNull(symbol)
+        Assert.assertEquals(symParts[1], symbol!!.name)
+        Assert.assertEquals(module, symbol.module)
+        Assert.assertEquals(symParts[2], symbol.sourceFile)
+        Assert.assertTrue(symbol.lineNumber >= symParts[3].toInt())
+      }
+      Assert.assertNull(symbols.last())
+    }
+  }
+
+  @Test
+  fun testCachedSymbolsAreReusedAcrossSymbolizers() {
+    val cacheDir = FileUtil.createTempDirectory("llvm-symbolizer", "cache-test", true)
+    val arch = "x86"
+    val expectedSymbolsFile = Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile()
+    val offsets = expectedSymbolsFile.readLines().map { it.split('|')[0].toLong(16) + 1 }
+    val symLocator = SymbolFilesLocator(getSymDirMap())
+    val symbolizer = LlvmSymbolizer(getLlvmSymbolizerPath(), symLocator, symbolCache = SymbolCache(cacheDir))
+    val symbols = symbolizer.symbolize(arch, LIB_FILE_NAME, offsets)
+
+    // The symbolizer can't be started, so the symbols can only come from the cache.
+    val notExistingPath = getLlvmSymbolizerPath().replace("llvm-symbolizer", "not-llvm-symbolizer")
+    val cachedSymbolizer = LlvmSymbolizer(notExistingPath, symLocator, symbolCache = SymbolCache(cacheDir))
+    val cachedSymbols = cachedSymbolizer.symbolize(arch, LIB_FILE_NAME, offsets)
+    Assert.assertEquals(symbols, cachedSymbols)
+    Assert.assertTrue(cachedSymbols.all { it != null })
+  }
+
   @Test
   fun testExeRestart() {
     val symbolizer = createSymbolizer()
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.intellij.openapi.util.io.FileUtil
+import org.junit.Assert
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+class SymbolCacheTest {
+
+  private val cacheDir = FileUtil.createTempDirectory("symbol-cache", "test", true)
+
+  private val symFile = FileUtil.createTempFile("libnative-lib", ".so", true).apply { writeBytes(byteArrayOf(1, 2, 3)) }
+
+  @Test
+  fun testCachedSymbolsAreReused() {
+    val symbol = Symbol("foo", "", "foo.cpp", 12)
+    SymbolCache(cacheDir).put(symFile, mapOf(0x10L to symbol, 0x20L to null))
+
+    val cachedSymbols = SymbolCache(cacheDir).get(symFile, listOf(0x10L, 0x20L, 0x30L))
+    Assert.assertEquals(mapOf(0x10L to symbol, 0x20L to null), cachedSymbols)
+  }
+
+  @Test
+  fun testUnusedCacheFilesAreDeleted() {
+    val oldFile = createCacheFile("old", 10, TimeUnit.DAYS.toMillis(2))
+    val recentFile = createCacheFile("recent", 10, TimeUnit.HOURS.toMillis(2))
+
+    SymbolCache(cacheDir, maxFileAgeMs = TimeUnit.DAYS.toMillis(1)).get(symFile, listOf(0x10L))
+    Assert.assertFalse(oldFile.exists())
+    Assert.assertTrue(recentFile.exists())
+  }
+
+  @Test
+  fun testLeastRecentlyUsedCacheFilesAreDeletedBeyondMaxSize() {
+    val leastRecentFile = createCacheFile("least-recent", 10, TimeUnit.HOURS.toMillis(3))
+    val lessRecentFile = createCacheFile("less-recent", 10, TimeUnit.HOURS.toMillis(2))
+    val recentFile = createCacheFile("recent", 10, TimeUnit.HOURS.toMillis(1))
+
+    SymbolCache(cacheDir, maxSizeBytes = 25).get(symFile, listOf(0x10L))
+    Assert.assertFalse(leastRecentFile.exists())
+    Assert.assertTrue(lessRecentFile.exists())
+    Assert.assertTrue(recentFile.exists())
+  }
+
+  @Test
+  fun testLoadedCacheFilesAreKept() {
+    SymbolCache(cacheDir).put(symFile, mapOf(0x10L to Symbol("foo", "", "foo.cpp", 12)))
+    val cacheFile = cacheDir.listFiles()!!.single()
+    cacheFile.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(3))
+    val otherFile = createCacheFile("other", 10, TimeUnit.HOURS.toMillis(2))
+
+    // Loading the symbols makes their file the most recently used one.
+    SymbolCache(cacheDir).get(symFile, listOf(0x10L))
+    SymbolCache(cacheDir, maxSizeBytes = cacheFile.length()).get(symFile, listOf(0x10L))
+    Assert.assertTrue(cacheFile.exists())
+    Assert.assertFalse(otherFile.exists())
+  }
+
+  private fun createCacheFile(name: String, sizeBytes: Int, ageMs: Long): File {
+    val file = File(cacheDir, name)
+    file.writeBytes(ByteArray(sizeBytes))
+    file.setLastModified(System.currentTimeMillis() - ageMs)
+    return file
+  }
+}
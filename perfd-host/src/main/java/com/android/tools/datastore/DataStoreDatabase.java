@@ -15,21 +15,72 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.datastore.database.DataStoreCompactor;
+import com.android.tools.datastore.database.DataStoreWriteQueue;
+import com.android.tools.datastore.database.RetentionPolicy;
+import com.android.tools.datastore.database.SampleCache;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 
 public class DataStoreDatabase {
   public enum Characteristic {
     // TODO handle potential db file name clashes
+    /**
+     * Backed by a file that is kept across Studio runs, so sessions recorded in a previous run can be reopened.
+     */
     DURABLE,
     PERFORMANT
   }
 
+  /**
+   * Version of the on-disk schema, stored in the database file's user_version. Bump it whenever a table changes in a way a file written
+   * by the previous version can't be read with, and register a {@link Migration} from the previous version in {@link #MIGRATIONS}.
+   * Files without a version predate versioning and are discarded.
+   */
+  public static final int SCHEMA_VERSION = 2;
+
+  /**
+   * Upgrades a database file from one schema version to the next.
+   */
+  public interface Migration {
+    void migrate(@NotNull Connection connection) throws SQLException;
+  }
+
+  /**
+   * Migrations keyed by the schema version they upgrade from. Tables added in a new version don't need a migration since they are created
+   * when missing.
+   */
+  private static final Map<Integer, Migration> MIGRATIONS;
+
+  static {
+    Map<Integer, Migration> migrations = new HashMap<>();
+    // Version 2 compresses old trace blobs, and records how each blob is stored.
+    migrations.put(1, connection -> {
+      if (hasTable(connection, "Cpu_Trace")) {
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("ALTER TABLE Cpu_Trace ADD COLUMN Compression INTEGER NOT NULL DEFAULT 0");
+        }
+      }
+    });
+    MIGRATIONS = Collections.unmodifiableMap(migrations);
+  }
+
+  // SQLite result codes for files that are not a (valid) database.
+  private static final int SQLITE_CORRUPT = 11;
+  private static final int SQLITE_NOTADB = 26;
+
   @NotNull
   private LogService.Logger getLogger() {
     return myLogService.getLogger(DataStoreDatabase.class);
@@ -39,6 +90,12 @@ public class DataStoreDatabase {
 
   private final Connection myConnection;
 
+  @Nullable private final DataStoreWriteQueue myWriteQueue;
+
+  @NotNull private final SampleCache mySampleCache = new SampleCache();
+
+  @Nullable private final DataStoreCompactor myCompactor;
+
   /**
    * @param dbPath the path to the backing DB file, if {@link Characteristic#DURABLE}.
    */
@@ -62,30 +119,16 @@ public class DataStoreDatabase {
       switch (characteristic) {
         case PERFORMANT:
           connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+          enableIncrementalVacuum(connection);
           break;
         case DURABLE:
-          File dbFile = new File(dbPath);
-          // Due to an incompatible update in SQLite we do not support loading SQL files from previous versions of studio.
-          // As a intermediate measure we delete the file until we support loading existing databases.
-          // TODO: Investigate removing this when we add a feature to restore sessions from prior Studio runs.
-          if (dbFile.exists()) {
-            dbFile.delete();
-          }
-
-          File parent = dbFile.getParentFile();
-          if (parent != null) {
-            if (!parent.mkdirs() && !parent.exists()) {
-              getLogger().error("Unable to create parent directory");
-            }
-          }
-          connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", dbFile.getPath()));
+          connection = openDurableDatabase(new File(dbPath));
           break;
         default:
           throw new RuntimeException("Characteristic not handled!");
       }
 
-      // Performance optimization.
-      // TODO: Create a timer and commit the database transaction every X seconds.
+      // Performance optimization. Writes are batched and group-committed by the write queue.
       connection.setAutoCommit(false);
     }
     catch (ClassNotFoundException e) {
@@ -98,10 +141,132 @@ public class DataStoreDatabase {
       noPiiExceptionHandler.accept(e);
     }
     myConnection = connection;
+    myWriteQueue = connection != null ? new DataStoreWriteQueue(connection) : null;
+    myCompactor = connection != null ? new DataStoreCompactor(connection, myWriteQueue, RetentionPolicy.getDefault(), logService) : null;
+    if (myCompactor != null) {
+      myCompactor.start();
+    }
+  }
+
+  /**
+   * Opens the database file, keeping its content if it was written with a compatible schema. Incompatible files (unversioned, written by a
+   * newer version, or not a database at all) are deleted and replaced by an empty database.
+   */
+  @NotNull
+  private Connection openDurableDatabase(@NotNull File dbFile) throws SQLException {
+    File parent = dbFile.getParentFile();
+    if (parent != null) {
+      if (!parent.mkdirs() && !parent.exists()) {
+        getLogger().error("Unable to create parent directory");
+      }
+    }
+
+    if (dbFile.exists()) {
+      Connection connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", dbFile.getPath()));
+      connection.setAutoCommit(false);
+      try {
+        if (upgradeSchema(connection)) {
+          return connection;
+        }
+      }
+      catch (SQLException e) {
+        if (e.getErrorCode() != SQLITE_NOTADB && e.getErrorCode() != SQLITE_CORRUPT) {
+          connection.close();
+          throw e;
+        }
+      }
+      connection.close();
+      getLogger().info("Discarding incompatible profiler database " + dbFile.getName());
+      if (!dbFile.delete()) {
+        getLogger().error("Unable to delete incompatible database");
+      }
+    }
+
+    Connection connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", dbFile.getPath()));
+    enableIncrementalVacuum(connection);
+    connection.setAutoCommit(false);
+    setSchemaVersion(connection, SCHEMA_VERSION);
+    return connection;
+  }
+
+  /**
+   * Lets the {@link DataStoreCompactor} return the pages freed by deleted rows to the file system. Only takes effect on empty databases,
+   * older files keep reusing their free pages instead.
+   */
+  private static void enableIncrementalVacuum(@NotNull Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+    }
+  }
+
+  /**
+   * Brings an existing database up to {@link #SCHEMA_VERSION}.
+   *
+   * @return false if the database can't be upgraded and should be discarded.
+   */
+  private boolean upgradeSchema(@NotNull Connection connection) throws SQLException {
+    int version = getSchemaVersion(connection);
+    if (version == 0) {
+      // Either a brand new file or one written before the schema was versioned.
+      if (hasTables(connection)) {
+        return false;
+      }
+      setSchemaVersion(connection, SCHEMA_VERSION);
+      return true;
+    }
+    if (version > SCHEMA_VERSION) {
+      return false;
+    }
+
+    for (; version < SCHEMA_VERSION; version++) {
+      Migration migration = MIGRATIONS.get(version);
+      if (migration == null) {
+        return false;
+      }
+      migration.migrate(connection);
+    }
+    setSchemaVersion(connection, SCHEMA_VERSION);
+    return true;
+  }
+
+  private static int getSchemaVersion(@NotNull Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery("PRAGMA user_version")) {
+      return result.next() ? result.getInt(1) : 0;
+    }
+  }
+
+  private static void setSchemaVersion(@NotNull Connection connection, int version) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(String.format("PRAGMA user_version = %d", version));
+    }
+    connection.commit();
+  }
+
+  private static boolean hasTables(@NotNull Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement();
+         ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE type='table'")) {
+      return result.next() && result.getInt(1) > 0;
+    }
+  }
+
+  private static boolean hasTable(@NotNull Connection connection, @NotNull String table) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name=?")) {
+      statement.setString(1, table);
+      try (ResultSet result = statement.executeQuery()) {
+        return result.next() && result.getInt(1) > 0;
+      }
+    }
   }
 
   public void disconnect() {
     try {
+      if (myCompactor != null) {
+        myCompactor.stop();
+      }
+      if (myWriteQueue != null) {
+        myWriteQueue.stop();
+      }
+      mySampleCache.reportStats(getLogger());
       myConnection.commit();
     }
     catch (SQLException e) {
@@ -122,4 +287,29 @@ public class DataStoreDatabase {
   public Connection getConnection() {
     return myConnection;
   }
+
+  /**
+   * @return the queue through which the tables of this database batch and group-commit their writes, or null if the database could not
+   * be opened.
+   */
+  @Nullable
+  public DataStoreWriteQueue getWriteQueue() {
+    return myWriteQueue;
+  }
+
+  /**
+   * @return the background compaction of this database, or null if the database could not be opened.
+   */
+  @Nullable
+  public DataStoreCompactor getCompactor() {
+    return myCompactor;
+  }
+
+  /**
+   * @return the in-memory tier the tables of this database serve their hot sample ranges from.
+   */
+  @NotNull
+  public SampleCache getSampleCache() {
+    return mySampleCache;
+  }
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.profiler.protobuf3jarjar.MessageLite;
+import com.android.tools.profiler.protobuf3jarjar.Parser;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link SampleStore} that keeps each session's samples in append-only partitions covering a fixed time window. Each partition holds a
+ * primitive column of timestamps and the encoded samples packed back to back in a single byte array, so a range query is a binary search
+ * over the timestamps followed by a sequential decode of only the samples in range.
+ * <p>
+ * Samples almost always arrive in timestamp order, in which case an insert is an append to the latest partition. Out of order samples
+ * and replacements are supported but require shifting the partition's columns.
+ */
+public class ColumnarSampleStore<T> implements SampleStore<T> {
+  public static final long DEFAULT_PARTITION_NS = TimeUnit.SECONDS.toNanos(10);
+
+  private static final int INITIAL_PARTITION_CAPACITY = 64;
+  private static final int INITIAL_PARTITION_BYTES = 4096;
+
+  /**
+   * Converts samples to and from the bytes stored in the value column.
+   */
+  public interface Codec<T> {
+    @NotNull
+    byte[] encode(@NotNull T sample);
+
+    @NotNull
+    T decode(@NotNull byte[] buffer, int offset, int length) throws IOException;
+  }
+
+  @NotNull private final Codec<T> myCodec;
+  private final long myPartitionNs;
+  private final boolean myReplaceExisting;
+  private final Map<Long, SessionSeries> mySessions = new ConcurrentHashMap<>();
+
+  /**
+   * @param replaceExisting whether inserting a sample with an already stored timestamp replaces the stored sample (matching
+   *                        INSERT OR REPLACE) or is dropped (matching INSERT OR IGNORE).
+   */
+  public ColumnarSampleStore(@NotNull Codec<T> codec, long partitionNs, boolean replaceExisting) {
+    assert partitionNs > 0;
+    myCodec = codec;
+    myPartitionNs = partitionNs;
+    myReplaceExisting = replaceExisting;
+  }
+
+  @NotNull
+  public static <T extends MessageLite> ColumnarSampleStore<T> forProto(@NotNull Parser<T> parser, boolean replaceExisting) {
+    return new ColumnarSampleStore<>(protoCodec(parser), DEFAULT_PARTITION_NS, replaceExisting);
+  }
+
+  @NotNull
+  public static <T extends MessageLite> Codec<T> protoCodec(@NotNull Parser<T> parser) {
+    return new ProtoCodec<>(parser);
+  }
+
+  @Override
+  public void insert(long sessionId, long timestamp, @NotNull T sample) {
+    byte[] encoded = myCodec.encode(sample);
+    SessionSeries series = mySessions.computeIfAbsent(sessionId, id -> new SessionSeries());
+    series.myLock.writeLock().lock();
+    try {
+      Partition partition = series.myPartitions.computeIfAbsent(Math.floorDiv(timestamp, myPartitionNs), key -> new Partition());
+      partition.insert(timestamp, encoded, myReplaceExisting);
+    }
+    finally {
+      series.myLock.writeLock().unlock();
+    }
+  }
+
+  @NotNull
+  @Override
+  public List<T> getSamples(long sessionId, long startTimestamp, long endTimestamp) {
+    List<T> samples = new ArrayList<>();
+    SessionSeries series = mySessions.get(sessionId);
+    if (series == null || endTimestamp <= startTimestamp) {
+      return samples;
+    }
+
+    series.myLock.readLock().lock();
+    try {
+      NavigableMap<Long, Partition> partitions = series.myPartitions.subMap(Math.floorDiv(startTimestamp, myPartitionNs), true,
+                                                                            Math.floorDiv(endTimestamp, myPartitionNs), true);
+      for (Partition partition : partitions.values()) {
+        int from = partition.upperBound(startTimestamp);
+        int to = partition.upperBound(endTimestamp);
+        for (int i = from; i < to; i++) {
+          samples.add(myCodec.decode(partition.myData, partition.myOffsets[i], partition.getLength(i)));
+        }
+      }
+    }
+    catch (IOException ex) {
+      DataStoreTable.onError(ex);
+    }
+    finally {
+      series.myLock.readLock().unlock();
+    }
+    return samples;
+  }
+
+  @Override
+  public void removeSession(long sessionId) {
+    mySessions.remove(sessionId);
+  }
+
+  /**
+   * @return the number of samples stored for the session.
+   */
+  public int getSampleCount(long sessionId) {
+    SessionSeries series = mySessions.get(sessionId);
+    if (series == null) {
+      return 0;
+    }
+    series.myLock.readLock().lock();
+    try {
+      return series.myPartitions.values().stream().mapToInt(partition -> partition.mySize).sum();
+    }
+    finally {
+      series.myLock.readLock().unlock();
+    }
+  }
+
+  private static final class SessionSeries {
+    private final ReadWriteLock myLock = new ReentrantReadWriteLock();
+    private final NavigableMap<Long, Partition> myPartitions = new TreeMap<>();
+  }
+
+  /**
+   * Column chunk for one time window: sorted timestamps, the start offset of each encoded sample, and the packed encoded samples.
+   */
+  private static final class Partition {
+    private long[] myTimestamps = new long[INITIAL_PARTITION_CAPACITY];
+    private int[] myOffsets = new int[INITIAL_PARTITION_CAPACITY];
+    private byte[] myData = new byte[INITIAL_PARTITION_BYTES];
+    private int mySize;
+    private int myDataSize;
+
+    /**
+     * @return index of the first sample whose timestamp is strictly greater than {@code timestamp}.
+     */
+    private int upperBound(long timestamp) {
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] <= timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    private int getLength(int index) {
+      return (index + 1 < mySize ? myOffsets[index + 1] : myDataSize) - myOffsets[index];
+    }
+
+    private void insert(long timestamp, @NotNull byte[] encoded, boolean replaceExisting) {
+      int index = upperBound(timestamp);
+      if (index > 0 && myTimestamps[index - 1] == timestamp) {
+        if (replaceExisting) {
+          replace(index - 1, encoded);
+        }
+        return;
+      }
+
+      if (mySize == myTimestamps.length) {
+        myTimestamps = Arrays.copyOf(myTimestamps, mySize * 2);
+        myOffsets = Arrays.copyOf(myOffsets, mySize * 2);
+      }
+      ensureDataCapacity(myDataSize + encoded.length);
+
+      int dataOffset = index < mySize ? myOffsets[index] : myDataSize;
+      if (index < mySize) {
+        // Out of order sample: open a gap in all the columns.
+        System.arraycopy(myTimestamps, index, myTimestamps, index + 1, mySize - index);
+        System.arraycopy(myOffsets, index, myOffsets, index + 1, mySize - index);
+        System.arraycopy(myData, dataOffset, myData, dataOffset + encoded.length, myDataSize - dataOffset);
+        for (int i = index + 1; i <= mySize; i++) {
+          myOffsets[i] += encoded.length;
+        }
+      }
+      myTimestamps[index] = timestamp;
+      myOffsets[index] = dataOffset;
+      System.arraycopy(encoded, 0, myData, dataOffset, encoded.length);
+      mySize++;
+      myDataSize += encoded.length;
+    }
+
+    private void replace(int index, @NotNull byte[] encoded) {
+      int delta = encoded.length - getLength(index);
+      int dataOffset = myOffsets[index];
+      int tailOffset = dataOffset + getLength(index);
+      ensureDataCapacity(myDataSize + delta);
+      System.arraycopy(myData, tailOffset, myData, tailOffset + delta, myDataSize - tailOffset);
+      System.arraycopy(encoded, 0, myData, dataOffset, encoded.length);
+      for (int i = index + 1; i < mySize; i++) {
+        myOffsets[i] += delta;
+      }
+      myDataSize += delta;
+    }
+
+    private void ensureDataCapacity(int capacity) {
+      if (capacity > myData.length) {
+        myData = Arrays.copyOf(myData, Math.max(capacity, myData.length * 2));
+      }
+    }
+  }
+
+  private static final class ProtoCodec<T extends MessageLite> implements Codec<T> {
+    @NotNull private final Parser<T> myParser;
+
+    private ProtoCodec(@NotNull Parser<T> parser) {
+      myParser = parser;
+    }
+
+    @NotNull
+    @Override
+    public byte[] encode(@NotNull T sample) {
+      return sample.toByteArray();
+    }
+
+    @NotNull
+    @Override
+    public T decode(@NotNull byte[] buffer, int offset, int length) throws IOException {
+      return myParser.parseFrom(buffer, offset, length);
+    }
+  }
+}
@@ -16,7 +16,6 @@
 package com.android.tools.datastore.database;
 
 import com.android.tools.profiler.proto.Common;
-import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.CpuProfiler.CpuDataRequest;
 import com.android.tools.profiler.proto.CpuProfiler.CpuProfilerMode;
 import com.android.tools.profiler.proto.CpuProfiler.CpuProfilerType;
@@ -28,18 +27,21 @@ import com.android.tools.profiler.proto.CpuProfiler.ProfilingStateResponse;
 import com.android.tools.profiler.proto.CpuProfiler.TraceInfo;
 import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profiler.protobuf3jarjar.InvalidProtocolBufferException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
   private static final int DATA_COLUMN = 1;
@@ -55,29 +57,74 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
   private static final int PROFILER_MODE_COLUMN_TRACE_DATA = 3;
 
   /**
-   * A cache of unique thread IDs per session index.
-   * <p>
-   * We keep a cache of all seen thread IDs because querying the DB for distinct thread IDs is slow.
+   * Compression column number when querying trace data.
    */
-  private final Map<Long, Set<Integer>> mySessionThreadIdsCache = Collections.synchronizedMap(new HashMap<>());
+  private static final int COMPRESSION_COLUMN_TRACE_DATA = 4;
+
+  /**
+   * Values of the Compression column of Cpu_Trace. Traces are inserted as-is, as they are usually read right after being captured, and
+   * compressed later on by {@link #compact(RetentionPolicy)}.
+   */
+  private static final int TRACE_NOT_COMPACTED = 0;
+  private static final int TRACE_DEFLATED = 1;
+  private static final int TRACE_INCOMPRESSIBLE = 2;
+
+  /**
+   * Most traces compressed per compaction pass, as traces can be hundreds of MB each.
+   */
+  private static final int MAX_TRACES_COMPRESSED_PER_PASS = 2;
+
+  /**
+   * In-memory index of the Thread_Activities rows per session, as querying the states of each thread from the DB is slow.
+   */
+  private final Map<Long, ThreadStateIndex> myThreadStateIndices = new ConcurrentHashMap<>();
+
+  /**
+   * Storage for {@link CpuUsageData} when the columnar engine is in use, in which case the Cpu_Data table stays empty.
+   */
+  @Nullable private final SampleStore<CpuUsageData> myCpuDataStore;
+
+  /**
+   * Hot ranges of the Cpu_Data table, if the database provides a cache.
+   */
+  @Nullable private SampleCache.Series<CpuUsageData> myCpuDataCache;
+
+  /**
+   * Downsampled {@link CpuUsageData} for zoomed out queries. The data is cumulative, so only the last sample of each bucket is kept.
+   */
+  private final SampleRollup<CpuUsageData> myCpuDataRollup = new SampleRollup<>(CpuUsageData::getEndTimestamp, Collections.emptyList());
 
   public enum CpuStatements {
     INSERT_THREAD_ACTIVITY,
-    QUERY_ALL_DISTINCT_THREADS,
     QUERY_THREAD_ACTIVITIES,
     INSERT_CPU_DATA,
     QUERY_CPU_DATA,
     QUERY_TRACE_INFO,
     FIND_TRACE_DATA,
     INSERT_TRACE_DATA,
+    QUERY_TRACES_TO_COMPRESS,
+    UPDATE_TRACE_DATA,
+    UPDATE_TRACE_COMPRESSION,
+    DELETE_CPU_DATA,
     INSERT_TRACE_INFO,
     INSERT_PROFILING_STATE,
     QUERY_PROFILING_STATE,
   }
 
+  public CpuTable() {
+    this(SampleStore.Engine.getDefault());
+  }
+
+  public CpuTable(@NotNull SampleStore.Engine engine) {
+    myCpuDataStore = engine == SampleStore.Engine.COLUMNAR ? ColumnarSampleStore.forProto(CpuUsageData.parser(), true) : null;
+  }
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
+    SampleCache cache = getSampleCache();
+    // Cpu_Data rows are inserted with INSERT OR REPLACE.
+    myCpuDataCache = cache != null && myCpuDataStore == null ? cache.createProtoSeries(CpuUsageData::getEndTimestamp, true) : null;
     try {
       createTable("Cpu_Data",
                   "Session INTEGER NOT NULL",
@@ -98,7 +145,8 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
                   "ProfilerType TEXT",
                   // We need profiler mode to figure out the name of the profiling configuration used to generate the trace
                   "ProfilerMode TEXT",
-                  "Data BLOB");
+                  "Data BLOB",
+                  "Compression INTEGER NOT NULL DEFAULT 0");
       createTable("Cpu_Trace_Info",
                   "Session INTEGER NOT NULL",
                   "StartTime INTEGER",
@@ -130,30 +178,24 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
                       "SELECT TraceInfo from Cpu_Trace_Info WHERE " +
                       "Session = ? AND ((StartTime < ? AND ? <= EndTime) OR (StartTime > ? AND EndTime = 0));");
       createStatement(CpuTable.CpuStatements.FIND_TRACE_DATA,
-                      "SELECT Data, ProfilerType, ProfilerMode from Cpu_Trace WHERE Session = ? AND TraceId = ?");
+                      "SELECT Data, ProfilerType, ProfilerMode, Compression from Cpu_Trace WHERE Session = ? AND TraceId = ?");
       createStatement(CpuTable.CpuStatements.INSERT_TRACE_DATA,
                       "INSERT INTO Cpu_Trace (Session, TraceId, ProfilerType, ProfilerMode, Data) values (?, ?, ?, ?, ?)");
+      createStatement(CpuTable.CpuStatements.QUERY_TRACES_TO_COMPRESS,
+                      "SELECT Session, TraceId, Data from Cpu_Trace WHERE Compression = " + TRACE_NOT_COMPACTED + " LIMIT ?");
+      createStatement(CpuTable.CpuStatements.UPDATE_TRACE_DATA,
+                      "UPDATE Cpu_Trace SET Data = ?, Compression = ? WHERE Session = ? AND TraceId = ?");
+      createStatement(CpuTable.CpuStatements.UPDATE_TRACE_COMPRESSION,
+                      "UPDATE Cpu_Trace SET Compression = ? WHERE Session = ? AND TraceId = ?");
+      createStatement(CpuTable.CpuStatements.DELETE_CPU_DATA,
+                      "DELETE FROM Cpu_Data WHERE Session = ? AND Timestamp >= ? AND Timestamp < ?");
       createStatement(CpuTable.CpuStatements.INSERT_TRACE_INFO,
                       "INSERT OR REPLACE INTO Cpu_Trace_Info (Session, StartTime, EndTime, TraceInfo) values (?, ?, ?, ?)");
       createStatement(CpuTable.CpuStatements.INSERT_THREAD_ACTIVITY,
                       "INSERT OR REPLACE INTO Thread_Activities " +
                       "(Session, ThreadId, Timestamp, State, Name) VALUES (?, ?, ?, ?, ?)");
-      createStatement(CpuTable.CpuStatements.QUERY_ALL_DISTINCT_THREADS,
-                      "SELECT DISTINCT ThreadId FROM Thread_Activities WHERE Session = ?");
       createStatement(CpuTable.CpuStatements.QUERY_THREAD_ACTIVITIES,
-                      // First make sure to fetch the states of all threads that were alive at request's start timestamp
-                      "SELECT t2.Name, t2.State, ? as ReqStart " +
-                      "FROM (SELECT MAX(Timestamp) AS Timestamp " +
-                      "      FROM Thread_Activities " +
-                      "      WHERE Session = ? AND ThreadId = ? AND Timestamp <= ? " +
-                      ") t1 " +
-                      "JOIN Thread_Activities t2 " +
-                      "ON (t2.Session = ? AND t2.ThreadId = ? AND t2.timestamp = t1.timestamp AND t2.State <> 'DEAD')" +
-                      "UNION ALL " +
-                      // Then fetch all the activities that happened in the request interval
-                      "SELECT Name, State, Timestamp " +
-                      "FROM Thread_Activities " +
-                      "WHERE Session = ? AND ThreadId = ? AND Timestamp > ? AND Timestamp <= ?");
+                      "SELECT ThreadId, Timestamp, State, Name FROM Thread_Activities WHERE Session = ?");
       createStatement(CpuTable.CpuStatements.INSERT_PROFILING_STATE,
                       "INSERT OR REPLACE INTO Profiling_State (Session, Timestamp, Data) values (?, ?, ?)");
       createStatement(CpuTable.CpuStatements.QUERY_PROFILING_STATE,
@@ -165,15 +207,41 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
   }
 
   public void insert(Common.Session session, CpuUsageData data) {
+    myCpuDataRollup.insert(session.getSessionId(), data);
+    if (myCpuDataStore != null) {
+      myCpuDataStore.insert(session.getSessionId(), data.getEndTimestamp(), data);
+      return;
+    }
     execute(CpuStatements.INSERT_CPU_DATA, session.getSessionId(), data.getEndTimestamp(), data.toByteArray());
+    if (myCpuDataCache != null) {
+      myCpuDataCache.insert(session.getSessionId(), data);
+    }
   }
 
+  /**
+   * @return the samples in the requested range, downsampled if the range is too wide for all of them to be shown.
+   */
   public List<CpuUsageData> getCpuDataByRequest(CpuDataRequest request) {
+    return myCpuDataRollup.getSamples(request.getSession().getSessionId(), request.getStartTimestamp(), request.getEndTimestamp(),
+                                      this::getCpuData);
+  }
+
+  @NotNull
+  private List<CpuUsageData> getCpuData(long sessionId, long startTimestamp, long endTimestamp) {
+    if (myCpuDataStore != null) {
+      return myCpuDataStore.getSamples(sessionId, startTimestamp, endTimestamp);
+    }
+    if (myCpuDataCache != null) {
+      return myCpuDataCache.getSamples(sessionId, startTimestamp, endTimestamp, this::queryCpuData);
+    }
+    return queryCpuData(sessionId, startTimestamp, endTimestamp);
+  }
+
+  @NotNull
+  private List<CpuUsageData> queryCpuData(long sessionId, long startTimestamp, long endTimestamp) {
     List<CpuUsageData> cpuData = new ArrayList<>();
     try {
-      ResultSet results =
-        executeQuery(CpuStatements.QUERY_CPU_DATA, request.getSession().getSessionId(), request.getStartTimestamp(),
-                     request.getEndTimestamp());
+      ResultSet results = executeQuery(CpuStatements.QUERY_CPU_DATA, sessionId, startTimestamp, endTimestamp);
       while (results.next()) {
         CpuUsageData.Builder data = CpuUsageData.newBuilder();
         data.mergeFrom(results.getBytes(DATA_COLUMN));
@@ -190,89 +258,55 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
                                int tid,
                                String name,
                                List<GetThreadsResponse.ThreadActivity> activities) {
-    getThreadIdCacheForSession(session.getSessionId()).add(tid);
+    ThreadStateIndex index = getThreadStateIndex(session.getSessionId());
     for (GetThreadsResponse.ThreadActivity activity : activities) {
       // TODO: optimize it by adding the states in batches
       execute(CpuStatements.INSERT_THREAD_ACTIVITY, session.getSessionId(), tid, activity.getTimestamp(), activity.getNewState().toString(),
               name);
+      index.add(tid, name, activity.getTimestamp(), activity.getNewState());
     }
   }
 
   public void insertSnapshot(Common.Session session,
                              long timestamp,
                              List<GetThreadsResponse.ThreadSnapshot.Snapshot> snapshots) {
-    Set<Integer> idSet = getThreadIdCacheForSession(session.getSessionId());
+    ThreadStateIndex index = getThreadStateIndex(session.getSessionId());
     // For now, insert it as activity. TODO: differentiate the concepts of snapshot and activity
     for (GetThreadsResponse.ThreadSnapshot.Snapshot snapshot : snapshots) {
-      idSet.add(snapshot.getTid());
       execute(CpuStatements.INSERT_THREAD_ACTIVITY,
               session.getSessionId(), snapshot.getTid(), timestamp, snapshot.getState().toString(), snapshot.getName());
+      index.add(snapshot.getTid(), snapshot.getName(), timestamp, snapshot.getState());
     }
   }
 
   public List<GetThreadsResponse.Thread> getThreadsDataByRequest(GetThreadsRequest request) {
-    // Use a TreeMap to preserve the threads sorting order (by tid)
-    Map<Integer, GetThreadsResponse.Thread.Builder> threads = new TreeMap<>();
-    try {
-      long sessionId = request.getSession().getSessionId();
-
-      List<Integer> threadIds = new ArrayList<>();
-      if (!mySessionThreadIdsCache.containsKey(sessionId)) {
-        Set<Integer> tidSet = getThreadIdCacheForSession(sessionId);
+    ThreadStateIndex index = getThreadStateIndex(request.getSession().getSessionId());
+    if (!index.isLoaded()) {
+      loadThreadStates(request.getSession().getSessionId(), index);
+    }
+    return index.getThreads(request.getStartTimestamp(), request.getEndTimestamp());
+  }
 
-        ResultSet threadResults = executeQuery(CpuStatements.QUERY_ALL_DISTINCT_THREADS, sessionId);
-        while (threadResults.next()) {
-          // Don't add directly to tidSet, since it's synchronized and would be slow to add each element individually.
-          threadIds.add(threadResults.getInt(1));
-        }
-        tidSet.addAll(threadIds);
-      }
-      else {
-        // Add all ids to a list so we release the implicit lock in threadIds ASAP.
-        //noinspection UseBulkOperation
-        mySessionThreadIdsCache.get(sessionId).forEach(tid -> threadIds.add(tid));
+  /**
+   * Merges the rows already in the Thread_Activities table into the session's index, e.g. when the database was reopened from disk.
+   */
+  private void loadThreadStates(long sessionId, @NotNull ThreadStateIndex index) {
+    synchronized (index) {
+      if (index.isLoaded()) {
+        return;
       }
-
-      long startTimestamp = request.getStartTimestamp();
-      long endTimestamp = request.getEndTimestamp();
-      for (int tid : threadIds) {
-        ResultSet activities = executeQuery(
-          CpuStatements.QUERY_THREAD_ACTIVITIES,
-          // Used as the timestamp of the states that happened before the request
-          startTimestamp,
-          // Used to get the last activity just prior to the request range
-          sessionId, tid, startTimestamp,
-          // Used for the JOIN
-          sessionId, tid,
-          // The start and end timestamps below are used to get the activities that
-          // happened in the interval (start, end]
-          sessionId, tid, startTimestamp, endTimestamp);
-
-        CpuProfiler.GetThreadsResponse.Thread.Builder builder = null;
-        while (activities.next()) {
-          if (builder == null) {
-            // Please refer QUERY_THREAD_ACTIVITIES statement for the ResultSet's column to type/value mapping.
-            builder = createThreadBuilder(tid, activities.getString(1));
-            threads.put(tid, builder);
-          }
-
-          GetThreadsResponse.State state = GetThreadsResponse.State.valueOf(activities.getString(2));
-          GetThreadsResponse.ThreadActivity.Builder activity =
-            GetThreadsResponse.ThreadActivity.newBuilder().setNewState(state).setTimestamp(activities.getLong(3));
-          builder.addActivities(activity.build());
+      try {
+        ResultSet results = executeQuery(CpuStatements.QUERY_THREAD_ACTIVITIES, sessionId);
+        while (results.next()) {
+          index.addIfAbsent(results.getInt(1), results.getString(4), results.getLong(2),
+                            GetThreadsResponse.State.valueOf(results.getString(3)));
         }
+        index.setLoaded();
+      }
+      catch (SQLException ex) {
+        onError(ex);
       }
     }
-    catch (SQLException ex) {
-      onError(ex);
-    }
-
-    // Add all threads that should be included in the response.
-    List<GetThreadsResponse.Thread> cpuData = new ArrayList<>();
-    for (GetThreadsResponse.Thread.Builder thread : threads.values()) {
-      cpuData.add(thread.build());
-    }
-    return cpuData;
   }
 
   public List<TraceInfo> getTraceInfo(GetTraceInfoRequest request) {
@@ -307,11 +341,14 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
             CpuProfilerType.valueOf(results.getString(PROFILER_TYPE_COLUMN_TRACE_DATA));
           CpuProfilerMode profilerMode =
             CpuProfilerMode.valueOf(results.getString(PROFILER_MODE_COLUMN_TRACE_DATA));
-          return new TraceData(ByteString.copyFrom(data), profilerType, profilerMode);
+          ByteString trace = results.getInt(COMPRESSION_COLUMN_TRACE_DATA) == TRACE_DEFLATED
+                             ? ByteString.readFrom(new InflaterInputStream(new ByteArrayInputStream(data)))
+                             : ByteString.copyFrom(data);
+          return new TraceData(trace, profilerType, profilerMode);
         }
       }
     }
-    catch (SQLException ex) {
+    catch (SQLException | IOException ex) {
       onError(ex);
     }
     return null;
@@ -323,6 +360,64 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
             data.toByteArray());
   }
 
+  /**
+   * Compresses the traces not compacted yet, a few at a time, and replaces the CPU usage samples older than the policy's raw sample age
+   * with the samples kept by their rollup.
+   */
+  @Override
+  public void compact(@NotNull RetentionPolicy policy) {
+    compressTraces();
+    if (myCpuDataStore == null) {
+      myCpuDataRollup.compact(policy.getRawSampleAgeNs(), this::getCpuData, (sessionId, start, end, samples) -> {
+        execute(CpuStatements.DELETE_CPU_DATA, sessionId, start, end);
+        for (CpuUsageData data : samples) {
+          execute(CpuStatements.INSERT_CPU_DATA, sessionId, data.getEndTimestamp(), data.toByteArray());
+        }
+        if (myCpuDataCache != null) {
+          myCpuDataCache.invalidate(sessionId);
+        }
+      });
+    }
+  }
+
+  private void compressTraces() {
+    try {
+      ResultSet results = executeQuery(CpuStatements.QUERY_TRACES_TO_COMPRESS, MAX_TRACES_COMPRESSED_PER_PASS);
+      while (results.next()) {
+        long sessionId = results.getLong(1);
+        int traceId = results.getInt(2);
+        byte[] data = results.getBytes(3);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data == null ? 0 : data.length / 4);
+        if (data != null) {
+          try (DeflaterOutputStream stream = new DeflaterOutputStream(compressed)) {
+            stream.write(data);
+          }
+        }
+        if (data != null && compressed.size() < data.length) {
+          execute(CpuStatements.UPDATE_TRACE_DATA, compressed.toByteArray(), TRACE_DEFLATED, sessionId, traceId);
+        }
+        else {
+          execute(CpuStatements.UPDATE_TRACE_COMPRESSION, TRACE_INCOMPRESSIBLE, sessionId, traceId);
+        }
+      }
+    }
+    catch (SQLException | IOException ex) {
+      onError(ex);
+    }
+  }
+
+  @Override
+  public void onSessionDeleted(long sessionId) {
+    myThreadStateIndices.remove(sessionId);
+    myCpuDataRollup.removeSession(sessionId);
+    if (myCpuDataStore != null) {
+      myCpuDataStore.removeSession(sessionId);
+    }
+    if (myCpuDataCache != null) {
+      myCpuDataCache.removeSession(sessionId);
+    }
+  }
+
   public void insertTraceInfo(Common.Session session, TraceInfo trace) {
     execute(CpuStatements.INSERT_TRACE_INFO, session.getSessionId(), trace.getFromTimestamp(), trace.getToTimestamp(), trace.toByteArray());
   }
@@ -344,16 +439,9 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
     return null;
   }
 
-  private static GetThreadsResponse.Thread.Builder createThreadBuilder(int tid, String name) {
-    GetThreadsResponse.Thread.Builder thread = GetThreadsResponse.Thread.newBuilder();
-    thread.setTid(tid);
-    thread.setName(name);
-    return thread;
-  }
-
   @NotNull
-  private Set<Integer> getThreadIdCacheForSession(long sessionId) {
-    return mySessionThreadIdsCache.computeIfAbsent(sessionId, id -> Collections.synchronizedSet(new HashSet<>()));
+  private ThreadStateIndex getThreadStateIndex(long sessionId) {
+    return myThreadStateIndices.computeIfAbsent(sessionId, id -> new ThreadStateIndex());
   }
 
   /**
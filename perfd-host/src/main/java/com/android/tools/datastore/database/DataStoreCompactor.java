@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.datastore.LogService;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background compaction of a database, so that long profiling days neither exhaust the disk nor slow queries down. Each pass, run every
+ * {@link RetentionPolicy#getCompactionPeriodMs()} on its own thread:
+ * <ul>
+ * <li>Lets every {@link DataStoreTable} of the database shrink its own data, see {@link DataStoreTable#compact(RetentionPolicy)}, e.g. by
+ * compressing trace blobs or replacing old raw samples with their rollups.</li>
+ * <li>Deletes the ended sessions over the per session budget, then the oldest ended sessions until the database fits in its budget.</li>
+ * <li>Returns a bounded number of free pages to the file system, for databases created with incremental auto-vacuum.</li>
+ * </ul>
+ * Each step only does a bounded amount of work, leaving the rest to the next pass.
+ */
+public class DataStoreCompactor {
+  /**
+   * Rough per-row overhead (rowid, integer columns and b-tree cell) added to the size of the blobs and strings of a row.
+   */
+  private static final int ROW_OVERHEAD_BYTES = 32;
+  private static final int MAX_SESSIONS_MEASURED_PER_PASS = 8;
+  private static final int MAX_VACUUMED_PAGES_PER_PASS = 16 * 1024;
+  private static final int INCREMENTAL_AUTO_VACUUM = 2;
+  private static final String SESSIONS_TABLE = "Profiler_Sessions";
+
+  @NotNull private final Connection myConnection;
+  @Nullable private final DataStoreWriteQueue myWriteQueue;
+  @NotNull private final RetentionPolicy myPolicy;
+  @NotNull private final LogService myLogService;
+  private final List<DataStoreTable<?>> myTables = new CopyOnWriteArrayList<>();
+  /**
+   * Size of the ended sessions measured so far, which no longer grow. Guarded by {@code this}.
+   */
+  private final Map<Long, Long> mySessionBytes = new HashMap<>();
+  @Nullable private ScheduledExecutorService myExecutor;
+
+  public DataStoreCompactor(@NotNull Connection connection,
+                            @Nullable DataStoreWriteQueue writeQueue,
+                            @NotNull RetentionPolicy policy,
+                            @NotNull LogService logService) {
+    myConnection = connection;
+    myWriteQueue = writeQueue;
+    myPolicy = policy;
+    myLogService = logService;
+  }
+
+  @NotNull
+  private LogService.Logger getLogger() {
+    return myLogService.getLogger(DataStoreCompactor.class);
+  }
+
+  /**
+   * Starts running compaction passes in the background.
+   */
+  public synchronized void start() {
+    if (myExecutor != null) {
+      return;
+    }
+    myExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "DataStoreCompactor");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+    long period = myPolicy.getCompactionPeriodMs();
+    myExecutor.scheduleWithFixedDelay(this::compact, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  public void stop() {
+    ScheduledExecutorService executor;
+    synchronized (this) {
+      executor = myExecutor;
+      myExecutor = null;
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @NotNull
+  public RetentionPolicy getPolicy() {
+    return myPolicy;
+  }
+
+  void register(@NotNull DataStoreTable<?> table) {
+    myTables.add(table);
+  }
+
+  /**
+   * Runs one compaction pass.
+   */
+  public synchronized void compact() {
+    try {
+      if (myConnection.isClosed()) {
+        return;
+      }
+      for (DataStoreTable<?> table : myTables) {
+        table.compact(myPolicy);
+      }
+      enforceBudgets();
+      vacuum();
+      commit();
+    }
+    catch (SQLException ex) {
+      DataStoreTable.onError(ex);
+    }
+    catch (RuntimeException ex) {
+      // Keep the scheduled passes going.
+      getLogger().error(ex);
+    }
+  }
+
+  /**
+   * @return the number of bytes used by the database, not counting the free pages.
+   */
+  public long getDatabaseBytes() throws SQLException {
+    return (queryPragma("page_count") - queryPragma("freelist_count")) * queryPragma("page_size");
+  }
+
+  private void enforceBudgets() throws SQLException {
+    // Deletions below go straight to the connection, make sure they don't overtake rows still queued.
+    flush();
+    if (!hasTable(SESSIONS_TABLE)) {
+      return;
+    }
+
+    Map<String, TableColumns> tables = getSessionTables();
+    List<Long> endedSessions = new ArrayList<>();
+    try (PreparedStatement statement = myConnection.prepareStatement(
+      "SELECT SessionId FROM " + SESSIONS_TABLE + " WHERE EndTime != ? ORDER BY EndTime, SessionId")) {
+      // Sessions still alive have no end time yet.
+      statement.setLong(1, Long.MAX_VALUE);
+      try (ResultSet results = statement.executeQuery()) {
+        while (results.next()) {
+          endedSessions.add(results.getLong(1));
+        }
+      }
+    }
+    mySessionBytes.keySet().retainAll(endedSessions);
+
+    int measured = 0;
+    for (long sessionId : endedSessions) {
+      if (!mySessionBytes.containsKey(sessionId) && measured++ < MAX_SESSIONS_MEASURED_PER_PASS) {
+        mySessionBytes.put(sessionId, measureSession(tables, sessionId));
+      }
+    }
+
+    List<Long> remainingSessions = new ArrayList<>();
+    for (long sessionId : endedSessions) {
+      Long bytes = mySessionBytes.get(sessionId);
+      if (bytes != null && bytes > myPolicy.getMaxSessionBytes()) {
+        getLogger().info(String.format("Deleting session %d, over the per session budget with %d KB", sessionId, bytes / 1024));
+        deleteSession(tables, sessionId);
+      }
+      else {
+        remainingSessions.add(sessionId);
+      }
+    }
+
+    // Oldest first, never the sessions still alive.
+    for (long sessionId : remainingSessions) {
+      long databaseBytes = getDatabaseBytes();
+      if (databaseBytes <= myPolicy.getMaxDatabaseBytes()) {
+        break;
+      }
+      getLogger().info(String.format("Deleting session %d, the database is over its budget with %d KB", sessionId, databaseBytes / 1024));
+      deleteSession(tables, sessionId);
+    }
+  }
+
+  private long measureSession(@NotNull Map<String, TableColumns> tables, long sessionId) throws SQLException {
+    long bytes = 0;
+    for (Map.Entry<String, TableColumns> entry : tables.entrySet()) {
+      StringBuilder query = new StringBuilder("SELECT COUNT(*)");
+      for (String column : entry.getValue().myDataColumns) {
+        query.append(String.format(", COALESCE(SUM(LENGTH(%s)), 0)", column));
+      }
+      query.append(String.format(" FROM %s WHERE %s = ?", entry.getKey(), entry.getValue().mySessionColumn));
+      try (PreparedStatement statement = myConnection.prepareStatement(query.toString())) {
+        statement.setLong(1, sessionId);
+        try (ResultSet results = statement.executeQuery()) {
+          if (results.next()) {
+            bytes += results.getLong(1) * ROW_OVERHEAD_BYTES;
+            for (int i = 0; i < entry.getValue().myDataColumns.size(); i++) {
+              bytes += results.getLong(i + 2);
+            }
+          }
+        }
+      }
+    }
+    return bytes;
+  }
+
+  private void deleteSession(@NotNull Map<String, TableColumns> tables, long sessionId) throws SQLException {
+    for (Map.Entry<String, TableColumns> entry : tables.entrySet()) {
+      try (PreparedStatement statement = myConnection.prepareStatement(
+        String.format("DELETE FROM %s WHERE %s = ?", entry.getKey(), entry.getValue().mySessionColumn))) {
+        statement.setLong(1, sessionId);
+        statement.execute();
+      }
+    }
+    if (myWriteQueue != null) {
+      myWriteQueue.markUncommittedWrite();
+    }
+    mySessionBytes.remove(sessionId);
+    for (DataStoreTable<?> table : myTables) {
+      table.onSessionDeleted(sessionId);
+    }
+  }
+
+  /**
+   * @return the tables with a session column, including the sessions table itself, by name.
+   */
+  @NotNull
+  private Map<String, TableColumns> getSessionTables() throws SQLException {
+    List<String> names = new ArrayList<>();
+    try (Statement statement = myConnection.createStatement();
+         ResultSet results = statement.executeQuery("SELECT name FROM sqlite_master WHERE type='table'")) {
+      while (results.next()) {
+        names.add(results.getString(1));
+      }
+    }
+
+    Map<String, TableColumns> tables = new LinkedHashMap<>();
+    for (String name : names) {
+      String sessionColumn = null;
+      List<String> dataColumns = new ArrayList<>();
+      try (Statement statement = myConnection.createStatement();
+           ResultSet results = statement.executeQuery(String.format("PRAGMA table_info(%s)", name))) {
+        while (results.next()) {
+          String column = results.getString("name");
+          String type = results.getString("type");
+          if (column.equalsIgnoreCase("Session") || (column.equalsIgnoreCase("SessionId") && sessionColumn == null)) {
+            sessionColumn = column;
+          }
+          else if (type != null && (type.equalsIgnoreCase("BLOB") || type.equalsIgnoreCase("TEXT") || type.equalsIgnoreCase("STRING"))) {
+            dataColumns.add(column);
+          }
+        }
+      }
+      if (sessionColumn != null) {
+        tables.put(name, new TableColumns(sessionColumn, dataColumns));
+      }
+    }
+    return tables;
+  }
+
+  private boolean hasTable(@NotNull String table) throws SQLException {
+    try (PreparedStatement statement = myConnection.prepareStatement("SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name=?")) {
+      statement.setString(1, table);
+      try (ResultSet results = statement.executeQuery()) {
+        return results.next() && results.getInt(1) > 0;
+      }
+    }
+  }
+
+  private void vacuum() throws SQLException {
+    if (queryPragma("auto_vacuum") != INCREMENTAL_AUTO_VACUUM || queryPragma("freelist_count") == 0) {
+      return;
+    }
+    try (Statement statement = myConnection.createStatement()) {
+      statement.execute(String.format("PRAGMA incremental_vacuum(%d)", MAX_VACUUMED_PAGES_PER_PASS));
+    }
+    if (myWriteQueue != null) {
+      myWriteQueue.markUncommittedWrite();
+    }
+  }
+
+  private long queryPragma(@NotNull String pragma) throws SQLException {
+    try (Statement statement = myConnection.createStatement();
+         ResultSet results = statement.executeQuery(String.format("PRAGMA %s", pragma))) {
+      return results.next() ? results.getLong(1) : 0;
+    }
+  }
+
+  private void flush() {
+    if (myWriteQueue != null) {
+      myWriteQueue.flush();
+    }
+  }
+
+  private void commit() throws SQLException {
+    if (myWriteQueue != null) {
+      myWriteQueue.markUncommittedWrite();
+      myWriteQueue.flush();
+    }
+    else {
+      myConnection.commit();
+    }
+  }
+
+  private static final class TableColumns {
+    @NotNull private final String mySessionColumn;
+    @NotNull private final List<String> myDataColumns;
+
+    private TableColumns(@NotNull String sessionColumn, @NotNull List<String> dataColumns) {
+      mySessionColumn = sessionColumn;
+      myDataColumns = dataColumns;
+    }
+  }
+}
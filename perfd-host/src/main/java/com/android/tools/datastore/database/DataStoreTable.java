@@ -15,7 +15,9 @@
  */
 package com.android.tools.datastore.database;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
 import java.util.*;
@@ -30,6 +32,8 @@ public abstract class DataStoreTable<T extends Enum> {
   private static final Set<DataStoreTableErrorCallback> ERROR_CALLBACKS = ConcurrentHashMap.newKeySet();
 
   private Connection myConnection;
+  @Nullable private DataStoreWriteQueue myWriteQueue;
+  @Nullable private SampleCache mySampleCache;
   private final ThreadLocal<Map<T, PreparedStatement>> myStatementMap = new ThreadLocal<>();
 
   public interface DataStoreTableErrorCallback {
@@ -45,6 +49,42 @@ public abstract class DataStoreTable<T extends Enum> {
     myConnection = connection;
   }
 
+  /**
+   * Initializes the table against the database's connection. Writes issued through {@link #execute(Enum, Object...)} go through the
+   * database's {@link DataStoreWriteQueue}, if it has one, instead of being executed immediately. Sample queries may be served from the
+   * database's {@link SampleCache}. The table is compacted by the database's {@link DataStoreCompactor}, if it has one.
+   */
+  public void initialize(@NotNull DataStoreDatabase database) {
+    myWriteQueue = database.getWriteQueue();
+    mySampleCache = database.getSampleCache();
+    initialize(database.getConnection());
+    DataStoreCompactor compactor = database.getCompactor();
+    if (compactor != null) {
+      compactor.register(this);
+    }
+  }
+
+  /**
+   * Called by the {@link DataStoreCompactor} of the database this table was initialized with, on its own thread, to shrink the data of
+   * the table according to the policy. Tables should do a bounded amount of work per call. Does nothing by default.
+   */
+  public void compact(@NotNull RetentionPolicy policy) {
+  }
+
+  /**
+   * Called by the {@link DataStoreCompactor} once the rows of a session were deleted, to drop what the table keeps about it in memory.
+   */
+  public void onSessionDeleted(long sessionId) {
+  }
+
+  /**
+   * @return the sample cache of the database this table was initialized with, or null if it was initialized with a raw connection.
+   */
+  @Nullable
+  protected SampleCache getSampleCache() {
+    return mySampleCache;
+  }
+
   /**
    * Helper function called after initialize to create {@link PreparedStatement} the implementor should cache
    * the statements for later use.
@@ -96,10 +136,13 @@ public abstract class DataStoreTable<T extends Enum> {
     return myStatementMap.get();
   }
 
+  /**
+   * Creates the table if it doesn't exist yet. Existing tables are kept so that durable databases can be reopened, the schema
+   * compatibility of existing tables is handled by {@link DataStoreDatabase#SCHEMA_VERSION}.
+   */
   protected void createTable(@NotNull String table, String... columns) throws SQLException {
-    myConnection.createStatement().execute(String.format("DROP TABLE IF EXISTS %s ", table));
     StringBuilder statement = new StringBuilder();
-    statement.append(String.format("CREATE TABLE %s", table));
+    statement.append(String.format("CREATE TABLE IF NOT EXISTS %s", table));
     executeUniqueStatement(statement, columns);
   }
 
@@ -139,6 +182,7 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return;
     }
+    flushPendingWrites();
     try {
       PreparedStatement stmt = getStatementMap().get(statement);
       batchParams.forEach((object) -> {
@@ -150,6 +194,9 @@ public abstract class DataStoreTable<T extends Enum> {
         }
       });
       int[] results = stmt.executeBatch();
+      if (myWriteQueue != null) {
+        myWriteQueue.markUncommittedWrite();
+      }
       for(int i = 0; i < results.length; i++) {
         if (results[i] == Statement.EXECUTE_FAILED) {
           throw new SQLException(String.format("Failed to insert batch element %d with result %d", i, results[i]));
@@ -165,6 +212,10 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return;
     }
+    if (myWriteQueue != null) {
+      myWriteQueue.enqueue(this, statement, params);
+      return;
+    }
     try {
       PreparedStatement stmt = getStatementMap().get(statement);
       applyParams(stmt, params);
@@ -179,6 +230,7 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return new EmptyResultSet();
     }
+    flushPendingWrites();
     PreparedStatement stmt = getStatementMap().get(statement);
     applyParams(stmt, params);
     return stmt.executeQuery();
@@ -188,11 +240,22 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return new EmptyResultSet();
     }
+    flushPendingWrites();
     PreparedStatement statement = myConnection.prepareStatement(sql);
     applyParams(statement, params);
     return statement.executeQuery();
   }
 
+  /**
+   * Makes sure writes queued by any table sharing this table's database are applied, so reads observe them and direct writes are not
+   * reordered before them.
+   */
+  private void flushPendingWrites() {
+    if (myWriteQueue != null && myWriteQueue.getPendingWriteCount() > 0) {
+      myWriteQueue.flush();
+    }
+  }
+
   protected void applyParams(@NotNull PreparedStatement statement, Object... params) throws SQLException {
     for (int i = 0; params != null && i < params.length; i++) {
       if (params[i] == null) {
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind queue shared by all the {@link DataStoreTable}s of a database. Writes issued through {@link DataStoreTable#execute} are
+ * queued instead of being executed one row at a time, and are later applied as JDBC batches followed by a single commit (group commit).
+ * <p>
+ * A flush happens when any of the following occurs:
+ * <ul>
+ * <li>The flush period elapses (time trigger).</li>
+ * <li>The number of pending writes reaches the batch size (size trigger). The flush is scheduled on the background thread.</li>
+ * <li>The number of pending writes reaches the max pending count (back-pressure). The writer flushes on its own thread so a poller that
+ * produces faster than the database can absorb is slowed down rather than growing the queue without bound.</li>
+ * <li>A table is about to read from the database, so queries always observe previously issued writes.</li>
+ * </ul>
+ */
+public class DataStoreWriteQueue {
+  public static final int DEFAULT_BATCH_SIZE = 512;
+  public static final int DEFAULT_MAX_PENDING_WRITES = 16 * 1024;
+  public static final long DEFAULT_FLUSH_PERIOD_MS = 500;
+
+  @NotNull private final Connection myConnection;
+  private final int myBatchSize;
+  private final int myMaxPendingWrites;
+  @NotNull private final ScheduledExecutorService myExecutor;
+
+  private final ConcurrentLinkedQueue<PendingWrite> myPendingWrites = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger myPendingCount = new AtomicInteger();
+  /**
+   * Whether a write was executed directly on the connection (e.g. a bulk insert) since the last commit.
+   */
+  private final AtomicBoolean myHasUncommittedWrites = new AtomicBoolean();
+  private final Object myFlushLock = new Object();
+
+  public DataStoreWriteQueue(@NotNull Connection connection) {
+    this(connection, DEFAULT_BATCH_SIZE, DEFAULT_MAX_PENDING_WRITES, DEFAULT_FLUSH_PERIOD_MS);
+  }
+
+  public DataStoreWriteQueue(@NotNull Connection connection, int batchSize, int maxPendingWrites, long flushPeriodMs) {
+    assert batchSize > 0 && maxPendingWrites >= batchSize;
+    myConnection = connection;
+    myBatchSize = batchSize;
+    myMaxPendingWrites = maxPendingWrites;
+    myExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "DataStoreWriteQueue");
+      thread.setDaemon(true);
+      return thread;
+    });
+    myExecutor.scheduleWithFixedDelay(this::flush, flushPeriodMs, flushPeriodMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Queues a write of {@code statement} with the given parameters, to be executed against {@code table}'s prepared statement.
+   */
+  <T extends Enum> void enqueue(@NotNull DataStoreTable<T> table, @NotNull T statement, Object... params) {
+    myPendingWrites.add(new PendingWrite(table, statement, params));
+    int pendingCount = myPendingCount.incrementAndGet();
+    if (pendingCount >= myMaxPendingWrites) {
+      flush();
+    }
+    else if (pendingCount == myBatchSize) {
+      try {
+        myExecutor.execute(this::flush);
+      }
+      catch (RejectedExecutionException ignored) {
+        // Shutting down, the final flush in stop() takes care of it.
+      }
+    }
+  }
+
+  /**
+   * Notifies the queue that a write was performed directly on the connection, so it is covered by the next group commit.
+   */
+  void markUncommittedWrite() {
+    myHasUncommittedWrites.set(true);
+  }
+
+  /**
+   * @return the number of writes which were queued but not committed yet, including the ones being flushed.
+   */
+  public int getPendingWriteCount() {
+    return myPendingCount.get();
+  }
+
+  /**
+   * Executes all pending writes as batches and commits the transaction.
+   */
+  public void flush() {
+    synchronized (myFlushLock) {
+      try {
+        if (myConnection.isClosed()) {
+          myPendingWrites.clear();
+          myPendingCount.set(0);
+          return;
+        }
+
+        List<PendingWrite> writes = new ArrayList<>(Math.min(myPendingCount.get(), myMaxPendingWrites));
+        PendingWrite write;
+        while ((write = myPendingWrites.poll()) != null) {
+          writes.add(write);
+        }
+
+        try {
+          if (!writes.isEmpty()) {
+            executeBatches(writes);
+          }
+          if (!writes.isEmpty() || myHasUncommittedWrites.getAndSet(false)) {
+            myConnection.commit();
+          }
+        }
+        finally {
+          // Only counted out once committed, so that readers skipping the flush when nothing is pending never miss these writes.
+          myPendingCount.addAndGet(-writes.size());
+        }
+      }
+      catch (SQLException ex) {
+        DataStoreTable.onError(ex);
+      }
+    }
+  }
+
+  /**
+   * Flushes the remaining writes and stops the background flushes.
+   */
+  public void stop() {
+    myExecutor.shutdownNow();
+    flush();
+  }
+
+  /**
+   * Runs the writes in order, grouping consecutive writes of the same statement in a single JDBC batch.
+   */
+  private static void executeBatches(@NotNull List<PendingWrite> writes) {
+    PreparedStatement batchStatement = null;
+    int batchStart = 0;
+    for (int i = 0; i < writes.size(); i++) {
+      PendingWrite write = writes.get(i);
+      try {
+        PreparedStatement statement = write.myTable.getStatementMap().get(write.myStatement);
+        if (statement != batchStatement) {
+          executeBatch(batchStatement, batchStart);
+          batchStatement = statement;
+          batchStart = i;
+        }
+        statement.clearParameters();
+        write.myTable.applyParams(statement, write.myParams);
+        statement.addBatch();
+      }
+      catch (SQLException ex) {
+        DataStoreTable.onError(ex);
+      }
+    }
+    executeBatch(batchStatement, batchStart);
+  }
+
+  private static void executeBatch(PreparedStatement statement, int batchStart) {
+    if (statement == null) {
+      return;
+    }
+    try {
+      int[] results = statement.executeBatch();
+      for (int i = 0; i < results.length; i++) {
+        if (results[i] == Statement.EXECUTE_FAILED) {
+          throw new SQLException(String.format("Failed to execute queued write %d with result %d", batchStart + i, results[i]));
+        }
+      }
+    }
+    catch (SQLException ex) {
+      DataStoreTable.onError(ex);
+    }
+  }
+
+  private static final class PendingWrite {
+    @NotNull private final DataStoreTable<?> myTable;
+    @NotNull private final Enum myStatement;
+    private final Object[] myParams;
+
+    private PendingWrite(@NotNull DataStoreTable<?> table, @NotNull Enum statement, Object[] params) {
+      myTable = table;
+      myStatement = statement;
+      myParams = params;
+    }
+  }
+}
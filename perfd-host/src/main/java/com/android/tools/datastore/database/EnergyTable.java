@@ -19,6 +19,7 @@ import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.EnergyProfiler;
 import com.android.tools.profiler.protobuf3jarjar.InvalidProtocolBufferException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -36,9 +37,30 @@ public final class EnergyTable extends DataStoreTable<EnergyTable.EventStatement
     QUERY_EVENT_GROUP,
   }
 
+  /**
+   * Storage for {@link EnergyProfiler.EnergySample} when the columnar engine is in use, in which case the Energy_Sample table stays empty.
+   */
+  @Nullable private final SampleStore<EnergyProfiler.EnergySample> mySampleStore;
+
+  /**
+   * Hot ranges of the Energy_Sample table, if the database provides a cache.
+   */
+  @Nullable private SampleCache.Series<EnergyProfiler.EnergySample> mySampleCache;
+
+  public EnergyTable() {
+    this(SampleStore.Engine.getDefault());
+  }
+
+  public EnergyTable(@NotNull SampleStore.Engine engine) {
+    mySampleStore = engine == SampleStore.Engine.COLUMNAR ? ColumnarSampleStore.forProto(EnergyProfiler.EnergySample.parser(), true) : null;
+  }
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
+    SampleCache cache = getSampleCache();
+    mySampleCache =
+      cache != null && mySampleStore == null ? cache.createProtoSeries(EnergyProfiler.EnergySample::getTimestamp, true) : null;
     try {
       createTable("Energy_Sample", "Session INTEGER NOT NULL", "Timestamp INTEGER NOT NULL", "Sample BLOB NOT NULL");
       createTable("Energy_Event",
@@ -49,6 +71,8 @@ public final class EnergyTable extends DataStoreTable<EnergyTable.EventStatement
                   "Event BLOB NOT NULL");
       createUniqueIndex("Energy_Sample", "Session", "Timestamp");
       createUniqueIndex("Energy_Event", "Session", "Id", "Timestamp");
+      // Events are mostly queried by time ranges, which the unique index doesn't cover.
+      createIndex("Energy_Event", 0, "Session", "Timestamp");
     }
     catch (SQLException ex) {
       onError(ex);
@@ -94,8 +118,25 @@ public final class EnergyTable extends DataStoreTable<EnergyTable.EventStatement
     }
   }
 
+  @Override
+  public void onSessionDeleted(long sessionId) {
+    if (mySampleStore != null) {
+      mySampleStore.removeSession(sessionId);
+    }
+    if (mySampleCache != null) {
+      mySampleCache.removeSession(sessionId);
+    }
+  }
+
   public void insertOrReplace(@NotNull Common.Session session, @NotNull EnergyProfiler.EnergySample sample) {
+    if (mySampleStore != null) {
+      mySampleStore.insert(session.getSessionId(), sample.getTimestamp(), sample);
+      return;
+    }
     execute(EventStatements.INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), sample.toByteArray());
+    if (mySampleCache != null) {
+      mySampleCache.insert(session.getSessionId(), sample);
+    }
   }
 
   public void insertOrReplace(@NotNull Common.Session session, @NotNull EnergyProfiler.EnergyEvent event) {
@@ -108,9 +149,27 @@ public final class EnergyTable extends DataStoreTable<EnergyTable.EventStatement
    */
   @NotNull
   public List<EnergyProfiler.EnergySample> getSamples(@NotNull EnergyProfiler.EnergyRequest request) {
+    if (mySampleStore != null) {
+      // Samples are queried in [start, end) while the store's ranges are (start, end].
+      return mySampleStore.getSamples(request.getSession().getSessionId(), decrement(request.getStartTimestamp()),
+                                      decrement(request.getEndTimestamp()));
+    }
+    if (mySampleCache != null) {
+      // Same as above, the cache's ranges are (start, end].
+      return mySampleCache.getSamples(request.getSession().getSessionId(), decrement(request.getStartTimestamp()),
+                                      decrement(request.getEndTimestamp()),
+                                      (sessionId, start, end) -> querySamples(sessionId, increment(start), increment(end)));
+    }
+    return querySamples(request.getSession().getSessionId(), request.getStartTimestamp(), request.getEndTimestamp());
+  }
+
+  /**
+   * @return the samples in the range [startTimestamp, endTimestamp).
+   */
+  @NotNull
+  private List<EnergyProfiler.EnergySample> querySamples(long sessionId, long startTimestamp, long endTimestamp) {
     try {
-      ResultSet results = executeQuery(EventStatements.QUERY_SAMPLE, request.getSession().getSessionId(), request.getStartTimestamp(),
-                                       request.getEndTimestamp());
+      ResultSet results = executeQuery(EventStatements.QUERY_SAMPLE, sessionId, startTimestamp, endTimestamp);
       return getSamplesFromResultSet(results);
     }
     catch (SQLException ex) {
@@ -172,6 +231,14 @@ public final class EnergyTable extends DataStoreTable<EnergyTable.EventStatement
     return new ArrayList<>();
   }
 
+  private static long decrement(long timestamp) {
+    return timestamp == Long.MIN_VALUE ? timestamp : timestamp - 1;
+  }
+
+  private static long increment(long timestamp) {
+    return timestamp == Long.MAX_VALUE ? timestamp : timestamp + 1;
+  }
+
   @NotNull
   private static List<EnergyProfiler.EnergySample> getSamplesFromResultSet(@NotNull ResultSet results) {
     List<EnergyProfiler.EnergySample> samples = new ArrayList<>();
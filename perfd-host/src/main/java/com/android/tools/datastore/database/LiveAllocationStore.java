@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationEvent;
+import com.android.tools.profiler.proto.MemoryProfiler.BatchAllocationSample;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntIntHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * In-memory store of the allocation events of one session, used by {@link MemoryLiveAllocationTable} in place of the
+ * Memory_AllocationEvents table when the columnar engine is enabled.
+ * <p>
+ * Allocations are kept in insertion order as primitive columns, with a tag to row index map, and deallocations are kept as a journal of row
+ * indices. Every few thousand events the set of objects alive at the latest event time is checkpointed as a {@link BitSet}, so the live set
+ * at any time is computed from the closest earlier checkpoint by replaying only the events recorded after it, rather than by scanning all
+ * the allocations.
+ * <p>
+ * Events normally arrive in time order. An event older than an existing checkpoint is patched into the checkpoints it precedes, after
+ * which replays can no longer stop at the next checkpoint and scan to the end of the log instead.
+ */
+final class LiveAllocationStore {
+  static final int DEFAULT_CHECKPOINT_INTERVAL = 16 * 1024;
+  /**
+   * When there are more checkpoints than this, every other one is dropped and the interval doubles.
+   */
+  private static final int MAX_CHECKPOINTS = 32;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private int myCheckpointInterval;
+
+  // Allocation columns, indexed by row.
+  private int mySize;
+  private int[] myTags = new int[INITIAL_CAPACITY];
+  private int[] myClassTags = new int[INITIAL_CAPACITY];
+  private long[] myAllocTimes = new long[INITIAL_CAPACITY];
+  private long[] myFreeTimes = new long[INITIAL_CAPACITY];
+  private long[] mySizes = new long[INITIAL_CAPACITY];
+  private int[] myLengths = new int[INITIAL_CAPACITY];
+  private int[] myThreadIds = new int[INITIAL_CAPACITY];
+  private int[] myStackIds = new int[INITIAL_CAPACITY];
+  private int[] myHeapIds = new int[INITIAL_CAPACITY];
+
+  @NotNull private TIntIntHashMap myTagToRow = new TIntIntHashMap();
+  /**
+   * Rows of the freed objects, in the order the deallocations were inserted.
+   */
+  @NotNull private TIntArrayList myFreeJournal = new TIntArrayList();
+
+  @NotNull private final List<Checkpoint> myCheckpoints = new ArrayList<>();
+  private boolean myHasLateEvents;
+  private long myLatestAllocTime = 0;
+  private long myLatestFreeTime = 0;
+  private long myLatestEventTime = Long.MIN_VALUE;
+
+  LiveAllocationStore() {
+    this(DEFAULT_CHECKPOINT_INTERVAL);
+  }
+
+  LiveAllocationStore(int checkpointInterval) {
+    assert checkpointInterval > 0;
+    myCheckpointInterval = checkpointInterval;
+  }
+
+  synchronized int getAllocationCount() {
+    return mySize;
+  }
+
+  synchronized int getCheckpointCount() {
+    return myCheckpoints.size();
+  }
+
+  /**
+   * Adds an allocation. Allocations of an already stored tag are ignored, matching INSERT OR IGNORE.
+   */
+  synchronized void insertAllocation(long timestamp, @NotNull AllocationEvent.Allocation allocation) {
+    if (myTagToRow.containsKey(allocation.getTag())) {
+      return;
+    }
+    ensureCapacity(mySize + 1);
+    int row = mySize++;
+    myTags[row] = allocation.getTag();
+    myClassTags[row] = allocation.getClassTag();
+    myAllocTimes[row] = timestamp;
+    myFreeTimes[row] = Long.MAX_VALUE;
+    mySizes[row] = allocation.getSize();
+    myLengths[row] = allocation.getLength();
+    myThreadIds[row] = allocation.getThreadId();
+    myStackIds[row] = allocation.getStackId();
+    myHeapIds[row] = allocation.getHeapId();
+    myTagToRow.put(allocation.getTag(), row);
+    myLatestAllocTime = Math.max(myLatestAllocTime, timestamp);
+
+    // The object was alive at the time of any checkpoint taken after its allocation time.
+    for (int i = myCheckpoints.size() - 1; i >= 0 && myCheckpoints.get(i).myTime >= timestamp; i--) {
+      myCheckpoints.get(i).myLiveRows.set(row);
+      myHasLateEvents = true;
+    }
+    onEventInserted(timestamp);
+  }
+
+  /**
+   * Marks the object with the given tag as freed. Deallocations of unknown or already freed objects are ignored.
+   */
+  synchronized void insertFree(long timestamp, int tag) {
+    if (!myTagToRow.containsKey(tag)) {
+      return;
+    }
+    int row = myTagToRow.get(tag);
+    if (myFreeTimes[row] != Long.MAX_VALUE) {
+      return;
+    }
+    myFreeTimes[row] = timestamp;
+    myFreeJournal.add(row);
+    if (timestamp < Long.MAX_VALUE) {
+      myLatestFreeTime = Math.max(myLatestFreeTime, timestamp);
+    }
+
+    for (int i = myCheckpoints.size() - 1; i >= 0 && myCheckpoints.get(i).myTime >= timestamp; i--) {
+      myCheckpoints.get(i).myLiveRows.clear(row);
+      myHasLateEvents = true;
+    }
+    onEventInserted(timestamp);
+  }
+
+  /**
+   * @return the latest allocation or deallocation time, or 0 if there are none.
+   */
+  synchronized long getLatestTimestamp() {
+    return Math.max(myLatestAllocTime, myLatestFreeTime);
+  }
+
+  /**
+   * @return the objects allocated before {@code endTime} and not freed by then.
+   */
+  @NotNull
+  synchronized BatchAllocationSample getSnapshot(long endTime) {
+    BitSet live = computeLiveRows(endTime, false);
+    BatchAllocationSample.Builder builder = BatchAllocationSample.newBuilder();
+    long timestamp = Long.MIN_VALUE;
+    for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+      builder.addEvents(createAllocationEvent(row));
+      timestamp = Math.max(timestamp, myAllocTimes[row]);
+    }
+    return builder.setTimestamp(timestamp).build();
+  }
+
+  /**
+   * @return the allocations, followed by the deallocations, which happened in [startTime, endTime), each sorted by time.
+   */
+  @NotNull
+  synchronized BatchAllocationSample getAllocations(long startTime, long endTime) {
+    BatchAllocationSample.Builder builder = BatchAllocationSample.newBuilder();
+    long timestamp = Long.MIN_VALUE;
+    if (endTime <= startTime) {
+      return builder.setTimestamp(timestamp).build();
+    }
+
+    int base = findCheckpointBefore(startTime);
+    int allocEnd = mySize;
+    int freeEnd = myFreeJournal.size();
+    int next = findReplayEnd(base, endTime - 1);
+    if (next >= 0) {
+      allocEnd = myCheckpoints.get(next).myAllocPosition;
+      freeEnd = myCheckpoints.get(next).myFreePosition;
+    }
+
+    TIntArrayList allocRows = new TIntArrayList();
+    for (int row = base < 0 ? 0 : myCheckpoints.get(base).myAllocPosition; row < allocEnd; row++) {
+      if (myAllocTimes[row] >= startTime && myAllocTimes[row] < endTime) {
+        allocRows.add(row);
+      }
+    }
+    TIntArrayList freeRows = new TIntArrayList();
+    for (int i = base < 0 ? 0 : myCheckpoints.get(base).myFreePosition; i < freeEnd; i++) {
+      int row = myFreeJournal.get(i);
+      if (myFreeTimes[row] >= startTime && myFreeTimes[row] < endTime) {
+        freeRows.add(row);
+      }
+    }
+
+    for (int row : sortByTime(allocRows, myAllocTimes)) {
+      builder.addEvents(createAllocationEvent(row));
+      timestamp = Math.max(timestamp, myAllocTimes[row]);
+    }
+    for (int row : sortByTime(freeRows, myFreeTimes)) {
+      builder.addEvents(AllocationEvent.newBuilder().setFreeData(
+        AllocationEvent.Deallocation
+          .newBuilder().setTag(myTags[row]).setClassTag(myClassTags[row]).setSize(mySizes[row]).setLength(myLengths[row])
+          .setThreadId(myThreadIds[row]).setStackId(myStackIds[row]).setHeapId(myHeapIds[row]))
+                                           .setTimestamp(myFreeTimes[row]));
+      timestamp = Math.max(timestamp, myFreeTimes[row]);
+    }
+    return builder.setTimestamp(timestamp).build();
+  }
+
+  /**
+   * Drops all the freed objects, compacting the columns. Checkpoints are discarded as their row indices are no longer valid.
+   */
+  synchronized void pruneFreedAllocations() {
+    int kept = 0;
+    TIntIntHashMap tagToRow = new TIntIntHashMap();
+    for (int row = 0; row < mySize; row++) {
+      if (myFreeTimes[row] != Long.MAX_VALUE) {
+        continue;
+      }
+      myTags[kept] = myTags[row];
+      myClassTags[kept] = myClassTags[row];
+      myAllocTimes[kept] = myAllocTimes[row];
+      myFreeTimes[kept] = myFreeTimes[row];
+      mySizes[kept] = mySizes[row];
+      myLengths[kept] = myLengths[row];
+      myThreadIds[kept] = myThreadIds[row];
+      myStackIds[kept] = myStackIds[row];
+      myHeapIds[kept] = myHeapIds[row];
+      tagToRow.put(myTags[kept], kept);
+      kept++;
+    }
+    mySize = kept;
+    myTagToRow = tagToRow;
+    myFreeJournal = new TIntArrayList();
+    myCheckpoints.clear();
+    myHasLateEvents = false;
+  }
+
+  /**
+   * Computes the rows alive at {@code time}, i.e. whose free time is after {@code time} and whose allocation time is before it (or at it if
+   * {@code includeAllocatedAtTime} is set), starting from the latest checkpoint taken before {@code time}.
+   */
+  @NotNull
+  private BitSet computeLiveRows(long time, boolean includeAllocatedAtTime) {
+    int base = findCheckpointBefore(time);
+    BitSet live;
+    int allocStart = 0;
+    int freeStart = 0;
+    long baseTime = Long.MIN_VALUE;
+    if (base >= 0) {
+      Checkpoint checkpoint = myCheckpoints.get(base);
+      live = (BitSet)checkpoint.myLiveRows.clone();
+      allocStart = checkpoint.myAllocPosition;
+      freeStart = checkpoint.myFreePosition;
+      baseTime = checkpoint.myTime;
+    }
+    else {
+      live = new BitSet(mySize);
+    }
+
+    int allocEnd = mySize;
+    int freeEnd = myFreeJournal.size();
+    int next = findReplayEnd(base, time);
+    if (next >= 0) {
+      allocEnd = myCheckpoints.get(next).myAllocPosition;
+      freeEnd = myCheckpoints.get(next).myFreePosition;
+    }
+
+    // Objects alive at the checkpoint that were freed since.
+    for (int i = freeStart; i < freeEnd; i++) {
+      int row = myFreeJournal.get(i);
+      if (myFreeTimes[row] > baseTime && myFreeTimes[row] <= time) {
+        live.clear(row);
+      }
+    }
+    // Objects allocated since the checkpoint that are still alive.
+    for (int row = allocStart; row < allocEnd; row++) {
+      long allocTime = myAllocTimes[row];
+      if (allocTime > baseTime && (allocTime < time || (includeAllocatedAtTime && allocTime == time)) && myFreeTimes[row] > time) {
+        live.set(row);
+      }
+    }
+    return live;
+  }
+
+  /**
+   * @return the index of the latest checkpoint taken strictly before {@code time}, or -1 if there is none.
+   */
+  private int findCheckpointBefore(long time) {
+    int low = 0;
+    int high = myCheckpoints.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myCheckpoints.get(mid).myTime < time) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low - 1;
+  }
+
+  /**
+   * @return the index of the checkpoint after {@code base} beyond which no event happened at or before {@code time}, or -1 if the replay
+   * has to go through the end of the log.
+   */
+  private int findReplayEnd(int base, long time) {
+    if (myHasLateEvents) {
+      return -1;
+    }
+    int next = base + 1;
+    return next < myCheckpoints.size() && myCheckpoints.get(next).myTime >= time ? next : -1;
+  }
+
+  private void onEventInserted(long timestamp) {
+    myLatestEventTime = Math.max(myLatestEventTime, timestamp);
+    int lastAllocPosition = 0;
+    int lastFreePosition = 0;
+    long lastTime = Long.MIN_VALUE;
+    if (!myCheckpoints.isEmpty()) {
+      Checkpoint last = myCheckpoints.get(myCheckpoints.size() - 1);
+      lastAllocPosition = last.myAllocPosition;
+      lastFreePosition = last.myFreePosition;
+      lastTime = last.myTime;
+    }
+    if (mySize - lastAllocPosition + myFreeJournal.size() - lastFreePosition < myCheckpointInterval ||
+        myLatestEventTime == lastTime || myLatestEventTime == Long.MAX_VALUE) {
+      return;
+    }
+
+    BitSet live = computeLiveRows(myLatestEventTime, true);
+    myCheckpoints.add(new Checkpoint(myLatestEventTime, mySize, myFreeJournal.size(), live));
+    if (myCheckpoints.size() > MAX_CHECKPOINTS) {
+      for (int i = myCheckpoints.size() - 2; i >= 0; i -= 2) {
+        myCheckpoints.remove(i);
+      }
+      myCheckpointInterval *= 2;
+    }
+  }
+
+  @NotNull
+  private AllocationEvent createAllocationEvent(int row) {
+    return AllocationEvent.newBuilder().setAllocData(
+      AllocationEvent.Allocation
+        .newBuilder().setTag(myTags[row]).setClassTag(myClassTags[row]).setSize(mySizes[row]).setLength(myLengths[row])
+        .setThreadId(myThreadIds[row]).setStackId(myStackIds[row]).setHeapId(myHeapIds[row]))
+                          .setTimestamp(myAllocTimes[row]).build();
+  }
+
+  /**
+   * @return the rows sorted by their time in {@code times}, keeping the insertion order of rows with the same time.
+   */
+  @NotNull
+  private static int[] sortByTime(@NotNull TIntArrayList rows, @NotNull long[] times) {
+    int[] sorted = rows.toNativeArray();
+    boolean inOrder = true;
+    for (int i = 1; i < sorted.length && inOrder; i++) {
+      inOrder = times[sorted[i - 1]] <= times[sorted[i]];
+    }
+    if (!inOrder) {
+      Integer[] boxed = new Integer[sorted.length];
+      for (int i = 0; i < sorted.length; i++) {
+        boxed[i] = sorted[i];
+      }
+      Arrays.sort(boxed, (a, b) -> Long.compare(times[a], times[b]));
+      for (int i = 0; i < sorted.length; i++) {
+        sorted[i] = boxed[i];
+      }
+    }
+    return sorted;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= myTags.length) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, myTags.length * 2);
+    myTags = Arrays.copyOf(myTags, newCapacity);
+    myClassTags = Arrays.copyOf(myClassTags, newCapacity);
+    myAllocTimes = Arrays.copyOf(myAllocTimes, newCapacity);
+    myFreeTimes = Arrays.copyOf(myFreeTimes, newCapacity);
+    mySizes = Arrays.copyOf(mySizes, newCapacity);
+    myLengths = Arrays.copyOf(myLengths, newCapacity);
+    myThreadIds = Arrays.copyOf(myThreadIds, newCapacity);
+    myStackIds = Arrays.copyOf(myStackIds, newCapacity);
+    myHeapIds = Arrays.copyOf(myHeapIds, newCapacity);
+  }
+
+  /**
+   * Rows alive at {@link #myTime} (allocated at or before it, freed after it), along with the log positions at the time it was taken.
+   */
+  private static final class Checkpoint {
+    private final long myTime;
+    private final int myAllocPosition;
+    private final int myFreePosition;
+    @NotNull private final BitSet myLiveRows;
+
+    private Checkpoint(long time, int allocPosition, int freePosition, @NotNull BitSet liveRows) {
+      myTime = time;
+      myAllocPosition = allocPosition;
+      myFreePosition = freePosition;
+      myLiveRows = liveRows;
+    }
+  }
+}
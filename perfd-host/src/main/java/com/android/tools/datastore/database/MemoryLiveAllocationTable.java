@@ -21,8 +21,12 @@ import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler;
 import com.android.tools.profiler.proto.MemoryProfiler.*;
 import com.android.tools.profiler.protobuf3jarjar.InvalidProtocolBufferException;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import gnu.trove.TLongHashSet;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -32,6 +36,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.*;
 
@@ -136,13 +141,49 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   private int myAllocationCountLimit = 5000000;
   private final static byte[] EMPTY_BYTE_ARRAY = new byte[0];
 
+  /**
+   * Per session allocation stores, used instead of the Memory_AllocationEvents table by the columnar engine, or null with SQLite.
+   */
+  @Nullable private final Map<Long, LiveAllocationStore> myLiveAllocationStores;
+  /**
+   * How many JNI to java name conversions are kept, which is more than the classes most apps load, while bounding the names kept across
+   * sessions.
+   */
+  private static final int JAVA_NAME_CACHE_SIZE = 20000;
+  /**
+   * JNI to java name conversions, as the same class names come back with every batch of classes and methods. The least recently used ones
+   * are evicted beyond {@link #JAVA_NAME_CACHE_SIZE}.
+   */
+  private final LoadingCache<String, String> myJavaNames =
+    CacheBuilder.newBuilder().maximumSize(JAVA_NAME_CACHE_SIZE).build(CacheLoader.from(MemoryLiveAllocationTable::jniToJavaName));
+
   @NotNull
   private LogService.Logger getLogger() {
     return myLogService.getLogger(MemoryLiveAllocationTable.class);
   }
 
   public MemoryLiveAllocationTable(@NotNull LogService logService) {
+    this(logService, SampleStore.Engine.getDefault());
+  }
+
+  public MemoryLiveAllocationTable(@NotNull LogService logService, @NotNull SampleStore.Engine engine) {
     myLogService = logService;
+    myLiveAllocationStores = engine == SampleStore.Engine.COLUMNAR ? new ConcurrentHashMap<>() : null;
+  }
+
+  @Nullable
+  private LiveAllocationStore getLiveAllocationStore(@NotNull Common.Session session, boolean create) {
+    assert myLiveAllocationStores != null;
+    return create
+           ? myLiveAllocationStores.computeIfAbsent(session.getSessionId(), id -> new LiveAllocationStore())
+           : myLiveAllocationStores.get(session.getSessionId());
+  }
+
+  @Override
+  public void onSessionDeleted(long sessionId) {
+    if (myLiveAllocationStores != null) {
+      myLiveAllocationStores.remove(sessionId);
+    }
   }
 
   @Override
@@ -203,6 +244,11 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   }
 
   public MemoryProfiler.BatchAllocationSample getSnapshot(Common.Session session, long endTime) {
+    if (myLiveAllocationStores != null) {
+      LiveAllocationStore store = getLiveAllocationStore(session, false);
+      return store == null ? BatchAllocationSample.newBuilder().setTimestamp(Long.MIN_VALUE).build() : store.getSnapshot(endTime);
+    }
+
     MemoryProfiler.BatchAllocationSample.Builder sampleBuilder = MemoryProfiler.BatchAllocationSample.newBuilder();
     try {
       ResultSet allocResult = executeQuery(QUERY_SNAPSHOT, session.getSessionId(), endTime, endTime);
@@ -231,6 +277,13 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   }
 
   public MemoryProfiler.BatchAllocationSample getAllocations(Common.Session session, long startTime, long endTime) {
+    if (myLiveAllocationStores != null) {
+      LiveAllocationStore store = getLiveAllocationStore(session, false);
+      return store == null
+             ? BatchAllocationSample.newBuilder().setTimestamp(Long.MIN_VALUE).build()
+             : store.getAllocations(startTime, endTime);
+    }
+
     MemoryProfiler.BatchAllocationSample.Builder sampleBuilder = MemoryProfiler.BatchAllocationSample.newBuilder();
     try {
       // Then get all allocation events that are valid for requestTime.
@@ -277,6 +330,10 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   @NotNull
   public LatestAllocationTimeResponse getLatestDataTimestamp(Common.Session session) {
     LatestAllocationTimeResponse.Builder builder = LatestAllocationTimeResponse.newBuilder();
+    if (myLiveAllocationStores != null) {
+      LiveAllocationStore store = getLiveAllocationStore(session, false);
+      return builder.setTimestamp(store == null ? 0 : store.getLatestTimestamp()).build();
+    }
     try {
       long latest = 0;
       ResultSet result = executeQuery(QUERY_LATEST_ALLOC_TIME, session.getSessionId());
@@ -588,8 +645,22 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
     if (isClosed()) {
       return;
     }
+    LiveAllocationStore store = myLiveAllocationStores != null ? getLiveAllocationStore(session, true) : null;
     try {
       for (MemoryProfiler.AllocationEvent event : sample.getEventsList()) {
+        if (store != null && event.getEventCase() != AllocationEvent.EventCase.CLASS_DATA) {
+          // Only the classes go to the database, allocations and frees are kept in the session's store.
+          if (event.getEventCase() == AllocationEvent.EventCase.ALLOC_DATA) {
+            store.insertAllocation(event.getTimestamp(), event.getAllocData());
+            allocAndFreeCount++;
+          }
+          else if (event.getEventCase() == AllocationEvent.EventCase.FREE_DATA) {
+            store.insertFree(event.getTimestamp(), event.getFreeData().getTag());
+            allocAndFreeCount++;
+          }
+          continue;
+        }
+
         if (currentCase != event.getEventCase()) {
           if (currentCase != null) {
             currentStatement.executeBatch();
@@ -616,7 +687,7 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
             assert currentStatement != null;
             AllocatedClass klass = event.getClassData();
             applyParams(currentStatement, session.getSessionId(), klass.getClassId(), event.getTimestamp(),
-                        jniToJavaName(klass.getClassName()));
+                        toJavaName(klass.getClassName()));
             break;
           case ALLOC_DATA:
             assert currentStatement != null;
@@ -639,10 +710,17 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
       }
 
       // Handles last batch after exiting from for-loop.
-      currentStatement.executeBatch();
+      if (currentStatement != null) {
+        currentStatement.executeBatch();
+      }
 
       if (allocAndFreeCount > 0) {
-        pruneAllocations(session);
+        if (store != null) {
+          pruneAllocations(store);
+        }
+        else {
+          pruneAllocations(session);
+        }
       }
     }
     catch (SQLException ex) {
@@ -658,7 +736,7 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
       PreparedStatement statement = getStatementMap().get(INSERT_METHOD);
       assert statement != null;
       for (AllocationStack.StackFrame method : methods) {
-        applyParams(statement, session.getSessionId(), method.getMethodId(), method.getMethodName(), jniToJavaName(method.getClassName()));
+        applyParams(statement, session.getSessionId(), method.getMethodId(), method.getMethodName(), toJavaName(method.getClassName()));
         statement.addBatch();
       }
       statement.executeBatch();
@@ -759,6 +837,18 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
     }
   }
 
+  /**
+   * Same as {@link #pruneAllocations(Common.Session)}, for sessions kept in a {@link LiveAllocationStore}.
+   */
+  private void pruneAllocations(@NotNull LiveAllocationStore store) {
+    int count = store.getAllocationCount();
+    if (count > myAllocationCountLimit) {
+      store.pruneFreedAllocations();
+      getLogger().info(String.format("Allocations have exceed %d entries. Pruned %d.", myAllocationCountLimit,
+                                     count - store.getAllocationCount()));
+    }
+  }
+
   private void pruneJniRefRecords(@NotNull Common.Session session) {
     try {
       // TODO save data to disk
@@ -777,6 +867,11 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
     }
   }
 
+  @NotNull
+  private String toJavaName(@NotNull String jniName) {
+    return myJavaNames.getUnchecked(jniName);
+  }
+
   /**
    * Converts jni class names into java names
    * e.g. Ljava/lang/String; -> java.lang.String
@@ -21,6 +21,7 @@ import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profiler.protobuf3jarjar.GeneratedMessageV3;
 import com.android.tools.profiler.protobuf3jarjar.InvalidProtocolBufferException;
 import com.android.tools.profiler.protobuf3jarjar.Message;
+import com.android.tools.profiler.protobuf3jarjar.Parser;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -28,7 +29,10 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.android.tools.datastore.database.MemoryStatsTable.MemoryStatements.*;
 
@@ -44,6 +48,8 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     // TODO: gc stats are duration data so we should account for end time. In reality this is usually sub-ms so it might not matter?
     QUERY_GC_STATS(String.format("SELECT Data FROM Memory_Samples WHERE Session = ? AND Type = %d AND TimeStamp > ? AND TimeStamp <= ?",
                                  MemorySamplesType.GC_STATS.ordinal())),
+    DELETE_MEMORY(String.format("DELETE FROM Memory_Samples WHERE Session = ? AND Type = %d AND TimeStamp >= ? AND TimeStamp < ?",
+                                MemorySamplesType.MEMORY.ordinal())),
 
     INSERT_OR_REPLACE_HEAP_INFO(
       "INSERT OR REPLACE INTO Memory_HeapDump (Session, StartTime, EndTime, Status, InfoData) VALUES (?, ?, ?, ?, ?)"),
@@ -86,9 +92,65 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     GC_STATS
   }
 
+  /**
+   * Per sample type storage when the columnar engine is in use, in which case the Memory_Samples table stays empty.
+   */
+  @Nullable private final Map<MemorySamplesType, SampleStore<GeneratedMessageV3>> mySampleStores;
+
+  /**
+   * Per sample type hot ranges of the Memory_Samples table, if the database provides a cache.
+   */
+  @Nullable private Map<MemorySamplesType, SampleCache.Series<GeneratedMessageV3>> mySampleCaches;
+
+  /**
+   * Downsampled {@link MemoryData.MemorySample} for zoomed out queries, keeping the peaks of each of the categories charted.
+   */
+  private final SampleRollup<MemoryData.MemorySample> myMemoryRollup = new SampleRollup<>(
+    MemoryData.MemorySample::getTimestamp,
+    Arrays.asList(MemoryData.MemorySample::getJavaMem, MemoryData.MemorySample::getNativeMem, MemoryData.MemorySample::getGraphicsMem,
+                  MemoryData.MemorySample::getStackMem, MemoryData.MemorySample::getCodeMem, MemoryData.MemorySample::getOthersMem,
+                  MemoryData.MemorySample::getTotalMem));
+
+  public MemoryStatsTable() {
+    this(SampleStore.Engine.getDefault());
+  }
+
+  public MemoryStatsTable(@NotNull SampleStore.Engine engine) {
+    if (engine == SampleStore.Engine.COLUMNAR) {
+      mySampleStores = new EnumMap<>(MemorySamplesType.class);
+      mySampleStores.put(MemorySamplesType.MEMORY, createSampleStore(MemoryData.MemorySample.parser()));
+      mySampleStores.put(MemorySamplesType.ALLOC_STATS, createSampleStore(MemoryData.AllocStatsSample.parser()));
+      mySampleStores.put(MemorySamplesType.GC_STATS, createSampleStore(MemoryData.GcStatsSample.parser()));
+    }
+    else {
+      mySampleStores = null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @NotNull
+  private static SampleStore<GeneratedMessageV3> createSampleStore(@NotNull Parser<? extends GeneratedMessageV3> parser) {
+    // Memory_Samples rows are inserted with INSERT OR IGNORE, so the first sample at a timestamp wins.
+    return ColumnarSampleStore.forProto((Parser<GeneratedMessageV3>)parser, false);
+  }
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
+    SampleCache cache = getSampleCache();
+    if (cache != null && mySampleStores == null) {
+      // Memory_Samples rows are inserted with INSERT OR IGNORE.
+      mySampleCaches = new EnumMap<>(MemorySamplesType.class);
+      mySampleCaches.put(MemorySamplesType.MEMORY,
+                         cache.createProtoSeries(sample -> ((MemoryData.MemorySample)sample).getTimestamp(), false));
+      mySampleCaches.put(MemorySamplesType.ALLOC_STATS,
+                         cache.createProtoSeries(sample -> ((MemoryData.AllocStatsSample)sample).getTimestamp(), false));
+      mySampleCaches.put(MemorySamplesType.GC_STATS,
+                         cache.createProtoSeries(sample -> ((MemoryData.GcStatsSample)sample).getStartTime(), false));
+    }
+    else {
+      mySampleCaches = null;
+    }
     try {
       createTable("Memory_Samples", "Session INTEGER NOT NULL", "Timestamp INTEGER", "Type INTEGER",
                   "Data BLOB", "PRIMARY KEY(Session, Timestamp, Type)");
@@ -124,12 +186,14 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     long sessionId = request.getSession().getSessionId();
     long startTime = request.getStartTime();
     long endTime = request.getEndTime();
-    List<MemoryData.MemorySample> memorySamples =
-      getResultsInfo(QUERY_MEMORY, sessionId, startTime, endTime, MemoryData.MemorySample.getDefaultInstance());
+    List<MemoryData.MemorySample> memorySamples = myMemoryRollup.getSamples(
+      sessionId, startTime, endTime,
+      (id, start, end) -> getSamples(MemorySamplesType.MEMORY, QUERY_MEMORY, id, start, end, MemoryData.MemorySample.getDefaultInstance()));
     List<MemoryData.AllocStatsSample> allocStatsSamples =
-      getResultsInfo(QUERY_ALLOC_STATS, sessionId, startTime, endTime, MemoryData.AllocStatsSample.getDefaultInstance());
+      getSamples(MemorySamplesType.ALLOC_STATS, QUERY_ALLOC_STATS, sessionId, startTime, endTime,
+                 MemoryData.AllocStatsSample.getDefaultInstance());
     List<MemoryData.GcStatsSample> gcStatsSamples =
-      getResultsInfo(QUERY_GC_STATS, sessionId, startTime, endTime, MemoryData.GcStatsSample.getDefaultInstance());
+      getSamples(MemorySamplesType.GC_STATS, QUERY_GC_STATS, sessionId, startTime, endTime, MemoryData.GcStatsSample.getDefaultInstance());
     List<HeapDumpInfo> heapDumpSamples =
       getResultsInfo(QUERY_HEAP_INFO_BY_TIME, sessionId, startTime, endTime, HeapDumpInfo.getDefaultInstance());
     List<AllocationsInfo> allocationSamples =
@@ -146,22 +210,72 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
 
   public void insertMemory(@NotNull Common.Session session, @NotNull List<MemoryData.MemorySample> samples) {
     for (MemoryData.MemorySample sample : samples) {
+      myMemoryRollup.insert(session.getSessionId(), sample);
+      if (mySampleStores != null) {
+        mySampleStores.get(MemorySamplesType.MEMORY).insert(session.getSessionId(), sample.getTimestamp(), sample);
+        continue;
+      }
       execute(INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), MemorySamplesType.MEMORY.ordinal(),
               sample.toByteArray());
+      writeThrough(MemorySamplesType.MEMORY, session, sample);
     }
   }
 
   public void insertAllocStats(@NotNull Common.Session session, @NotNull List<MemoryData.AllocStatsSample> samples) {
     for (MemoryData.AllocStatsSample sample : samples) {
+      if (mySampleStores != null) {
+        mySampleStores.get(MemorySamplesType.ALLOC_STATS).insert(session.getSessionId(), sample.getTimestamp(), sample);
+        continue;
+      }
       execute(INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), MemorySamplesType.ALLOC_STATS.ordinal(),
               sample.toByteArray());
+      writeThrough(MemorySamplesType.ALLOC_STATS, session, sample);
     }
   }
 
   public void insertGcStats(@NotNull Common.Session session, @NotNull List<MemoryData.GcStatsSample> samples) {
     for (MemoryData.GcStatsSample sample : samples) {
+      if (mySampleStores != null) {
+        mySampleStores.get(MemorySamplesType.GC_STATS).insert(session.getSessionId(), sample.getStartTime(), sample);
+        continue;
+      }
       execute(INSERT_SAMPLE, session.getSessionId(), sample.getStartTime(), MemorySamplesType.GC_STATS.ordinal(),
               sample.toByteArray());
+      writeThrough(MemorySamplesType.GC_STATS, session, sample);
+    }
+  }
+
+  /**
+   * Replaces the memory samples older than the policy's raw sample age with the samples kept by their rollup.
+   */
+  @Override
+  public void compact(@NotNull RetentionPolicy policy) {
+    if (mySampleStores != null) {
+      return;
+    }
+    myMemoryRollup.compact(
+      policy.getRawSampleAgeNs(),
+      (sessionId, start, end) -> getSamples(MemorySamplesType.MEMORY, QUERY_MEMORY, sessionId, start, end,
+                                            MemoryData.MemorySample.getDefaultInstance()),
+      (sessionId, start, end, samples) -> {
+        execute(DELETE_MEMORY, sessionId, start, end);
+        for (MemoryData.MemorySample sample : samples) {
+          execute(INSERT_SAMPLE, sessionId, sample.getTimestamp(), MemorySamplesType.MEMORY.ordinal(), sample.toByteArray());
+        }
+        if (mySampleCaches != null) {
+          mySampleCaches.get(MemorySamplesType.MEMORY).invalidate(sessionId);
+        }
+      });
+  }
+
+  @Override
+  public void onSessionDeleted(long sessionId) {
+    myMemoryRollup.removeSession(sessionId);
+    if (mySampleStores != null) {
+      mySampleStores.values().forEach(store -> store.removeSession(sessionId));
+    }
+    if (mySampleCaches != null) {
+      mySampleCaches.values().forEach(cache -> cache.removeSession(sessionId));
     }
   }
 
@@ -341,6 +455,34 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     return builder.build();
   }
 
+  private void writeThrough(@NotNull MemorySamplesType type, @NotNull Common.Session session, @NotNull GeneratedMessageV3 sample) {
+    if (mySampleCaches != null) {
+      mySampleCaches.get(type).insert(session.getSessionId(), sample);
+    }
+  }
+
+  /**
+   * Reads samples of the given type either from the columnar store, if in use, or from the Memory_Samples table through the sample
+   * cache, if any.
+   */
+  @SuppressWarnings("unchecked")
+  private <T extends GeneratedMessageV3> List<T> getSamples(@NotNull MemorySamplesType type,
+                                                            @NotNull MemoryStatements query,
+                                                            long sessionId,
+                                                            long startTime,
+                                                            long endTime,
+                                                            @NotNull T defaultInstance) {
+    if (mySampleStores != null) {
+      return (List<T>)(List<?>)mySampleStores.get(type).getSamples(sessionId, startTime, endTime);
+    }
+    if (mySampleCaches != null) {
+      return (List<T>)(List<?>)mySampleCaches.get(type).getSamples(
+        sessionId, startTime, endTime,
+        (id, start, end) -> (List<GeneratedMessageV3>)(List<?>)getResultsInfo(query, id, start, end, defaultInstance));
+    }
+    return getResultsInfo(query, sessionId, startTime, endTime, defaultInstance);
+  }
+
   /**
    * A helper method for querying samples for MemorySample, AllocStatsSample, GcStatsSample, HeapDumpInfo and AllocationsInfo
    */
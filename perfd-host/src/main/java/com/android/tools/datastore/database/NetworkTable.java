@@ -19,6 +19,7 @@ import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.protobuf3jarjar.InvalidProtocolBufferException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -30,6 +31,7 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
     INSERT_NETWORK_DATA,
     QUERY_NETWORK_DATA_BY_TYPE,
     QUERY_NETWORK_DATA,
+    DELETE_NETWORK_DATA_BY_TYPE,
     QUERY_COMMON_CONNECTION_DATA,
     FIND_CONNECTION_DATA,
     INSERT_CONNECTION_DATA
@@ -51,6 +53,36 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
                                   NetworkProfiler.NetworkDataRequest.Type.CONNECTIVITY.getNumber());
   }
 
+  /**
+   * Per data type storage when the columnar engine is in use, in which case the Network_Data table stays empty.
+   */
+  @Nullable private final Map<Integer, SampleStore<NetworkProfiler.NetworkProfilerData>> myDataStores;
+
+  /**
+   * Downsampled speed data for zoomed out queries, keeping the peaks of both directions.
+   */
+  private final SampleRollup<NetworkProfiler.NetworkProfilerData> mySpeedDataRollup = new SampleRollup<>(
+    NetworkProfiler.NetworkProfilerData::getEndTimestamp,
+    Arrays.asList(data -> data.getSpeedData().getReceived(), data -> data.getSpeedData().getSent()));
+
+  public NetworkTable() {
+    this(SampleStore.Engine.getDefault());
+  }
+
+  public NetworkTable(@NotNull SampleStore.Engine engine) {
+    if (engine == SampleStore.Engine.COLUMNAR) {
+      // Sorted by type so ALL queries return data grouped by type, matching the order of the Network_Data index.
+      myDataStores = new TreeMap<>();
+      for (Integer type : DATACASE_REQUEST_TYPE_MAP.values()) {
+        // Network_Data rows are inserted with INSERT OR IGNORE, so the first sample at a timestamp wins.
+        myDataStores.put(type, ColumnarSampleStore.forProto(NetworkProfiler.NetworkProfilerData.parser(), false));
+      }
+    }
+    else {
+      myDataStores = null;
+    }
+  }
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
@@ -79,6 +111,8 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
                       "SELECT Data FROM Network_Data WHERE Session = ? AND Type = ? AND EndTime > ? AND EndTime <= ?");
       createStatement(NetworkStatements.QUERY_NETWORK_DATA,
                       "SELECT Data FROM Network_Data WHERE Session = ? AND EndTime > ? AND EndTime <= ?");
+      createStatement(NetworkStatements.DELETE_NETWORK_DATA_BY_TYPE,
+                      "DELETE FROM Network_Data WHERE Session = ? AND Type = ? AND EndTime >= ? AND EndTime < ?");
 
       createStatement(NetworkStatements.QUERY_COMMON_CONNECTION_DATA,
                       "SELECT ConnectionData FROM Network_Connection WHERE Session = ? AND (EndTime > ? OR EndTime = 0) AND StartTime <= ?");
@@ -111,19 +145,40 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
     return datas;
   }
 
+  /**
+   * @return the data of the requested type in the requested range. Speed data is downsampled if the range is too wide for all of it to
+   * be shown.
+   */
   public List<NetworkProfiler.NetworkProfilerData> getNetworkDataByRequest(NetworkProfiler.NetworkDataRequest request) {
+    NetworkProfiler.NetworkDataRequest.Type type = request.getType();
+    if (type == NetworkProfiler.NetworkDataRequest.Type.SPEED) {
+      return mySpeedDataRollup.getSamples(request.getSession().getSessionId(), request.getStartTimestamp(), request.getEndTimestamp(),
+                                          (sessionId, start, end) -> getNetworkData(sessionId, type, start, end));
+    }
+    return getNetworkData(request.getSession().getSessionId(), type, request.getStartTimestamp(), request.getEndTimestamp());
+  }
+
+  @NotNull
+  private List<NetworkProfiler.NetworkProfilerData> getNetworkData(long sessionId,
+                                                                   @NotNull NetworkProfiler.NetworkDataRequest.Type type,
+                                                                   long startTimestamp,
+                                                                   long endTimestamp) {
     List<NetworkProfiler.NetworkProfilerData> datas = new ArrayList<>();
+    if (myDataStores != null) {
+      for (Map.Entry<Integer, SampleStore<NetworkProfiler.NetworkProfilerData>> entry : myDataStores.entrySet()) {
+        if (type == NetworkProfiler.NetworkDataRequest.Type.ALL || type.getNumber() == entry.getKey()) {
+          datas.addAll(entry.getValue().getSamples(sessionId, startTimestamp, endTimestamp));
+        }
+      }
+      return datas;
+    }
     ResultSet results;
     try {
-      if (request.getType() == NetworkProfiler.NetworkDataRequest.Type.ALL) {
-        results =
-          executeQuery(NetworkStatements.QUERY_NETWORK_DATA, request.getSession().getSessionId(), request.getStartTimestamp(),
-                       request.getEndTimestamp());
+      if (type == NetworkProfiler.NetworkDataRequest.Type.ALL) {
+        results = executeQuery(NetworkStatements.QUERY_NETWORK_DATA, sessionId, startTimestamp, endTimestamp);
       }
       else {
-        results = executeQuery(NetworkStatements.QUERY_NETWORK_DATA_BY_TYPE, request.getSession().getSessionId(),
-                               request.getType().getNumber(),
-                               request.getStartTimestamp(), request.getEndTimestamp());
+        results = executeQuery(NetworkStatements.QUERY_NETWORK_DATA_BY_TYPE, sessionId, type.getNumber(), startTimestamp, endTimestamp);
       }
       while (results.next()) {
         NetworkProfiler.NetworkProfilerData.Builder data = NetworkProfiler.NetworkProfilerData.newBuilder();
@@ -137,7 +192,42 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
     return datas;
   }
 
+  /**
+   * Replaces the speed data older than the policy's raw sample age with the samples kept by its rollup.
+   */
+  @Override
+  public void compact(@NotNull RetentionPolicy policy) {
+    if (myDataStores != null) {
+      return;
+    }
+    NetworkProfiler.NetworkDataRequest.Type type = NetworkProfiler.NetworkDataRequest.Type.SPEED;
+    mySpeedDataRollup.compact(
+      policy.getRawSampleAgeNs(),
+      (sessionId, start, end) -> getNetworkData(sessionId, type, start, end),
+      (sessionId, start, end, samples) -> {
+        execute(NetworkStatements.DELETE_NETWORK_DATA_BY_TYPE, sessionId, type.getNumber(), start, end);
+        for (NetworkProfiler.NetworkProfilerData data : samples) {
+          execute(NetworkStatements.INSERT_NETWORK_DATA, sessionId, type.getNumber(), data.getEndTimestamp(), data.toByteArray());
+        }
+      });
+  }
+
+  @Override
+  public void onSessionDeleted(long sessionId) {
+    mySpeedDataRollup.removeSession(sessionId);
+    if (myDataStores != null) {
+      myDataStores.values().forEach(store -> store.removeSession(sessionId));
+    }
+  }
+
   public void insert(@NotNull Common.Session session, NetworkProfiler.NetworkProfilerData data) {
+    if (data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.SPEED_DATA) {
+      mySpeedDataRollup.insert(session.getSessionId(), data);
+    }
+    if (myDataStores != null) {
+      myDataStores.get(DATACASE_REQUEST_TYPE_MAP.get(data.getDataCase())).insert(session.getSessionId(), data.getEndTimestamp(), data);
+      return;
+    }
     execute(NetworkStatements.INSERT_NETWORK_DATA, session.getSessionId(), DATACASE_REQUEST_TYPE_MAP.get(data.getDataCase()),
             data.getEndTimestamp(), data.toByteArray());
   }
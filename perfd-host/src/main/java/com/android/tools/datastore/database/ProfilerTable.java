@@ -25,6 +25,8 @@ import org.jetbrains.annotations.Nullable;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Class that wraps database access for profiler level services.
@@ -48,7 +50,10 @@ public class ProfilerTable extends DataStoreTable<ProfilerTable.ProfilerStatemen
     FIND_AGENT_STATUS,
     UPDATE_AGENT_STATUS,
     INSERT_BYTES,
-    GET_BYTES
+    GET_BYTES,
+    UPDATE_DEVICE_DATA,
+    END_ALIVE_SESSIONS,
+    KILL_ALIVE_PROCESSES
   }
 
   // Need to have a lock due to processes being updated and queried at the same time.
@@ -71,12 +76,40 @@ public class ProfilerTable extends DataStoreTable<ProfilerTable.ProfilerStatemen
       createUniqueIndex("Profiler_Devices", "DeviceId");
       createUniqueIndex("Profiler_Bytes", "Id", "Session");
       createUniqueIndex("Profiler_Sessions", "SessionId");
+      markPreviousRunDisconnected();
     }
     catch (SQLException ex) {
       onError(ex);
     }
   }
 
+  /**
+   * When a durable database is reopened, devices, processes and sessions recorded in a previous run are left in the state they were in when
+   * that run ended. None of them can still be connected, so mark them as disconnected/dead/ended so the previous sessions show up as
+   * finished sessions that can be browsed. Sessions end at the last known time of their device.
+   */
+  private void markPreviousRunDisconnected() throws SQLException {
+    execute(ProfilerStatements.END_ALIVE_SESSIONS, Long.MAX_VALUE);
+    execute(ProfilerStatements.KILL_ALIVE_PROCESSES, Common.Process.State.DEAD.getNumber(), Common.Process.State.DEAD.getNumber());
+
+    List<Common.Device> devices = new ArrayList<>();
+    ResultSet results = executeQuery(ProfilerStatements.SELECT_DEVICE);
+    while (results.next()) {
+      try {
+        devices.add(Common.Device.parseFrom(results.getBytes(1)));
+      }
+      catch (InvalidProtocolBufferException ex) {
+        onError(ex);
+      }
+    }
+    for (Common.Device device : devices) {
+      if (device.getState() != Common.Device.State.DISCONNECTED) {
+        execute(ProfilerStatements.UPDATE_DEVICE_DATA, device.toBuilder().setState(Common.Device.State.DISCONNECTED).build().toByteArray(),
+                device.getDeviceId());
+      }
+    }
+  }
+
   @Override
   public void prepareStatements() {
     try {
@@ -115,6 +148,13 @@ public class ProfilerTable extends DataStoreTable<ProfilerTable.ProfilerStatemen
                       "UPDATE Profiler_Processes SET AgentStatus = ?, IsAgentAttachable = ? WHERE DeviceId = ? AND ProcessId = ?");
       createStatement(ProfilerStatements.INSERT_BYTES, "INSERT OR REPLACE INTO Profiler_Bytes (Id, Session, Data) VALUES (?, ?, ?)");
       createStatement(ProfilerStatements.GET_BYTES, "SELECT Data FROM Profiler_Bytes WHERE Id = ? AND Session = ?");
+      createStatement(ProfilerStatements.UPDATE_DEVICE_DATA, "UPDATE Profiler_Devices SET Data = ? WHERE DeviceId = ?");
+      createStatement(ProfilerStatements.END_ALIVE_SESSIONS,
+                      "UPDATE Profiler_Sessions SET EndTime = " +
+                      "COALESCE((SELECT LastKnownTime FROM Profiler_Devices WHERE Profiler_Devices.DeviceId = Profiler_Sessions.DeviceId), " +
+                      "StartTime) WHERE EndTime = ?");
+      createStatement(ProfilerStatements.KILL_ALIVE_PROCESSES,
+                      "UPDATE Profiler_Processes SET State = ?, IsAgentAttachable = 0 WHERE State <> ?");
     }
     catch (SQLException ex) {
       onError(ex);
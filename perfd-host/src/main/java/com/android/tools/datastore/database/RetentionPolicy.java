@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on how much a {@link DataStoreCompactor} lets a database grow.
+ */
+public final class RetentionPolicy {
+  public static final long DEFAULT_MAX_DATABASE_BYTES = 2L * 1024 * 1024 * 1024;
+  public static final long DEFAULT_MAX_SESSION_BYTES = 1024L * 1024 * 1024;
+  public static final long DEFAULT_RAW_SAMPLE_AGE_NS = TimeUnit.HOURS.toNanos(1);
+  public static final long DEFAULT_COMPACTION_PERIOD_MS = TimeUnit.MINUTES.toMillis(5);
+
+  private final long myMaxDatabaseBytes;
+  private final long myMaxSessionBytes;
+  private final long myRawSampleAgeNs;
+  private final long myCompactionPeriodMs;
+
+  /**
+   * @param maxDatabaseBytes   size past which the oldest ended sessions are deleted
+   * @param maxSessionBytes    size past which an ended session is deleted on its own
+   * @param rawSampleAgeNs     how long before the latest sample of a session its raw monitor samples are kept, after which they are
+   *                           replaced by the samples kept by their rollups
+   * @param compactionPeriodMs delay between two compaction passes
+   */
+  public RetentionPolicy(long maxDatabaseBytes, long maxSessionBytes, long rawSampleAgeNs, long compactionPeriodMs) {
+    assert maxDatabaseBytes > 0 && maxSessionBytes > 0 && rawSampleAgeNs >= 0 && compactionPeriodMs > 0;
+    myMaxDatabaseBytes = maxDatabaseBytes;
+    myMaxSessionBytes = maxSessionBytes;
+    myRawSampleAgeNs = rawSampleAgeNs;
+    myCompactionPeriodMs = compactionPeriodMs;
+  }
+
+  /**
+   * @return the policy set through the profiler.datastore.retention.* system properties, with sizes in MB, the raw sample age in minutes
+   * and the compaction period in seconds.
+   */
+  @NotNull
+  public static RetentionPolicy getDefault() {
+    return new RetentionPolicy(
+      getLong("profiler.datastore.retention.maxDatabaseMb", DEFAULT_MAX_DATABASE_BYTES / 1024 / 1024) * 1024 * 1024,
+      getLong("profiler.datastore.retention.maxSessionMb", DEFAULT_MAX_SESSION_BYTES / 1024 / 1024) * 1024 * 1024,
+      TimeUnit.MINUTES.toNanos(getLong("profiler.datastore.retention.rawSampleMinutes",
+                                       TimeUnit.NANOSECONDS.toMinutes(DEFAULT_RAW_SAMPLE_AGE_NS))),
+      TimeUnit.SECONDS.toMillis(getLong("profiler.datastore.retention.periodSeconds",
+                                        TimeUnit.MILLISECONDS.toSeconds(DEFAULT_COMPACTION_PERIOD_MS))));
+  }
+
+  private static long getLong(@NotNull String property, long defaultValue) {
+    Long value = Long.getLong(property);
+    return value != null && value > 0 ? value : defaultValue;
+  }
+
+  public long getMaxDatabaseBytes() {
+    return myMaxDatabaseBytes;
+  }
+
+  public long getMaxSessionBytes() {
+    return myMaxSessionBytes;
+  }
+
+  public long getRawSampleAgeNs() {
+    return myRawSampleAgeNs;
+  }
+
+  public long getCompactionPeriodMs() {
+    return myCompactionPeriodMs;
+  }
+}
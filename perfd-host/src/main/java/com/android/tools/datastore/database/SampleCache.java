@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.datastore.LogService;
+import com.android.tools.profiler.protobuf3jarjar.MessageLite;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * In-memory LRU tier in front of the sample tables of a {@link DataStoreDatabase}. Decoded samples are cached in fixed-width time buckets,
+ * keyed by (series, session, bucket), so the charts re-querying the visible range over and over are served without going back to SQLite.
+ * <p>
+ * Buckets are loaded whole from the table on a miss. Tables write their new samples through {@link Series#insert(long, Object)} after
+ * issuing the database write, which keeps cached buckets (including the one currently being filled by the pollers) complete. Buckets are
+ * evicted least recently used first once the estimated size of the cached samples goes over the byte budget.
+ */
+public class SampleCache {
+  public static final long DEFAULT_BUCKET_NS = TimeUnit.SECONDS.toNanos(10);
+  public static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+  /**
+   * Queries spanning more buckets than this (e.g. open ended queries) bypass the cache, rather than loading and evicting it whole.
+   */
+  private static final int MAX_BUCKETS_PER_QUERY = 64;
+
+  /**
+   * Rough per-sample overhead of the decoded object and its tree map entry, on top of the sample's serialized size.
+   */
+  private static final int SAMPLE_OVERHEAD_BYTES = 64;
+
+  /**
+   * Loads the samples of a session from the backing table.
+   */
+  public interface Loader<T> {
+    /**
+     * @return the samples with a timestamp in the range (startTimestamp, endTimestamp].
+     */
+    @NotNull
+    List<T> load(long sessionId, long startTimestamp, long endTimestamp);
+  }
+
+  private final long myBucketNs;
+  private final long myMaxBytes;
+  private final AtomicInteger myNextSeriesId = new AtomicInteger();
+  /**
+   * All cached buckets, in access order. Guarded by {@code this}, along with {@link #myCachedBytes}.
+   */
+  private final LinkedHashMap<BucketKey, Bucket<?>> myBuckets = new LinkedHashMap<>(16, 0.75f, true);
+  private long myCachedBytes;
+
+  private final AtomicLong myHitCount = new AtomicLong();
+  private final AtomicLong myMissCount = new AtomicLong();
+  private final AtomicLong myEvictionCount = new AtomicLong();
+
+  public SampleCache() {
+    this(DEFAULT_BUCKET_NS, DEFAULT_MAX_BYTES);
+  }
+
+  public SampleCache(long bucketNs, long maxBytes) {
+    assert bucketNs > 0 && maxBytes > 0;
+    myBucketNs = bucketNs;
+    myMaxBytes = maxBytes;
+  }
+
+  /**
+   * Creates a series of samples, e.g. the rows of one table, whose timestamps are unique per session.
+   *
+   * @param replaceExisting whether a sample inserted at an existing timestamp replaces the cached one, which must match how the table
+   *                        writes its rows (INSERT OR REPLACE vs INSERT OR IGNORE).
+   */
+  @NotNull
+  public <T> Series<T> createSeries(@NotNull ToLongFunction<T> timestampFunction,
+                                    @NotNull ToIntFunction<T> sizeFunction,
+                                    boolean replaceExisting) {
+    return new Series<>(myNextSeriesId.getAndIncrement(), timestampFunction, sizeFunction, replaceExisting);
+  }
+
+  @NotNull
+  public <T extends MessageLite> Series<T> createProtoSeries(@NotNull ToLongFunction<T> timestampFunction, boolean replaceExisting) {
+    return createSeries(timestampFunction, MessageLite::getSerializedSize, replaceExisting);
+  }
+
+  public long getHitCount() {
+    return myHitCount.get();
+  }
+
+  public long getMissCount() {
+    return myMissCount.get();
+  }
+
+  public long getEvictionCount() {
+    return myEvictionCount.get();
+  }
+
+  public synchronized long getCachedBytes() {
+    return myCachedBytes;
+  }
+
+  public void reportStats(@NotNull LogService.Logger logger) {
+    long hits = getHitCount();
+    long misses = getMissCount();
+    logger.info(String.format("Sample cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d KB cached",
+                              hits, misses, hits + misses == 0 ? 0.0 : 100.0 * hits / (hits + misses), getEvictionCount(),
+                              getCachedBytes() / 1024));
+  }
+
+  @Nullable
+  private synchronized Bucket<?> getBucket(@NotNull BucketKey key) {
+    return myBuckets.get(key);
+  }
+
+  private synchronized void putBucket(@NotNull BucketKey key, @NotNull Bucket<?> bucket) {
+    Bucket<?> previous = myBuckets.put(key, bucket);
+    if (previous != null) {
+      myCachedBytes -= previous.myBytes;
+    }
+    myCachedBytes += bucket.myBytes;
+    evict();
+  }
+
+  private synchronized void addBytes(long bytes) {
+    myCachedBytes += bytes;
+    evict();
+  }
+
+  private void evict() {
+    Iterator<Bucket<?>> iterator = myBuckets.values().iterator();
+    // Always keep the most recently used bucket, even if it is over the budget on its own.
+    while (myCachedBytes > myMaxBytes && myBuckets.size() > 1) {
+      Bucket<?> eldest = iterator.next();
+      iterator.remove();
+      eldest.myEvicted = true;
+      myCachedBytes -= eldest.myBytes;
+      myEvictionCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Cached view of one series of samples.
+   */
+  public final class Series<T> {
+    private final int myId;
+    @NotNull private final ToLongFunction<T> myTimestampFunction;
+    @NotNull private final ToIntFunction<T> mySizeFunction;
+    private final boolean myReplaceExisting;
+    /**
+     * Per session lock, held while a bucket is loaded so a concurrent insert is either part of the loaded rows or written through.
+     */
+    private final Map<Long, Object> mySessionLocks = new ConcurrentHashMap<>();
+
+    private Series(int id, @NotNull ToLongFunction<T> timestampFunction, @NotNull ToIntFunction<T> sizeFunction, boolean replaceExisting) {
+      myId = id;
+      myTimestampFunction = timestampFunction;
+      mySizeFunction = sizeFunction;
+      myReplaceExisting = replaceExisting;
+    }
+
+    /**
+     * Writes a sample through to its bucket, if cached. Must be called after the sample was written to the backing table.
+     */
+    public void insert(long sessionId, @NotNull T sample) {
+      long timestamp = myTimestampFunction.applyAsLong(sample);
+      BucketKey key = new BucketKey(myId, sessionId, Math.floorDiv(timestamp, myBucketNs));
+      synchronized (getSessionLock(sessionId)) {
+        @SuppressWarnings("unchecked")
+        Bucket<T> bucket = (Bucket<T>)getBucket(key);
+        if (bucket == null) {
+          return;
+        }
+        long delta;
+        synchronized (bucket) {
+          delta = bucket.put(timestamp, sample, mySizeFunction, myReplaceExisting);
+        }
+        if (delta != 0) {
+          synchronized (SampleCache.this) {
+            if (!bucket.myEvicted) {
+              addBytes(delta);
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * @return the samples of the session with a timestamp in the range (startTimestamp, endTimestamp], sorted by timestamp.
+     */
+    @NotNull
+    public List<T> getSamples(long sessionId, long startTimestamp, long endTimestamp, @NotNull Loader<T> loader) {
+      if (endTimestamp <= startTimestamp) {
+        return new ArrayList<>();
+      }
+      if (startTimestamp < Long.MIN_VALUE + myBucketNs || endTimestamp > Long.MAX_VALUE - myBucketNs ||
+          Math.floorDiv(endTimestamp, myBucketNs) - Math.floorDiv(startTimestamp + 1, myBucketNs) >= MAX_BUCKETS_PER_QUERY) {
+        myMissCount.incrementAndGet();
+        return loader.load(sessionId, startTimestamp, endTimestamp);
+      }
+
+      List<T> samples = new ArrayList<>();
+      // The start timestamp is exclusive, so the bucket it falls in only needs to be read if it also holds later timestamps.
+      for (long index = Math.floorDiv(startTimestamp + 1, myBucketNs); index <= Math.floorDiv(endTimestamp, myBucketNs); index++) {
+        Bucket<T> bucket = getOrLoadBucket(new BucketKey(myId, sessionId, index), loader);
+        synchronized (bucket) {
+          samples.addAll(bucket.mySamples.subMap(startTimestamp, false, endTimestamp, true).values());
+        }
+      }
+      return samples;
+    }
+
+    /**
+     * Drops the cached buckets of a session, e.g. once its rows were rewritten or deleted from the backing table.
+     */
+    public void invalidate(long sessionId) {
+      synchronized (getSessionLock(sessionId)) {
+        synchronized (SampleCache.this) {
+          Iterator<Map.Entry<BucketKey, Bucket<?>>> iterator = myBuckets.entrySet().iterator();
+          while (iterator.hasNext()) {
+            Map.Entry<BucketKey, Bucket<?>> entry = iterator.next();
+            if (entry.getKey().mySeriesId == myId && entry.getKey().mySessionId == sessionId) {
+              iterator.remove();
+              entry.getValue().myEvicted = true;
+              myCachedBytes -= entry.getValue().myBytes;
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Drops the cached buckets and the lock of a session, once it was deleted from the backing table and won't be queried again.
+     */
+    public void removeSession(long sessionId) {
+      invalidate(sessionId);
+      mySessionLocks.remove(sessionId);
+    }
+
+    @NotNull
+    private Bucket<T> getOrLoadBucket(@NotNull BucketKey key, @NotNull Loader<T> loader) {
+      synchronized (getSessionLock(key.mySessionId)) {
+        @SuppressWarnings("unchecked")
+        Bucket<T> bucket = (Bucket<T>)getBucket(key);
+        if (bucket != null) {
+          myHitCount.incrementAndGet();
+          return bucket;
+        }
+
+        myMissCount.incrementAndGet();
+        long bucketStart = key.myIndex * myBucketNs;
+        bucket = new Bucket<>();
+        // The loader's range is (start, end], so shift it by one to cover [bucketStart, bucketStart + myBucketNs).
+        for (T sample : loader.load(key.mySessionId, bucketStart - 1, bucketStart + myBucketNs - 1)) {
+          bucket.put(myTimestampFunction.applyAsLong(sample), sample, mySizeFunction, myReplaceExisting);
+        }
+        putBucket(key, bucket);
+        return bucket;
+      }
+    }
+
+    @NotNull
+    private Object getSessionLock(long sessionId) {
+      return mySessionLocks.computeIfAbsent(sessionId, id -> new Object());
+    }
+  }
+
+  private static final class Bucket<T> {
+    private final NavigableMap<Long, T> mySamples = new TreeMap<>();
+    private long myBytes;
+    /**
+     * Set once the bucket is dropped from the cache, after which its size no longer counts towards the budget.
+     */
+    private boolean myEvicted;
+
+    /**
+     * @return the change in the estimated size of the bucket.
+     */
+    private long put(long timestamp, @NotNull T sample, @NotNull ToIntFunction<T> sizeFunction, boolean replaceExisting) {
+      T previous = mySamples.get(timestamp);
+      if (previous != null && !replaceExisting) {
+        return 0;
+      }
+      mySamples.put(timestamp, sample);
+      long delta = sizeFunction.applyAsInt(sample) + (previous == null ? SAMPLE_OVERHEAD_BYTES : -sizeFunction.applyAsInt(previous));
+      myBytes += delta;
+      return delta;
+    }
+  }
+
+  private static final class BucketKey {
+    private final int mySeriesId;
+    private final long mySessionId;
+    private final long myIndex;
+
+    private BucketKey(int seriesId, long sessionId, long index) {
+      mySeriesId = seriesId;
+      mySessionId = sessionId;
+      myIndex = index;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof BucketKey)) {
+        return false;
+      }
+      BucketKey other = (BucketKey)o;
+      return mySeriesId == other.mySeriesId && mySessionId == other.mySessionId && myIndex == other.myIndex;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(mySeriesId, mySessionId, myIndex);
+    }
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Multi-resolution rollups of a sample series, kept by the monitor tables so that zoomed out queries are answered with a number of
+ * samples bounded by the width of the charts rather than by the length of the session.
+ * <p>
+ * Samples are rolled up as they are inserted into buckets of 10 seconds, 1 minute and 10 minutes. Each bucket keeps the samples holding
+ * the min and max of every value of the series, so peaks survive the downsampling, and its last sample. For cumulative series such as
+ * {@code CpuUsageData}, which have no values to track, the last samples of consecutive buckets give the average over each bucket.
+ * <p>
+ * Queries spanning less than {@link #RAW_RANGE_NS} are served raw, as are open ended ones. Wider queries are served from the finest
+ * resolution with at most {@link #MAX_BUCKETS_PER_QUERY} buckets in the range.
+ */
+final class SampleRollup<T> {
+  static final long[] RESOLUTIONS_NS = {TimeUnit.SECONDS.toNanos(10), TimeUnit.MINUTES.toNanos(1), TimeUnit.MINUTES.toNanos(10)};
+  static final long RAW_RANGE_NS = TimeUnit.MINUTES.toNanos(10);
+
+  /**
+   * Roughly the width in pixels of a timeline, past which more samples would only be dropped by the chart reducers.
+   */
+  static final int MAX_BUCKETS_PER_QUERY = 1000;
+
+  /**
+   * Replaces the rows of a session with a timestamp in [startTimestamp, endTimestamp) with the given samples.
+   */
+  interface Compactor<T> {
+    void replace(long sessionId, long startTimestamp, long endTimestamp, @NotNull List<T> samples);
+  }
+
+  /**
+   * Most buckets of the finest resolution compacted per session in one call, so compaction happens in small steps.
+   */
+  static final int MAX_BUCKETS_PER_COMPACTION = 360;
+
+  /**
+   * Width of the windows the rows already in the database are loaded in, so that rolling them up never loads a whole session at once.
+   */
+  static final long LOAD_WINDOW_NS = TimeUnit.HOURS.toNanos(1);
+
+  @NotNull private final ToLongFunction<T> myTimestampFunction;
+  @NotNull private final List<ToLongFunction<T>> myValueFunctions;
+  private final Map<Long, SessionRollup> mySessions = new ConcurrentHashMap<>();
+
+  /**
+   * @param timestampFunction the timestamp the samples are queried by
+   * @param valueFunctions    the values whose min and max are kept per bucket, empty for cumulative series
+   */
+  SampleRollup(@NotNull ToLongFunction<T> timestampFunction, @NotNull List<ToLongFunction<T>> valueFunctions) {
+    myTimestampFunction = timestampFunction;
+    myValueFunctions = valueFunctions;
+  }
+
+  void insert(long sessionId, @NotNull T sample) {
+    getSessionRollup(sessionId).insert(sample);
+  }
+
+  /**
+   * @param loader the raw samples of the table, used for narrow queries and to roll up the rows already in the database, e.g. for
+   *               databases reopened from disk, one {@link #LOAD_WINDOW_NS} window at a time the first time a wide query covers it
+   * @return the samples in the range (startTimestamp, endTimestamp], raw or downsampled depending on its width, sorted by timestamp
+   */
+  @NotNull
+  List<T> getSamples(long sessionId, long startTimestamp, long endTimestamp, @NotNull SampleCache.Loader<T> loader) {
+    if (startTimestamp == Long.MIN_VALUE || endTimestamp == Long.MAX_VALUE || endTimestamp - startTimestamp <= RAW_RANGE_NS) {
+      return loader.load(sessionId, startTimestamp, endTimestamp);
+    }
+
+    SessionRollup rollup = getSessionRollup(sessionId);
+    rollup.load(sessionId, startTimestamp + 1, endTimestamp, loader);
+    return rollup.getSamples(startTimestamp, endTimestamp, loader, sessionId);
+  }
+
+  /**
+   * Drops the raw samples of each session older than {@code ageNs} before its latest sample, keeping only the samples the finest
+   * resolution keeps. Samples already compacted stay as they are, so queries of old ranges return sparser samples from then on.
+   * Only the samples from the earliest one rolled up so far are compacted, so the rows of a previous run before it are kept raw.
+   */
+  void compact(long ageNs, @NotNull SampleCache.Loader<T> loader, @NotNull Compactor<T> compactor) {
+    mySessions.forEach((sessionId, rollup) -> rollup.compact(sessionId, ageNs, loader, compactor));
+  }
+
+  void removeSession(long sessionId) {
+    mySessions.remove(sessionId);
+  }
+
+  /**
+   * @return the index in {@link #RESOLUTIONS_NS} to serve a query spanning the given range from, or -1 if it should be served raw.
+   */
+  static int getResolution(long rangeNs) {
+    if (rangeNs <= RAW_RANGE_NS) {
+      return -1;
+    }
+    for (int i = 0; i < RESOLUTIONS_NS.length; i++) {
+      if (rangeNs / RESOLUTIONS_NS[i] <= MAX_BUCKETS_PER_QUERY) {
+        return i;
+      }
+    }
+    return RESOLUTIONS_NS.length - 1;
+  }
+
+  @NotNull
+  private SessionRollup getSessionRollup(long sessionId) {
+    return mySessions.computeIfAbsent(sessionId, id -> new SessionRollup());
+  }
+
+  private final class SessionRollup {
+    /**
+     * Indices of the {@link #LOAD_WINDOW_NS} windows whose rows already in the database were rolled up. Guarded by {@code this}.
+     */
+    private final TreeSet<Long> myLoadedWindows = new TreeSet<>();
+
+    /**
+     * Buckets by index, for each resolution. Guarded by {@code this}.
+     */
+    private final List<TreeMap<Long, Bucket>> myLevels = new ArrayList<>();
+    private long myMinTimestamp = Long.MAX_VALUE;
+    private long myMaxTimestamp = Long.MIN_VALUE;
+    /**
+     * Index of the first bucket of the finest resolution whose raw samples were not compacted yet.
+     */
+    private long myCompactedBucket = Long.MIN_VALUE;
+
+    private SessionRollup() {
+      for (int i = 0; i < RESOLUTIONS_NS.length; i++) {
+        myLevels.add(new TreeMap<>());
+      }
+    }
+
+    private synchronized void insert(@NotNull T sample) {
+      long timestamp = myTimestampFunction.applyAsLong(sample);
+      myMinTimestamp = Math.min(myMinTimestamp, timestamp);
+      myMaxTimestamp = Math.max(myMaxTimestamp, timestamp);
+      for (int i = 0; i < RESOLUTIONS_NS.length; i++) {
+        myLevels.get(i).computeIfAbsent(Math.floorDiv(timestamp, RESOLUTIONS_NS[i]), index -> new Bucket()).add(timestamp, sample);
+      }
+    }
+
+    /**
+     * Rolls up the rows already in the database with a timestamp in [startTimestamp, endTimestamp], in the windows not loaded yet.
+     */
+    private synchronized void load(long sessionId, long startTimestamp, long endTimestamp, @NotNull SampleCache.Loader<T> loader) {
+      for (long window = Math.floorDiv(startTimestamp, LOAD_WINDOW_NS); window <= Math.floorDiv(endTimestamp, LOAD_WINDOW_NS); window++) {
+        if (myLoadedWindows.add(window)) {
+          // Rows inserted since the table was created are rolled up again, which is harmless.
+          for (T sample : loader.load(sessionId, window * LOAD_WINDOW_NS - 1, (window + 1) * LOAD_WINDOW_NS - 1)) {
+            insert(sample);
+          }
+        }
+      }
+    }
+
+    private synchronized void compact(long sessionId, long ageNs, @NotNull SampleCache.Loader<T> loader, @NotNull Compactor<T> compactor) {
+      if (myMaxTimestamp == Long.MIN_VALUE) {
+        return;
+      }
+      long resolution = RESOLUTIONS_NS[0];
+      // Only buckets entirely older than the cutoff, the others may still get raw samples.
+      long cutoffBucket = Math.floorDiv(myMaxTimestamp - ageNs, resolution);
+      long firstBucket = Math.max(myCompactedBucket, Math.floorDiv(myMinTimestamp, resolution));
+      long endBucket = Math.min(cutoffBucket, firstBucket + MAX_BUCKETS_PER_COMPACTION);
+      if (firstBucket >= endBucket) {
+        return;
+      }
+      // Rows of a previous run would otherwise be dropped without having been rolled up.
+      load(sessionId, firstBucket * resolution, endBucket * resolution - 1, loader);
+
+      List<T> samples = new ArrayList<>();
+      for (Bucket bucket : myLevels.get(0).subMap(firstBucket, true, endBucket, false).values()) {
+        bucket.collect(Long.MIN_VALUE, Long.MAX_VALUE, samples);
+      }
+      if (!samples.isEmpty()) {
+        compactor.replace(sessionId, firstBucket * resolution, endBucket * resolution, samples);
+      }
+      myCompactedBucket = endBucket;
+    }
+
+    @NotNull
+    private List<T> getSamples(long startTimestamp, long endTimestamp, @NotNull SampleCache.Loader<T> loader, long sessionId) {
+      int level;
+      synchronized (this) {
+        // Only the part of the range with data counts, so a query past the end of a short session is still served raw.
+        level = getResolution(Math.min(endTimestamp, myMaxTimestamp) - Math.max(startTimestamp, myMinTimestamp));
+      }
+      if (level < 0) {
+        return loader.load(sessionId, startTimestamp, endTimestamp);
+      }
+
+      List<T> samples = new ArrayList<>();
+      synchronized (this) {
+        long resolution = RESOLUTIONS_NS[level];
+        // The bucket holding startTimestamp itself may hold samples in the range, the one holding endTimestamp always does.
+        for (Bucket bucket : myLevels.get(level).subMap(Math.floorDiv(startTimestamp, resolution), true,
+                                                        Math.floorDiv(endTimestamp, resolution), true).values()) {
+          bucket.collect(startTimestamp, endTimestamp, samples);
+        }
+      }
+      return samples;
+    }
+  }
+
+  private final class Bucket {
+    private final long[] myMinValues;
+    private final long[] myMaxValues;
+    private final Object[] myMinSamples;
+    private final Object[] myMaxSamples;
+    @Nullable private T myLastSample;
+    private long myLastTimestamp = Long.MIN_VALUE;
+
+    private Bucket() {
+      int count = myValueFunctions.size();
+      myMinValues = new long[count];
+      myMaxValues = new long[count];
+      Arrays.fill(myMinValues, Long.MAX_VALUE);
+      Arrays.fill(myMaxValues, Long.MIN_VALUE);
+      myMinSamples = new Object[count];
+      myMaxSamples = new Object[count];
+    }
+
+    /**
+     * Adds a sample to the bucket. Samples already in the bucket win ties, so rolling up the same rows twice is harmless.
+     */
+    private void add(long timestamp, @NotNull T sample) {
+      if (timestamp > myLastTimestamp) {
+        myLastTimestamp = timestamp;
+        myLastSample = sample;
+      }
+      for (int i = 0; i < myMinValues.length; i++) {
+        long value = myValueFunctions.get(i).applyAsLong(sample);
+        if (value < myMinValues[i]) {
+          myMinValues[i] = value;
+          myMinSamples[i] = sample;
+        }
+        if (value > myMaxValues[i]) {
+          myMaxValues[i] = value;
+          myMaxSamples[i] = sample;
+        }
+      }
+    }
+
+    /**
+     * Adds the distinct samples of the bucket within (startTimestamp, endTimestamp] to the list, sorted by timestamp.
+     */
+    @SuppressWarnings("unchecked")
+    private void collect(long startTimestamp, long endTimestamp, @NotNull List<T> samples) {
+      int first = samples.size();
+      for (int i = 0; i < myMinSamples.length; i++) {
+        collect((T)myMinSamples[i], startTimestamp, endTimestamp, samples, first);
+        collect((T)myMaxSamples[i], startTimestamp, endTimestamp, samples, first);
+      }
+      collect(myLastSample, startTimestamp, endTimestamp, samples, first);
+      Collections.sort(samples.subList(first, samples.size()),
+                       (a, b) -> Long.compare(myTimestampFunction.applyAsLong(a), myTimestampFunction.applyAsLong(b)));
+    }
+
+    private void collect(@Nullable T sample, long startTimestamp, long endTimestamp, @NotNull List<T> samples, int first) {
+      if (sample == null) {
+        return;
+      }
+      long timestamp = myTimestampFunction.applyAsLong(sample);
+      if (timestamp <= startTimestamp || timestamp > endTimestamp) {
+        return;
+      }
+      for (int i = first; i < samples.size(); i++) {
+        if (samples.get(i) == sample) {
+          return;
+        }
+      }
+      samples.add(sample);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Storage engine for timestamped samples (e.g. cpu usage, memory or network speed data) that a {@link DataStoreTable} can delegate to
+ * instead of storing each sample as its own BLOB row.
+ *
+ * @param <T> type of the samples stored
+ */
+public interface SampleStore<T> {
+  /**
+   * System property used to switch the monitor tables over to {@link ColumnarSampleStore}.
+   */
+  String COLUMNAR_ENGINE_PROPERTY = "profiler.datastore.columnar.samples";
+
+  enum Engine {
+    /**
+     * Samples are stored as protobuf BLOB rows in the table's own SQLite tables.
+     */
+    SQLITE,
+    /**
+     * Samples are stored in append-only, time-partitioned column chunks. See {@link ColumnarSampleStore}.
+     */
+    COLUMNAR;
+
+    @NotNull
+    public static Engine getDefault() {
+      return Boolean.getBoolean(COLUMNAR_ENGINE_PROPERTY) ? COLUMNAR : SQLITE;
+    }
+  }
+
+  /**
+   * Adds a sample to the store. If {@code timestamp} is already present for the session, the sample either replaces or is ignored
+   * depending on how the store was configured.
+   */
+  void insert(long sessionId, long timestamp, @NotNull T sample);
+
+  /**
+   * @return all samples of the session with a timestamp in the range (startTimestamp, endTimestamp], sorted by timestamp.
+   */
+  @NotNull
+  List<T> getSamples(long sessionId, long startTimestamp, long endTimestamp);
+
+  /**
+   * Drops all the samples of the session, e.g. once it was deleted from the database.
+   */
+  void removeSession(long sessionId);
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.profiler.proto.CpuProfiler.GetThreadsResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory index of the thread states of one session, kept by {@link CpuTable} alongside the Thread_Activities table so the states of
+ * all the threads in a range are answered in one pass over sorted arrays, instead of one query per thread.
+ * <p>
+ * The states of each thread are kept sorted by timestamp in primitive arrays. Writers append under the thread's lock and publish the new
+ * size through a volatile reference, so readers never block on the pollers.
+ */
+final class ThreadStateIndex {
+  private static final GetThreadsResponse.State[] STATES = GetThreadsResponse.State.values();
+
+  /**
+   * Thread states by tid, sorted so the threads are returned in tid order.
+   */
+  private final ConcurrentSkipListMap<Integer, ThreadStates> myThreads = new ConcurrentSkipListMap<>();
+
+  /**
+   * Whether the rows already in the database were added, e.g. for sessions of a database reopened from disk.
+   */
+  private volatile boolean myLoaded;
+
+  boolean isLoaded() {
+    return myLoaded;
+  }
+
+  void setLoaded() {
+    myLoaded = true;
+  }
+
+  int getThreadCount() {
+    return myThreads.size();
+  }
+
+  /**
+   * Adds the state of a thread, replacing the one at the same timestamp if any, the same as the INSERT OR REPLACE of the table.
+   */
+  void add(int tid, @NotNull String name, long timestamp, @NotNull GetThreadsResponse.State state) {
+    getThreadStates(tid).put(timestamp, state, name, true);
+  }
+
+  /**
+   * Adds the state of a thread, unless there already is one at the same timestamp. Used to merge rows loaded from the database, which
+   * may be older than the ones added since.
+   */
+  void addIfAbsent(int tid, @NotNull String name, long timestamp, @NotNull GetThreadsResponse.State state) {
+    getThreadStates(tid).put(timestamp, state, name, false);
+  }
+
+  /**
+   * @return the threads with a state in the range, in tid order. Each thread starts with its state at {@code startTimestamp} (reported at
+   * that timestamp, unless the thread was dead by then), followed by its state changes in (startTimestamp, endTimestamp].
+   */
+  @NotNull
+  List<GetThreadsResponse.Thread> getThreads(long startTimestamp, long endTimestamp) {
+    List<GetThreadsResponse.Thread> threads = new ArrayList<>();
+    myThreads.forEach((tid, states) -> {
+      GetThreadsResponse.Thread thread = states.getThread(tid, startTimestamp, endTimestamp);
+      if (thread != null) {
+        threads.add(thread);
+      }
+    });
+    return threads;
+  }
+
+  @NotNull
+  private ThreadStates getThreadStates(int tid) {
+    return myThreads.computeIfAbsent(tid, id -> new ThreadStates());
+  }
+
+  private static final class ThreadStates {
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Published view of the arrays. Entries past its size may be written by the next append, but are never read through it.
+     */
+    private volatile Snapshot mySnapshot =
+      new Snapshot(new long[INITIAL_CAPACITY], new byte[INITIAL_CAPACITY], new String[INITIAL_CAPACITY], 0);
+
+    private synchronized void put(long timestamp, @NotNull GetThreadsResponse.State state, @NotNull String name, boolean replace) {
+      Snapshot current = mySnapshot;
+      int size = current.mySize;
+      long[] timestamps = current.myTimestamps;
+      byte[] states = current.myStates;
+      String[] names = current.myNames;
+
+      int index;
+      if (size == 0 || timestamp > timestamps[size - 1]) {
+        // The common case, states come in time order.
+        index = size;
+      }
+      else {
+        index = Arrays.binarySearch(timestamps, 0, size, timestamp);
+        if (index >= 0) {
+          if (!replace) {
+            return;
+          }
+          // Readers may be looking at this entry, so update a copy.
+          timestamps = timestamps.clone();
+          states = states.clone();
+          names = names.clone();
+          states[index] = (byte)state.ordinal();
+          names[index] = name;
+          mySnapshot = new Snapshot(timestamps, states, names, size);
+          return;
+        }
+        index = -index - 1;
+      }
+
+      if (index < size || size == timestamps.length) {
+        int capacity = size == timestamps.length ? timestamps.length * 2 : timestamps.length;
+        long[] newTimestamps = new long[capacity];
+        byte[] newStates = new byte[capacity];
+        String[] newNames = new String[capacity];
+        System.arraycopy(timestamps, 0, newTimestamps, 0, index);
+        System.arraycopy(states, 0, newStates, 0, index);
+        System.arraycopy(names, 0, newNames, 0, index);
+        System.arraycopy(timestamps, index, newTimestamps, index + 1, size - index);
+        System.arraycopy(states, index, newStates, index + 1, size - index);
+        System.arraycopy(names, index, newNames, index + 1, size - index);
+        timestamps = newTimestamps;
+        states = newStates;
+        names = newNames;
+      }
+      timestamps[index] = timestamp;
+      states[index] = (byte)state.ordinal();
+      names[index] = name;
+      mySnapshot = new Snapshot(timestamps, states, names, size + 1);
+    }
+
+    @Nullable
+    private GetThreadsResponse.Thread getThread(int tid, long startTimestamp, long endTimestamp) {
+      Snapshot snapshot = mySnapshot;
+      long[] timestamps = snapshot.myTimestamps;
+      int size = snapshot.mySize;
+
+      // Index of the first state after the start timestamp.
+      int index = Arrays.binarySearch(timestamps, 0, size, startTimestamp);
+      index = index >= 0 ? index + 1 : -index - 1;
+
+      GetThreadsResponse.Thread.Builder builder = null;
+      if (index > 0 && STATES[snapshot.myStates[index - 1]] != GetThreadsResponse.State.DEAD) {
+        builder = GetThreadsResponse.Thread.newBuilder().setTid(tid).setName(snapshot.myNames[index - 1]);
+        builder.addActivities(GetThreadsResponse.ThreadActivity
+                                .newBuilder().setNewState(STATES[snapshot.myStates[index - 1]]).setTimestamp(startTimestamp));
+      }
+      for (; index < size && timestamps[index] <= endTimestamp; index++) {
+        if (builder == null) {
+          builder = GetThreadsResponse.Thread.newBuilder().setTid(tid).setName(snapshot.myNames[index]);
+        }
+        builder.addActivities(GetThreadsResponse.ThreadActivity
+                                .newBuilder().setNewState(STATES[snapshot.myStates[index]]).setTimestamp(timestamps[index]));
+      }
+      return builder == null ? null : builder.build();
+    }
+  }
+
+  private static final class Snapshot {
+    @NotNull private final long[] myTimestamps;
+    @NotNull private final byte[] myStates;
+    @NotNull private final String[] myNames;
+    private final int mySize;
+
+    private Snapshot(@NotNull long[] timestamps, @NotNull byte[] states, @NotNull String[] names, int size) {
+      myTimestamps = timestamps;
+      myStates = states;
+      myNames = names;
+      mySize = size;
+    }
+  }
+}
@@ -182,15 +182,23 @@ public final class BatteryModel {
     return samples;
   }
 
+  /**
+   * @return the index of the last sample at or before {@code timestampNs}, or 0 if there is none. Samples are sorted by timestamp, and
+   * unique per timestamp, so this is a binary search.
+   */
   private int getSampleIndexFor(long timestampNs) {
-    for (int i = mySparseSamples.size() - 1; i >= 0; i--) {
-      EnergySample sample = mySparseSamples.get(i);
-      if (sample.getTimestamp() <= timestampNs) {
-        // TODO (b/73486903): How slow is this? Replace with binary search?
-        return i;
+    int low = 0;
+    int high = mySparseSamples.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (mySparseSamples.get(middle).getTimestamp() <= timestampNs) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
       }
     }
-    return 0;
+    return Math.max(0, low - 1);
   }
 
   private void addNewCpuSample(long timestampNs) {
@@ -69,7 +69,7 @@ public final class EnergyDataPoller extends PollRunner {
                           @NotNull NetworkServiceGrpc.NetworkServiceBlockingStub networkService,
                           @NotNull EnergyServiceGrpc.EnergyServiceBlockingStub energyService,
                           @NotNull LogService logService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, MAX_POLLING_DELAY_NS);
     myBatteryModel = batteryModel;
     myEnergyTable = eventTable;
     myProfilerService = profilerService;
@@ -116,7 +116,11 @@ public final class EnergyDataPoller extends PollRunner {
   }
 
   private void addLatestEvents(@NotNull EnergyProfiler.EnergyRequest request) {
-    for (EnergyProfiler.EnergyEvent event : myEnergyService.getEvents(request).getEventsList()) {
+    EnergyProfiler.EnergyEventsResponse response = myEnergyService.getEvents(request);
+    if (response.getEventsCount() > 0) {
+      markDataReceived();
+    }
+    for (EnergyProfiler.EnergyEvent event : response.getEventsList()) {
       // Location-related events.
       if (event.hasLocationUpdateRequested()) {
         myBatteryModel.handleEvent(
@@ -153,6 +157,9 @@ public final class EnergyDataPoller extends PollRunner {
           .setEndTimestamp(request.getEndTimestamp()).setType(NetworkProfiler.NetworkDataRequest.Type.ALL).build();
 
       NetworkProfiler.NetworkDataResponse networkDataResponse = myNetworkService.getData(networkDataRequest);
+      if (networkDataResponse.getDataCount() > 0) {
+        markDataReceived();
+      }
       for (NetworkProfiler.NetworkProfilerData networkData : networkDataResponse.getDataList()) {
         switch (networkData.getDataCase()) {
           case CONNECTIVITY_DATA:
@@ -194,6 +201,8 @@ public final class EnergyDataPoller extends PollRunner {
       CpuProfiler.CpuDataRequest cpuDataRequest =
         CpuProfiler.CpuDataRequest.newBuilder().setSession(request.getSession()).setStartTimestamp(request.getStartTimestamp())
                                   .setEndTimestamp(request.getEndTimestamp()).build();
+      // Unlike events and network data, CPU usage doesn't keep the poller at its shortest period, as it's sampled as long as the app runs.
+      // Backing off only batches the samples derived from it, since each poll covers the whole range since the previous one.
       CpuProfiler.CpuDataResponse cpuDataResponse = myCpuService.getData(cpuDataRequest);
       CpuProfiler.CpuUsageData prevUsageData = myLastData;
 
@@ -202,11 +211,17 @@ public final class EnergyDataPoller extends PollRunner {
           prevUsageData = currUsageData;
           continue;
         }
+        if (currUsageData.getEndTimestamp() <= prevUsageData.getEndTimestamp()) {
+          // Already handled by the previous poll, at the bound of its range.
+          continue;
+        }
 
         myBatteryModel.handleEvent(currUsageData.getEndTimestamp(), BatteryModel.Event.CPU_USAGE,
                                    myCpuConfig.getCpuCoreUsages(prevUsageData, currUsageData));
         prevUsageData = currUsageData;
       }
+      // Kept for the next poll, so that the usage between the last sample of this poll and the first of the next one isn't lost.
+      myLastData = prevUsageData;
     }
 
     for (EnergyProfiler.EnergySample sample : myBatteryModel.getSamplesBetween(request.getStartTimestamp(), request.getEndTimestamp())) {
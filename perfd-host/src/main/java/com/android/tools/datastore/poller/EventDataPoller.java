@@ -36,7 +36,7 @@ public class EventDataPoller extends PollRunner {
   public EventDataPoller(@NotNull Common.Session session,
                          @NotNull EventsTable eventTable,
                          @NotNull EventServiceGrpc.EventServiceBlockingStub pollingService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, MAX_POLLING_DELAY_NS);
     myEventsTable = eventTable;
     myEventPollingService = pollingService;
     mySession = session;
@@ -79,6 +79,9 @@ public class EventDataPoller extends PollRunner {
     // Poll for system event data. If we have a duplicate event then we replace it with the incomming one.
     // we replace the event as the event information may have changed, eg now it has an uptime where previously it didn't
     SystemDataResponse systemResponse = myEventPollingService.getSystemData(dataRequestBuilder.build());
+    if (activityResponse.getDataCount() > 0 || systemResponse.getDataCount() > 0) {
+      markDataReceived();
+    }
     for (SystemData data : systemResponse.getDataList()) {
       long id = data.getEventId();
       myEventsTable.insertOrReplace(id, mySession, data);
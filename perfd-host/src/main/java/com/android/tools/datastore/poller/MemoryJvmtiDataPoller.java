@@ -39,6 +39,12 @@ public class MemoryJvmtiDataPoller extends PollRunner {
     myPollingService = pollingService;
   }
 
+  @Override
+  public boolean isBlocking() {
+    // A poll fetches and inserts all the allocation events since the last one, which can be many while tracking all allocations.
+    return true;
+  }
+
   @Override
   public void poll() {
     MemoryRequest.Builder dataRequestBuilder = MemoryRequest
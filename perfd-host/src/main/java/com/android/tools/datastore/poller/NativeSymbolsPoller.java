@@ -30,7 +30,10 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class NativeSymbolsPoller extends PollRunner {
   private static final int MAX_SYMBOLS_PER_REQUEST = 1000;
@@ -62,6 +65,12 @@ public class NativeSymbolsPoller extends PollRunner {
     myLogService = logService;
   }
 
+  @Override
+  public boolean isBlocking() {
+    // Symbolizing waits on the symbolizer process, which can take seconds for a module it hasn't loaded yet.
+    return true;
+  }
+
   @Override
   public void poll() {
     if (mySymbolizer instanceof NopSymbolizer) {
@@ -80,10 +89,11 @@ public class NativeSymbolsPoller extends PollRunner {
       myLiveAllocationTable.queryNotsymbolizedNativeFrames(mySession, MAX_SYMBOLS_PER_REQUEST);
     ArrayList<NativeCallStack.NativeFrame> symbolizedFrames = new ArrayList<>(framesToSymbolize.size());
 
-    for (NativeCallStack.NativeFrame frame : framesToSymbolize) {
-      NativeCallStack.NativeFrame symbolizedFrame = symbolize(frame);
-      symbolizedFrames.add(symbolizedFrame);
-    }
+    // The frames of a module are symbolized together, so that the symbolizer can look up their offsets in batches.
+    Map<String, List<NativeCallStack.NativeFrame>> framesByModule =
+      framesToSymbolize.stream().collect(Collectors.groupingBy(NativeCallStack.NativeFrame::getModuleName, LinkedHashMap::new,
+                                                               Collectors.toList()));
+    framesByModule.forEach((module, frames) -> symbolizedFrames.addAll(symbolize(module, frames)));
 
     if (!symbolizedFrames.isEmpty()) {
       myLiveAllocationTable.updateSymbolizedNativeFrames(mySession, symbolizedFrames);
@@ -103,18 +113,28 @@ public class NativeSymbolsPoller extends PollRunner {
   }
 
   @NotNull
-  private NativeCallStack.NativeFrame symbolize(NativeCallStack.NativeFrame frame) {
-    long offset = frame.getModuleOffset();
-    Symbol symbol = null;
+  private List<NativeCallStack.NativeFrame> symbolize(@NotNull String module, @NotNull List<NativeCallStack.NativeFrame> frames) {
+    List<Long> prevInstructionOffsets =
+      frames.stream().map(frame -> getOffsetOfPreviousInstruction(frame.getModuleOffset())).collect(Collectors.toList());
+    List<Symbol> symbols = null;
     try {
-      long prevInstructionOffset = getOffsetOfPreviousInstruction(offset);
-      symbol = mySymbolizer.symbolize(myProcess.getAbiCpuArch(), frame.getModuleName(), prevInstructionOffset);
+      symbols = mySymbolizer.symbolize(myProcess.getAbiCpuArch(), module, prevInstructionOffsets);
     }
     catch (IOException | RuntimeException e) {
       getLogger().warn(e);
     }
+
+    List<NativeCallStack.NativeFrame> symbolizedFrames = new ArrayList<>(frames.size());
+    for (int i = 0; i < frames.size(); i++) {
+      symbolizedFrames.add(symbolize(frames.get(i), symbols == null ? null : symbols.get(i)));
+    }
+    return symbolizedFrames;
+  }
+
+  @NotNull
+  private static NativeCallStack.NativeFrame symbolize(@NotNull NativeCallStack.NativeFrame frame, @Nullable Symbol symbol) {
     if (symbol == null) {
-      String unfoundSymbolName = String.format("0x%x", offset);
+      String unfoundSymbolName = String.format("0x%x", frame.getModuleOffset());
       return frame.toBuilder().setSymbolName(unfoundSymbolName).build();
     }
     return frame.toBuilder().setSymbolName(symbol.getName())
@@ -123,7 +143,7 @@ public class NativeSymbolsPoller extends PollRunner {
                 .setLineNumber(symbol.getLineNumber()).build();
   }
 
-  private long getOffsetOfPreviousInstruction(long offset) {
+  private static long getOffsetOfPreviousInstruction(long offset) {
     // In non-bottom frames native backtrace contains addresses where the execution will
     // continue after a function call. After symbolization such addresses often resolved
     // to the source line immediately following the function call.
@@ -24,22 +24,54 @@ import java.util.concurrent.TimeUnit;
 /**
  * A {@link RunnableFuture} which, while running, triggers a callback at a specified period
  * (which can be used to poll a target service at some frequency).
+ * <p>
+ * A runner can either be run on its own thread, in which case it sleeps between polls, or be handed to a {@link PollScheduler} which
+ * multiplexes many runners over a small thread pool.
+ * <p>
+ * Runners created with a max poll period larger than their poll period are adaptive: every poll which does not report new data through
+ * {@link #markDataReceived()} doubles the period, up to the max, and a poll that does report data resets it back to the poll period.
  */
 public abstract class PollRunner implements RunnableFuture<Void> {
 
   public static final long POLLING_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(250);
 
-  private long myPollPeriodNs;
+  /**
+   * Upper bound of the period pollers back off to when the device has no new data for them.
+   */
+  public static final long MAX_POLLING_DELAY_NS = TimeUnit.SECONDS.toNanos(1);
 
-  private boolean myIsRunning = false;
+  private final long myPollPeriodNs;
+
+  private final long myMaxPollPeriodNs;
+
+  private long myCurrentPollPeriodNs;
+
+  private boolean myHasNewData = false;
+
+  private volatile boolean myIsRunning = false;
 
   private CountDownLatch myRunning = new CountDownLatch(1);
 
   private CountDownLatch myIsDone = new CountDownLatch(1);
 
+  /**
+   * Guards the poll currently executed by a {@link PollScheduler}, so a cancelled runner is only done once that poll returns.
+   */
+  private final Object myTickLock = new Object();
+
+  private boolean myIsScheduled = false;
+
+  private boolean myIsTicking = false;
 
   public PollRunner(long pollPeriodNs) {
+    this(pollPeriodNs, pollPeriodNs);
+  }
+
+  public PollRunner(long pollPeriodNs, long maxPollPeriodNs) {
+    assert maxPollPeriodNs >= pollPeriodNs;
     myPollPeriodNs = pollPeriodNs;
+    myMaxPollPeriodNs = maxPollPeriodNs;
+    myCurrentPollPeriodNs = pollPeriodNs;
   }
 
   public void stop() {
@@ -59,7 +91,8 @@ public abstract class PollRunner implements RunnableFuture<Void> {
       while (myRunning.getCount() > 0) {
         long startTimeNs = System.nanoTime();
         poll();
-        long sleepTime = Math.max(myPollPeriodNs - (System.nanoTime() - startTimeNs), 0L);
+        updatePollPeriod();
+        long sleepTime = Math.max(myCurrentPollPeriodNs - (System.nanoTime() - startTimeNs), 0L);
         myRunning.await(sleepTime, TimeUnit.NANOSECONDS);
       }
     }
@@ -71,11 +104,87 @@ public abstract class PollRunner implements RunnableFuture<Void> {
     }
   }
 
+  /**
+   * Runs a single poll on behalf of a {@link PollScheduler}.
+   *
+   * @return the delay in nanoseconds until the next poll, or -1 if the runner should not be scheduled again.
+   */
+  long tick() {
+    synchronized (myTickLock) {
+      myIsScheduled = true;
+      myIsRunning = true;
+      if (isCancelled()) {
+        myIsDone.countDown();
+        return -1;
+      }
+      myIsTicking = true;
+    }
+
+    long startTimeNs = System.nanoTime();
+    boolean failed = true;
+    try {
+      poll();
+      updatePollPeriod();
+      failed = false;
+    }
+    catch (StatusRuntimeException ignored) {
+      // Same as when running on a dedicated thread: the connection to the device is gone, stop polling.
+    }
+    finally {
+      synchronized (myTickLock) {
+        myIsTicking = false;
+        if (failed || isCancelled()) {
+          myRunning.countDown();
+          myIsDone.countDown();
+        }
+      }
+    }
+    return myIsDone.getCount() == 0 ? -1 : Math.max(myCurrentPollPeriodNs - (System.nanoTime() - startTimeNs), 0L);
+  }
+
   public abstract void poll();
 
+  /**
+   * @return whether a poll may block for long, e.g. waiting on a local process or on large transfers, in which case a
+   * {@link PollScheduler} runs it apart from the other runners.
+   */
+  public boolean isBlocking() {
+    return false;
+  }
+
+  /**
+   * Notifies the runner that the current poll received new data, which keeps an adaptive runner polling at its shortest period.
+   */
+  protected void markDataReceived() {
+    myHasNewData = true;
+  }
+
+  /**
+   * @return the period the runner currently waits between the start of two polls.
+   */
+  public long getCurrentPollPeriodNs() {
+    return myCurrentPollPeriodNs;
+  }
+
+  private void updatePollPeriod() {
+    if (myHasNewData) {
+      myCurrentPollPeriodNs = myPollPeriodNs;
+    }
+    else {
+      myCurrentPollPeriodNs = Math.min(myCurrentPollPeriodNs * 2, myMaxPollPeriodNs);
+    }
+    myHasNewData = false;
+  }
+
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
     myRunning.countDown();
+    synchronized (myTickLock) {
+      // A scheduled runner waiting for its next poll has nothing left to finish.
+      if (myIsScheduled && !myIsTicking) {
+        myIsDone.countDown();
+      }
+    }
     return true;
   }
 
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A fetch executor which multiplexes all {@link PollRunner}s over a small shared pool instead of dedicating a sleeping thread to each of
+ * them. Every poll is scheduled as its own task, after the delay requested by the runner, so adaptive runners that back off also wake the
+ * pool up less often.
+ * <p>
+ * Runners whose polls may block for long (see {@link PollRunner#isBlocking()}) are scheduled on a pool of their own, so that they don't
+ * delay the polls of the others, which the profilers expect to bring in data within a few seconds.
+ * <p>
+ * Any other {@link Runnable} (e.g. one-off fetches of large dumps) is handed to the fallback executor so it cannot stall the pollers.
+ */
+public class PollScheduler implements Consumer<Runnable> {
+  public static final int DEFAULT_POOL_SIZE = 4;
+  public static final int DEFAULT_BLOCKING_POOL_SIZE = 2;
+
+  @NotNull private final Consumer<Runnable> myFallbackExecutor;
+  @NotNull private final ScheduledExecutorService myExecutor;
+  @NotNull private final ScheduledExecutorService myBlockingExecutor;
+  private final Set<PollRunner> myRunners = ConcurrentHashMap.newKeySet();
+
+  public PollScheduler(@NotNull Consumer<Runnable> fallbackExecutor) {
+    this(fallbackExecutor, DEFAULT_POOL_SIZE, DEFAULT_BLOCKING_POOL_SIZE);
+  }
+
+  public PollScheduler(@NotNull Consumer<Runnable> fallbackExecutor, int poolSize, int blockingPoolSize) {
+    myFallbackExecutor = fallbackExecutor;
+    myExecutor = createExecutor("PollScheduler-", poolSize);
+    myBlockingExecutor = createExecutor("PollScheduler-Blocking-", blockingPoolSize);
+  }
+
+  @NotNull
+  private static ScheduledExecutorService createExecutor(@NotNull String threadNamePrefix, int poolSize) {
+    AtomicInteger threadCount = new AtomicInteger();
+    return Executors.newScheduledThreadPool(poolSize, runnable -> {
+      Thread thread = new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public void accept(@NotNull Runnable runnable) {
+    if (runnable instanceof PollRunner) {
+      myRunners.add((PollRunner)runnable);
+      schedule((PollRunner)runnable, 0);
+    }
+    else {
+      myFallbackExecutor.accept(runnable);
+    }
+  }
+
+  /**
+   * Stops running polls. Runners still registered are cancelled so anyone waiting on them is released.
+   */
+  public void shutdown() {
+    myExecutor.shutdownNow();
+    myBlockingExecutor.shutdownNow();
+    myRunners.forEach(runner -> runner.cancel(true));
+    myRunners.clear();
+  }
+
+  /**
+   * @return the number of runners currently polling.
+   */
+  public int getRunnerCount() {
+    return myRunners.size();
+  }
+
+  private void schedule(@NotNull PollRunner runner, long delayNs) {
+    try {
+      (runner.isBlocking() ? myBlockingExecutor : myExecutor).schedule(new PollTask(runner), delayNs, TimeUnit.NANOSECONDS);
+    }
+    catch (RejectedExecutionException ignored) {
+      myRunners.remove(runner);
+      runner.cancel(true);
+    }
+  }
+
+  private final class PollTask implements Runnable {
+    @NotNull private final PollRunner myRunner;
+
+    private PollTask(@NotNull PollRunner runner) {
+      myRunner = runner;
+    }
+
+    @Override
+    public void run() {
+      long delayNs = -1;
+      try {
+        delayNs = myRunner.tick();
+      }
+      finally {
+        if (delayNs >= 0) {
+          schedule(myRunner, delayNs);
+        }
+        else {
+          myRunners.remove(myRunner);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.profiler.proto.CpuProfiler.CpuUsageData;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.Test;
+
+public class ColumnarSampleStoreTest {
+  private static final long SESSION_ID = 1;
+  private static final long PARTITION_NS = 10;
+
+  private final ColumnarSampleStore<CpuUsageData> myReplacingStore =
+    new ColumnarSampleStore<>(ColumnarSampleStore.protoCodec(CpuUsageData.parser()), PARTITION_NS, true);
+  private final ColumnarSampleStore<CpuUsageData> myIgnoringStore =
+    new ColumnarSampleStore<>(ColumnarSampleStore.protoCodec(CpuUsageData.parser()), PARTITION_NS, false);
+
+  @Test
+  public void rangeQueriesSpanPartitions() {
+    for (long i = 0; i < 100; i++) {
+      myReplacingStore.insert(SESSION_ID, i, createData(i, i));
+    }
+    assertThat(myReplacingStore.getSampleCount(SESSION_ID)).isEqualTo(100);
+    // Start is exclusive, end is inclusive.
+    assertThat(getTimestamps(myReplacingStore.getSamples(SESSION_ID, 5, 25))).containsExactlyElementsIn(range(6, 25)).inOrder();
+    assertThat(getTimestamps(myReplacingStore.getSamples(SESSION_ID, Long.MIN_VALUE, Long.MAX_VALUE))).hasSize(100);
+    assertThat(myReplacingStore.getSamples(SESSION_ID, 100, Long.MAX_VALUE)).isEmpty();
+    assertThat(myReplacingStore.getSamples(SESSION_ID + 1, Long.MIN_VALUE, Long.MAX_VALUE)).isEmpty();
+  }
+
+  @Test
+  public void removedSessionsAreDropped() {
+    myReplacingStore.insert(SESSION_ID, 1, createData(1, 1));
+    myReplacingStore.insert(SESSION_ID + 1, 1, createData(1, 1));
+    myReplacingStore.removeSession(SESSION_ID);
+    assertThat(myReplacingStore.getSampleCount(SESSION_ID)).isEqualTo(0);
+    assertThat(myReplacingStore.getSampleCount(SESSION_ID + 1)).isEqualTo(1);
+  }
+
+  @Test
+  public void outOfOrderSamplesAreSorted() {
+    myReplacingStore.insert(SESSION_ID, 5, createData(5, 5));
+    myReplacingStore.insert(SESSION_ID, 1, createData(1, 1));
+    myReplacingStore.insert(SESSION_ID, 3, createData(3, 3));
+    myReplacingStore.insert(SESSION_ID, 15, createData(15, 15));
+    myReplacingStore.insert(SESSION_ID, 12, createData(12, 12));
+    List<CpuUsageData> samples = myReplacingStore.getSamples(SESSION_ID, 0, 20);
+    assertThat(getTimestamps(samples)).containsExactly(1L, 3L, 5L, 12L, 15L).inOrder();
+    assertThat(samples.stream().map(CpuUsageData::getAppCpuTimeInMillisec).collect(Collectors.toList()))
+      .containsExactly(1L, 3L, 5L, 12L, 15L).inOrder();
+  }
+
+  @Test
+  public void duplicateTimestampsHonorReplacePolicy() {
+    myReplacingStore.insert(SESSION_ID, 1, createData(1, 1));
+    myReplacingStore.insert(SESSION_ID, 2, createData(2, 2));
+    // Replace with a sample with a different encoded size to make sure the following sample is not corrupted.
+    myReplacingStore.insert(SESSION_ID, 1, createData(1, Long.MAX_VALUE));
+    myIgnoringStore.insert(SESSION_ID, 1, createData(1, 1));
+    myIgnoringStore.insert(SESSION_ID, 1, createData(1, Long.MAX_VALUE));
+
+    List<CpuUsageData> replaced = myReplacingStore.getSamples(SESSION_ID, 0, 2);
+    assertThat(replaced).hasSize(2);
+    assertThat(replaced.get(0).getAppCpuTimeInMillisec()).isEqualTo(Long.MAX_VALUE);
+    assertThat(replaced.get(1).getAppCpuTimeInMillisec()).isEqualTo(2);
+
+    List<CpuUsageData> ignored = myIgnoringStore.getSamples(SESSION_ID, 0, 2);
+    assertThat(ignored).hasSize(1);
+    assertThat(ignored.get(0).getAppCpuTimeInMillisec()).isEqualTo(1);
+  }
+
+  private static CpuUsageData createData(long timestamp, long appCpuTime) {
+    return CpuUsageData.newBuilder().setEndTimestamp(timestamp).setAppCpuTimeInMillisec(appCpuTime).build();
+  }
+
+  private static List<Long> getTimestamps(List<CpuUsageData> samples) {
+    return samples.stream().map(CpuUsageData::getEndTimestamp).collect(Collectors.toList());
+  }
+
+  private static List<Long> range(long from, long to) {
+    return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.CpuProfiler
+import com.google.common.truth.Truth.assertThat
+import com.android.tools.profiler.protobuf3jarjar.ByteString
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+class DataStoreCompactorTest {
+  private val myDatabaseFile = File.createTempFile("DataStoreCompactorTest", "sql")
+  private lateinit var myDatabase: DataStoreDatabase
+  private lateinit var myProfilerTable: ProfilerTable
+  private lateinit var myCpuTable: CpuTable
+
+  @Before
+  fun setUp() {
+    myDatabaseFile.delete()
+    myDatabase = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    myProfilerTable = ProfilerTable()
+    myProfilerTable.initialize(myDatabase)
+    myCpuTable = CpuTable()
+    myCpuTable.initialize(myDatabase)
+  }
+
+  @After
+  fun tearDown() {
+    myDatabase.disconnect()
+    myDatabaseFile.delete()
+  }
+
+  @Test
+  fun tracesAreCompressedTransparently() {
+    val session = insertSession(1, 100)
+    // Highly compressible, like most traces.
+    val trace = ByteString.copyFrom(ByteArray(64 * 1024) { (it % 16).toByte() })
+    myCpuTable.insertTrace(session, 1, CpuProfiler.CpuProfilerType.ART, CpuProfiler.CpuProfilerMode.SAMPLED, trace)
+
+    val compactor = createCompactor(Long.MAX_VALUE, Long.MAX_VALUE)
+    compactor.compact()
+
+    assertThat(getTraceBytes()).isLessThan(trace.size().toLong())
+    val traceData = myCpuTable.getTraceData(session, 1)!!
+    assertThat(traceData.traceBytes).isEqualTo(trace)
+    assertThat(traceData.profilerType).isEqualTo(CpuProfiler.CpuProfilerType.ART)
+  }
+
+  @Test
+  fun oldRawSamplesAreReplacedByTheirRollup() {
+    val session = insertSession(1, Long.MAX_VALUE)
+    val interval = TimeUnit.MILLISECONDS.toNanos(200)
+    val duration = TimeUnit.HOURS.toNanos(2)
+    for (timestamp in 0 until duration step interval) {
+      myCpuTable.insert(session, CpuProfiler.CpuUsageData.newBuilder().setEndTimestamp(timestamp).setAppCpuTimeInMillisec(timestamp).build())
+    }
+    val rawSampleAge = TimeUnit.HOURS.toNanos(1)
+    val compactor = createCompactor(Long.MAX_VALUE, Long.MAX_VALUE, rawSampleAge)
+    // Each pass only compacts a bounded number of buckets.
+    repeat(5) { compactor.compact() }
+
+    val samples = myCpuTable.getCpuDataByRequest(
+      CpuProfiler.CpuDataRequest.newBuilder().setSession(session).setStartTimestamp(-1).setEndTimestamp(Long.MAX_VALUE).build())
+    val resolution = SampleRollup.RESOLUTIONS_NS[0]
+    val compactedEnd = (duration - interval - rawSampleAge) / resolution * resolution
+    // The most recent hour is kept raw, the 10 seconds buckets entirely older than that only keep their last sample.
+    assertThat(samples.count { it.endTimestamp >= compactedEnd }).isEqualTo(((duration - compactedEnd) / interval).toInt())
+    assertThat(samples.count { it.endTimestamp < compactedEnd }).isEqualTo((compactedEnd / resolution).toInt())
+    assertThat(samples.zipWithNext().all { (a, b) -> a.endTimestamp < b.endTimestamp }).isTrue()
+  }
+
+  @Test
+  fun sessionsOverTheirBudgetAreDeleted() {
+    val small = insertSession(1, 100)
+    val large = insertSession(2, 200)
+    val alive = insertSession(3, Long.MAX_VALUE)
+    val trace = createIncompressibleTrace(64 * 1024)
+    for (session in listOf(large, alive)) {
+      myCpuTable.insertTrace(session, 1, CpuProfiler.CpuProfilerType.ART, CpuProfiler.CpuProfilerMode.SAMPLED, trace)
+    }
+
+    createCompactor(Long.MAX_VALUE, 32 * 1024).compact()
+
+    assertThat(myProfilerTable.sessions.sessionsList.map { it.sessionId }).containsExactly(small.sessionId, alive.sessionId)
+    assertThat(myCpuTable.getTraceData(large, 1)).isNull()
+    // Sessions still being recorded are never deleted, whatever their size.
+    assertThat(myCpuTable.getTraceData(alive, 1)).isNotNull()
+  }
+
+  @Test
+  fun oldestSessionsAreDeletedFirstWhenTheDatabaseIsOverBudget() {
+    val sessions = (1L..4L).map { insertSession(it, it * 100) }
+    val trace = createIncompressibleTrace(256 * 1024)
+    for (session in sessions) {
+      myCpuTable.insertTrace(session, 1, CpuProfiler.CpuProfilerType.ART, CpuProfiler.CpuProfilerMode.SAMPLED, trace)
+    }
+    val compactor = createCompactor(Long.MAX_VALUE, Long.MAX_VALUE)
+    myDatabase.writeQueue?.flush()
+    val budget = compactor.databaseBytes - 3 * trace.size() / 2
+
+    createCompactor(budget, Long.MAX_VALUE).compact()
+
+    assertThat(myProfilerTable.sessions.sessionsList.map { it.sessionId }).containsExactly(3L, 4L)
+    assertThat(myCpuTable.getTraceData(sessions[0], 1)).isNull()
+    assertThat(myCpuTable.getTraceData(sessions[3], 1)).isNotNull()
+  }
+
+  private fun createCompactor(maxDatabaseBytes: Long, maxSessionBytes: Long,
+                              rawSampleAge: Long = RetentionPolicy.DEFAULT_RAW_SAMPLE_AGE_NS): DataStoreCompactor {
+    val compactor = DataStoreCompactor(myDatabase.connection, myDatabase.writeQueue,
+                                       RetentionPolicy(maxDatabaseBytes, maxSessionBytes, rawSampleAge, 1000), FakeLogService())
+    compactor.register(myProfilerTable)
+    compactor.register(myCpuTable)
+    return compactor
+  }
+
+  private fun insertSession(sessionId: Long, endTimestamp: Long): Common.Session {
+    val session = Common.Session.newBuilder().setSessionId(sessionId).setDeviceId(1).setPid(10).setStartTimestamp(sessionId)
+      .setEndTimestamp(endTimestamp).build()
+    myProfilerTable.insertOrUpdateSession(session, "Session $sessionId", sessionId, false, false,
+                                          Common.SessionMetaData.SessionType.FULL)
+    return session
+  }
+
+  /**
+   * Random bytes, so that compressing the traces doesn't bring the sessions back under their budgets.
+   */
+  private fun createIncompressibleTrace(size: Int) = ByteString.copyFrom(ByteArray(size).also { Random(size.toLong()).nextBytes(it) })
+
+  private fun getTraceBytes(): Long {
+    myDatabase.writeQueue?.flush()
+    myDatabase.connection.createStatement().use {
+      it.executeQuery("SELECT SUM(LENGTH(Data)) FROM Cpu_Trace").use { result -> return result.getLong(1) }
+    }
+  }
+}
@@ -14,7 +14,10 @@
 package com.android.tools.datastore.database
 
 import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.DeviceId
 import com.android.tools.datastore.FakeLogService
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Profiler
 import com.google.common.truth.Truth.assertThat
 import org.junit.Test
 import java.io.BufferedOutputStream
@@ -34,17 +37,61 @@ class DataStoreDatabaseTest {
   }
 
   @Test
-  fun testDatabaseDeletesExisitingFileOnLoad() {
+  fun testDatabaseDiscardsIncompatibleFileOnLoad() {
     val outputStream = BufferedOutputStream(FileOutputStream(myDatabaseFile))
     outputStream.write(ByteArray(1024))
     outputStream.close()
     assertThat(myDatabaseFile.length()).isEqualTo(1024)
     val db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
-    assertThat(myDatabaseFile.length()).isEqualTo(0)
+    assertThat(getSchemaVersion(db)).isEqualTo(DataStoreDatabase.SCHEMA_VERSION)
     db.disconnect()
     assertThat(myDatabaseFile.exists()).isTrue()
   }
 
+  @Test
+  fun testDatabaseDiscardsUnversionedFileOnLoad() {
+    var db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    db.connection.createStatement().use {
+      it.execute("CREATE TABLE Legacy (Id INTEGER)")
+      it.execute("PRAGMA user_version = 0")
+    }
+    db.disconnect()
+
+    db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    db.connection.createStatement().use {
+      it.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE name = 'Legacy'").use { result -> assertThat(result.getInt(1)).isEqualTo(0) }
+    }
+    assertThat(getSchemaVersion(db)).isEqualTo(DataStoreDatabase.SCHEMA_VERSION)
+    db.disconnect()
+  }
+
+  @Test
+  fun testDatabaseReopensPreviousSessions() {
+    val device = Common.Device.newBuilder().setDeviceId(1).setState(Common.Device.State.ONLINE).build()
+    val process = Common.Process.newBuilder().setDeviceId(1).setPid(10).setName("app").setState(Common.Process.State.ALIVE).build()
+    val session = Common.Session.newBuilder().setSessionId(2).setDeviceId(1).setPid(10).setStartTimestamp(100)
+      .setEndTimestamp(Long.MAX_VALUE).build()
+
+    var db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    var table = ProfilerTable()
+    table.initialize(db)
+    table.insertOrUpdateDevice(device)
+    table.updateDeviceLastKnownTime(device, 500)
+    table.insertOrUpdateProcess(DeviceId.of(1), process)
+    table.insertOrUpdateSession(session, "Session", 0, false, false, Common.SessionMetaData.SessionType.FULL)
+    db.disconnect()
+
+    // Sessions left alive by the previous run are ended at the device's last known time.
+    db = DataStoreDatabase(myDatabaseFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    table = ProfilerTable()
+    table.initialize(db)
+    assertThat(table.sessions.sessionsList).containsExactly(session.toBuilder().setEndTimestamp(500).build())
+    assertThat(table.devices.deviceList).containsExactly(device.toBuilder().setState(Common.Device.State.DISCONNECTED).build())
+    assertThat(table.getProcesses(Profiler.GetProcessesRequest.newBuilder().setDeviceId(1).build()).processList)
+      .containsExactly(process.toBuilder().setState(Common.Process.State.DEAD).build())
+    db.disconnect()
+  }
+
   @Test
   fun testConnectionIsOpen() {
     // Verify persistent database
@@ -63,4 +110,10 @@ class DataStoreDatabaseTest {
     db.disconnect()
     assertThat(db.connection.isClosed).isTrue()
   }
+
+  private fun getSchemaVersion(db: DataStoreDatabase): Int {
+    db.connection.createStatement().use {
+      it.executeQuery("PRAGMA user_version").use { result -> return result.getInt(1) }
+    }
+  }
 }
@@ -27,6 +27,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertFalse;
@@ -106,6 +107,43 @@ public class DatabaseTableTest {
     }
   }
 
+  @Test
+  public void testQueuedWritesAreVisibleToReads() throws Exception {
+    ThreadTestTable table = new ThreadTestTable();
+    table.initialize(myDatabase);
+    table.insertData(1, 2, 3);
+
+    // Reading flushes any write still pending in the queue.
+    ResultSet resultSet = table.readDataRaw();
+    int count = 0;
+    while (resultSet.next()) {
+      count++;
+    }
+    assertThat(count).isEqualTo(3);
+    assertThat(myDatabase.getWriteQueue().getPendingWriteCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testQueueBackPressureFlushesOnWriterThread() throws Exception {
+    DataStoreWriteQueue queue = new DataStoreWriteQueue(myDatabase.getConnection(), 4, 4, TimeUnit.HOURS.toMillis(1));
+    try {
+      for (int i = 0; i < 4; i++) {
+        queue.enqueue(myTable, ThreadTableStatement.INSERT_DATA, i);
+      }
+      // Reaching the max pending count flushes synchronously.
+      assertThat(queue.getPendingWriteCount()).isEqualTo(0);
+      ResultSet resultSet = myTable.readDataRaw();
+      int count = 0;
+      while (resultSet.next()) {
+        count++;
+      }
+      assertThat(count).isEqualTo(4);
+    }
+    finally {
+      queue.stop();
+    }
+  }
+
   /**
    * Runnable class that handles querying the database as fast as possible.
    */
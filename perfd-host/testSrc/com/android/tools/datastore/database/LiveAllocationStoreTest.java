@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationEvent;
+import com.android.tools.profiler.proto.MemoryProfiler.BatchAllocationSample;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class LiveAllocationStoreTest {
+  private static final int CHECKPOINT_INTERVAL = 16;
+
+  @Test
+  public void testInsertAndQueryAllocations() {
+    LiveAllocationStore store = new LiveAllocationStore(CHECKPOINT_INTERVAL);
+    store.insertAllocation(0, createAllocation(1, 10));
+    store.insertAllocation(6, createAllocation(2, 20));
+    store.insertFree(7, 1);
+    // Duplicated allocations and frees of unknown objects are ignored.
+    store.insertAllocation(8, createAllocation(1, 30));
+    store.insertFree(9, 3);
+
+    assertThat(getAllocTags(store.getSnapshot(6))).containsExactly(1);
+    assertThat(getAllocTags(store.getSnapshot(7))).containsExactly(2);
+    assertThat(getAllocTags(store.getSnapshot(8))).containsExactly(2);
+    assertThat(store.getSnapshot(6).getTimestamp()).isEqualTo(0);
+
+    BatchAllocationSample allocations = store.getAllocations(0, 10);
+    assertThat(allocations.getEventsList()).containsExactly(
+      AllocationEvent.newBuilder().setAllocData(createAllocation(1, 10)).setTimestamp(0).build(),
+      AllocationEvent.newBuilder().setAllocData(createAllocation(2, 20)).setTimestamp(6).build(),
+      AllocationEvent.newBuilder().setFreeData(AllocationEvent.Deallocation.newBuilder().setTag(1).setClassTag(10)).setTimestamp(7)
+                     .build()).inOrder();
+    assertThat(allocations.getTimestamp()).isEqualTo(7);
+    assertThat(store.getAllocations(7, 8).getEventsCount()).isEqualTo(1);
+    assertThat(store.getLatestTimestamp()).isEqualTo(7);
+  }
+
+  @Test
+  public void testCheckpointedQueriesMatchFullScans() {
+    LiveAllocationStore store = new LiveAllocationStore(CHECKPOINT_INTERVAL);
+    List<long[]> objects = new ArrayList<>();
+    Random random = new Random(1);
+    long time = 0;
+    for (int i = 0; i < 2000; i++) {
+      time += random.nextInt(3);
+      if (objects.isEmpty() || random.nextBoolean()) {
+        store.insertAllocation(time, createAllocation(objects.size(), 0));
+        objects.add(new long[]{time, Long.MAX_VALUE});
+      }
+      else {
+        int tag = random.nextInt(objects.size());
+        if (objects.get(tag)[1] == Long.MAX_VALUE) {
+          store.insertFree(time, tag);
+          objects.get(tag)[1] = time;
+        }
+      }
+    }
+    assertThat(store.getCheckpointCount()).isGreaterThan(1);
+
+    for (long t = -1; t <= time + 1; t += 7) {
+      assertThat(getAllocTags(store.getSnapshot(t))).containsExactlyElementsIn(getLiveTags(objects, t));
+      assertThat(store.getAllocations(t, t + 13).getEventsCount()).isEqualTo(countEvents(objects, t, t + 13));
+    }
+  }
+
+  @Test
+  public void testLateEventsArePatchedIntoCheckpoints() {
+    LiveAllocationStore store = new LiveAllocationStore(CHECKPOINT_INTERVAL);
+    for (int i = 0; i < CHECKPOINT_INTERVAL * 4; i++) {
+      store.insertAllocation(i * 10, createAllocation(i, 0));
+    }
+    assertThat(store.getCheckpointCount()).isGreaterThan(1);
+
+    // Allocated and freed before most checkpoints were taken.
+    store.insertAllocation(5, createAllocation(1000, 0));
+    store.insertFree(15, 0);
+    assertThat(getAllocTags(store.getSnapshot(6))).containsExactly(0, 1000);
+    assertThat(getAllocTags(store.getSnapshot(16))).containsExactly(1, 1000);
+    assertThat(getAllocTags(store.getSnapshot(CHECKPOINT_INTERVAL * 40))).doesNotContain(0);
+    assertThat(getAllocTags(store.getSnapshot(CHECKPOINT_INTERVAL * 40))).contains(1000);
+  }
+
+  @Test
+  public void testPruningRemovesFreedAllocations() {
+    LiveAllocationStore store = new LiveAllocationStore(CHECKPOINT_INTERVAL);
+    for (int i = 0; i < CHECKPOINT_INTERVAL * 2; i++) {
+      store.insertAllocation(i, createAllocation(i, 0));
+    }
+    for (int i = 0; i < CHECKPOINT_INTERVAL * 2; i += 2) {
+      store.insertFree(CHECKPOINT_INTERVAL * 2 + i, i);
+    }
+
+    store.pruneFreedAllocations();
+    assertThat(store.getAllocationCount()).isEqualTo(CHECKPOINT_INTERVAL);
+    assertThat(store.getCheckpointCount()).isEqualTo(0);
+    long end = CHECKPOINT_INTERVAL * 4;
+    assertThat(getAllocTags(store.getSnapshot(end))).containsExactlyElementsIn(getAllocTags(store.getAllocations(0, end)));
+
+    // Pruned tags can be allocated again.
+    store.insertFree(end, 1);
+    store.insertAllocation(end, createAllocation(0, 0));
+    assertThat(getAllocTags(store.getSnapshot(end + 1))).contains(0);
+    assertThat(getAllocTags(store.getSnapshot(end + 1))).doesNotContain(1);
+  }
+
+  private static AllocationEvent.Allocation createAllocation(int tag, int classTag) {
+    return AllocationEvent.Allocation.newBuilder().setTag(tag).setClassTag(classTag).build();
+  }
+
+  private static List<Integer> getAllocTags(BatchAllocationSample sample) {
+    return sample.getEventsList().stream().filter(AllocationEvent::hasAllocData).map(event -> event.getAllocData().getTag())
+                 .collect(Collectors.toList());
+  }
+
+  private static List<Integer> getLiveTags(List<long[]> objects, long time) {
+    List<Integer> tags = new ArrayList<>();
+    for (int tag = 0; tag < objects.size(); tag++) {
+      if (objects.get(tag)[0] < time && objects.get(tag)[1] > time) {
+        tags.add(tag);
+      }
+    }
+    return tags;
+  }
+
+  private static int countEvents(List<long[]> objects, long startTime, long endTime) {
+    int count = 0;
+    for (long[] object : objects) {
+      count += object[0] >= startTime && object[0] < endTime ? 1 : 0;
+      count += object[1] >= startTime && object[1] < endTime ? 1 : 0;
+    }
+    return count;
+  }
+}
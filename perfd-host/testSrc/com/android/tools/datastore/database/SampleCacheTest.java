@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.profiler.proto.CpuProfiler.CpuUsageData;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.Test;
+
+public class SampleCacheTest {
+  private static final long SESSION_ID = 1;
+  private static final long BUCKET_NS = 10;
+
+  /**
+   * Stands in for the backing table, counting how many times it is queried.
+   */
+  private final NavigableMap<Long, CpuUsageData> myTable = new TreeMap<>();
+  private int myLoadCount;
+
+  private final SampleCache.Loader<CpuUsageData> myLoader = (sessionId, start, end) -> {
+    myLoadCount++;
+    return sessionId == SESSION_ID ? myTable.subMap(start, false, end, true).values().stream().collect(Collectors.toList())
+                                   : Collections.emptyList();
+  };
+
+  @Test
+  public void repeatedQueriesHitTheCache() {
+    SampleCache cache = new SampleCache(BUCKET_NS, Long.MAX_VALUE);
+    SampleCache.Series<CpuUsageData> series = cache.createProtoSeries(CpuUsageData::getEndTimestamp, true);
+    for (long i = 0; i < 30; i++) {
+      insert(series, i, i);
+    }
+
+    assertThat(getTimestamps(series.getSamples(SESSION_ID, 5, 25, myLoader))).containsExactlyElementsIn(range(6, 25)).inOrder();
+    assertThat(myLoadCount).isEqualTo(3);
+    assertThat(cache.getMissCount()).isEqualTo(3);
+
+    assertThat(getTimestamps(series.getSamples(SESSION_ID, 8, 12, myLoader))).containsExactly(9L, 10L, 11L, 12L).inOrder();
+    assertThat(myLoadCount).isEqualTo(3);
+    assertThat(cache.getHitCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void insertsAreWrittenThroughToCachedBuckets() {
+    SampleCache cache = new SampleCache(BUCKET_NS, Long.MAX_VALUE);
+    SampleCache.Series<CpuUsageData> series = cache.createProtoSeries(CpuUsageData::getEndTimestamp, true);
+    insert(series, 1, 1);
+    assertThat(series.getSamples(SESSION_ID, 0, 9, myLoader)).hasSize(1);
+
+    insert(series, 2, 2);
+    insert(series, 1, 100);
+    List<CpuUsageData> samples = series.getSamples(SESSION_ID, 0, 9, myLoader);
+    assertThat(myLoadCount).isEqualTo(1);
+    assertThat(getTimestamps(samples)).containsExactly(1L, 2L).inOrder();
+    assertThat(samples.get(0).getAppCpuTimeInMillisec()).isEqualTo(100);
+  }
+
+  @Test
+  public void bucketsAreEvictedOverBudget() {
+    CpuUsageData sample = createData(1, 1);
+    // Leave room for about two buckets of two samples each.
+    SampleCache cache = new SampleCache(BUCKET_NS, 4 * (sample.getSerializedSize() + 64));
+    SampleCache.Series<CpuUsageData> series = cache.createProtoSeries(CpuUsageData::getEndTimestamp, true);
+    for (long i = 0; i < 30; i += 5) {
+      insert(series, i, i);
+    }
+
+    series.getSamples(SESSION_ID, -1, 9, myLoader);
+    series.getSamples(SESSION_ID, 9, 19, myLoader);
+    series.getSamples(SESSION_ID, 19, 29, myLoader);
+    assertThat(cache.getEvictionCount()).isGreaterThan(0L);
+    assertThat(cache.getCachedBytes()).isAtMost(4L * (sample.getSerializedSize() + 64));
+
+    // The most recently used bucket is still cached, the first one was evicted.
+    int loadCount = myLoadCount;
+    series.getSamples(SESSION_ID, 19, 29, myLoader);
+    assertThat(myLoadCount).isEqualTo(loadCount);
+    series.getSamples(SESSION_ID, -1, 9, myLoader);
+    assertThat(myLoadCount).isEqualTo(loadCount + 1);
+  }
+
+  @Test
+  public void wideQueriesBypassTheCache() {
+    SampleCache cache = new SampleCache(BUCKET_NS, Long.MAX_VALUE);
+    SampleCache.Series<CpuUsageData> series = cache.createProtoSeries(CpuUsageData::getEndTimestamp, true);
+    insert(series, 1, 1);
+    assertThat(series.getSamples(SESSION_ID, Long.MIN_VALUE, Long.MAX_VALUE, myLoader)).hasSize(1);
+    assertThat(myLoadCount).isEqualTo(1);
+    assertThat(cache.getCachedBytes()).isEqualTo(0L);
+  }
+
+  @Test
+  public void removedSessionsAreDropped() {
+    SampleCache cache = new SampleCache(BUCKET_NS, Long.MAX_VALUE);
+    SampleCache.Series<CpuUsageData> series = cache.createProtoSeries(CpuUsageData::getEndTimestamp, true);
+    insert(series, 1, 1);
+    series.getSamples(SESSION_ID, 0, 9, myLoader);
+    assertThat(cache.getCachedBytes()).isGreaterThan(0L);
+
+    series.removeSession(SESSION_ID);
+    assertThat(cache.getCachedBytes()).isEqualTo(0L);
+  }
+
+  private void insert(SampleCache.Series<CpuUsageData> series, long timestamp, long appCpuTime) {
+    CpuUsageData data = createData(timestamp, appCpuTime);
+    myTable.put(timestamp, data);
+    series.insert(SESSION_ID, data);
+  }
+
+  private static CpuUsageData createData(long timestamp, long appCpuTime) {
+    return CpuUsageData.newBuilder().setEndTimestamp(timestamp).setAppCpuTimeInMillisec(appCpuTime).build();
+  }
+
+  private static List<Long> getTimestamps(List<CpuUsageData> samples) {
+    return samples.stream().map(CpuUsageData::getEndTimestamp).collect(Collectors.toList());
+  }
+
+  private static List<Long> range(long from, long to) {
+    return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+  }
+}
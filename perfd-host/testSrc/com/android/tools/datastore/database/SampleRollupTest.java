@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class SampleRollupTest {
+  private static final long INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(200);
+  private static final long HOUR_NS = TimeUnit.HOURS.toNanos(1);
+
+  @Test
+  public void narrowAndOpenEndedQueriesAreServedRaw() {
+    SampleRollup<long[]> rollup = createRollup();
+    List<long[]> samples = insertSamples(rollup, HOUR_NS);
+    int[] loads = new int[1];
+    SampleCache.Loader<long[]> loader = (sessionId, start, end) -> {
+      loads[0]++;
+      return getRawSamples(samples, start, end);
+    };
+
+    assertThat(rollup.getSamples(1, 0, TimeUnit.MINUTES.toNanos(1), loader)).hasSize(300);
+    assertThat(rollup.getSamples(1, -1, Long.MAX_VALUE, loader)).hasSize(samples.size());
+    assertThat(loads[0]).isEqualTo(2);
+  }
+
+  @Test
+  public void wideQueriesAreBoundedByTheScreenWidth() {
+    SampleRollup<long[]> rollup = createRollup();
+    List<long[]> samples = insertSamples(rollup, HOUR_NS);
+    // Rows inserted before the rollup existed, e.g. by a previous instance of the table.
+    List<long[]> rawSamples = new ArrayList<>(samples);
+    rawSamples.add(0, new long[]{-INTERVAL_NS, 5000});
+    SampleCache.Loader<long[]> loader = (sessionId, start, end) -> getRawSamples(rawSamples, start, end);
+
+    List<long[]> downsampled = rollup.getSamples(1, -HOUR_NS, HOUR_NS, loader);
+    // At most the min, max and last sample of each of the 10 seconds buckets in the range.
+    assertThat(downsampled.size()).isAtMost(3 * (2 * HOUR_NS / SampleRollup.RESOLUTIONS_NS[0] + 1));
+    assertThat(downsampled.size()).isLessThan(samples.size() / 10);
+    for (int i = 1; i < downsampled.size(); i++) {
+      assertThat(downsampled.get(i)[0]).isGreaterThan(downsampled.get(i - 1)[0]);
+    }
+    // Peaks survive the downsampling.
+    assertThat(downsampled).contains(rawSamples.get(0));
+    assertThat(downsampled.stream().mapToLong(sample -> sample[1]).max().getAsLong()).isEqualTo(5000);
+    assertThat(downsampled.stream().mapToLong(sample -> sample[1]).min().getAsLong()).isEqualTo(0);
+
+    // Only the part of the range with data counts towards the resolution.
+    assertThat(rollup.getSamples(1, -HOUR_NS, 10 * HOUR_NS, loader)).hasSize(downsampled.size());
+    // Sessions are rolled up separately.
+    assertThat(rollup.getSamples(2, -HOUR_NS, HOUR_NS, (sessionId, start, end) -> Collections.emptyList())).isEmpty();
+  }
+
+  @Test
+  public void rowsAlreadyInTheDatabaseAreLoadedInBoundedWindows() {
+    SampleRollup<long[]> rollup = createRollup();
+    // Rows inserted before the rollup existed, e.g. by a previous instance of the table.
+    List<long[]> rawSamples = insertSamples(createRollup(), 10 * HOUR_NS);
+    List<Long> loadedRanges = new ArrayList<>();
+    SampleCache.Loader<long[]> loader = (sessionId, start, end) -> {
+      loadedRanges.add(end - start);
+      return getRawSamples(rawSamples, start, end);
+    };
+
+    List<long[]> downsampled = rollup.getSamples(1, -1, 10 * HOUR_NS, loader);
+    assertThat(downsampled.stream().mapToLong(sample -> sample[1]).max().getAsLong()).isEqualTo(99);
+    assertThat(loadedRanges).isNotEmpty();
+    for (long range : loadedRanges) {
+      assertThat(range).isAtMost(SampleRollup.LOAD_WINDOW_NS);
+    }
+
+    // The windows are only loaded once.
+    int loadCount = loadedRanges.size();
+    assertThat(rollup.getSamples(1, -1, 10 * HOUR_NS, loader)).hasSize(downsampled.size());
+    assertThat(loadedRanges).hasSize(loadCount);
+  }
+
+  @Test
+  public void longerSessionsUseCoarserResolutions() {
+    SampleRollup<long[]> rollup = createRollup();
+    List<long[]> samples = insertSamples(rollup, 10 * HOUR_NS);
+    List<long[]> downsampled = rollup.getSamples(1, 0, 10 * HOUR_NS, (sessionId, start, end) -> getRawSamples(samples, start, end));
+    // At most the min, max and last sample of each of the 1 minute buckets in the range.
+    assertThat(downsampled.size()).isAtMost(3 * (10 * HOUR_NS / SampleRollup.RESOLUTIONS_NS[1] + 1));
+  }
+
+  @Test
+  public void compactionKeepsTheSamplesOfTheFinestResolution() {
+    SampleRollup<long[]> rollup = createRollup();
+    List<long[]> samples = insertSamples(rollup, HOUR_NS);
+    SampleCache.Loader<long[]> loader = (sessionId, start, end) -> getRawSamples(samples, start, end);
+    List<long[]> expected = rollup.getSamples(1, -1, HOUR_NS, loader);
+
+    long ageNs = TimeUnit.MINUTES.toNanos(10);
+    List<long[]> compacted = new ArrayList<>(samples);
+    SampleRollup.Compactor<long[]> compactor = (sessionId, start, end, kept) -> {
+      compacted.removeIf(sample -> sample[0] >= start && sample[0] < end);
+      compacted.addAll(kept);
+      compacted.sort((a, b) -> Long.compare(a[0], b[0]));
+    };
+    // Compaction happens in steps of at most MAX_BUCKETS_PER_COMPACTION buckets.
+    for (int i = 0; i < 5; i++) {
+      rollup.compact(ageNs, loader, compactor);
+    }
+
+    long cutoff = HOUR_NS - INTERVAL_NS - ageNs;
+    assertThat(getRawSamples(compacted, cutoff, HOUR_NS)).containsExactlyElementsIn(getRawSamples(samples, cutoff, HOUR_NS));
+    long compactedEnd = cutoff / SampleRollup.RESOLUTIONS_NS[0] * SampleRollup.RESOLUTIONS_NS[0];
+    assertThat(getRawSamples(compacted, -1, compactedEnd - 1)).containsExactlyElementsIn(getRawSamples(expected, -1, compactedEnd - 1));
+    // Wide queries over the compacted samples return the same samples as before.
+    assertThat(createRollupOf(compacted).getSamples(1, -1, HOUR_NS, (sessionId, start, end) -> getRawSamples(compacted, start, end)))
+      .containsExactlyElementsIn(expected);
+  }
+
+  @Test
+  public void resolutionFitsTheRange() {
+    assertThat(SampleRollup.getResolution(SampleRollup.RAW_RANGE_NS)).isEqualTo(-1);
+    assertThat(SampleRollup.getResolution(HOUR_NS)).isEqualTo(0);
+    assertThat(SampleRollup.getResolution(10 * HOUR_NS)).isEqualTo(1);
+    assertThat(SampleRollup.getResolution(1000 * HOUR_NS)).isEqualTo(SampleRollup.RESOLUTIONS_NS.length - 1);
+  }
+
+  private static SampleRollup<long[]> createRollup() {
+    return new SampleRollup<>(sample -> sample[0], Collections.singletonList(sample -> sample[1]));
+  }
+
+  private static SampleRollup<long[]> createRollupOf(List<long[]> samples) {
+    SampleRollup<long[]> rollup = createRollup();
+    samples.forEach(sample -> rollup.insert(1, sample));
+    return rollup;
+  }
+
+  /**
+   * Inserts a sample every {@link #INTERVAL_NS}, with a value going up and down between 0 and 99.
+   */
+  private static List<long[]> insertSamples(SampleRollup<long[]> rollup, long durationNs) {
+    List<long[]> samples = new ArrayList<>();
+    for (long timestamp = 0; timestamp < durationNs; timestamp += INTERVAL_NS) {
+      long[] sample = {timestamp, Math.abs(timestamp / INTERVAL_NS % 198 - 99)};
+      samples.add(sample);
+      rollup.insert(1, sample);
+    }
+    return samples;
+  }
+
+  private static List<long[]> getRawSamples(List<long[]> samples, long startTimestamp, long endTimestamp) {
+    List<long[]> result = new ArrayList<>();
+    for (long[] sample : samples) {
+      if (sample[0] > startTimestamp && sample[0] <= endTimestamp) {
+        result.add(sample);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import static com.android.tools.profiler.proto.CpuProfiler.GetThreadsResponse.State.DEAD;
+import static com.android.tools.profiler.proto.CpuProfiler.GetThreadsResponse.State.RUNNING;
+import static com.android.tools.profiler.proto.CpuProfiler.GetThreadsResponse.State.SLEEPING;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.profiler.proto.CpuProfiler.GetThreadsResponse;
+import java.util.List;
+import org.junit.Test;
+
+public class ThreadStateIndexTest {
+  @Test
+  public void stateAtStartIsFollowedByChangesInRange() {
+    ThreadStateIndex index = new ThreadStateIndex();
+    index.add(2, "Two", 0, RUNNING);
+    index.add(2, "Two", 10, SLEEPING);
+    index.add(2, "Two", 20, RUNNING);
+    index.add(1, "One", 5, RUNNING);
+    index.add(1, "One", 15, DEAD);
+
+    List<GetThreadsResponse.Thread> threads = index.getThreads(12, 20);
+    assertThat(threads).hasSize(2);
+    // Threads are sorted by tid.
+    assertThat(threads.get(0).getTid()).isEqualTo(1);
+    assertThat(threads.get(0).getActivitiesList()).containsExactly(activity(RUNNING, 12), activity(DEAD, 15)).inOrder();
+    assertThat(threads.get(1).getName()).isEqualTo("Two");
+    assertThat(threads.get(1).getActivitiesList()).containsExactly(activity(SLEEPING, 12), activity(RUNNING, 20)).inOrder();
+
+    // Dead threads without state changes in the range are left out.
+    threads = index.getThreads(15, 30);
+    assertThat(threads).hasSize(1);
+    assertThat(threads.get(0).getTid()).isEqualTo(2);
+
+    assertThat(index.getThreads(-10, -1)).isEmpty();
+  }
+
+  @Test
+  public void statesAreKeptSortedAndReplaced() {
+    ThreadStateIndex index = new ThreadStateIndex();
+    for (int i = 100; i > 0; i--) {
+      index.add(1, "One", i * 10, i % 2 == 0 ? RUNNING : SLEEPING);
+    }
+    index.add(1, "One", 500, DEAD);
+    index.addIfAbsent(1, "One", 600, DEAD);
+
+    List<GetThreadsResponse.ThreadActivity> activities = index.getThreads(0, Long.MAX_VALUE).get(0).getActivitiesList();
+    assertThat(activities).hasSize(100);
+    for (int i = 0; i < activities.size(); i++) {
+      assertThat(activities.get(i).getTimestamp()).isEqualTo((i + 1) * 10);
+    }
+    assertThat(activities.get(49).getNewState()).isEqualTo(DEAD);
+    assertThat(activities.get(59).getNewState()).isEqualTo(RUNNING);
+  }
+
+  private static GetThreadsResponse.ThreadActivity activity(GetThreadsResponse.State state, long timestamp) {
+    return GetThreadsResponse.ThreadActivity.newBuilder().setNewState(state).setTimestamp(timestamp).build();
+  }
+}
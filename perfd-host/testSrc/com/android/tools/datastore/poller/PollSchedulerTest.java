@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.grpc.Status;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Test;
+
+public class PollSchedulerTest {
+  private static final long TEST_PERIOD_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final List<Runnable> myFallbackRunnables = new ArrayList<>();
+  private final PollScheduler myScheduler = new PollScheduler(myFallbackRunnables::add, 2, 2);
+
+  @After
+  public void tearDown() {
+    myScheduler.shutdown();
+  }
+
+  @Test
+  public void runnersShareThePool() throws Exception {
+    List<CountingRunner> runners = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      CountingRunner runner = new CountingRunner(TEST_PERIOD_NS, TEST_PERIOD_NS, 5);
+      runners.add(runner);
+      myScheduler.accept(runner);
+    }
+    for (CountingRunner runner : runners) {
+      assertThat(runner.myPolledLatch.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+    assertThat(myScheduler.getRunnerCount()).isEqualTo(8);
+
+    for (CountingRunner runner : runners) {
+      runner.stop();
+      assertThat(runner.isDone()).isTrue();
+    }
+    assertThat(myFallbackRunnables).isEmpty();
+  }
+
+  @Test
+  public void blockingRunnersDoNotDelayTheOthers() throws Exception {
+    CountDownLatch unblockLatch = new CountDownLatch(1);
+    List<CountingRunner> blockingRunners = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      BlockingRunner runner = new BlockingRunner(unblockLatch);
+      blockingRunners.add(runner);
+      myScheduler.accept(runner);
+    }
+    for (CountingRunner runner : blockingRunners) {
+      assertThat(runner.myPolledLatch.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    // Both blocking runners wait in their first poll, yet another runner keeps polling.
+    CountingRunner runner = new CountingRunner(TEST_PERIOD_NS, TEST_PERIOD_NS, 5);
+    myScheduler.accept(runner);
+    assertThat(runner.myPolledLatch.await(10, TimeUnit.SECONDS)).isTrue();
+
+    unblockLatch.countDown();
+    runner.stop();
+    for (CountingRunner blockingRunner : blockingRunners) {
+      blockingRunner.stop();
+      assertThat(blockingRunner.isDone()).isTrue();
+    }
+  }
+
+  @Test
+  public void otherRunnablesUseFallbackExecutor() {
+    Runnable runnable = () -> {};
+    myScheduler.accept(runnable);
+    assertThat(myFallbackRunnables).containsExactly(runnable);
+    assertThat(myScheduler.getRunnerCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void adaptiveRunnerBacksOffWithoutData() {
+    CountingRunner runner = new CountingRunner(TEST_PERIOD_NS, TEST_PERIOD_NS * 4, Integer.MAX_VALUE);
+    runner.tick();
+    assertThat(runner.getCurrentPollPeriodNs()).isEqualTo(TEST_PERIOD_NS * 2);
+    runner.tick();
+    assertThat(runner.getCurrentPollPeriodNs()).isEqualTo(TEST_PERIOD_NS * 4);
+    runner.tick();
+    assertThat(runner.getCurrentPollPeriodNs()).isEqualTo(TEST_PERIOD_NS * 4);
+
+    runner.myHasData = true;
+    runner.tick();
+    assertThat(runner.getCurrentPollPeriodNs()).isEqualTo(TEST_PERIOD_NS);
+  }
+
+  @Test
+  public void failedPollStopsRunner() throws Exception {
+    CountingRunner runner = new CountingRunner(TEST_PERIOD_NS, TEST_PERIOD_NS, 1);
+    runner.myFail = true;
+    myScheduler.accept(runner);
+    assertThat(runner.myPolledLatch.await(10, TimeUnit.SECONDS)).isTrue();
+    while (!runner.isDone()) {
+      Thread.yield();
+    }
+    assertThat(runner.isCancelled()).isTrue();
+  }
+
+  private static class BlockingRunner extends CountingRunner {
+    private final CountDownLatch myUnblockLatch;
+
+    BlockingRunner(@NotNull CountDownLatch unblockLatch) {
+      super(TEST_PERIOD_NS, TEST_PERIOD_NS, 1);
+      myUnblockLatch = unblockLatch;
+    }
+
+    @Override
+    public boolean isBlocking() {
+      return true;
+    }
+
+    @Override
+    public void poll() {
+      super.poll();
+      try {
+        myUnblockLatch.await();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static class CountingRunner extends PollRunner {
+    private final CountDownLatch myPolledLatch;
+    private volatile boolean myHasData;
+    private volatile boolean myFail;
+
+    CountingRunner(long pollPeriodNs, long maxPollPeriodNs, int expectedPolls) {
+      super(pollPeriodNs, maxPollPeriodNs);
+      myPolledLatch = new CountDownLatch(expectedPolls);
+    }
+
+    @Override
+    public void poll() {
+      myPolledLatch.countDown();
+      if (myFail) {
+        throw Status.UNAVAILABLE.asRuntimeException();
+      }
+      if (myHasData) {
+        markDataReceived();
+      }
+    }
+  }
+}
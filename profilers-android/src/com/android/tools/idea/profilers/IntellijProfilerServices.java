@@ -235,6 +235,11 @@ public class IntellijProfilerServices implements IdeProfilerServices {
         return StudioFlags.PROFILER_MEMORY_CAPTURE_FILTER.get();
       }
 
+      @Override
+      public boolean isMemoryMappedHeapDumpEnabled() {
+        return StudioFlags.PROFILER_MEMORY_MAPPED_HEAP_DUMP.get();
+      }
+
       @Override
       public boolean isMemorySnapshotEnabled() {
         return StudioFlags.PROFILER_MEMORY_SNAPSHOT.get();
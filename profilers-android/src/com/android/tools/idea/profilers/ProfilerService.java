@@ -17,6 +17,7 @@ package com.android.tools.idea.profilers;
 
 import com.android.annotations.concurrency.GuardedBy;
 import com.android.tools.datastore.DataStoreService;
+import com.android.tools.datastore.poller.PollScheduler;
 import com.android.tools.idea.sdk.IdeSdks;
 import com.android.tools.nativeSymbolizer.NativeSymbolizer;
 import com.android.tools.nativeSymbolizer.NativeSymbolizerKt;
@@ -84,9 +85,14 @@ public class ProfilerService implements Disposable {
     Disposer.register(this, () -> symbolizer.stop());
 
     String datastoreName = DATASTORE_NAME_PREFIX + project.getLocationHash();
-    myDataStoreService = new DataStoreService(datastoreName, datastoreDirectory, ApplicationManager.getApplication()::executeOnPooledThread,
-                                              new IntellijLogService());
-    Disposer.register(this, () -> myDataStoreService.shutdown());
+    // Pollers of all the profiled processes share the scheduler's pools instead of each holding on to a pooled thread, the ones which may
+    // block for long (e.g. on the native symbolizer) on a pool of their own.
+    PollScheduler pollScheduler = new PollScheduler(ApplicationManager.getApplication()::executeOnPooledThread);
+    myDataStoreService = new DataStoreService(datastoreName, datastoreDirectory, pollScheduler, new IntellijLogService());
+    Disposer.register(this, () -> {
+      myDataStoreService.shutdown();
+      pollScheduler.shutdown();
+    });
     myDataStoreService.setNativeSymbolizer(symbolizer);
 
     myManager = new StudioProfilerDeviceManager(myDataStoreService);
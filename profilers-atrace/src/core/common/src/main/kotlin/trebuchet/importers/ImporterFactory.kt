@@ -20,5 +20,8 @@ import trebuchet.io.GenericByteBuffer
 
 
 interface ImporterFactory {
-    fun importerFor(buffer: GenericByteBuffer, feedback: ImportFeedback): Importer?
+    /**
+     * @param processFilter the ids of the processes whose slices and counters are imported, as scheduling is imported for every process
+     */
+    fun importerFor(buffer: GenericByteBuffer, feedback: ImportFeedback, processFilter: (Int) -> Boolean): Importer?
 }
\ No newline at end of file
@@ -24,9 +24,10 @@ object ImporterRegistry {
             FtraceImporter.Factory
         )
 
-    fun importerFor(buffer: GenericByteBuffer, feedback: ImportFeedback): Importer? {
+    fun importerFor(buffer: GenericByteBuffer, feedback: ImportFeedback,
+                    processFilter: (Int) -> Boolean = { true }): Importer? {
         importers.forEach {
-            val importer = it.importerFor(buffer, feedback)
+            val importer = it.importerFor(buffer, feedback, processFilter)
             if (importer != null) return importer
         }
         return null
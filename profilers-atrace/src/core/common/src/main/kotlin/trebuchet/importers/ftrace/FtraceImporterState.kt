@@ -25,7 +25,7 @@ import trebuchet.model.fragments.ProcessModelFragment
 import trebuchet.model.fragments.ThreadModelFragment
 import trebuchet.util.StringCache
 
-class FtraceImporterState(feedback: ImportFeedback) {
+class FtraceImporterState(feedback: ImportFeedback, val processFilter: (Int) -> Boolean = { true }) {
     private val pidMap = SparseArray<ThreadModelFragment>(50)
     private val cpuMap = SparseArray<CpuModelFragment>(6)
     private val handlers = FunctionRegistry.create()
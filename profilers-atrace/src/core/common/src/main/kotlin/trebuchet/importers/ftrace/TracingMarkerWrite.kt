@@ -66,6 +66,10 @@ object TracingMarkerWrite : FunctionHandlerRegistry() {
         // Begin format: B|<tgid>|<title>
         skipCount(2)
         data.line.tgid = readInt()
+        // Slices of the processes not imported are never opened, so their ends are ignored as unmatched.
+        if (!data.importer.processFilter(data.line.tgid)) {
+            return
+        }
         skip()
         val thread = data.importer.threadFor(data.line)
         val name = stringTo { end() }
@@ -88,6 +92,9 @@ object TracingMarkerWrite : FunctionHandlerRegistry() {
         // Counter format: C|<tgid>|<name>|<value>
         skipCount(2)
         val tgid = readInt()
+        if (!data.importer.processFilter(tgid)) {
+            return
+        }
         skip()
         val name = stringTo { skipUntil { it == '|'.toByte() } }
         skip()
@@ -25,7 +25,11 @@ import trebuchet.model.Model
 import trebuchet.model.fragments.ModelFragment
 import kotlin.system.measureTimeMillis
 
-class ImportTask(private val importFeedback: ImportFeedback) {
+/**
+ * @param processFilter the ids of the processes whose slices and counters are imported, to not keep those of processes never shown
+ */
+class ImportTask(private val importFeedback: ImportFeedback,
+                 private val processFilter: (Int) -> Boolean = { true }) {
     private val fragments = mutableListOf<ModelFragment>()
 
     fun importBuffer(source: BufferProducer): Model {
@@ -60,7 +64,7 @@ class ImportTask(private val importFeedback: ImportFeedback) {
     }
 
     private fun addImporterSource(reader: StreamingReader) {
-        val importer = ImporterRegistry.importerFor(reader, importFeedback)
+        val importer = ImporterRegistry.importerFor(reader, importFeedback, processFilter)
         if (importer != null) {
             val result = importer.import(reader)
             if (result != null) {
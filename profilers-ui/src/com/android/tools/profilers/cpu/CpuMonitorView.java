@@ -66,6 +66,7 @@ public class CpuMonitorView extends ProfilerMonitorView<CpuMonitor> {
 
     CpuUsage cpuUsage = getMonitor().getThisProcessCpuUsage();
     final LineChart lineChart = new LineChart(cpuUsage);
+    lineChart.setGeometryExecutor(getMonitor().getProfilers().getIdeServices().getPoolExecutor());
     lineChart.setMaxLineColor(ProfilerColors.MONITOR_MAX_LINE);
     lineChart.setMaxLineMargin(40);
     lineChart.setFillEndGap(true);
@@ -159,6 +159,7 @@ abstract class CpuUsageView extends JBPanel {
 
       DetailedCpuUsage cpuUsage = myStage.getCpuUsage();
       LineChart lineChart = new LineChart(cpuUsage);
+      lineChart.setGeometryExecutor(myStage.getStudioProfilers().getIdeServices().getPoolExecutor());
       lineChart.configure(cpuUsage.getCpuSeries(), new LineConfig(ProfilerColors.CPU_USAGE)
         .setFilled(true).setStacked(true).setLegendIconType(LegendConfig.IconType.BOX));
       lineChart.configure(cpuUsage.getOtherCpuSeries(), new LineConfig(ProfilerColors.CPU_OTHER_USAGE)
@@ -147,7 +147,10 @@ public class CpuCaptureView {
     @NotNull
     @Override
     protected String getDurationText() {
-      return TimeFormatter.getMultiUnitDurationString(TimeUnit.MILLISECONDS.toMicros(myStage.getCaptureParser().getParsingElapsedTimeMs()));
+      CpuCaptureParser parser = myStage.getCaptureParser();
+      String duration = TimeFormatter.getMultiUnitDurationString(TimeUnit.MILLISECONDS.toMicros(parser.getParsingElapsedTimeMs()));
+      double progress = parser.getParsingProgress();
+      return progress < 0 ? duration : String.format("%s (%d%%)", duration, (int)(progress * 100));
     }
 
     @Override
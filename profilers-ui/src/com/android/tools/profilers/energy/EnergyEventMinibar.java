@@ -35,6 +35,7 @@ public final class EnergyEventMinibar {
 
   public EnergyEventMinibar(@NotNull EnergyProfilerStageView stageView) {
     StateChart<EnergyProfiler.EnergyEvent> chart = EnergyEventStateChart.create(stageView.getStage().getEventModel());
+    chart.setGeometryExecutor(stageView.getStage().getStudioProfilers().getIdeServices().getPoolExecutor());
     myComponent = createUi(chart);
   }
 
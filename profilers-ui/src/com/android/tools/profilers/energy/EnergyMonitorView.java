@@ -84,6 +84,7 @@ public class EnergyMonitorView extends ProfilerMonitorView<EnergyMonitor> {
     lineChartPanel.setBorder(BorderFactory.createEmptyBorder(Y_AXIS_TOP_MARGIN, 0, 0, 0));
 
     LineChart lineChart = new LineChart(getMonitor().getUsage());
+    lineChart.setGeometryExecutor(getMonitor().getProfilers().getIdeServices().getPoolExecutor());
     lineChart.setMaxLineColor(ProfilerColors.MONITOR_MAX_LINE);
     lineChart.setMaxLineMargin(40);
     lineChart.setFillEndGap(true);
@@ -137,6 +137,7 @@ public class EnergyProfilerStageView extends StageView<EnergyProfilerStage> {
     DetailedEnergyUsage usage = getStage().getDetailedUsage();
 
     final LineChart lineChart = new LineChart(usage);
+    lineChart.setGeometryExecutor(getStage().getStudioProfilers().getIdeServices().getPoolExecutor());
 
     LineConfig cpuConfig = new LineConfig(ProfilerColors.ENERGY_CPU)
       .setFilled(true)
@@ -17,8 +17,14 @@ package com.android.tools.profilers.memory;
 
 import com.android.tools.adtui.flat.FlatSeparator;
 import com.android.tools.adtui.model.AspectObserver;
+import com.android.tools.adtui.model.formatter.TimeFormatter;
+import com.android.tools.profiler.proto.MemoryProfiler.HeapDumpInfo;
 import com.android.tools.profilers.IdeProfilerComponents;
+import com.android.tools.profilers.IdeProfilerServices;
+import com.android.tools.profilers.ProfilerCombobox;
+import com.android.tools.profilers.ProfilerComboboxCellRenderer;
 import com.android.tools.profilers.memory.adapters.CaptureObject;
+import com.android.tools.profilers.memory.adapters.HeapDumpCaptureObject;
 import com.google.common.annotations.VisibleForTesting;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.util.ui.JBEmptyBorder;
@@ -26,6 +32,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static com.android.tools.profilers.ProfilerLayout.createToolbarLayout;
 
@@ -38,6 +46,11 @@ public final class MemoryCaptureView extends AspectObserver {
 
   @NotNull private final JLabel myLabel;
 
+  /**
+   * Lists the other heap dumps the selected one can be compared with.
+   */
+  @NotNull private final JComboBox<HeapDumpInfo> myCompareComboBox = new ProfilerCombobox<>();
+
   @NotNull private final JPanel myPanel;
 
   @Nullable private CaptureObject myCaptureObject = null;
@@ -51,6 +64,14 @@ public final class MemoryCaptureView extends AspectObserver {
     myPanel = new JPanel(createToolbarLayout());
     myLabel = new JLabel();
     myLabel.setBorder(new JBEmptyBorder(0, 11, 0, 3));
+    myCompareComboBox.setRenderer(new HeapDumpListCellRenderer());
+    myCompareComboBox.addActionListener(e -> {
+      Object item = myCompareComboBox.getSelectedItem();
+      if (item instanceof HeapDumpInfo && myCaptureObject instanceof HeapDumpCaptureObject) {
+        myStage.selectHeapDumpDiff(((HeapDumpCaptureObject)myCaptureObject).getHeapDumpInfo(), (HeapDumpInfo)item,
+                                   SwingUtilities::invokeLater);
+      }
+    });
     reset();
   }
 
@@ -79,6 +100,51 @@ public final class MemoryCaptureView extends AspectObserver {
       myLabel.setText(myCaptureObject.getName());
       myPanel.add(myLabel);
       myPanel.add(new FlatSeparator());
+      if (myCaptureObject instanceof HeapDumpCaptureObject) {
+        addCompareComboBox(((HeapDumpCaptureObject)myCaptureObject).getHeapDumpInfo());
+      }
+    }
+  }
+
+  /**
+   * Lists the heap dumps on the pool executor, as it queries the datastore, and adds the combo box once they are listed.
+   */
+  private void addCompareComboBox(@NotNull HeapDumpInfo heapDumpInfo) {
+    CaptureObject captureObject = myCaptureObject;
+    IdeProfilerServices ideServices = myStage.getStudioProfilers().getIdeServices();
+    CompletableFuture.supplyAsync(myStage::getCompletedHeapDumpInfos, ideServices.getPoolExecutor())
+      .thenAcceptAsync(otherInfos -> {
+        otherInfos.remove(heapDumpInfo);
+        // The capture may have changed, or have been refreshed again, while the heap dumps were listed.
+        if (otherInfos.isEmpty() || myCaptureObject != captureObject || myCompareComboBox.getParent() == myPanel) {
+          return;
+        }
+
+        // Nothing is selected at first, so that picking any of the heap dumps selects the diff with it.
+        DefaultComboBoxModel<HeapDumpInfo> comboBoxModel = new DefaultComboBoxModel<>(otherInfos.toArray(new HeapDumpInfo[0]));
+        comboBoxModel.setSelectedItem(null);
+        myCompareComboBox.setModel(comboBoxModel);
+        myPanel.add(myCompareComboBox);
+        myPanel.add(new FlatSeparator());
+        myPanel.revalidate();
+        myPanel.repaint();
+      }, ideServices.getMainExecutor());
+  }
+
+  private final class HeapDumpListCellRenderer extends ProfilerComboboxCellRenderer<HeapDumpInfo> {
+    @Override
+    protected void customizeCellRenderer(@NotNull JList<? extends HeapDumpInfo> list,
+                                         HeapDumpInfo value,
+                                         int index,
+                                         boolean selected,
+                                         boolean hasFocus) {
+      if (value == null) {
+        append("Compare with heap dump");
+      }
+      else {
+        long startTimeUs = myStage.getStudioProfilers().getTimeline().convertToRelativeTimeUs(value.getStartTime());
+        append("Heap dump at " + TimeFormatter.getSimplifiedClockString(startTimeUs));
+      }
     }
   }
 }
@@ -299,7 +299,9 @@ final class MemoryClassifierView extends AspectObserver {
 
       mySelectedClassifierSet = classifierNode.getAdapter();
 
-      if (classifierNode.getAdapter() instanceof ClassSet && myClassSet != classifierNode.getAdapter()) {
+      // Only the captures which hold the instances themselves, rather than only their counts and sizes, can list the ones of a ClassSet.
+      if (classifierNode.getAdapter() instanceof ClassSet && myClassSet != classifierNode.getAdapter() &&
+          myCaptureObject != null && myCaptureObject.canListInstances()) {
         myClassSet = (ClassSet)classifierNode.getAdapter();
         myStage.selectClassSet(myClassSet);
       }
@@ -63,6 +63,7 @@ public class MemoryMonitorView extends ProfilerMonitorView<MemoryMonitor> {
 
     MemoryUsage usage = getMonitor().getMemoryUsage();
     LineChart lineChart = new LineChart(usage);
+    lineChart.setGeometryExecutor(getMonitor().getProfilers().getIdeServices().getPoolExecutor());
 
     JPanel lineChartPanel = new JBPanel(new BorderLayout());
     lineChartPanel.setOpaque(false);
@@ -450,6 +450,7 @@ public class MemoryProfilerStageView extends StageView<MemoryProfilerStage> {
 
     DetailedMemoryUsage memoryUsage = getStage().getDetailedMemoryUsage();
     final LineChart lineChart = new LineChart(memoryUsage);
+    lineChart.setGeometryExecutor(getStage().getStudioProfilers().getIdeServices().getPoolExecutor());
     if (getStage().useLiveAllocationTracking()) {
       // Always show series in their captured state in live allocation mode.
       configureStackedFilledLine(lineChart, ProfilerColors.MEMORY_JAVA_CAPTURED, memoryUsage.getJavaSeries());
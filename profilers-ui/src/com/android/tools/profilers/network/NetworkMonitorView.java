@@ -66,6 +66,7 @@ public class NetworkMonitorView extends ProfilerMonitorView<NetworkMonitor> {
 
     NetworkUsage usage = getMonitor().getNetworkUsage();
     final LineChart lineChart = new LineChart(usage);
+    lineChart.setGeometryExecutor(getMonitor().getProfilers().getIdeServices().getPoolExecutor());
     LineConfig receivedConfig = new LineConfig(ProfilerColors.NETWORK_RECEIVING_COLOR).setLegendIconType(LegendConfig.IconType.LINE);
     lineChart.configure(usage.getRxSeries(), receivedConfig);
     LineConfig sentConfig = new LineConfig(ProfilerColors.NETWORK_SENDING_COLOR).setLegendIconType(LegendConfig.IconType.LINE);
@@ -193,6 +193,7 @@ public class NetworkProfilerStageView extends StageView<NetworkProfilerStage> {
     lineChartPanel.setBorder(BorderFactory.createEmptyBorder(Y_AXIS_TOP_MARGIN, 0, 0, 0));
     DetailedNetworkUsage usage = getStage().getDetailedNetworkUsage();
     final LineChart lineChart = new LineChart(usage);
+    lineChart.setGeometryExecutor(getStage().getStudioProfilers().getIdeServices().getPoolExecutor());
     LineConfig receivedConfig = new LineConfig(ProfilerColors.NETWORK_RECEIVING_COLOR).setLegendIconType(LegendConfig.IconType.LINE);
     lineChart.configure(usage.getRxSeries(), receivedConfig);
     LineConfig sentConfig = new LineConfig(ProfilerColors.NETWORK_SENDING_COLOR).setLegendIconType(LegendConfig.IconType.LINE);
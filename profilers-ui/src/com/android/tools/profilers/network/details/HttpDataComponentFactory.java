@@ -105,7 +105,7 @@ final class HttpDataComponentFactory {
   @NotNull
   public JComponent createBodyComponent(@NotNull IdeProfilerComponents components, @NotNull ConnectionType type) {
     Payload payload = type.getPayload(myModel, myHttpData);
-    if (payload.getBytes().isEmpty()) {
+    if (payload.isEmpty()) {
       return TabUiUtils.createHideablePanel(getBodyTitle(type), new JLabel("Not available"), null);
     }
     JComponent rawDataComponent = createRawDataComponent(payload, components);
@@ -79,6 +79,11 @@ final class OverviewTabContent extends TabContent {
   private static final String ID_OTHER_THREADS = "OTHER_THREADS";
   private static final String ID_RESPONSE_PAYLOAD_VIEWER = "RESPONSE_PAYLOAD_VIEWER";
 
+  /**
+   * The overview only previews the beginning of large payloads which aren't images, as the response tab shows them entirely.
+   */
+  private static final int MAX_PREVIEW_BYTES = 64 * 1024;
+
   private final FeatureConfig myFeatures;
   private final IdeProfilerComponents myComponents;
   private final NetworkConnectionsModel myModel;
@@ -264,9 +269,10 @@ final class OverviewTabContent extends TabContent {
     }
 
     Payload payload = Payload.newResponsePayload(myModel, data);
-    String mimeType = payload.getContentType().getMimeType();
-    DataViewer payloadViewer = myComponents.createDataViewer(payload.getBytes().toByteArray(), ContentType.fromMimeType(mimeType),
-                                                             DataViewer.Style.PRETTY);
+    ContentType contentType = ContentType.fromMimeType(payload.getContentType().getMimeType());
+    // Images are decoded as a whole to be scaled down.
+    byte[] content = contentType.isImageType() ? payload.getBytes().toByteArray() : payload.getBytes(0, MAX_PREVIEW_BYTES).toByteArray();
+    DataViewer payloadViewer = myComponents.createDataViewer(content, contentType, DataViewer.Style.PRETTY);
     JComponent responsePayloadComponent = payloadViewer.getComponent();
     responsePayloadComponent.setName(ID_RESPONSE_PAYLOAD_VIEWER);
 
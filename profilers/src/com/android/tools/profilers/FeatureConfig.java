@@ -31,6 +31,7 @@ public interface FeatureConfig {
   boolean isLiveAllocationsEnabled();
   boolean isLiveAllocationsSamplingEnabled();
   boolean isMemoryCaptureFilterEnabled();
+  boolean isMemoryMappedHeapDumpEnabled();
   boolean isMemorySnapshotEnabled();
   boolean isPerformanceMonitoringEnabled();
   boolean isSessionImportEnabled();
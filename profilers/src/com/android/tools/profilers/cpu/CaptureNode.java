@@ -22,167 +22,71 @@ import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import static com.android.tools.profilers.cpu.CaptureNode.FilterType.MATCH;
-
-public class CaptureNode implements HNode<CaptureNode> {
-
-  /**
-   * Start time with GLOBAL clock.
-   */
-  private long myStartGlobal;
-
-  /**
-   * End time with GLOBAL clock.
-   */
-  private long myEndGlobal;
-
-  /**
-   * Start time with THREAD clock.
-   */
-  private long myStartThread;
-
-  /**
-   * End time with THREAD clock.
-   */
-  private long myEndThread;
-
-  @NotNull
-  private final List<CaptureNode> myChildren;
-
-  @NotNull
-  private ClockType myClockType;
-
-  /**
-   * The parent of its child is set to it when it is added {@link #addChild(CaptureNode)}
-   */
-  private CaptureNode myParent;
-
-  /**
-   * see {@link FilterType}.
-   */
-  @NotNull
-  private FilterType myFilterType;
-
-  /**
-   * The shortest distance from the root.
-   */
-  private int myDepth;
-
-  @NotNull
-  private final CaptureNodeModel myData;
-
-  public CaptureNode(@NotNull CaptureNodeModel model) {
-    myChildren = new ArrayList<>();
-    myClockType = ClockType.GLOBAL;
-    myFilterType = MATCH;
-    myDepth = 0;
-    myData = model;
-  }
-
-  public void addChild(CaptureNode node) {
-    myChildren.add(node);
-    node.myParent = this;
-  }
+/**
+ * A call of a capture. Nodes either hold their own state, see {@link DefaultCaptureNode}, or are views of the nodes of a
+ * {@link CaptureTree}, which only hold the index of the node they represent. This class has no state of its own, so that the views stay
+ * small.
+ */
+public abstract class CaptureNode implements HNode<CaptureNode> {
 
   @NotNull
-  public List<CaptureNode> getChildren() {
-    return myChildren;
-  }
+  public abstract List<CaptureNode> getChildren();
 
   @NotNull
-  public CaptureNodeModel getData() {
-    return myData;
-  }
-
-  @Override
-  public int getChildCount() {
-    return myChildren.size();
-  }
+  public abstract CaptureNodeModel getData();
 
   @NotNull
   @Override
-  public CaptureNode getChildAt(int index) {
-    return myChildren.get(index);
-  }
+  public abstract CaptureNode getChildAt(int index);
 
   @Nullable
   @Override
-  public CaptureNode getParent() {
-    return myParent;
-  }
+  public abstract CaptureNode getParent();
 
   @Override
   public long getStart() {
-    return myClockType == ClockType.THREAD ? myStartThread : myStartGlobal;
+    return getClockType() == ClockType.THREAD ? getStartThread() : getStartGlobal();
   }
 
   @Override
   public long getEnd() {
-    return myClockType == ClockType.THREAD ? myEndThread : myEndGlobal;
+    return getClockType() == ClockType.THREAD ? getEndThread() : getEndGlobal();
   }
 
-  @Override
-  public int getDepth() {
-    return myDepth;
-  }
+  public abstract void setDepth(int depth);
 
-  public void setStartGlobal(long startGlobal) {
-    myStartGlobal = startGlobal;
-  }
+  public abstract void setStartGlobal(long startGlobal);
 
-  public long getStartGlobal() {
-    return myStartGlobal;
-  }
+  public abstract long getStartGlobal();
 
-  public void setEndGlobal(long endGlobal) {
-    myEndGlobal = endGlobal;
-  }
+  public abstract void setEndGlobal(long endGlobal);
 
-  public long getEndGlobal() {
-    return myEndGlobal;
-  }
+  public abstract long getEndGlobal();
 
-  public void setStartThread(long startThread) {
-    myStartThread = startThread;
-  }
+  public abstract void setStartThread(long startThread);
 
-  public long getStartThread() {
-    return myStartThread;
-  }
+  public abstract long getStartThread();
 
-  public void setEndThread(long endThread) {
-    myEndThread = endThread;
-  }
+  public abstract void setEndThread(long endThread);
 
-  public long getEndThread() {
-    return myEndThread;
-  }
+  public abstract long getEndThread();
 
-  public void setClockType(@NotNull ClockType clockType) {
-    myClockType = clockType;
-  }
+  public abstract void setClockType(@NotNull ClockType clockType);
+
+  @NotNull
+  public abstract ClockType getClockType();
 
   /**
    * Returns the proportion of time the method was using CPU relative to the total (wall-clock) time that passed.
    */
   public double threadGlobalRatio() {
-    long durationThread = myEndThread - myStartThread;
-    long durationGlobal = myEndGlobal - myStartGlobal;
+    long durationThread = getEndThread() - getStartThread();
+    long durationGlobal = getEndGlobal() - getStartGlobal();
     return (double)durationThread / durationGlobal;
   }
 
-  @NotNull
-  public ClockType getClockType() {
-    return myClockType;
-  }
-
-  public void setDepth(int depth) {
-    myDepth = depth;
-  }
-
   /**
    * @return true if this node matches to the {@param filter}.
    * Note: this node matches to the empty {@param filter}.
@@ -192,13 +96,9 @@ public class CaptureNode implements HNode<CaptureNode> {
   }
 
   @NotNull
-  public FilterType getFilterType() {
-    return myFilterType;
-  }
+  public abstract FilterType getFilterType();
 
-  public void setFilterType(@NotNull FilterType type) {
-    myFilterType = type;
-  }
+  public abstract void setFilterType(@NotNull FilterType type);
 
   public boolean isUnmatched() {
     return getFilterType() == FilterType.UNMATCH;
@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A call tree stored in primitive arrays instead of a {@link CaptureNode} object, with its list of children, per call. This is meant for
+ * captures of millions of calls, for which the objects cost several times the size of the data they hold.
+ * <p>
+ * Nodes are stored in breadth-first order, so that the children of a node are contiguous and identified by the index of the first one and
+ * their count. Their models are interned, each node only keeps the index of its model. The code working with {@link CaptureNode} trees can
+ * use views of the nodes, see {@link #getRoot()}, only holding the index of the node they represent. A node has a single view, created the
+ * first time it is requested, so that the nodes that are never visited don't cost a view and the visited ones can be compared by identity.
+ * <p>
+ * Trees are built with a {@link Builder}, after which only the times, depths, clock type and filter types of the nodes can change.
+ */
+public final class CaptureTree {
+  /**
+   * Index of the missing nodes, e.g. the parent of the root.
+   */
+  public static final int NO_NODE = -1;
+
+  private static final CaptureNode.FilterType[] FILTER_TYPES = CaptureNode.FilterType.values();
+
+  @NotNull private final long[] myStartGlobal;
+  @NotNull private final long[] myEndGlobal;
+  @NotNull private final long[] myStartThread;
+  @NotNull private final long[] myEndThread;
+  @NotNull private final int[] myParent;
+  @NotNull private final int[] myFirstChild;
+  @NotNull private final int[] myChildCount;
+  @NotNull private final int[] myDepth;
+  @NotNull private final int[] myModel;
+  @NotNull private final byte[] myFilterType;
+  @NotNull private final CaptureNodeModel[] myModels;
+
+  /**
+   * The views of the nodes, see {@link #getNode(int)}. Trees are built in the background and read on the UI thread, so the views are
+   * published atomically.
+   */
+  @NotNull private final AtomicReferenceArray<NodeView> myViews;
+
+  /**
+   * The clock type of every node of the tree, as they are always changed together.
+   */
+  @NotNull private ClockType myClockType = ClockType.GLOBAL;
+
+  private CaptureTree(int size, @NotNull CaptureNodeModel[] models) {
+    myStartGlobal = new long[size];
+    myEndGlobal = new long[size];
+    myStartThread = new long[size];
+    myEndThread = new long[size];
+    myParent = new int[size];
+    myFirstChild = new int[size];
+    myChildCount = new int[size];
+    myDepth = new int[size];
+    myModel = new int[size];
+    myFilterType = new byte[size];
+    Arrays.fill(myFilterType, (byte)CaptureNode.FilterType.MATCH.ordinal());
+    myModels = models;
+    myViews = new AtomicReferenceArray<>(size);
+  }
+
+  public int size() {
+    return myParent.length;
+  }
+
+  @NotNull
+  public CaptureNode getRoot() {
+    return getNode(0);
+  }
+
+  @NotNull
+  public CaptureNode getNode(int index) {
+    assert index >= 0 && index < size();
+    NodeView view = myViews.get(index);
+    if (view == null) {
+      myViews.compareAndSet(index, null, new NodeView(this, index));
+      view = myViews.get(index);
+    }
+    return view;
+  }
+
+  /**
+   * A {@link CaptureNode} reading and writing the arrays of its tree. It has no other state than the node it represents, and there is one
+   * per node, see {@link #getNode(int)}.
+   */
+  private static final class NodeView extends CaptureNode {
+    @NotNull private final CaptureTree myTree;
+    private final int myIndex;
+
+    private NodeView(@NotNull CaptureTree tree, int index) {
+      myTree = tree;
+      myIndex = index;
+    }
+
+    @NotNull
+    @Override
+    public List<CaptureNode> getChildren() {
+      return new AbstractList<CaptureNode>() {
+        @Override
+        public CaptureNode get(int index) {
+          return getChildAt(index);
+        }
+
+        @Override
+        public int size() {
+          return getChildCount();
+        }
+      };
+    }
+
+    @NotNull
+    @Override
+    public CaptureNodeModel getData() {
+      return myTree.myModels[myTree.myModel[myIndex]];
+    }
+
+    @Override
+    public int getChildCount() {
+      return myTree.myChildCount[myIndex];
+    }
+
+    @NotNull
+    @Override
+    public CaptureNode getChildAt(int index) {
+      if (index < 0 || index >= getChildCount()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getChildCount());
+      }
+      return myTree.getNode(myTree.myFirstChild[myIndex] + index);
+    }
+
+    @Nullable
+    @Override
+    public CaptureNode getParent() {
+      int parent = myTree.myParent[myIndex];
+      return parent == NO_NODE ? null : myTree.getNode(parent);
+    }
+
+    @Override
+    public int getDepth() {
+      return myTree.myDepth[myIndex];
+    }
+
+    @Override
+    public void setDepth(int depth) {
+      myTree.myDepth[myIndex] = depth;
+    }
+
+    @Override
+    public void setStartGlobal(long startGlobal) {
+      myTree.myStartGlobal[myIndex] = startGlobal;
+    }
+
+    @Override
+    public long getStartGlobal() {
+      return myTree.myStartGlobal[myIndex];
+    }
+
+    @Override
+    public void setEndGlobal(long endGlobal) {
+      myTree.myEndGlobal[myIndex] = endGlobal;
+    }
+
+    @Override
+    public long getEndGlobal() {
+      return myTree.myEndGlobal[myIndex];
+    }
+
+    @Override
+    public void setStartThread(long startThread) {
+      myTree.myStartThread[myIndex] = startThread;
+    }
+
+    @Override
+    public long getStartThread() {
+      return myTree.myStartThread[myIndex];
+    }
+
+    @Override
+    public void setEndThread(long endThread) {
+      myTree.myEndThread[myIndex] = endThread;
+    }
+
+    @Override
+    public long getEndThread() {
+      return myTree.myEndThread[myIndex];
+    }
+
+    @Override
+    public void setClockType(@NotNull ClockType clockType) {
+      myTree.myClockType = clockType;
+    }
+
+    @NotNull
+    @Override
+    public ClockType getClockType() {
+      return myTree.myClockType;
+    }
+
+    @NotNull
+    @Override
+    public FilterType getFilterType() {
+      return FILTER_TYPES[myTree.myFilterType[myIndex]];
+    }
+
+    @Override
+    public void setFilterType(@NotNull FilterType type) {
+      myTree.myFilterType[myIndex] = (byte)type.ordinal();
+    }
+  }
+
+  /**
+   * Builds a {@link CaptureTree} one call at a time, in any order. Nodes are linked to their first child, last child and next sibling
+   * while building, and laid out in breadth-first order by {@link #build(int)}.
+   */
+  public static final class Builder {
+    private static final int INITIAL_CAPACITY = 64;
+
+    @NotNull private long[] myStartGlobal = new long[INITIAL_CAPACITY];
+    @NotNull private long[] myEndGlobal = new long[INITIAL_CAPACITY];
+    @NotNull private long[] myStartThread = new long[INITIAL_CAPACITY];
+    @NotNull private long[] myEndThread = new long[INITIAL_CAPACITY];
+    @NotNull private int[] myParent = new int[INITIAL_CAPACITY];
+    @NotNull private int[] myFirstChild = new int[INITIAL_CAPACITY];
+    @NotNull private int[] myLastChild = new int[INITIAL_CAPACITY];
+    @NotNull private int[] myNextSibling = new int[INITIAL_CAPACITY];
+    @NotNull private int[] myModel = new int[INITIAL_CAPACITY];
+    private int mySize;
+
+    @NotNull private final List<CaptureNodeModel> myModels = new ArrayList<>();
+    @NotNull private final Map<CaptureNodeModel, Integer> myModelIndexes = new IdentityHashMap<>();
+
+    /**
+     * Adds a node without parent, see {@link #addChild(int, int)}. Nodes sharing a model should use the same {@link CaptureNodeModel}
+     * instance, as models are interned by identity.
+     *
+     * @return the index of the node in the builder
+     */
+    public int addNode(@NotNull CaptureNodeModel model) {
+      if (mySize == myParent.length) {
+        grow();
+      }
+      int node = mySize++;
+      myParent[node] = NO_NODE;
+      myFirstChild[node] = NO_NODE;
+      myLastChild[node] = NO_NODE;
+      myNextSibling[node] = NO_NODE;
+      myModel[node] = myModelIndexes.computeIfAbsent(model, m -> {
+        myModels.add(m);
+        return myModels.size() - 1;
+      });
+      return node;
+    }
+
+    /**
+     * Adds a node without parent as the last child of another node.
+     */
+    public void addChild(int parent, int child) {
+      assert myParent[child] == NO_NODE;
+      myParent[child] = parent;
+      if (myLastChild[parent] == NO_NODE) {
+        myFirstChild[parent] = child;
+      }
+      else {
+        myNextSibling[myLastChild[parent]] = child;
+      }
+      myLastChild[parent] = child;
+    }
+
+    public int size() {
+      return mySize;
+    }
+
+    public int getParent(int node) {
+      return myParent[node];
+    }
+
+    public int getFirstChild(int node) {
+      return myFirstChild[node];
+    }
+
+    public int getLastChild(int node) {
+      return myLastChild[node];
+    }
+
+    @NotNull
+    public CaptureNodeModel getModel(int node) {
+      return myModels.get(myModel[node]);
+    }
+
+    public void setStartGlobal(int node, long startGlobal) {
+      myStartGlobal[node] = startGlobal;
+    }
+
+    public long getStartGlobal(int node) {
+      return myStartGlobal[node];
+    }
+
+    public void setEndGlobal(int node, long endGlobal) {
+      myEndGlobal[node] = endGlobal;
+    }
+
+    public long getEndGlobal(int node) {
+      return myEndGlobal[node];
+    }
+
+    public void setStartThread(int node, long startThread) {
+      myStartThread[node] = startThread;
+    }
+
+    public long getStartThread(int node) {
+      return myStartThread[node];
+    }
+
+    public void setEndThread(int node, long endThread) {
+      myEndThread[node] = endThread;
+    }
+
+    public long getEndThread(int node) {
+      return myEndThread[node];
+    }
+
+    /**
+     * Builds the tree of the given root, the nodes not under it are dropped. The depth of every node is set to its distance from the root.
+     */
+    @NotNull
+    public CaptureTree build(int root) {
+      // Breadth-first order of the nodes under the root, and the index of each node in that order.
+      int[] order = new int[mySize];
+      int[] newIndexes = new int[mySize];
+      order[0] = root;
+      int visited = 1;
+      for (int i = 0; i < visited; i++) {
+        newIndexes[order[i]] = i;
+        for (int child = myFirstChild[order[i]]; child != NO_NODE; child = myNextSibling[child]) {
+          order[visited++] = child;
+        }
+      }
+
+      CaptureTree tree = new CaptureTree(visited, myModels.toArray(new CaptureNodeModel[0]));
+      int nextFirstChild = 1;
+      for (int i = 0; i < visited; i++) {
+        int node = order[i];
+        tree.myStartGlobal[i] = myStartGlobal[node];
+        tree.myEndGlobal[i] = myEndGlobal[node];
+        tree.myStartThread[i] = myStartThread[node];
+        tree.myEndThread[i] = myEndThread[node];
+        tree.myModel[i] = myModel[node];
+        if (node == root) {
+          tree.myParent[i] = NO_NODE;
+          tree.myDepth[i] = 0;
+        }
+        else {
+          // Parents come before their children in breadth-first order, so their depth is already set.
+          tree.myParent[i] = newIndexes[myParent[node]];
+          tree.myDepth[i] = tree.myDepth[tree.myParent[i]] + 1;
+        }
+
+        // The children of the nodes visited so far were enqueued in the same order.
+        int childCount = 0;
+        for (int child = myFirstChild[node]; child != NO_NODE; child = myNextSibling[child]) {
+          childCount++;
+        }
+        tree.myFirstChild[i] = childCount == 0 ? NO_NODE : nextFirstChild;
+        tree.myChildCount[i] = childCount;
+        nextFirstChild += childCount;
+      }
+      return tree;
+    }
+
+    private void grow() {
+      int capacity = myParent.length * 2;
+      myStartGlobal = Arrays.copyOf(myStartGlobal, capacity);
+      myEndGlobal = Arrays.copyOf(myEndGlobal, capacity);
+      myStartThread = Arrays.copyOf(myStartThread, capacity);
+      myEndThread = Arrays.copyOf(myEndThread, capacity);
+      myParent = Arrays.copyOf(myParent, capacity);
+      myFirstChild = Arrays.copyOf(myFirstChild, capacity);
+      myLastChild = Arrays.copyOf(myLastChild, capacity);
+      myNextSibling = Arrays.copyOf(myNextSibling, capacity);
+      myModel = Arrays.copyOf(myModel, capacity);
+    }
+  }
+}
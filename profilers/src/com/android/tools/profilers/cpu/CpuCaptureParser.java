@@ -88,6 +88,12 @@ public class CpuCaptureParser {
    */
   private long myParsingStartTimeMs;
 
+  /**
+   * Fraction of the capture parsed so far, published from the parsing threads by the parsers that report it, or a negative value if
+   * the parser doesn't.
+   */
+  private volatile double myParsingProgress = -1;
+
   public CpuCaptureParser(@NotNull IdeProfilerServices services) {
     myServices = services;
     myCaptures = new HashMap<>();
@@ -135,6 +141,13 @@ public class CpuCaptureParser {
     return System.currentTimeMillis() - myParsingStartTimeMs;
   }
 
+  /**
+   * @return the fraction, between 0 and 1, of the capture being parsed that was parsed so far, or a negative value if it isn't known.
+   */
+  public double getParsingProgress() {
+    return myParsingProgress;
+  }
+
   /**
    * Updates {@link #myIsParsing} to false once the given {@link CompletableFuture<CpuCapture>} is done.
    */
@@ -152,6 +165,7 @@ public class CpuCaptureParser {
   @VisibleForTesting // In order to be accessible from com.android.tools.profilers.cpu.capturedetails
   public void updateParsingStateWhenStarting() {
     myParsingStartTimeMs = System.currentTimeMillis();
+    myParsingProgress = -1;
     myIsParsing = true;
     myAspect.changed(CpuProfilerAspect.CAPTURE_PARSING);
   }
@@ -213,6 +227,7 @@ public class CpuCaptureParser {
     try {
       // First try parsing the trace file as an ART trace.
       ArtTraceParser artTraceParser = new ArtTraceParser();
+      artTraceParser.setProgressListener(progress -> myParsingProgress = progress);
       return artTraceParser.parse(traceFile, IMPORTED_TRACE_ID);
     }
     catch (Exception ignored) {
@@ -311,13 +326,16 @@ public class CpuCaptureParser {
     try {
       File trace = FileUtil.createTempFile(String.format("cpu_trace_%d", traceId), ".trace", true);
       try (FileOutputStream out = new FileOutputStream(trace)) {
-        out.write(traceData.toByteArray());
+        // Written without copying the trace into a byte array first, as it can be hundreds of MB.
+        traceData.writeTo(out);
       }
       myTraceFiles.put(traceId, trace.getAbsolutePath());
 
       TraceParser parser;
       if (profilerType == CpuProfilerType.ART) {
-        parser = new ArtTraceParser();
+        ArtTraceParser artTraceParser = new ArtTraceParser();
+        artTraceParser.setProgressListener(progress -> myParsingProgress = progress);
+        parser = artTraceParser;
       }
       else if (profilerType == CpuProfilerType.SIMPLEPERF) {
         parser = new SimpleperfTraceParser();
@@ -15,9 +15,9 @@
  */
 package com.android.tools.profilers.cpu;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.BufferedDataSeries;
+import com.android.tools.adtui.model.LongSeriesBuffer;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.CpuProfiler.CpuDataRequest;
 import com.android.tools.profiler.proto.CpuProfiler.CpuDataResponse;
@@ -25,14 +25,12 @@ import com.android.tools.profiler.proto.CpuProfiler.CpuUsageData;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
  * This class is responsible for making an RPC call to perfd/datastore and converting the resulting proto into UI data.
  */
-public class CpuUsageDataSeries implements DataSeries<Long> {
+public class CpuUsageDataSeries implements BufferedDataSeries {
   @NotNull
   private CpuServiceGrpc.CpuServiceBlockingStub myClient;
 
@@ -46,8 +44,8 @@ public class CpuUsageDataSeries implements DataSeries<Long> {
   }
 
   @Override
-  public List<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
+  public void getDataForXRange(@NotNull Range timeCurrentRangeUs, int targetPixelWidth, @NotNull LongSeriesBuffer buffer) {
+    buffer.clear();
     // Get an extra padding on each side, to have a smooth rendering at the edges.
     // TODO: Change the CPU API to allow specifying this padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
@@ -65,19 +63,16 @@ public class CpuUsageDataSeries implements DataSeries<Long> {
         lastCpuData = data;
         continue;
       }
-      CpuUsageDataSeries.UsageData usageData = getCpuUsageData(data, lastCpuData);
-      if (myOtherProcesses) {
-        seriesData.add(new SeriesData<>(dataTimestamp, (long)usageData.getOtherProcessesUsage()));
-      }
-      else {
-        seriesData.add(new SeriesData<>(dataTimestamp, (long)usageData.getAppUsage()));
-      }
+      buffer.add(dataTimestamp, getCpuUsage(data, lastCpuData, myOtherProcesses));
       lastCpuData = data;
     }
-    return seriesData;
+    buffer.reduceToPixels(timeCurrentRangeUs.getMin(), timeCurrentRangeUs.getMax(), targetPixelWidth);
   }
 
-  private static UsageData getCpuUsageData(CpuUsageData data, CpuUsageData lastData) {
+  /**
+   * @return the app usage (in %) between the two samples, or the usage of the other processes if {@code otherProcesses} is true.
+   */
+  private static long getCpuUsage(CpuUsageData data, CpuUsageData lastData, boolean otherProcesses) {
     long elapsed = (data.getElapsedTimeInMillisec() - lastData.getElapsedTimeInMillisec());
     // TODO: consider using raw data instead of percentage to improve efficiency.
     double app = 100.0 * (data.getAppCpuTimeInMillisec() - lastData.getAppCpuTimeInMillisec()) / elapsed;
@@ -91,31 +86,6 @@ public class CpuUsageDataSeries implements DataSeries<Long> {
     system = Math.max(0, Math.min(system, 100.0));
     app = Math.max(0, Math.min(app, system));
 
-    return new UsageData(app, system);
-  }
-
-  private static final class UsageData {
-    /**
-     * App usage (in %) at a given point.
-     */
-    private double myAppUsage;
-
-    /**
-     * System usage (in %), including applications, at a given point.
-     */
-    private double mySystemUsage;
-
-    UsageData(double appUsage, double systemUsage) {
-      myAppUsage = appUsage;
-      mySystemUsage = systemUsage;
-    }
-
-    double getAppUsage() {
-      return myAppUsage;
-    }
-
-    double getOtherProcessesUsage() {
-      return mySystemUsage - myAppUsage;
-    }
+    return (long)(otherProcesses ? system - app : app);
   }
 }
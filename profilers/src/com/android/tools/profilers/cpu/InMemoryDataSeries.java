@@ -25,7 +25,7 @@ import java.util.List;
 
 /**
  * Implementers of this class should implement {@link #inMemoryDataList}, which should return all the {@link DataSeries} that would be
- * returned if {@link #getDataForXRange(Range)} receives a range with maximum length.
+ * returned if {@link #getDataForXRange(Range)} receives a range with maximum length, sorted by x.
  */
 abstract class InMemoryDataSeries<T> implements DataSeries<T> {
 
@@ -38,20 +38,16 @@ abstract class InMemoryDataSeries<T> implements DataSeries<T> {
     if (seriesDataList.isEmpty()) {
       return series;
     }
-    for (int i = 0; i < seriesDataList.size() - 1; i++) {
+    // The data is sorted by x, so we start from the element just before our range starts, as it is the one in effect at min, which is the
+    // one before the first element greater than our min. All elements after it are greater than our min until our current element is >=
+    // than our max in which case we break out of the loop.
+    for (int i = Math.max(0, countUpTo(seriesDataList, min) - 1); i < seriesDataList.size() - 1; i++) {
       SeriesData<T> data = seriesDataList.get(i);
-      SeriesData<T> nextData = seriesDataList.get(i + 1);
       // If our series overlaps with the start of the range upto excluding the end. We add the series.
       if (data.x >= max) {
         break;
       }
-      // If our next series is greater than our min then we add our current element to the return set. This works because
-      // we want to add the element just before our range starts so checking the next element gives us that.
-      // After that point all elements will be greater than our min until our current element is > than our max in which case
-      // we break out of the loop.
-      if (nextData.x > min) {
-        series.add(data);
-      }
+      series.add(data);
     }
     SeriesData<T> lastElement = seriesDataList.get(seriesDataList.size() - 1);
     // Always add the last element if it is less than the max.
@@ -61,6 +57,24 @@ abstract class InMemoryDataSeries<T> implements DataSeries<T> {
     return series;
   }
 
+  /**
+   * @return how many of the sorted series data have an x less than or equal to the given value.
+   */
+  private static <T> int countUpTo(@NotNull List<SeriesData<T>> seriesDataList, long value) {
+    int low = 0;
+    int high = seriesDataList.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (seriesDataList.get(mid).x <= value) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
   /**
    * Returns all the {@link SeriesData} stored in memory, to be filtered by range in {@link #getDataForXRange(Range)}
    */
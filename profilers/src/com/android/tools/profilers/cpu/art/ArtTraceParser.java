@@ -22,33 +22,72 @@ import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.TraceParser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
+import java.util.function.DoubleConsumer;
 
 /**
  * Receives a binary trace file generated by using ART and parse it into a {@link CpuCapture}
  */
 public class ArtTraceParser implements TraceParser {
 
-  private final ArtTraceHandler myTraceHandler = new ArtTraceHandler();
+  private Map<CpuThreadInfo, CaptureNode> myCaptureTrees;
+
+  private long myStartTimeUs;
+
+  private long myElapsedTimeUs;
+
+  @Nullable
+  private DoubleConsumer myProgressListener;
+
+  /**
+   * Sets a listener notified, from the parsing threads, of the fraction of the trace parsed so far.
+   */
+  public void setProgressListener(@NotNull DoubleConsumer progressListener) {
+    myProgressListener = progressListener;
+  }
 
   @Override
   public CpuCapture parse(File trace, int traceId) throws IOException {
-    VmTraceParser parser = new VmTraceParser(trace, myTraceHandler);
-    parser.parse();
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(trace.toPath(), StandardOpenOption.READ)) {
+      // The mapping stays valid once the channel is closed.
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (ArtTraceReader.hasTextHeader(buffer)) {
+      ArtTraceReader reader = new ArtTraceReader(buffer);
+      myCaptureTrees = reader.read(myProgressListener);
+      myStartTimeUs = reader.getStartTimeUs();
+      myElapsedTimeUs = reader.getElapsedTimeUs();
+    }
+    else {
+      // Traces recorded in streaming mode are left to perflib, see ArtTraceReader.
+      ArtTraceHandler traceHandler = new ArtTraceHandler();
+      VmTraceParser parser = new VmTraceParser(trace, traceHandler);
+      parser.parse();
+      myCaptureTrees = traceHandler.getThreadsGraph();
+      myStartTimeUs = traceHandler.getStartTimeUs();
+      myElapsedTimeUs = traceHandler.getElapsedTimeUs();
+    }
     return new CpuCapture(this, traceId, CpuProfiler.CpuProfilerType.ART);
   }
 
   @Override
   public Map<CpuThreadInfo, CaptureNode> getCaptureTrees() {
-    return myTraceHandler.getThreadsGraph();
+    return myCaptureTrees;
   }
 
   @Override
   public Range getRange() {
-    return new Range(myTraceHandler.getStartTimeUs(), myTraceHandler.getStartTimeUs() + myTraceHandler.getElapsedTimeUs());
+    return new Range(myStartTimeUs, myStartTimeUs + myElapsedTimeUs);
   }
 
   @Override
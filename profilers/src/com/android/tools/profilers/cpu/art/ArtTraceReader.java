@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.art;
+
+import com.android.tools.perflib.vmtrace.TraceAction;
+import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.CpuThreadInfo;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import com.android.tools.profilers.cpu.nodemodel.JavaMethodModel;
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reads the method traces generated by ART straight from a buffer, usually the trace file mapped in memory, without loading the whole
+ * file nor any intermediate representation of its events in the heap.
+ * <p>
+ * The trace starts with a text header listing the threads and methods, followed by fixed size binary records of method entries and exits.
+ * As the call tree of a thread only depends on the records of that thread, the trees are built in parallel once the header is read, each
+ * worker scanning the records for the threads it owns.
+ * <p>
+ * Traces recorded in streaming mode, which start with the binary records and interleave the threads and methods with them, are not
+ * supported, see {@link #hasTextHeader(ByteBuffer)}.
+ */
+final class ArtTraceReader {
+  private static final String HEADER_VERSION = "*version";
+  private static final String HEADER_THREADS = "*threads";
+  private static final String HEADER_METHODS = "*methods";
+  private static final String HEADER_END = "*end";
+
+  private static final String KEY_CLOCK = "clock";
+  private static final String KEY_ELAPSED_TIME_US = "elapsed-time-usec";
+  private static final String CLOCK_DUAL = "dual";
+  private static final String MAIN_THREAD_NAME = "main";
+
+  /**
+   * "SLOW" in little endian, the magic number of the binary part of the trace.
+   */
+  private static final int DATA_MAGIC = 0x574f4c53;
+
+  /**
+   * The two lowest bits of a method id in a record encode whether the method is entered or exited.
+   */
+  private static final int METHOD_ACTION_MASK = 0x03;
+  private static final int METHOD_ENTER = 0x00;
+  private static final int METHOD_EXIT = 0x01;
+  private static final int METHOD_EXIT_UNROLL = 0x02;
+
+  /**
+   * Number of records scanned by a worker between two progress notifications.
+   */
+  private static final int PROGRESS_INTERVAL = 1 << 16;
+
+  @NotNull private final ByteBuffer myBuffer;
+
+  /**
+   * Map from thread ids to thread names, read-only once the header is read.
+   */
+  private final Map<Integer, String> myThreads = new HashMap<>();
+
+  /**
+   * Map from method id to method model. Concurrent as the methods missing from the header are added while reading the records.
+   */
+  private final Map<Long, CaptureNodeModel> myMethods = new ConcurrentHashMap<>();
+
+  private boolean myDualClock;
+  private long myStartTimeUs;
+  private long myElapsedTimeUs;
+
+  private int myDataOffset;
+  private int myRecordSize;
+  private int myThreadIdSize;
+  private int myRecordCount;
+
+  ArtTraceReader(@NotNull ByteBuffer buffer) {
+    myBuffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * @return whether the trace starts with the text header this reader expects.
+   */
+  static boolean hasTextHeader(@NotNull ByteBuffer buffer) {
+    byte[] expected = HEADER_VERSION.getBytes(StandardCharsets.US_ASCII);
+    if (buffer.limit() < expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if (buffer.get(i) != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the whole trace and builds the call tree of every thread.
+   *
+   * @param progressListener notified from the parsing threads of the fraction of the records read so far
+   */
+  @NotNull
+  Map<CpuThreadInfo, CaptureNode> read(@Nullable DoubleConsumer progressListener) throws IOException {
+    readHeader();
+    readDataHeader();
+    if (myRecordCount == 0) {
+      return new HashMap<>();
+    }
+
+    int workers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), myThreads.size()));
+    long totalRecords = (long)myRecordCount * workers;
+    AtomicLong scannedRecords = new AtomicLong();
+    IntConsumer progress = scanned -> {
+      long total = scannedRecords.addAndGet(scanned);
+      if (progressListener != null) {
+        progressListener.accept(total / (double)totalRecords);
+      }
+    };
+    return IntStream.range(0, workers)
+      .parallel()
+      .mapToObj(worker -> buildTrees(worker, workers, progress))
+      .flatMap(trees -> trees.entrySet().stream())
+      .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+  }
+
+  long getStartTimeUs() {
+    return myStartTimeUs;
+  }
+
+  long getElapsedTimeUs() {
+    return myElapsedTimeUs;
+  }
+
+  private void readHeader() throws IOException {
+    if (!HEADER_VERSION.equals(readLine())) {
+      throw new IOException("Method trace doesn't start with " + HEADER_VERSION);
+    }
+    // Version of the header, the version of the records is in the binary header.
+    readLine();
+
+    String section = HEADER_VERSION;
+    while (true) {
+      String line = readLine();
+      if (line == null) {
+        throw new IOException("Method trace header isn't terminated by " + HEADER_END);
+      }
+      if (line.equals(HEADER_END)) {
+        return;
+      }
+      if (line.startsWith("*")) {
+        section = line;
+        continue;
+      }
+
+      switch (section) {
+        case HEADER_VERSION:
+          readProperty(line);
+          break;
+        case HEADER_THREADS:
+          readThread(line);
+          break;
+        case HEADER_METHODS:
+          readMethod(line);
+          break;
+        default:
+          // Unknown sections are ignored.
+          break;
+      }
+    }
+  }
+
+  private void readProperty(@NotNull String line) {
+    int separator = line.indexOf('=');
+    if (separator < 0) {
+      return;
+    }
+    String key = line.substring(0, separator);
+    String value = line.substring(separator + 1);
+    if (key.equals(KEY_CLOCK)) {
+      myDualClock = value.equals(CLOCK_DUAL);
+    }
+    else if (key.equals(KEY_ELAPSED_TIME_US)) {
+      myElapsedTimeUs = Long.parseLong(value);
+    }
+  }
+
+  private void readThread(@NotNull String line) {
+    // <thread id>\t<thread name>
+    String[] tokens = line.split("\t", 2);
+    if (tokens.length < 2) {
+      return;
+    }
+    try {
+      myThreads.put(Integer.parseInt(tokens[0]), tokens[1]);
+    }
+    catch (NumberFormatException ignored) {
+      // Malformed lines are skipped, the records of the thread are still shown with a generated name.
+    }
+  }
+
+  private void readMethod(@NotNull String line) {
+    // 0x<method id>\t<class name>\t<method name>\t<signature>\t<source file>\t<line number>
+    String[] tokens = line.split("\t");
+    if (tokens.length < 3 || !tokens[0].startsWith("0x")) {
+      return;
+    }
+    try {
+      long id = Long.parseLong(tokens[0].substring(2), 16);
+      String signature = tokens.length > 3 ? tokens[3] : "";
+      myMethods.put(id, new JavaMethodModel(tokens[2], tokens[1], signature));
+    }
+    catch (NumberFormatException ignored) {
+      // Malformed lines are skipped, the records of the method are still shown as an unknown method.
+    }
+  }
+
+  private void readDataHeader() throws IOException {
+    int start = myBuffer.position();
+    if (myBuffer.remaining() < 16 || myBuffer.getInt() != DATA_MAGIC) {
+      throw new IOException("Method trace records don't start with the expected magic number");
+    }
+    int version = Short.toUnsignedInt(myBuffer.getShort());
+    int offset = Short.toUnsignedInt(myBuffer.getShort());
+    myStartTimeUs = myBuffer.getLong();
+
+    switch (version) {
+      case 1:
+        myThreadIdSize = 1;
+        myRecordSize = 9;
+        break;
+      case 2:
+        myThreadIdSize = 2;
+        myRecordSize = 10;
+        break;
+      case 3:
+        myThreadIdSize = 2;
+        myRecordSize = Short.toUnsignedInt(myBuffer.getShort());
+        break;
+      default:
+        throw new IOException("Unsupported method trace version " + version);
+    }
+    if (myRecordSize < myThreadIdSize + (myDualClock ? 12 : 8)) {
+      throw new IOException("Method trace records are too small: " + myRecordSize);
+    }
+
+    myDataOffset = start + offset;
+    int dataSize = myBuffer.limit() - myDataOffset;
+    if (dataSize < 0 || dataSize % myRecordSize != 0) {
+      // The last record is truncated.
+      throw new BufferUnderflowException();
+    }
+    myRecordCount = dataSize / myRecordSize;
+  }
+
+  /**
+   * Builds the call trees of the threads whose id is {@code worker} modulo {@code workers}.
+   */
+  @NotNull
+  private Map<CpuThreadInfo, CaptureNode> buildTrees(int worker, int workers, @NotNull IntConsumer progress) {
+    Map<Integer, CaptureNodeConstructor> constructors = new HashMap<>();
+    int record = myDataOffset;
+    for (int i = 0; i < myRecordCount; i++, record += myRecordSize) {
+      if (i % PROGRESS_INTERVAL == 0 && i > 0) {
+        progress.accept(PROGRESS_INTERVAL);
+      }
+
+      int threadId = myThreadIdSize == 1 ? Byte.toUnsignedInt(myBuffer.get(record)) : Short.toUnsignedInt(myBuffer.getShort(record));
+      if (threadId % workers != worker) {
+        continue;
+      }
+
+      int methodValue = myBuffer.getInt(record + myThreadIdSize);
+      int threadTime = myBuffer.getInt(record + myThreadIdSize + 4);
+      // Single clock traces only have one time, that is used for both.
+      int globalTime = myDualClock ? myBuffer.getInt(record + myThreadIdSize + 8) : threadTime;
+
+      CaptureNodeModel method =
+        myMethods.computeIfAbsent(Integer.toUnsignedLong(methodValue & ~METHOD_ACTION_MASK), id -> new SingleNameModel("unknown"));
+      CaptureNodeConstructor constructor =
+        constructors.computeIfAbsent(threadId, id -> new CaptureNodeConstructor(new SingleNameModel(getThreadName(id))));
+      constructor.addTraceAction(method, getTraceAction(methodValue), threadTime, globalTime);
+    }
+    progress.accept((myRecordCount - 1) % PROGRESS_INTERVAL + 1);
+
+    Map<CpuThreadInfo, CaptureNode> trees = new HashMap<>();
+    for (Map.Entry<Integer, CaptureNodeConstructor> entry : constructors.entrySet()) {
+      String name = getThreadName(entry.getKey());
+      CaptureNode topLevelCall = entry.getValue().getTopLevel();
+      assert topLevelCall != null;
+      ArtTraceHandler.adjustNodesTimeAndDepth(topLevelCall, myStartTimeUs, topLevelCall.getStartGlobal() + myStartTimeUs, 0);
+      trees.put(new CpuThreadInfo(entry.getKey(), name, name.equals(MAIN_THREAD_NAME)), topLevelCall);
+    }
+    return trees;
+  }
+
+  @NotNull
+  private String getThreadName(int threadId) {
+    String name = myThreads.get(threadId);
+    return name != null ? name : String.format("Thread id: %1$d", threadId);
+  }
+
+  @NotNull
+  private static TraceAction getTraceAction(int methodValue) {
+    switch (methodValue & METHOD_ACTION_MASK) {
+      case METHOD_ENTER:
+        return TraceAction.METHOD_ENTER;
+      case METHOD_EXIT:
+      case METHOD_EXIT_UNROLL:
+        return TraceAction.METHOD_EXIT;
+      default:
+        throw new IllegalStateException("Invalid method action in record: " + methodValue);
+    }
+  }
+
+  /**
+   * @return the next line of the text header, or null if the end of the buffer is reached first.
+   */
+  @Nullable
+  private String readLine() {
+    int start = myBuffer.position();
+    for (int i = start; i < myBuffer.limit(); i++) {
+      if (myBuffer.get(i) == '\n') {
+        byte[] bytes = new byte[i - start];
+        myBuffer.get(bytes);
+        // Skips the line feed.
+        myBuffer.get();
+        return new String(bytes, StandardCharsets.UTF_8);
+      }
+    }
+    return null;
+  }
+}
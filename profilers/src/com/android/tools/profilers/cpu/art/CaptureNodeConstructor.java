@@ -17,15 +17,15 @@ package com.android.tools.profilers.cpu.art;
 
 import com.android.tools.perflib.vmtrace.TraceAction;
 import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.CaptureTree;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
-import org.jetbrains.annotations.Nullable;
+import gnu.trove.TIntArrayList;
 
-import java.util.ArrayList;
-import java.util.List;
+import static com.android.tools.profilers.cpu.CaptureTree.NO_NODE;
 
 /**
  * {@link CaptureNodeConstructor} helps in constructing per thread call stacks from a sequence of
- * trace events (method entry/exit events).
+ * trace events (method entry/exit events). The call stacks are stored in a {@link CaptureTree}.
  */
 class CaptureNodeConstructor {
   /**
@@ -33,16 +33,17 @@ class CaptureNodeConstructor {
    */
   private final CaptureNodeModel myTopLevelNodeModel;
 
+  private final CaptureTree.Builder myTree = new CaptureTree.Builder();
+
   /**
    * List of nodes currently assumed to be at stack depth 0 (called from the top level)
    */
-  private final List<CaptureNode> myTopLevelNodes = new ArrayList<>();
+  private final TIntArrayList myTopLevelNodes = new TIntArrayList();
 
   /**
    * The current node, i.e it is updated when we enter or exit a method.
    */
-  @Nullable
-  private CaptureNode myCurrentNode;
+  private int myCurrentNode = NO_NODE;
 
   /**
    * The single top level node under which the entire constructed call stack nests.
@@ -62,46 +63,46 @@ class CaptureNodeConstructor {
   }
 
   private void enterMethod(CaptureNodeModel captureNodeModel, int threadTime, int globalTime) {
-    CaptureNode node = new CaptureNode(captureNodeModel);
-    node.setStartGlobal(globalTime);
-    node.setStartThread(threadTime);
+    int node = myTree.addNode(captureNodeModel);
+    myTree.setStartGlobal(node, globalTime);
+    myTree.setStartThread(node, threadTime);
 
-    if (myCurrentNode == null) {
+    if (myCurrentNode == NO_NODE) {
       myTopLevelNodes.add(node);
     } else {
-      myCurrentNode.addChild(node);
+      myTree.addChild(myCurrentNode, node);
     }
 
     myCurrentNode = node;
   }
 
   private void exitMethod(CaptureNodeModel captureNodeModel, long threadTime, long globalTime) {
-    if (myCurrentNode != null) {
-      if (myCurrentNode.getData() != captureNodeModel) {
+    if (myCurrentNode != NO_NODE) {
+      if (myTree.getModel(myCurrentNode) != captureNodeModel) {
         String msg = String
           .format("Error during call stack reconstruction. Attempt to exit from method %s while in method %s",
-                  myCurrentNode.getData().getId(), captureNodeModel.getId());
+                  myTree.getModel(myCurrentNode).getId(), captureNodeModel.getId());
         throw new RuntimeException(msg);
       }
 
-      myCurrentNode.setEndGlobal(globalTime);
-      myCurrentNode.setEndThread(threadTime);
-      myCurrentNode = myCurrentNode.getParent();
+      myTree.setEndGlobal(myCurrentNode, globalTime);
+      myTree.setEndThread(myCurrentNode, threadTime);
+      myCurrentNode = myTree.getParent(myCurrentNode);
     } else {
       // We are exiting out of a method that was entered into before tracing was started.
       // In such a case, create this method
-      CaptureNode node = new CaptureNode(captureNodeModel);
+      int node = myTree.addNode(captureNodeModel);
       // All the previous nodes at the top level are now assumed to have been called from
       // this method. So mark this method as having called all of those methods, and reset
       // the top level to only include this method
-      for (CaptureNode topLevel : myTopLevelNodes) {
-        node.addChild(topLevel);
+      for (int i = 0; i < myTopLevelNodes.size(); i++) {
+        myTree.addChild(node, myTopLevelNodes.get(i));
       }
       myTopLevelNodes.clear();
       myTopLevelNodes.add(node);
 
-      node.setEndGlobal(globalTime);
-      node.setEndThread(threadTime);
+      myTree.setEndGlobal(node, globalTime);
+      myTree.setEndThread(node, threadTime);
 
       // We don't know this method's entry times, so we try to guess:
       // If it has at least 1 child, then we know it must've been at least before that child's
@@ -110,14 +111,13 @@ class CaptureNodeConstructor {
       long entryThreadTime = threadTime - 1;
       long entryGlobalTime = globalTime - 1;
 
-      if (node.getChildCount() > 0) {
-        CaptureNode first = node.getFirstChild();
-        assert first != null;
-        entryThreadTime = Math.max(first.getStartThread() - 1, 0);
-        entryGlobalTime = Math.max(first.getStartGlobal() - 1, 0);
+      int first = myTree.getFirstChild(node);
+      if (first != NO_NODE) {
+        entryThreadTime = Math.max(myTree.getStartThread(first) - 1, 0);
+        entryGlobalTime = Math.max(myTree.getStartGlobal(first) - 1, 0);
       }
-      node.setStartGlobal(entryGlobalTime);
-      node.setStartThread(entryThreadTime);
+      myTree.setStartGlobal(node, entryGlobalTime);
+      myTree.setStartThread(node, entryThreadTime);
     }
   }
 
@@ -126,23 +126,21 @@ class CaptureNodeConstructor {
    * @param captureNodeModel model of the method from which we are exiting
    * @param entryThreadTime method's thread entry time
    * @param entryGlobalTime method's global entry time
-   * @param children from the method that we are exiting
+   * @param lastChild last child of the method that we are exiting, or {@link CaptureTree#NO_NODE} if it has none
    */
-  private void exitMethod(CaptureNodeModel captureNodeModel, long entryThreadTime, long entryGlobalTime,
-                          @Nullable List<CaptureNode> children) {
+  private void exitMethod(CaptureNodeModel captureNodeModel, long entryThreadTime, long entryGlobalTime, int lastChild) {
     long lastExitThreadTime;
     long lastExitGlobalTime;
 
-    if (children == null || children.isEmpty()) {
+    if (lastChild == NO_NODE) {
       // if the call doesn't have any children, we assume that it just ran for 1us.
       lastExitThreadTime = entryThreadTime + 1;
       lastExitGlobalTime = entryGlobalTime + 1;
     } else {
       // if it did call other methods, we assume that this call exited 1us after
       // its last child exited
-      CaptureNode last = children.get(children.size() - 1);
-      lastExitThreadTime = last.getEndThread() + 1;
-      lastExitGlobalTime = last.getEndGlobal() + 1;
+      lastExitThreadTime = myTree.getEndThread(lastChild) + 1;
+      lastExitGlobalTime = myTree.getEndGlobal(lastChild) + 1;
     }
 
     exitMethod(captureNodeModel, lastExitThreadTime, lastExitGlobalTime);
@@ -156,19 +154,20 @@ class CaptureNodeConstructor {
     // If there are any methods still on the call stack, then the trace doesn't have
     // exit trace action for them, so clean those up
     //noinspection WhileLoopSpinsOnField
-    while (myCurrentNode != null) {
-      exitMethod(myCurrentNode.getData(), myCurrentNode.getStartThread(),
-                 myCurrentNode.getStartGlobal(), myCurrentNode.getChildren());
+    while (myCurrentNode != NO_NODE) {
+      exitMethod(myTree.getModel(myCurrentNode), myTree.getStartThread(myCurrentNode),
+                 myTree.getStartGlobal(myCurrentNode), myTree.getLastChild(myCurrentNode));
     }
 
     // Now that we have parsed the entire call stack, let us move all of it under a single
     // top level call.
-    exitMethod(myTopLevelNodeModel, 0, 0, myTopLevelNodes);
+    int lastTopLevel = myTopLevelNodes.isEmpty() ? NO_NODE : myTopLevelNodes.get(myTopLevelNodes.size() - 1);
+    exitMethod(myTopLevelNodeModel, 0, 0, lastTopLevel);
 
     // Build calls from their respective builders
     // Now that we've added the top level call, there should be only 1 top level call
     assert myTopLevelNodes.size() == 1;
-    myTopLevelNode = myTopLevelNodes.get(0);
+    myTopLevelNode = myTree.build(myTopLevelNodes.get(0)).getRoot();
   }
 
   public CaptureNode getTopLevel() {
@@ -21,7 +21,6 @@ import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuProfilerStage;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class AtraceCpuCapture extends CpuCapture {
@@ -41,7 +40,7 @@ public class AtraceCpuCapture extends CpuCapture {
    */
   @NotNull
   public List<SeriesData<CpuProfilerStage.ThreadState>> getThreadStatesForThread(int threadId) {
-    return myParser.getThreadStateDataSeries().getOrDefault(threadId, new ArrayList<>());
+    return myParser.getThreadStateDataSeries(threadId);
   }
 
   /**
@@ -51,7 +50,7 @@ public class AtraceCpuCapture extends CpuCapture {
    */
   @NotNull
   public List<SeriesData<CpuThreadSliceInfo>> getCpuThreadSliceInfoStates(int cpu) {
-    return myParser.getCpuThreadSliceInfoStates().getOrDefault(cpu, new ArrayList<>());
+    return myParser.getCpuThreadSliceInfoStates(cpu);
   }
 
   /**
@@ -66,7 +65,7 @@ public class AtraceCpuCapture extends CpuCapture {
    * @return The number of cores represented by this capture.
    */
   public int getCpuCount() {
-    return myParser.getCpuThreadSliceInfoStates().size();
+    return myParser.getCpuCount();
   }
 
   /**
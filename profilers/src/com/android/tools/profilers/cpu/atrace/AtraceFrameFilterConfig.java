@@ -15,6 +15,10 @@
  */
 package com.android.tools.profilers.cpu.atrace;
 
+import com.android.utils.HashCodes;
+import com.intellij.openapi.util.text.StringUtil;
+import java.util.Objects;
+
 /**
  * This class defines a set of properties that are used to filter frames.
  */
@@ -56,4 +60,20 @@ public class AtraceFrameFilterConfig {
   public long getLongFrameTimingUs() {
     return myLongFrameTimingUs;
   }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof AtraceFrameFilterConfig)) {
+      return false;
+    }
+    AtraceFrameFilterConfig incoming = (AtraceFrameFilterConfig)obj;
+    return StringUtil.equals(getIdentifierRegEx(), incoming.getIdentifierRegEx()) &&
+           getThreadId() == incoming.getThreadId() &&
+           getLongFrameTimingUs() == incoming.getLongFrameTimingUs();
+  }
+
+  @Override
+  public int hashCode() {
+    return HashCodes.mix(Objects.hashCode(getIdentifierRegEx()), getThreadId(), Long.hashCode(getLongFrameTimingUs()));
+  }
 }
@@ -28,6 +28,7 @@ import trebuchet.util.PrintlnImportFeedback;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -36,6 +37,9 @@ import java.util.stream.Stream;
  * The class looks for the first and last lines in the file to get the total time, as well as
  * populates a minimal data structure to pass to the UI.
  * Trebuchet is our parser for atrace (systrace) raw data.
+ * <p>
+ * Only the capture trees are built when parsing. The thread states, CPU scheduling, CPU utilization and frames series are built from
+ * the model the first time they are requested, as system traces cover every process while only one is shown, and cached from then on.
  */
 public class AtraceParser implements TraceParser {
   /**
@@ -54,7 +58,13 @@ public class AtraceParser implements TraceParser {
   private final Map<CpuThreadInfo, CaptureNode> myCaptureTreeNodes;
 
   /**
-   * Map between processor ids and its set of {@link CpuThreadSliceInfo}.
+   * Threads of the selected process by id, and CPUs of the model by id, to build their series from when requested.
+   */
+  private final Map<Integer, ThreadModel> myThreadsById;
+  private final Map<Integer, CpuModel> myCpusById;
+
+  /**
+   * Map between processor ids and its set of {@link CpuThreadSliceInfo}, filled as the CPUs are requested.
    * Note: In kernel space all user space processes are treated at threads, where each thread has a TGID (Thread group ID).
    * The TGID is the main thread of a user space process. All references to processes outside this class refer to user space
    * processes while threads refer to threads within those processes.
@@ -62,15 +72,22 @@ public class AtraceParser implements TraceParser {
   private final Map<Integer, List<SeriesData<CpuThreadSliceInfo>>> myCpuSchedulingToCpuData;
 
   /**
-   * Map between thread id, and the thread state for each state transition on that thread.
+   * Map between thread id, and the thread state for each state transition on that thread, filled as the threads are requested.
    */
   private final Map<Integer, List<SeriesData<CpuProfilerStage.ThreadState>>> myThreadStateData;
 
   /**
    * List of cpu utilization values for a specific process. The values range from 0 -> 100 in increments of CPU count.
    * The value needs to be a long as that is what {@link com.android.tools.adtui.model.RangedContinuousSeries} expects.
+   * Null until requested.
+   */
+  private List<SeriesData<Long>> myCpuUtilizationSeries;
+
+  /**
+   * Map between the filters frames were requested with, and their series. Filters are compared by value, as frames models create new ones
+   * whenever the capture is selected again.
    */
-  private final List<SeriesData<Long>> myCpuUtilizationSeries;
+  private final Map<AtraceFrameFilterConfig, List<SeriesData<AtraceFrame>>> myFramesSeries;
 
   private int myProcessId;
   /**
@@ -100,9 +117,11 @@ public class AtraceParser implements TraceParser {
   public AtraceParser(int processId) {
     myProcessId = processId;
     myCaptureTreeNodes = new HashMap<>();
-    myThreadStateData = new HashMap<>();
-    myCpuSchedulingToCpuData = new HashMap<>();
-    myCpuUtilizationSeries = new LinkedList<>();
+    myThreadsById = new HashMap<>();
+    myCpusById = new HashMap<>();
+    myThreadStateData = new ConcurrentHashMap<>();
+    myCpuSchedulingToCpuData = new ConcurrentHashMap<>();
+    myFramesSeries = Collections.synchronizedMap(new HashMap<>());
   }
 
   @Override
@@ -117,20 +136,25 @@ public class AtraceParser implements TraceParser {
     if (myProcessModel == null) {
       throw new IllegalArgumentException(String.format("A process with the id %s was not found while parsing the capture.", myProcessId));
     }
+    for (ThreadModel thread : myProcessModel.getThreads()) {
+      myThreadsById.put(thread.getId(), thread);
+    }
+    for (CpuModel cpu : myModel.getCpus()) {
+      myCpusById.put(cpu.getId(), cpu);
+    }
     buildCaptureTreeNodes();
-    buildThreadStateData();
-    buildCpuStateData();
-    myFrameInfo = new AtraceFrameManager(myProcessModel, this::convertToUserTimeUs, findRenderThreadId(myProcessModel));
     return new AtraceCpuCapture(this, traceId);
   }
 
   /**
-   * Parses the input file and caches off the model to prevent parsing multiple times.
+   * Parses the input file and caches off the model to prevent parsing multiple times. When the process is already known, the slices and
+   * counters of the other processes are skipped while parsing, as only the scheduling of every process is shown.
    */
   private void parseModelIfNeeded(@NotNull File file) throws IOException {
     if (myModel == null) {
       AtraceDecompressor reader = new AtraceDecompressor(file);
-      ImportTask task = new ImportTask(new PrintlnImportFeedback());
+      int processId = myProcessId;
+      ImportTask task = new ImportTask(new PrintlnImportFeedback(), id -> processId == INVALID_PROCESS || id == processId);
       myModel = task.importBuffer(reader);
       // We check if we have a parent timestamp. If not this could be from an imported trace.
       // In the case it is 0, we use the first timestamp of our capture as a reference point.
@@ -245,18 +269,57 @@ public class AtraceParser implements TraceParser {
     return myCaptureTreeNodes;
   }
 
+  /**
+   * @return the thread states series of every thread of the selected process, building the ones not requested yet.
+   */
   @NotNull
   public Map<Integer, List<SeriesData<CpuProfilerStage.ThreadState>>> getThreadStateDataSeries() {
-    return myThreadStateData;
+    myThreadsById.keySet().forEach(this::getThreadStateDataSeries);
+    return Collections.unmodifiableMap(myThreadStateData);
+  }
+
+  /**
+   * @return the thread states series of the given thread, or an empty list if it isn't a thread of the selected process.
+   */
+  @NotNull
+  public List<SeriesData<CpuProfilerStage.ThreadState>> getThreadStateDataSeries(int threadId) {
+    ThreadModel thread = myThreadsById.get(threadId);
+    if (thread == null) {
+      return Collections.emptyList();
+    }
+    return myThreadStateData.computeIfAbsent(threadId, id -> buildThreadStateData(thread));
   }
 
+  /**
+   * @return the {@link CpuThreadSliceInfo} series of every CPU, building the ones not requested yet.
+   */
   @NotNull
   public Map<Integer, List<SeriesData<CpuThreadSliceInfo>>> getCpuThreadSliceInfoStates() {
-    return myCpuSchedulingToCpuData;
+    myCpusById.keySet().forEach(this::getCpuThreadSliceInfoStates);
+    return Collections.unmodifiableMap(myCpuSchedulingToCpuData);
+  }
+
+  /**
+   * @return the {@link CpuThreadSliceInfo} series of the given CPU, or an empty list if the capture doesn't have it.
+   */
+  @NotNull
+  public List<SeriesData<CpuThreadSliceInfo>> getCpuThreadSliceInfoStates(int cpuId) {
+    CpuModel cpu = myCpusById.get(cpuId);
+    if (cpu == null) {
+      return Collections.emptyList();
+    }
+    return myCpuSchedulingToCpuData.computeIfAbsent(cpuId, id -> buildCpuStateData(cpu));
+  }
+
+  public int getCpuCount() {
+    return myCpusById.size();
   }
 
   @NotNull
-  public List<SeriesData<Long>> getCpuUtilizationSeries() {
+  public synchronized List<SeriesData<Long>> getCpuUtilizationSeries() {
+    if (myCpuUtilizationSeries == null) {
+      myCpuUtilizationSeries = buildCpuUtilizationData();
+    }
     return myCpuUtilizationSeries;
   }
 
@@ -271,8 +334,13 @@ public class AtraceParser implements TraceParser {
    */
   @NotNull
   public List<SeriesData<AtraceFrame>> getFrames(AtraceFrameFilterConfig filter) {
+    return myFramesSeries.computeIfAbsent(filter, this::buildFrames);
+  }
+
+  @NotNull
+  private List<SeriesData<AtraceFrame>> buildFrames(@NotNull AtraceFrameFilterConfig filter) {
     List<SeriesData<AtraceFrame>> framesSeries = new ArrayList<>();
-    List<AtraceFrame> framesList = myFrameInfo.buildFramesList(filter);
+    List<AtraceFrame> framesList = getFrameManager().buildFramesList(filter);
     // Look at each frame converting them to series data.
     // The last frame is handled outside the for loop as we need to add an entry for the frame as well as an entry for the frame ending.
     // Single frames are handled in the last frame case.
@@ -296,6 +364,15 @@ public class AtraceParser implements TraceParser {
     }
     return framesSeries;
   }
+
+  @NotNull
+  private synchronized AtraceFrameManager getFrameManager() {
+    if (myFrameInfo == null) {
+      myFrameInfo = new AtraceFrameManager(myProcessModel, this::convertToUserTimeUs, findRenderThreadId(myProcessModel));
+    }
+    return myFrameInfo;
+  }
+
   /**
    * @return Returns a map of {@link CpuThreadInfo} to {@link CaptureNode}. The capture nodes are built from {@link SliceGroup} maintaining
    * the order and hierarchy.
@@ -305,12 +382,12 @@ public class AtraceParser implements TraceParser {
     for (ThreadModel thread : myProcessModel.getThreads()) {
       CpuThreadSliceInfo threadInfo =
         new CpuThreadSliceInfo(thread.getId(), thread.getName(), thread.getProcess().getId(), thread.getProcess().getName());
-      CaptureNode root = new CaptureNode(new AtraceNodeModel(thread.getName()));
+      DefaultCaptureNode root = new DefaultCaptureNode(new AtraceNodeModel(thread.getName()));
       root.setStartGlobal((long)range.getMin());
       root.setEndGlobal((long)range.getMax());
       myCaptureTreeNodes.put(threadInfo, root);
       for (SliceGroup slice : thread.getSlices()) {
-        CaptureNode node = populateCaptureNode(slice, 1);
+        DefaultCaptureNode node = populateCaptureNode(slice, 1);
         root.addChild(node);
       }
     }
@@ -323,8 +400,8 @@ public class AtraceParser implements TraceParser {
    * @param depth to current node. Depth starts at 0
    * @return The {@link CaptureNode} that mirrors the {@link SliceGroup} passed in.
    */
-  private CaptureNode populateCaptureNode(SliceGroup slice, int depth) {
-    CaptureNode node = new CaptureNode(new AtraceNodeModel(slice.getName()));
+  private DefaultCaptureNode populateCaptureNode(SliceGroup slice, int depth) {
+    DefaultCaptureNode node = new DefaultCaptureNode(new AtraceNodeModel(slice.getName()));
     node.setStartGlobal(convertToUserTimeUs(slice.getStartTime()));
     node.setEndGlobal(convertToUserTimeUs(slice.getEndTime()));
     node.setStartThread(convertToUserTimeUs(slice.getStartTime()));
@@ -337,140 +414,100 @@ public class AtraceParser implements TraceParser {
   }
 
   /**
-   * Builds a map of thread id to a list of {@link CpuProfilerStage.ThreadState} series.
+   * Builds the {@link CpuProfilerStage.ThreadState} series of a thread.
    */
-  private void buildThreadStateData() {
-    for (ThreadModel thread : myProcessModel.getThreads()) {
-      List<SeriesData<CpuProfilerStage.ThreadState>> states = new ArrayList<>();
-      myThreadStateData.put(thread.getId(), states);
-      CpuProfilerStage.ThreadState lastState = CpuProfilerStage.ThreadState.UNKNOWN;
-      for (SchedSlice slice : thread.getSchedSlices()) {
-        long startTimeUs = convertToUserTimeUs(slice.getStartTime());
-        CpuProfilerStage.ThreadState state = getState(slice);
-        if (state != lastState) {
-          states.add(new SeriesData<>(startTimeUs, state));
-          lastState = state;
-        }
+  @NotNull
+  private List<SeriesData<CpuProfilerStage.ThreadState>> buildThreadStateData(@NotNull ThreadModel thread) {
+    List<SeriesData<CpuProfilerStage.ThreadState>> states = new ArrayList<>();
+    CpuProfilerStage.ThreadState lastState = CpuProfilerStage.ThreadState.UNKNOWN;
+    for (SchedSlice slice : thread.getSchedSlices()) {
+      long startTimeUs = convertToUserTimeUs(slice.getStartTime());
+      CpuProfilerStage.ThreadState state = getState(slice);
+      if (state != lastState) {
+        states.add(new SeriesData<>(startTimeUs, state));
+        lastState = state;
       }
     }
+    return states;
   }
 
   /**
-   * Builds a map of CPU ids to a list of {@link CpuThreadInfo} series. While building the CPU map it also builds a CPU utilization series.
+   * Builds the {@link CpuThreadSliceInfo} series of a CPU, with a {@link CpuThreadSliceInfo#NULL_THREAD} wherever the CPU is idle.
    */
-  private void buildCpuStateData() {
-    // Add initial value to start of series for proper visualization.
-    myCpuUtilizationSeries.add(new SeriesData<>(convertToUserTimeUs(myModel.getBeginTimestamp()), 0L));
-    for (CpuModel cpu : myModel.getCpus()) {
-      ListIterator<SeriesData<Long>> cpuSeriesIt = myCpuUtilizationSeries.listIterator();
-      List<SeriesData<CpuThreadSliceInfo>> processList = new ArrayList<>();
-      CpuProcessSlice lastSlice = cpu.getSlices().get(0);
-      for (CpuProcessSlice slice : cpu.getSlices()) {
-        long sliceStartTimeUs = convertToUserTimeUs(slice.getStartTime());
-        long sliceEndTimeUs = convertToUserTimeUs(slice.getEndTime());
-        long durationUs = sliceEndTimeUs - sliceStartTimeUs;
-        if (slice.getStartTime() > lastSlice.getEndTime()) {
-          processList.add(new SeriesData<>(sliceEndTimeUs, CpuThreadSliceInfo.NULL_THREAD));
-        }
-
-        processList.add(
-          new SeriesData<>(sliceStartTimeUs,
-                           new CpuThreadSliceInfo(slice.getThreadId(), slice.getThreadName(), slice.getId(), slice.getName(), durationUs)));
-        lastSlice = slice;
-
-        // While looping the process slices we build our CPU utilization graph so we don't need to loop the same data twice.
-        if (slice.getId() == myProcessId) {
-          buildCpuUtilizationData(cpuSeriesIt, sliceStartTimeUs, sliceEndTimeUs);
-        }
+  @NotNull
+  private List<SeriesData<CpuThreadSliceInfo>> buildCpuStateData(@NotNull CpuModel cpu) {
+    List<SeriesData<CpuThreadSliceInfo>> processList = new ArrayList<>();
+    CpuProcessSlice lastSlice = null;
+    for (CpuProcessSlice slice : cpu.getSlices()) {
+      long sliceStartTimeUs = convertToUserTimeUs(slice.getStartTime());
+      long sliceEndTimeUs = convertToUserTimeUs(slice.getEndTime());
+      long durationUs = sliceEndTimeUs - sliceStartTimeUs;
+      // The CPU is idle from the end of the last slice, keeping the series sorted.
+      if (lastSlice != null && slice.getStartTime() > lastSlice.getEndTime()) {
+        processList.add(new SeriesData<>(convertToUserTimeUs(lastSlice.getEndTime()), CpuThreadSliceInfo.NULL_THREAD));
       }
 
-      // We are done with this Cpu so we add a null process at the end to properly render this segment.
-      processList.add(new SeriesData<>(convertToUserTimeUs(myModel.getEndTimestamp()), CpuThreadSliceInfo.NULL_THREAD));
-      myCpuSchedulingToCpuData.put(cpu.getId(), processList);
+      processList.add(
+        new SeriesData<>(sliceStartTimeUs,
+                         new CpuThreadSliceInfo(slice.getThreadId(), slice.getThreadName(), slice.getId(), slice.getName(), durationUs)));
+      lastSlice = slice;
     }
 
-    // When we are done we have a count of how many processes are running at any time. Here we convert that count to % of CPU used.
-    myCpuUtilizationSeries.replaceAll((series) -> {
-      series.value *= (long)(100 / (myModel.getCpus().size() * 1.0));
-      return series;
-    });
+    // We are done with this Cpu so we add a null process at the end to properly render this segment.
+    processList.add(new SeriesData<>(convertToUserTimeUs(myModel.getEndTimestamp()), CpuThreadSliceInfo.NULL_THREAD));
+    return processList;
   }
 
   /**
-   * Helper function to build CPU utilization data series. This function loops the current cpu utilization series looking for
-   * the first element that is greater than our process start time and adds a new entry before that point. It then increments the value
-   * of each series element following. The iteration continues until it finds the first element greater than our process end time.
-   * A new series object is inserted just before this point. The result of this is the initial list is modified to have 2 elements added
-   * with each element in the middle incremented by one.
-   * <p>
-   * The start and end times represent a slice when the core is used continuously, and the core's utilization data before the start
-   * timestamp has been captured by cpuSeriesIt.
-   *
-   * @param cpuSeriesIt      An iterator to the list of utilization series data. This function will use the iterator in the current state and
-   *                         not reset it.
-   * @param sliceStartTimeUs The converted time of the slice start.
-   * @param sliceEndTimeUs   The converted time of the slice end.
-   * @return
+   * Builds the CPU utilization series of the selected process. The slices of the process on every CPU are reduced to their sorted start
+   * and end times, which are then swept counting how many CPUs run the process at each of them.
    */
   @NotNull
-  private static SeriesData<Long> buildCpuUtilizationData(ListIterator<SeriesData<Long>> cpuSeriesIt,
-                                                          Long sliceStartTimeUs,
-                                                          Long sliceEndTimeUs) {
-    // Assume our CPU usage is 0, and we are changing it to 1.
-    Long usedCpuCount = 1L;
-    SeriesData<Long> last = null;
-    if (cpuSeriesIt.hasPrevious()) {
-      last = cpuSeriesIt.previous();
-    }
-    // Move a pointer through our current series looking for where we start beyond our current process.
-    // Process =     [xxxxxx]
-    // Series = |-------| |------|
-    // Pointer  ^  ->   ^
-    while (cpuSeriesIt.hasNext()) {
-      SeriesData<Long> current = cpuSeriesIt.next();
-      if (current.x > sliceStartTimeUs) {
-        // Note: previous returns the current node but it sets the index to be the previous index.
-        // If we wanted the previous element without storing last we need to call previous twice.
-        cpuSeriesIt.previous();
-        // Last can be null happen if the first element is greater than our process start time.
-        if (last != null) {
-          usedCpuCount = last.value + 1;
+  private List<SeriesData<Long>> buildCpuUtilizationData() {
+    int sliceCount = 0;
+    for (CpuModel cpu : myCpusById.values()) {
+      for (CpuProcessSlice slice : cpu.getSlices()) {
+        if (slice.getId() == myProcessId) {
+          sliceCount++;
         }
-        break;
       }
-      last = current;
     }
-    // Add a new entry into our series for the current process start time.
-    // Using the example above, we can see that we add an entry for the new process.
-    // Process =     [xxxxxx]
-    // Series = |----|--| |------|
-    // Pointer       ^
-    SeriesData<Long> startProcessPoint = new SeriesData<>(sliceStartTimeUs, usedCpuCount);
-    cpuSeriesIt.add(startProcessPoint);
-    last = startProcessPoint;
-    // Now we search for a time greater than our end time, and update the process count of each element along the way.
-    // Process =     [xxxxxx]
-    // Series = |----|--| |------|
-    // Pointer                   ^
-    while (cpuSeriesIt.hasNext()) {
-      SeriesData<Long> current = cpuSeriesIt.next();
-      if (current.x > sliceEndTimeUs) {
-        cpuSeriesIt.previous();
-        usedCpuCount = last.value;
-        break;
+    long[] starts = new long[sliceCount];
+    long[] ends = new long[sliceCount];
+    int index = 0;
+    for (CpuModel cpu : myCpusById.values()) {
+      for (CpuProcessSlice slice : cpu.getSlices()) {
+        if (slice.getId() == myProcessId) {
+          starts[index] = convertToUserTimeUs(slice.getStartTime());
+          ends[index] = convertToUserTimeUs(slice.getEndTime());
+          index++;
+        }
       }
-      current.value++;
-      usedCpuCount = current.value;
-      cpuSeriesIt.set(current);
-      last = current;
     }
+    Arrays.sort(starts);
+    Arrays.sort(ends);
 
-    //Decrement current CPU count back to last CPU count and add element to our series.
-    usedCpuCount--;
-    SeriesData<Long> endProcessPoint = new SeriesData<>(sliceEndTimeUs, usedCpuCount);
-    cpuSeriesIt.add(endProcessPoint);
-    last = endProcessPoint;
-    return last;
+    // Converts the count of CPUs used to % of CPU used.
+    long cpuPercentage = (long)(100 / (myCpusById.size() * 1.0));
+    List<SeriesData<Long>> utilization = new ArrayList<>(2 * sliceCount + 1);
+    // Add initial value to start of series for proper visualization.
+    utilization.add(new SeriesData<>(convertToUserTimeUs(myModel.getBeginTimestamp()), 0L));
+    int startIndex = 0;
+    int endIndex = 0;
+    while (startIndex < sliceCount || endIndex < sliceCount) {
+      // Every start and end at the same time are applied together, so that adjacent slices don't drop the count in between.
+      long time = endIndex == sliceCount || (startIndex < sliceCount && starts[startIndex] < ends[endIndex])
+                  ? starts[startIndex]
+                  : ends[endIndex];
+      while (startIndex < sliceCount && starts[startIndex] == time) {
+        startIndex++;
+      }
+      while (endIndex < sliceCount && ends[endIndex] == time) {
+        endIndex++;
+      }
+      utilization.add(new SeriesData<>(time, (startIndex - endIndex) * cpuPercentage));
+    }
+    return utilization;
   }
 
   /**
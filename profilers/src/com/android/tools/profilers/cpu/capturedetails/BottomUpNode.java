@@ -21,6 +21,7 @@ import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -30,6 +31,13 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
   private final boolean myIsRoot;
   private boolean myChildrenBuilt;
 
+  /**
+   * Sums of the intersections of the nodes at the top of the call stack, see {@link #update(Range)}, with the clock type they were selected
+   * with. Only built when the node is first updated, as most nodes of a bottom up tree are never shown.
+   */
+  @Nullable private IntervalSums myOuterSums;
+  @Nullable private ClockType myOuterClockType;
+
   private BottomUpNode(String id) {
     super(id);
     myIsRoot = false;
@@ -86,6 +94,12 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
     }
   }
 
+  @Override
+  protected void addNode(@NotNull CaptureNode node) {
+    super.addNode(node);
+    myOuterSums = null;
+  }
+
   private void addPathNode(@NotNull CaptureNode node) {
     myPathNodes.add(node);
   }
@@ -130,14 +144,22 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
   @Override
   public void update(@NotNull Range range) {
     // how much time was spent in this call stack path, and in the functions it called
-    myGlobalTotal = 0;
+    myGlobalTotal = getOuterSums().getIntersectionLength(range);
     // how much time was spent doing work directly in this call stack path
-    double self = 0;
+    double self = getNodesIntersection(range, ClockType.GLOBAL) - getChildrenIntersection(range, ClockType.GLOBAL);
+    myGlobalChildrenTotal = myGlobalTotal - self;
+  }
 
-    // The node that is at the top of the call stack, e.g if the call stack looks like B [0..30] -> B [1..20],
-    // then the second method can't be outerSoFar.
-    // It's used to exclude nodes which aren't at the top of the
-    // call stack from the total time calculation.
+  @NotNull
+  private IntervalSums getOuterSums() {
+    ClockType clockType = myNodes.isEmpty() ? ClockType.GLOBAL : myNodes.get(0).getClockType();
+    if (myOuterSums != null && myOuterClockType == clockType) {
+      return myOuterSums;
+    }
+
+    // The nodes that are at the top of the call stack, e.g if the call stack looks like B [0..30] -> B [1..20],
+    // then the second method can't be outer. They are the only ones included in the total time calculation.
+    List<CaptureNode> outerNodes = new ArrayList<>();
     CaptureNode outerSoFar = null;
 
     // myNodes is sorted by CaptureNode#getStart() in increasing order,
@@ -146,22 +168,19 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
       if (outerSoFar == null || node.getEnd() > outerSoFar.getEnd()) {
         if (outerSoFar != null) {
           // |outerSoFar| is at the top of the call stack
-          myGlobalTotal += getIntersection(range, outerSoFar, ClockType.GLOBAL);
+          outerNodes.add(outerSoFar);
         }
         outerSoFar = node;
       }
-
-      self += getIntersection(range, node, ClockType.GLOBAL);
-      for (CaptureNode child : node.getChildren()) {
-        self -= getIntersection(range, child, ClockType.GLOBAL);
-      }
     }
 
     if (outerSoFar != null) {
       // |outerSoFar| is at the top of the call stack
-      myGlobalTotal += getIntersection(range, outerSoFar, ClockType.GLOBAL);
+      outerNodes.add(outerSoFar);
     }
-    myGlobalChildrenTotal = myGlobalTotal - self;
+    myOuterSums = new IntervalSums(outerNodes, ClockType.GLOBAL);
+    myOuterClockType = clockType;
+    return myOuterSums;
   }
 
   @NotNull
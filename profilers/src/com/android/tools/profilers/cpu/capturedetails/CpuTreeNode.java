@@ -20,6 +20,7 @@ import com.android.tools.perflib.vmtrace.ClockType;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -38,6 +39,15 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   protected double myThreadTotal = 0;
   protected double myThreadChildrenTotal = 0;
 
+  /**
+   * Sums of the intersections of {@link #myNodes}, and of their children, with ranges. Built on the first update after nodes were added, so
+   * that updates don't visit every node.
+   */
+  @Nullable private IntervalSums myGlobalSums;
+  @Nullable private IntervalSums myThreadSums;
+  @Nullable private IntervalSums myChildrenGlobalSums;
+  @Nullable private IntervalSums myChildrenThreadSums;
+
   public CpuTreeNode(String id) {
     myId = id;
   }
@@ -48,6 +58,7 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
 
   protected void addNode(@NotNull CaptureNode node) {
     myNodes.add(node);
+    myGlobalSums = null;
   }
 
   protected void addNodes(@NotNull List<CaptureNode> nodes) {
@@ -84,34 +95,54 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   }
 
   public void update(@NotNull Range range) {
-    myGlobalTotal = 0.0;
-    myGlobalChildrenTotal = 0;
-    myThreadTotal = 0.0;
-    myThreadChildrenTotal = 0;
+    buildSums();
+    myGlobalTotal = myGlobalSums.getIntersectionLength(range);
+    myThreadTotal = myThreadSums.getIntersectionLength(range);
+    myGlobalChildrenTotal = myChildrenGlobalSums.getIntersectionLength(range);
+    myThreadChildrenTotal = myChildrenThreadSums.getIntersectionLength(range);
+  }
 
-    for (CaptureNode node : myNodes) {
-      myGlobalTotal += getIntersection(range, node, ClockType.GLOBAL);
-      myThreadTotal += getIntersection(range, node, ClockType.THREAD);
-      for (CaptureNode child : node.getChildren()) {
-        myGlobalChildrenTotal += getIntersection(range, child, ClockType.GLOBAL);
-        myThreadChildrenTotal += getIntersection(range, child, ClockType.THREAD);
-      }
-    }
+  /**
+   * @return the sum of the intersections of {@link #myNodes} with the given range, for the given clock.
+   */
+  protected double getNodesIntersection(@NotNull Range range, @NotNull ClockType type) {
+    buildSums();
+    return (type == ClockType.GLOBAL ? myGlobalSums : myThreadSums).getIntersectionLength(range);
+  }
+
+  /**
+   * @return the sum of the intersections of the children of {@link #myNodes} with the given range, for the given clock.
+   */
+  protected double getChildrenIntersection(@NotNull Range range, @NotNull ClockType type) {
+    buildSums();
+    return (type == ClockType.GLOBAL ? myChildrenGlobalSums : myChildrenThreadSums).getIntersectionLength(range);
   }
 
-  protected static double getIntersection(@NotNull Range range, @NotNull CaptureNode node, @NotNull ClockType type) {
-    Range intersection;
-    if (type == ClockType.GLOBAL) {
-      intersection = range.getIntersection(new Range(node.getStartGlobal(), node.getEndGlobal()));
+  private void buildSums() {
+    if (myGlobalSums != null) {
+      return;
     }
-    else {
-      intersection = range.getIntersection(new Range(node.getStartThread(), node.getEndThread()));
+    List<CaptureNode> children = new ArrayList<>();
+    for (CaptureNode node : myNodes) {
+      children.addAll(node.getChildren());
     }
-    return intersection.isEmpty() ? 0.0 : intersection.getLength();
+    myThreadSums = new IntervalSums(myNodes, ClockType.THREAD);
+    myChildrenGlobalSums = new IntervalSums(children, ClockType.GLOBAL);
+    myChildrenThreadSums = new IntervalSums(children, ClockType.THREAD);
+    // Set last, as it tells whether the others are built.
+    myGlobalSums = new IntervalSums(myNodes, ClockType.GLOBAL);
   }
 
   public boolean inRange(Range range) {
-    return myNodes.stream().anyMatch(node -> node.getStart() < range.getMax() && range.getMin() < node.getEnd());
+    if (myNodes.isEmpty()) {
+      return false;
+    }
+    if (range.getMin() >= range.getMax()) {
+      return myNodes.stream().anyMatch(node -> node.getStart() < range.getMax() && range.getMin() < node.getEnd());
+    }
+    buildSums();
+    // The nodes of a capture share their clock type.
+    return (myNodes.get(0).getClockType() == ClockType.GLOBAL ? myGlobalSums : myThreadSums).intersects(range);
   }
 
   public void reset() {
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.capturedetails;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.profilers.cpu.CaptureNode;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Answers how long a set of {@link CaptureNode} intersects with a range, in logarithmic time instead of visiting every node.
+ * <p>
+ * The intersection of [start, end] with [min, max] is clamp(end) - clamp(start), where clamp(x) brings x within [min, max]. So the sum over
+ * all the nodes is the sum of their clamped ends minus the sum of their clamped starts, which only needs the starts and the ends sorted
+ * separately, with their prefix sums. The nodes may overlap, e.g. recursive calls, as each one is counted on its own.
+ */
+final class IntervalSums {
+  /**
+   * Subtracted from the times so that their sums don't overflow, as the times of captures are usually epoch based.
+   */
+  private final long myBase;
+  @NotNull private final long[] myStarts;
+  @NotNull private final long[] myEnds;
+  @NotNull private final long[] myStartSums;
+  @NotNull private final long[] myEndSums;
+
+  /**
+   * @param clockType which of the global or thread times of the nodes to use
+   */
+  IntervalSums(@NotNull List<CaptureNode> nodes, @NotNull ClockType clockType) {
+    int size = nodes.size();
+    myStarts = new long[size];
+    myEnds = new long[size];
+    long base = Long.MAX_VALUE;
+    for (int i = 0; i < size; i++) {
+      CaptureNode node = nodes.get(i);
+      myStarts[i] = clockType == ClockType.GLOBAL ? node.getStartGlobal() : node.getStartThread();
+      // A node ending before it starts doesn't intersect with anything, same as an empty one.
+      myEnds[i] = Math.max(myStarts[i], clockType == ClockType.GLOBAL ? node.getEndGlobal() : node.getEndThread());
+      base = Math.min(base, myStarts[i]);
+    }
+    myBase = size == 0 ? 0 : base;
+
+    myStartSums = sortAndSum(myStarts, myBase);
+    myEndSums = sortAndSum(myEnds, myBase);
+  }
+
+  /**
+   * Sorts the given times, makes them relative to the base and returns their prefix sums, where the i-th one is the sum of the i first times.
+   */
+  @NotNull
+  private static long[] sortAndSum(@NotNull long[] times, long base) {
+    Arrays.sort(times);
+    long[] sums = new long[times.length + 1];
+    for (int i = 0; i < times.length; i++) {
+      times[i] -= base;
+      sums[i + 1] = sums[i] + times[i];
+    }
+    return sums;
+  }
+
+  /**
+   * @return the sum of the lengths of the intersections of the nodes with the given range.
+   */
+  double getIntersectionLength(@NotNull Range range) {
+    if (range.isEmpty() || myStarts.length == 0) {
+      return 0;
+    }
+    double min = range.getMin() - myBase;
+    double max = range.getMax() - myBase;
+
+    int startsBelow = countBelow(myStarts, min);
+    int startsUpTo = countUpTo(myStarts, max);
+    int endsBelow = countBelow(myEnds, min);
+    int endsUpTo = countUpTo(myEnds, max);
+
+    // Times below the range are clamped to its min, and times above it to its max. Ends and starts are subtracted before converting to
+    // double, to not lose precision on the sums.
+    long withinSum = (myEndSums[endsUpTo] - myEndSums[endsBelow]) - (myStartSums[startsUpTo] - myStartSums[startsBelow]);
+    return (endsBelow - startsBelow) * min + (startsUpTo - endsUpTo) * max + withinSum;
+  }
+
+  /**
+   * @return whether any node intersects with the open interval (min, max) of the given range. Requires the range to have a positive length,
+   * as it counts the nodes starting before max but not those ending before min, which all start before max too.
+   */
+  boolean intersects(@NotNull Range range) {
+    assert range.getMin() < range.getMax();
+    return countBelow(myStarts, range.getMax() - myBase) > countUpTo(myEnds, range.getMin() - myBase);
+  }
+
+  /**
+   * @return how many of the sorted times are less than the given value.
+   */
+  private static int countBelow(@NotNull long[] times, double value) {
+    int low = 0;
+    int high = times.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (times[mid] < value) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return how many of the sorted times are less than or equal to the given value.
+   */
+  private static int countUpTo(@NotNull long[] times, double value) {
+    int low = 0;
+    int high = times.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (times[mid] <= value) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
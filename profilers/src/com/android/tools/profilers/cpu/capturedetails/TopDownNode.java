@@ -19,32 +19,78 @@ import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * A top-down CPU usage tree. This is a node on that tree and represents all the calls that share the same callstack upto a point.
  * It's created from an execution tree by merging the nodes with the same path from the root.
+ * <p>
+ * The subtrees of the children of a node are built in parallel on the common {@link ForkJoinPool}, before being merged in their order.
  */
 public class TopDownNode extends CpuTreeNode<TopDownNode> {
   private static final String INVALID_ID = "";
 
+  /**
+   * Children subtrees are built by the current thread, instead of being forked, once this many tasks are waiting to be stolen. This keeps
+   * the tasks coarse enough for their overhead to not matter, while leaving work to steal for the idle threads.
+   */
+  private static final int MAX_SURPLUS_TASKS = 3;
+
   public TopDownNode(@NotNull CaptureNode node) {
     super(node.getData() == null ? INVALID_ID : node.getData().getId());
     addNode(node);
 
+    List<TopDownNode> childNodes = buildChildren(node.getChildren());
     // We're adding unmatched children separately, because we don't want to merge unmatched with matched,
     // i.e all merged children should have the same {@link CaptureNode.FilterType}.
-    addChildren(node, false);
-    addChildren(node, true);
+    addChildren(node, childNodes, false);
+    addChildren(node, childNodes, true);
+  }
+
+  /**
+   * Builds the top down nodes of the given nodes, in the same order.
+   */
+  @NotNull
+  private static List<TopDownNode> buildChildren(@NotNull List<CaptureNode> children) {
+    if (children.isEmpty()) {
+      return new ArrayList<>();
+    }
+    if (!ForkJoinTask.inForkJoinPool()) {
+      return ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> buildChildren(children)));
+    }
+
+    List<ForkJoinTask<TopDownNode>> tasks = new ArrayList<>(children.size());
+    for (CaptureNode child : children) {
+      ForkJoinTask<TopDownNode> task = ForkJoinTask.adapt(() -> new TopDownNode(child));
+      if (child.getChildCount() > 0 && ForkJoinTask.getSurplusQueuedTaskCount() < MAX_SURPLUS_TASKS) {
+        task.fork();
+      }
+      else {
+        // Either a leaf, which is cheap to build, or there is already enough work to steal.
+        task.invoke();
+      }
+      tasks.add(task);
+    }
+
+    List<TopDownNode> childNodes = new ArrayList<>(children.size());
+    for (ForkJoinTask<TopDownNode> task : tasks) {
+      childNodes.add(task.join());
+    }
+    return childNodes;
   }
 
   /**
-   * Adds children of {@param node} whose filter type matches to the flag {@param unmatched}.
+   * Adds children of {@param node}, whose top down nodes are {@param childNodes}, whose filter type matches to the flag {@param unmatched}.
    */
-  private void addChildren(@NotNull CaptureNode node, boolean unmatched) {
+  private void addChildren(@NotNull CaptureNode node, @NotNull List<TopDownNode> childNodes, boolean unmatched) {
     Map<String, TopDownNode> children = new TreeMap<>();
-    for (CaptureNode child : node.getChildren()) {
+    for (int i = 0; i < childNodes.size(); i++) {
+      CaptureNode child = node.getChildAt(i);
       assert child.getData() != null;
 
       if (unmatched != child.isUnmatched()) {
@@ -52,7 +98,7 @@ public class TopDownNode extends CpuTreeNode<TopDownNode> {
       }
 
       TopDownNode prev = children.get(child.getData().getId());
-      TopDownNode other = new TopDownNode(child);
+      TopDownNode other = childNodes.get(i);
       if (prev == null) {
         children.put(child.getData().getId(), other);
         addChild(other);
@@ -19,15 +19,19 @@ import com.android.annotations.VisibleForTesting;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.SimpleperfReport;
+import com.android.tools.profiler.protobuf3jarjar.CodedInputStream;
 import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.CaptureTree;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.TraceParser;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.NoSymbolModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
-import com.google.common.collect.Lists;
 import com.intellij.openapi.diagnostic.Logger;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TLongArrayList;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
@@ -39,10 +43,16 @@ import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
 
 /**
  * Parses a trace file obtained using simpleperf to a map threadId -> {@link CaptureNode}.
+ * <p>
+ * Samples are decoded one record at a time and only their times and call chains are kept, in primitive arrays per thread. The tree of each
+ * thread is then built in parallel.
  */
 public class SimpleperfTraceParser implements TraceParser {
 
@@ -56,6 +66,11 @@ public class SimpleperfTraceParser implements TraceParser {
    */
   private static final int INVALID_SYMBOL_ID = -1;
 
+  /**
+   * Index of the missing previous sample, when parsing the first sample of a thread.
+   */
+  private static final int NO_SAMPLE = -1;
+
   /**
    * Directory containing files (.art, .odex, .so, .apk) related to app's. Each app's files are located in a subdirectory whose name starts
    * with the app ID. For instance, "com.google.sample.tunnel" app's directory could be something like
@@ -69,20 +84,30 @@ public class SimpleperfTraceParser implements TraceParser {
   private int myTraceVersion;
 
   /**
-   * Maps a file id to its correspondent {@link SimpleperfReport.File}.
+   * Maps a file id to its correspondent {@link SimpleperfReport.File}, and the models of its symbols.
    */
-  private final Map<Integer, SimpleperfReport.File> myFiles;
+  private final TIntObjectHashMap<FileSymbols> myFiles;
 
   /**
    * Maps a thread id to its corresponding {@link SimpleperfReport.Thread} object.
    */
-  private final Map<Integer, SimpleperfReport.Thread> myThreads;
+  private final TIntObjectHashMap<SimpleperfReport.Thread> myThreads;
 
   /**
-   * List of samples containing method trace data.
+   * Maps a thread id to the samples of method trace data collected for it.
    */
-  @VisibleForTesting
-  final List<SimpleperfReport.Sample> mySamples;
+  private final TIntObjectHashMap<ThreadSamples> myThreadSamples;
+
+  /**
+   * Number of samples read from trace file, to check it against {@link #mySampleCount}.
+   */
+  private int myReadSampleCount;
+
+  /**
+   * Timestamps of the first and last samples of the trace, in nanoseconds.
+   */
+  private long myFirstSampleTimestamp;
+  private long myLastSampleTimestamp;
 
   /**
    * Maps a {@link CpuThreadInfo} to its correspondent method call tree.
@@ -111,6 +136,11 @@ public class SimpleperfTraceParser implements TraceParser {
 
   private String myAppPackageName;
 
+  /**
+   * Models of the call chain entries without symbol, keyed by name, so that all the calls to the same address share their model.
+   */
+  private final Map<String, CaptureNodeModel> myNoSymbolModels = new ConcurrentHashMap<>();
+
   /**
    * Prefix (up to the app name) of the /data/app subfolder corresponding to the app being profiled. For example:
    * "/data/app/com.google.sample.tunnel".
@@ -118,10 +148,10 @@ public class SimpleperfTraceParser implements TraceParser {
   private String myAppDataFolderPrefix;
 
   public SimpleperfTraceParser() {
-    myFiles = new HashMap<>();
-    mySamples = new ArrayList<>();
+    myFiles = new TIntObjectHashMap<>();
+    myThreadSamples = new TIntObjectHashMap<>();
     myCaptureTrees = new HashMap<>();
-    myThreads = new HashMap<>();
+    myThreads = new TIntObjectHashMap<>();
   }
 
   /**
@@ -132,20 +162,6 @@ public class SimpleperfTraceParser implements TraceParser {
     return splitPath[splitPath.length - 1];
   }
 
-  private static boolean equals(SimpleperfReport.Sample.CallChainEntry c1, SimpleperfReport.Sample.CallChainEntry c2) {
-    boolean isSameFileAndSymbolId = c1.getFileId() == c2.getFileId() && c1.getSymbolId() == c2.getSymbolId();
-    if (!isSameFileAndSymbolId) {
-      // Call chain entries need to be obtained from the same file and have the same symbol id in order to be equal.
-      return false;
-    }
-    if (c1.getSymbolId() == -1) {
-      // Symbol is invalid, fallback to vaddress
-      return c1.getVaddrInFile() == c2.getVaddrInFile();
-    }
-    // Both file and symbol id match, and symbol is valid
-    return true;
-  }
-
   private static Logger getLog() {
     return Logger.getInstance(SimpleperfTraceParser.class);
   }
@@ -188,11 +204,9 @@ public class SimpleperfTraceParser implements TraceParser {
     return mySampleCount;
   }
 
-  @NotNull
-  private static CaptureNode createCaptureNode(CaptureNodeModel model, long timestamp) {
-    CaptureNode node = new CaptureNode(model);
-    setNodeStartTime(node, timestamp);
-    node.setDepth(0);
+  private static int createCaptureNode(CaptureTree.Builder tree, CaptureNodeModel model, long timestamp) {
+    int node = tree.addNode(model);
+    setNodeStartTime(tree, node, timestamp);
     return node;
   }
 
@@ -209,7 +223,7 @@ public class SimpleperfTraceParser implements TraceParser {
    * message Record(record_N) (having record_size_N bytes)
    * LittleEndian32(0)
    *
-   * Parsed data is stored in {@link #myFiles} and {@link #mySamples}.
+   * Parsed data is stored in {@link #myFiles} and {@link #myThreadSamples}.
    */
   @VisibleForTesting
   void parseTraceFile(File trace) throws IOException {
@@ -219,18 +233,22 @@ public class SimpleperfTraceParser implements TraceParser {
 
     // Read the first record size
     int recordSize = buffer.getInt();
+    // Records are decoded from the same array, grown to fit the largest one.
+    byte[] recordBytes = new byte[0];
 
     // 0 is used to indicate the end of the trace
     while (recordSize != 0) {
       // The next recordSize bytes should represent the record
-      byte[] recordBytes = new byte[recordSize];
-      buffer.get(recordBytes);
-      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(recordBytes);
+      if (recordBytes.length < recordSize) {
+        recordBytes = new byte[Math.max(recordSize, recordBytes.length * 2)];
+      }
+      buffer.get(recordBytes, 0, recordSize);
+      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(CodedInputStream.newInstance(recordBytes, 0, recordSize));
 
       switch (record.getRecordDataCase()) {
         case FILE:
           SimpleperfReport.File file = record.getFile();
-          myFiles.put(file.getId(), file);
+          myFiles.put(file.getId(), new FileSymbols(file));
           break;
         case LOST:
           // Only one occurrence of LOST type is expected.
@@ -239,8 +257,7 @@ public class SimpleperfTraceParser implements TraceParser {
           myLostSampleCount = situation.getLostCount();
           break;
         case SAMPLE:
-          SimpleperfReport.Sample sample = record.getSample();
-          mySamples.add(sample);
+          addSample(record.getSample());
           break;
         case THREAD:
           SimpleperfReport.Thread thread = record.getThread();
@@ -260,12 +277,27 @@ public class SimpleperfTraceParser implements TraceParser {
       recordSize = buffer.getInt();
     }
 
-    if (mySamples.size() != mySampleCount) {
+    if (myReadSampleCount != mySampleCount) {
       // TODO: create a trace file to test this exception is thrown when it should.
       throw new IllegalStateException("Samples count doesn't match the number of samples read.");
     }
   }
 
+  private void addSample(@NotNull SimpleperfReport.Sample sample) {
+    if (myReadSampleCount == 0) {
+      myFirstSampleTimestamp = sample.getTime();
+    }
+    myLastSampleTimestamp = sample.getTime();
+    myReadSampleCount++;
+
+    ThreadSamples threadSamples = myThreadSamples.get(sample.getThreadId());
+    if (threadSamples == null) {
+      threadSamples = new ThreadSamples();
+      myThreadSamples.put(sample.getThreadId(), threadSamples);
+    }
+    threadSamples.add(sample);
+  }
+
   /**
    * Parses the next 16-bit number of the given {@link ByteBuffer} as the trace version.
    */
@@ -286,137 +318,117 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   /**
-   * Parses the data from {@link #mySamples} into a map of tid -> {@link CaptureNode}.
+   * Parses the data from {@link #myThreadSamples} into a map of tid -> {@link CaptureNode}, building the tree of each thread in parallel.
    */
   private void parseSampleData() {
-    if (mySamples.isEmpty()) {
+    if (myReadSampleCount == 0) {
       return;
     }
     // Set the capture range
-    long startTimestamp = mySamples.get(0).getTime();
-    long endTimestamp = mySamples.get(mySamples.size() - 1).getTime();
-    myRange = new Range(TimeUnit.NANOSECONDS.toMicros(startTimestamp), TimeUnit.NANOSECONDS.toMicros(endTimestamp));
+    myRange = new Range(TimeUnit.NANOSECONDS.toMicros(myFirstSampleTimestamp), TimeUnit.NANOSECONDS.toMicros(myLastSampleTimestamp));
 
-    // Split the samples per thread.
-    Map<Integer, List<SimpleperfReport.Sample>> threadSamples = splitSamplesPerThread();
+    int[] threadIds = myThreadSamples.keys();
+    for (int threadId : threadIds) {
+      if (!myThreads.containsKey(threadId)) {
+        throw new IllegalStateException("Malformed trace file: thread with id " + threadId + " not found.");
+      }
+    }
 
     // Process the samples for each thread
-    for (Map.Entry<Integer, List<SimpleperfReport.Sample>> threadSamplesEntry : threadSamples.entrySet()) {
-      parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue());
-    }
-  }
+    CaptureNode[] trees = new CaptureNode[threadIds.length];
+    IntStream.range(0, threadIds.length).parallel()
+      .forEach(i -> trees[i] = parseThreadSamples(threadIds[i], myThreadSamples.get(threadIds[i])));
 
-  /**
-   * Group the samples collected by thread.
-   */
-  private Map<Integer, List<SimpleperfReport.Sample>> splitSamplesPerThread() {
-    Map<Integer, List<SimpleperfReport.Sample>> threadSamples = new HashMap<>();
-    for (SimpleperfReport.Sample sample : mySamples) {
-      int threadId = sample.getThreadId();
-      if (!threadSamples.containsKey(threadId)) {
-        threadSamples.put(threadId, new ArrayList<>());
-      }
-      threadSamples.get(threadId).add(sample);
+    for (int i = 0; i < threadIds.length; i++) {
+      SimpleperfReport.Thread thread = myThreads.get(threadIds[i]);
+      myCaptureTrees.put(new CpuThreadInfo(threadIds[i], thread.getThreadName(), threadIds[i] == thread.getProcessId()), trees[i]);
     }
-    return threadSamples;
   }
 
   // TODO: support thread time
-  private static void setNodeEndTime(CaptureNode node, long endTimeNs) {
-    node.setEndGlobal(TimeUnit.NANOSECONDS.toMicros(endTimeNs));
-    node.setEndThread(TimeUnit.NANOSECONDS.toMicros(endTimeNs));
+  private static void setNodeEndTime(CaptureTree.Builder tree, int node, long endTimeNs) {
+    tree.setEndGlobal(node, TimeUnit.NANOSECONDS.toMicros(endTimeNs));
+    tree.setEndThread(node, TimeUnit.NANOSECONDS.toMicros(endTimeNs));
   }
 
   // TODO: support thread time
-  private static void setNodeStartTime(CaptureNode node, long startTimeNs) {
-    node.setStartGlobal(TimeUnit.NANOSECONDS.toMicros(startTimeNs));
-    node.setStartThread(TimeUnit.NANOSECONDS.toMicros(startTimeNs));
+  private static void setNodeStartTime(CaptureTree.Builder tree, int node, long startTimeNs) {
+    tree.setStartGlobal(node, TimeUnit.NANOSECONDS.toMicros(startTimeNs));
+    tree.setStartThread(node, TimeUnit.NANOSECONDS.toMicros(startTimeNs));
   }
 
   /**
-   * Parses the list of samples of a thread into a {@link CaptureNode} tree.
+   * Parses the samples of a thread into a {@link CaptureNode} tree.
    */
-  private void parseThreadSamples(int threadId, List<SimpleperfReport.Sample> threadSamples) {
-    if (threadSamples.isEmpty()) {
-      getLog().warn(String.format("Warning: No samples read for thread %s (%d)", myThreads.get(threadId), threadId));
-      return;
-    }
-
-    if (!myThreads.containsKey(threadId)) {
-      throw new IllegalStateException("Malformed trace file: thread with id " + threadId + " not found.");
-    }
-
+  @NotNull
+  private CaptureNode parseThreadSamples(int threadId, @NotNull ThreadSamples threadSamples) {
     // Add a root node to represent the thread itself.
-    long firstTimestamp = threadSamples.get(0).getTime();
+    long firstTimestamp = threadSamples.getTime(0);
     SimpleperfReport.Thread thread = myThreads.get(threadId);
-    CaptureNode root = createCaptureNode(new SingleNameModel(thread.getThreadName()), firstTimestamp);
-    root.setDepth(0);
-    myCaptureTrees.put(new CpuThreadInfo(threadId, thread.getThreadName(), threadId == thread.getProcessId()), root);
+    CaptureTree.Builder tree = new CaptureTree.Builder();
+    int root = createCaptureNode(tree, new SingleNameModel(thread.getThreadName()), firstTimestamp);
 
-    // Parse the first call chain so we have a value for lastCallchain
-    List<SimpleperfReport.Sample.CallChainEntry> previousCallChain = Lists.reverse(threadSamples.get(0).getCallchainList());
-    // Node used to traverse the tree. In the first traversal we pass an empty list as previous call chain and root as last visited node.
-    CaptureNode lastVisitedNode = parseCallChain(previousCallChain, Collections.emptyList(), threadSamples.get(0).getTime(), root);
+    // Node used to traverse the tree. In the first traversal there is no previous call chain and root is the last visited node.
+    int lastVisitedNode = parseCallChain(tree, threadSamples, 0, NO_SAMPLE, threadSamples.getTime(0), root);
 
     // Now parse all the rest of the samples collected for this thread
     for (int i = 1; i < threadSamples.size(); i++) {
-      SimpleperfReport.Sample sample = threadSamples.get(i);
-      // Reverse the call chain order because simpleperf returns the call chains ordered from leaf to root,
-      // so reversing it makes the traversal easier.
-      List<SimpleperfReport.Sample.CallChainEntry> callChain = Lists.reverse(sample.getCallchainList());
       // TODO: when --trace-offcpu is supported, we will need to call updateAncestorsEndTime if sample has a "schedule" out event.
-      lastVisitedNode = parseCallChain(callChain, previousCallChain, sample.getTime(), lastVisitedNode);
-      previousCallChain = callChain;
+      lastVisitedNode = parseCallChain(tree, threadSamples, i, i - 1, threadSamples.getTime(i), lastVisitedNode);
     }
 
     // Finally, update the end timestamp of the nodes in the last sample of the thread, which should be the last sample's timestamp.
     // TODO: when --trace-offcpu is supported, we need to check if the last sample has a "schedule" out event before updating the end time.
-    long lastTimestamp = mySamples.get(mySamples.size() - 1).getTime();
-    updateAncestorsEndTime(lastTimestamp, lastVisitedNode);
+    updateAncestorsEndTime(tree, myLastSampleTimestamp, lastVisitedNode);
     // update the root timestamp
-    setNodeEndTime(root, lastTimestamp);
+    setNodeEndTime(tree, root, myLastSampleTimestamp);
+    return tree.build(root).getRoot();
   }
 
   /**
    * Updates the end timestamp of a node and all its ancestors except the root.
    */
-  private static void updateAncestorsEndTime(long endTimestamp, CaptureNode lastVisited) {
-    CaptureNode node = lastVisited;
-    while (node.getParent() != null && node.getEnd() == 0) {
-      setNodeEndTime(node, endTimestamp);
-      node = node.getParent();
-      assert node != null;
+  private static void updateAncestorsEndTime(CaptureTree.Builder tree, long endTimestamp, int lastVisited) {
+    int node = lastVisited;
+    while (tree.getParent(node) != CaptureTree.NO_NODE && tree.getEndGlobal(node) == 0) {
+      setNodeEndTime(tree, node, endTimestamp);
+      node = tree.getParent(node);
     }
   }
 
   /**
-   * Given a {@link SimpleperfReport.Sample.CallChainEntry} and the previous one, add the new method calls as nodes to the tree and set
-   * their start time to the given timestamp. Also, check which methods are not on the call chain anymore and update their end time.
-   * Receives a {@link CaptureNode} as a starting point to traverse the tree when adding new nodes or visiting existing ones. Returns the
+   * Given the call chain of a sample and the one of the previous sample, add the new method calls as nodes to the tree and set their start
+   * time to the given timestamp. Also, check which methods are not on the call chain anymore and update their end time.
+   * Receives a node of the tree as a starting point to traverse the tree when adding new nodes or visiting existing ones. Returns the
    * last visited node.
    */
-  private CaptureNode parseCallChain(List<SimpleperfReport.Sample.CallChainEntry> callChain,
-                                     List<SimpleperfReport.Sample.CallChainEntry> previousCallChain,
-                                     long sampleTimestamp, CaptureNode lastVisitedNode) {
+  private int parseCallChain(CaptureTree.Builder tree, ThreadSamples samples, int sample, int previousSample,
+                             long sampleTimestamp, int lastVisitedNode) {
     // Node used to traverse the tree when adding new nodes or going up to find the divergent node ancestor.
-    CaptureNode traversalNode = lastVisitedNode;
+    int traversalNode = lastVisitedNode;
+
+    int callChainStart = samples.getCallChainStart(sample);
+    int callChainSize = samples.getCallChainEnd(sample) - callChainStart;
+    int previousCallChainStart = previousSample == NO_SAMPLE ? 0 : samples.getCallChainStart(previousSample);
+    int previousCallChainSize = previousSample == NO_SAMPLE ? 0 : samples.getCallChainEnd(previousSample) - previousCallChainStart;
 
     // Find the node whre the current call chain diverge from the previous one
     int divergenceIndex = 0;
-    while (divergenceIndex < callChain.size() && divergenceIndex < previousCallChain.size() &&
-           equals(previousCallChain.get(divergenceIndex), callChain.get(divergenceIndex))) {
+    while (divergenceIndex < callChainSize && divergenceIndex < previousCallChainSize &&
+           samples.isSameEntry(previousCallChainStart + divergenceIndex, callChainStart + divergenceIndex)) {
       divergenceIndex ++;
     }
 
     // If there is a divergence, we update the end time of the traversal node and go up in the tree until we find the divergent node parent.
-    if (divergenceIndex < previousCallChain.size()) {
-      int divergenceCount = previousCallChain.size() - divergenceIndex;
-      traversalNode = findDivergenceAndUpdateEndTime(divergenceCount, sampleTimestamp, traversalNode);
+    if (divergenceIndex < previousCallChainSize) {
+      int divergenceCount = previousCallChainSize - divergenceIndex;
+      traversalNode = findDivergenceAndUpdateEndTime(tree, divergenceCount, sampleTimestamp, traversalNode);
     }
 
     // We add the new nodes (if any) present in the new call chain as descendants of the parent of the first divergent node.
-    if (divergenceIndex < callChain.size()) {
-      traversalNode = addNewNodes(callChain, traversalNode, divergenceIndex, sampleTimestamp);
+    if (divergenceIndex < callChainSize) {
+      traversalNode = addNewNodes(tree, samples, traversalNode, callChainStart + divergenceIndex, callChainStart + callChainSize,
+                                  sampleTimestamp);
     }
 
     // Finally, return the traversal node.
@@ -427,48 +439,138 @@ public class SimpleperfTraceParser implements TraceParser {
    * Updates the end timestamp of a given node and go up in the tree N times, where N is the divergence count passed as an argument.
    * Returns the parent of the last visited node, meaning nodes that we have changed the end time.
    */
-  private static CaptureNode findDivergenceAndUpdateEndTime(int divergenceCount, long endTimestamp, CaptureNode node) {
+  private static int findDivergenceAndUpdateEndTime(CaptureTree.Builder tree, int divergenceCount, long endTimestamp, int node) {
     for (int i = 0; i < divergenceCount; i++) {
-      assert node != null;
-      setNodeEndTime(node, endTimestamp);
-      node = node.getParent();
+      assert node != CaptureTree.NO_NODE;
+      setNodeEndTime(tree, node, endTimestamp);
+      node = tree.getParent(node);
     }
 
     return node;
   }
 
   /**
-   * Given a list of call chain entries and a start index, convert them to {@link CaptureNode} and add them as descendants of a given node.
+   * Given a range of call chain entries, convert them to nodes and add them as descendants of a given node.
    * Returns the last visited (added) node.
    */
-  private CaptureNode addNewNodes(List<SimpleperfReport.Sample.CallChainEntry> callChain,
-                                  CaptureNode node, int startIndex, long startTimestamp) {
-    assert node != null;
-    for (int i = startIndex; i < callChain.size(); i++) {
-      CaptureNode child = createCaptureNode(methodModelFromCallchainEntry(callChain.get(i)), startTimestamp);
-      node.addChild(child);
-      child.setDepth(node.getDepth() + 1);
+  private int addNewNodes(CaptureTree.Builder tree, ThreadSamples samples, int node, int startEntry, int endEntry, long startTimestamp) {
+    assert node != CaptureTree.NO_NODE;
+    for (int i = startEntry; i < endEntry; i++) {
+      int child = createCaptureNode(tree, methodModelFromCallchainEntry(samples, i), startTimestamp);
+      tree.addChild(node, child);
       node = child;
     }
     // Return the last added node, as it's the visited one
     return node;
   }
 
-  private CaptureNodeModel methodModelFromCallchainEntry(SimpleperfReport.Sample.CallChainEntry callChainEntry) {
-    int symbolId = callChainEntry.getSymbolId();
-    SimpleperfReport.File symbolFile = myFiles.get(callChainEntry.getFileId());
+  private CaptureNodeModel methodModelFromCallchainEntry(ThreadSamples samples, int entry) {
+    int fileId = samples.getFileId(entry);
+    int symbolId = samples.getSymbolId(entry);
+    FileSymbols symbolFile = myFiles.get(fileId);
     if (symbolFile == null) {
-      throw new IllegalStateException("Symbol file with id \"" + callChainEntry.getFileId() + "\" not found.");
+      throw new IllegalStateException("Symbol file with id \"" + fileId + "\" not found.");
     }
     if (symbolId == INVALID_SYMBOL_ID) {
       // if symbol_id is -1, we report the method as fileName+vAddress (e.g. program.so+0x3039)
-      String hexAddress = "0x" + Long.toHexString(callChainEntry.getVaddrInFile());
-      String methodName = fileNameFromPath(symbolFile.getPath()) + "+" + hexAddress;
-      return new NoSymbolModel(methodName);
+      String hexAddress = "0x" + Long.toHexString(samples.getVaddrInFile(entry));
+      String methodName = fileNameFromPath(symbolFile.myFile.getPath()) + "+" + hexAddress;
+      return myNoSymbolModels.computeIfAbsent(methodName, NoSymbolModel::new);
+    }
+
+    CaptureNodeModel model = symbolFile.myModels.get(symbolId);
+    if (model == null) {
+      // Otherwise, read the method from the symbol table and parse it into a CaptureNodeModel. User's code symbols come from
+      // files located inside the app's directory, therefore we check if the symbol path has the same prefix of such directory.
+      boolean isUserWritten = symbolFile.myFile.getPath().startsWith(myAppDataFolderPrefix);
+      model = NodeNameParser.parseNodeName(symbolFile.myFile.getSymbol(symbolId), isUserWritten);
+      // Another thread may have parsed the same symbol meanwhile, keep the first model so that all the calls share it.
+      if (!symbolFile.myModels.compareAndSet(symbolId, null, model)) {
+        model = symbolFile.myModels.get(symbolId);
+      }
+    }
+    return model;
+  }
+
+  /**
+   * A {@link SimpleperfReport.File} and the models of its symbols, parsed when first needed. The models can be read and set by the threads
+   * building the trees concurrently.
+   */
+  private static final class FileSymbols {
+    @NotNull private final SimpleperfReport.File myFile;
+    @NotNull private final AtomicReferenceArray<CaptureNodeModel> myModels;
+
+    private FileSymbols(@NotNull SimpleperfReport.File file) {
+      myFile = file;
+      myModels = new AtomicReferenceArray<>(file.getSymbolCount());
+    }
+  }
+
+  /**
+   * The times and call chains of the samples of a thread, stored in primitive arrays instead of keeping the {@link SimpleperfReport.Sample}
+   * messages. Call chains are stored from the root to the leaf, the reverse of simpleperf, which makes the traversal easier.
+   */
+  private static final class ThreadSamples {
+    private final TLongArrayList myTimes = new TLongArrayList();
+    /**
+     * Index of the first call chain entry of each sample. The entries of a sample end where the ones of the next sample start.
+     */
+    private final TIntArrayList myCallChainStarts = new TIntArrayList();
+    private final TIntArrayList myFileIds = new TIntArrayList();
+    private final TIntArrayList mySymbolIds = new TIntArrayList();
+    private final TLongArrayList myVaddrsInFile = new TLongArrayList();
+
+    void add(@NotNull SimpleperfReport.Sample sample) {
+      myTimes.add(sample.getTime());
+      myCallChainStarts.add(myFileIds.size());
+      for (int i = sample.getCallchainCount() - 1; i >= 0; i--) {
+        SimpleperfReport.Sample.CallChainEntry entry = sample.getCallchain(i);
+        myFileIds.add(entry.getFileId());
+        mySymbolIds.add(entry.getSymbolId());
+        myVaddrsInFile.add(entry.getVaddrInFile());
+      }
+    }
+
+    int size() {
+      return myTimes.size();
+    }
+
+    long getTime(int sample) {
+      return myTimes.get(sample);
+    }
+
+    int getCallChainStart(int sample) {
+      return myCallChainStarts.get(sample);
+    }
+
+    int getCallChainEnd(int sample) {
+      return sample + 1 < size() ? myCallChainStarts.get(sample + 1) : myFileIds.size();
+    }
+
+    int getFileId(int entry) {
+      return myFileIds.get(entry);
+    }
+
+    int getSymbolId(int entry) {
+      return mySymbolIds.get(entry);
+    }
+
+    long getVaddrInFile(int entry) {
+      return myVaddrsInFile.get(entry);
+    }
+
+    boolean isSameEntry(int entry1, int entry2) {
+      boolean isSameFileAndSymbolId = myFileIds.get(entry1) == myFileIds.get(entry2) && mySymbolIds.get(entry1) == mySymbolIds.get(entry2);
+      if (!isSameFileAndSymbolId) {
+        // Call chain entries need to be obtained from the same file and have the same symbol id in order to be equal.
+        return false;
+      }
+      if (mySymbolIds.get(entry1) == INVALID_SYMBOL_ID) {
+        // Symbol is invalid, fallback to vaddress
+        return myVaddrsInFile.get(entry1) == myVaddrsInFile.get(entry2);
+      }
+      // Both file and symbol id match, and symbol is valid
+      return true;
     }
-    // Otherwise, read the method from the symbol table and parse it into a CaptureNodeModel. User's code symbols come from
-    // files located inside the app's directory, therefore we check if the symbol path has the same prefix of such directory.
-    boolean isUserWritten = symbolFile.getPath().startsWith(myAppDataFolderPrefix);
-    return NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId), isUserWritten);
   }
 }
@@ -17,8 +17,6 @@ package com.android.tools.profilers.energy;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
-import com.android.tools.adtui.model.RangedSeries;
-import com.android.tools.profiler.proto.EnergyProfiler;
 import com.android.tools.profilers.StudioProfilers;
 import org.jetbrains.annotations.NotNull;
 
@@ -28,18 +26,15 @@ public class DetailedEnergyEventsCount {
   @NotNull private final RangedContinuousSeries myWakeLockCountSeries;
   @NotNull private final RangedContinuousSeries myAlarmAndJobCountSeries;
 
-  public DetailedEnergyEventsCount(@NotNull StudioProfilers profilers) {
+  public DetailedEnergyEventsCount(@NotNull StudioProfilers profilers, @NotNull EnergyEventsIndex eventsIndex) {
     Range countRange = new Range(0, EnergyMonitor.MAX_EXPECTED_USAGE);
-    EnergyEventsDataSeries sourceSeries = new EnergyEventsDataSeries(profilers.getClient(), profilers.getSession());
-    Range dataRange = profilers.getTimeline().getDataRange();
-    RangedSeries<EnergyProfiler.EnergyEvent> series = new RangedSeries<>(dataRange, sourceSeries);
 
     myLocationCountSeries = new RangedContinuousSeries("Location", profilers.getTimeline().getViewRange(), countRange,
-                                                       new EnergyEventsCountDataSeries(series, EnergyDuration.Kind.LOCATION));
+                                                       new EnergyEventsCountDataSeries(eventsIndex, EnergyDuration.Kind.LOCATION));
     myWakeLockCountSeries = new RangedContinuousSeries("Wake Locks", profilers.getTimeline().getViewRange(), countRange,
-                                                       new EnergyEventsCountDataSeries(series, EnergyDuration.Kind.WAKE_LOCK));
+                                                       new EnergyEventsCountDataSeries(eventsIndex, EnergyDuration.Kind.WAKE_LOCK));
     myAlarmAndJobCountSeries = new RangedContinuousSeries("Alarms & Jobs", profilers.getTimeline().getViewRange(), countRange,
-                                                          new EnergyEventsCountDataSeries(series, EnergyDuration.Kind.ALARM,
+                                                          new EnergyEventsCountDataSeries(eventsIndex, EnergyDuration.Kind.ALARM,
                                                                                           EnergyDuration.Kind.JOB));
   }
 
@@ -17,12 +17,12 @@ package com.android.tools.profilers.energy;
 
 import com.android.tools.adtui.model.DataSeries;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.RangedSeries;
 import com.android.tools.adtui.model.SeriesData;
-import com.android.tools.profiler.proto.EnergyProfiler.EnergyEvent;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A data series to count how many energy events are merged into one.
@@ -46,41 +46,23 @@ import java.util.*;
  */
 public final class EnergyEventsCountDataSeries implements DataSeries<Long> {
 
-  @NotNull private final RangedSeries<EnergyEvent> myDelegateSeries;
+  @NotNull private final EnergyEventsIndex myIndex;
 
   private final List<EnergyDuration.Kind> myKindsFilter;
 
   /**
-   * @param delegateSeries A source series whose events will be read from and then counted
-   * @param kindsFilter    A list of one or more event kinds to merge into a single bar
+   * @param index       An index of events, whose active event groups are counted
+   * @param kindsFilter A list of one or more event kinds to merge into a single bar
    */
-  public EnergyEventsCountDataSeries(@NotNull RangedSeries<EnergyEvent> delegateSeries,
-                                     @NotNull EnergyDuration.Kind... kindsFilter) {
-    myDelegateSeries = delegateSeries;
+  public EnergyEventsCountDataSeries(@NotNull EnergyEventsIndex index, @NotNull EnergyDuration.Kind... kindsFilter) {
+    myIndex = index;
     myKindsFilter = Arrays.asList(kindsFilter);
   }
 
   @Override
   public List<SeriesData<Long>> getDataForXRange(Range xRange) {
-    List<SeriesData<EnergyEvent>> sourceData = myDelegateSeries.getSeries();
     long position = (long)xRange.getMax();
-    Set<Integer> activeEventGroups = new HashSet<>();
-
-    for (SeriesData<EnergyEvent> eventData : sourceData) {
-      if (!myKindsFilter.contains(EnergyDuration.Kind.from(eventData.value))) {
-        continue;
-      }
-      if (eventData.x > position) {
-        break;
-      }
-      if (!eventData.value.getIsTerminal()) {
-        activeEventGroups.add(eventData.value.getEventId());
-      }
-      else {
-        activeEventGroups.remove(eventData.value.getEventId());
-      }
-    }
-    return Collections.singletonList(new SeriesData(position, Long.valueOf(activeEventGroups.size())));
+    return Collections.singletonList(new SeriesData<>(position, myIndex.getActiveGroupCount(position, myKindsFilter)));
   }
 
   public List<EnergyDuration.Kind> getKindsFilter() {
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.energy;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.profiler.proto.EnergyProfiler.EnergyEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An index of the energy events of a session, which is shared by the series of the energy stage so that they don't each query all the
+ * events of their range, and merge them, every time they are drawn.
+ *
+ * Events are only queried past the latest time which was queried, and are merged by sets of {@link EnergyDuration.Kind} as they arrive.
+ * For each set of kinds, the merged ranges, i.e. the ranges during which at least one event group of these kinds is active, are sorted
+ * by time, so the ones overlapping a range are found with a binary search.
+ */
+public final class EnergyEventsIndex {
+  /**
+   * How long events may take to reach the datastore after the device recorded them. The latest events are queried again for that long.
+   */
+  private static final long LATE_EVENTS_US = TimeUnit.SECONDS.toMicros(5);
+
+  @NotNull private final EnergyEventsDataSeries mySource;
+
+  /**
+   * All the events queried so far, in the order they were queried.
+   */
+  @NotNull private final List<SeriesData<EnergyEvent>> myEvents = new ArrayList<>();
+
+  /**
+   * The events in {@link #myEvents}, to skip the ones which are queried again.
+   */
+  @NotNull private final Set<EnergyEvent> myKnownEvents = new HashSet<>();
+
+  @NotNull private final Map<Set<EnergyDuration.Kind>, MergedEvents> myMergedEvents = new HashMap<>();
+
+  private long myQueriedUntilUs = Long.MIN_VALUE;
+
+  public EnergyEventsIndex(@NotNull EnergyEventsDataSeries source) {
+    mySource = source;
+  }
+
+  /**
+   * @return the merged events of the given kinds in a range, i.e. the first event of each merged range overlapping it, and the last event
+   * of these ranges if it is in the range.
+   */
+  @NotNull
+  public synchronized List<SeriesData<EnergyEvent>> getMergedEvents(@NotNull Range rangeUs,
+                                                                    @NotNull Collection<EnergyDuration.Kind> kinds) {
+    update((long)rangeUs.getMax());
+    return getOrCreateMergedEvents(kinds).getOverlapping((long)rangeUs.getMin(), (long)rangeUs.getMax());
+  }
+
+  /**
+   * @return the number of event groups of the given kinds which are active at a time, where a group is no longer active at the time of
+   * its terminal event.
+   */
+  public synchronized long getActiveGroupCount(long timeUs, @NotNull Collection<EnergyDuration.Kind> kinds) {
+    // The end of the queried ranges is exclusive, while the events at the time are counted.
+    update(timeUs == Long.MAX_VALUE ? timeUs : timeUs + 1);
+    return getOrCreateMergedEvents(kinds).getActiveGroupCount(timeUs);
+  }
+
+  /**
+   * Queries the events up to the given time which weren't queried yet, and merges them.
+   */
+  private void update(long endUs) {
+    if (endUs <= myQueriedUntilUs) {
+      return;
+    }
+    long startUs = myQueriedUntilUs == Long.MIN_VALUE ? 0 : Math.max(0, myQueriedUntilUs - LATE_EVENTS_US);
+    myQueriedUntilUs = endUs;
+
+    List<SeriesData<EnergyEvent>> newEvents = new ArrayList<>();
+    for (SeriesData<EnergyEvent> eventData : mySource.getDataForXRange(new Range(startUs, endUs))) {
+      if (myKnownEvents.add(eventData.value)) {
+        newEvents.add(eventData);
+      }
+    }
+    if (newEvents.isEmpty()) {
+      return;
+    }
+    // Stable, to keep the order of the events of the same time.
+    newEvents.sort(Comparator.comparingLong(eventData -> eventData.x));
+    myEvents.addAll(newEvents);
+    for (MergedEvents mergedEvents : myMergedEvents.values()) {
+      mergedEvents.add(newEvents);
+    }
+  }
+
+  @NotNull
+  private MergedEvents getOrCreateMergedEvents(@NotNull Collection<EnergyDuration.Kind> kinds) {
+    Set<EnergyDuration.Kind> kindSet = kinds.isEmpty() ? EnumSet.noneOf(EnergyDuration.Kind.class) : EnumSet.copyOf(kinds);
+    return myMergedEvents.computeIfAbsent(kindSet, key -> {
+      MergedEvents mergedEvents = new MergedEvents(key);
+      List<SeriesData<EnergyEvent>> events = new ArrayList<>(myEvents);
+      events.sort(Comparator.comparingLong(eventData -> eventData.x));
+      mergedEvents.add(events);
+      return mergedEvents;
+    });
+  }
+
+  /**
+   * The events of a set of kinds, sorted by time, and their merged ranges.
+   */
+  private static final class MergedEvents {
+    @NotNull private final Set<EnergyDuration.Kind> myKinds;
+    @NotNull private final List<SeriesData<EnergyEvent>> myEvents = new ArrayList<>();
+    @NotNull private final List<MergedRange> myRanges = new ArrayList<>();
+
+    /**
+     * The event groups which are active after the last event.
+     */
+    @NotNull private final Set<Integer> myActiveEventGroups = new HashSet<>();
+
+    private MergedEvents(@NotNull Set<EnergyDuration.Kind> kinds) {
+      myKinds = kinds;
+    }
+
+    /**
+     * Adds events sorted by time, which are merged from the last range starting before them, as no event group is active at its start.
+     * Events arriving in order are therefore merged on their own.
+     */
+    private void add(@NotNull List<SeriesData<EnergyEvent>> newEvents) {
+      List<SeriesData<EnergyEvent>> events = new ArrayList<>();
+      for (SeriesData<EnergyEvent> eventData : newEvents) {
+        if (myKinds.contains(EnergyDuration.Kind.from(eventData.value))) {
+          events.add(eventData);
+        }
+      }
+      if (events.isEmpty()) {
+        return;
+      }
+
+      int mergeFromIndex = myEvents.size();
+      long firstUs = events.get(0).x;
+      if (!myEvents.isEmpty() && firstUs < myEvents.get(myEvents.size() - 1).x) {
+        // Some events go before others, so the ranges from the one containing the first of them are merged again.
+        int rangeIndex = findLastRangeStartingUntil(firstUs);
+        mergeFromIndex = rangeIndex < 0 ? 0 : myRanges.get(rangeIndex).myStartIndex;
+        myRanges.subList(Math.max(0, rangeIndex), myRanges.size()).clear();
+        myActiveEventGroups.clear();
+      }
+      for (SeriesData<EnergyEvent> eventData : events) {
+        myEvents.add(countEventsUntil(eventData.x), eventData);
+      }
+      merge(mergeFromIndex);
+    }
+
+    /**
+     * Merges the events from the given index, given the groups active before it.
+     *
+     * Here, we are going to combine separate event groups into one. We basically loop through all events (which are in sorted order), and
+     * create new, fake event groups on the fly that are a superset of those groups. We keep track of all active event groups (those that
+     * have been started but not yet finished), so the superset group starts when we get our first active event, and it ends when we get a
+     * terminal event while no other groups are active.
+     * <pre>
+     *   t0   t1   t2   t3   t4   t5
+     *    [=========]                  <- Active t0 - t2
+     *    |   [===============]        <- Active t1 - t4
+     *    |             [=========]    <- Active t3 - t5
+     *    |                       |
+     *  start                    end
+     * </pre>
+     */
+    private void merge(int fromIndex) {
+      for (int index = fromIndex; index < myEvents.size(); index++) {
+        EnergyEvent event = myEvents.get(index).value;
+        if (!event.getIsTerminal()) {
+          if (myActiveEventGroups.isEmpty()) {
+            myRanges.add(new MergedRange(index));
+          }
+          myActiveEventGroups.add(event.getEventId());
+        }
+        else {
+          boolean wasActive = !myActiveEventGroups.isEmpty();
+          myActiveEventGroups.remove(event.getEventId());
+          if (myActiveEventGroups.isEmpty()) {
+            if (!wasActive) {
+              // A terminal event whose group started before the first event makes a range on its own.
+              myRanges.add(new MergedRange(index));
+            }
+            myRanges.get(myRanges.size() - 1).myEndIndex = index;
+          }
+        }
+      }
+    }
+
+    @NotNull
+    private List<SeriesData<EnergyEvent>> getOverlapping(long minUs, long maxUs) {
+      // The ranges are disjoint, so their ends are sorted as well.
+      int low = 0;
+      int high = myRanges.size();
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (getEndUs(myRanges.get(middle)) < minUs) {
+          low = middle + 1;
+        }
+        else {
+          high = middle;
+        }
+      }
+
+      List<SeriesData<EnergyEvent>> result = new ArrayList<>();
+      for (int rangeIndex = low; rangeIndex < myRanges.size(); rangeIndex++) {
+        MergedRange range = myRanges.get(rangeIndex);
+        SeriesData<EnergyEvent> start = myEvents.get(range.myStartIndex);
+        if (start.x >= maxUs) {
+          break;
+        }
+        result.add(start);
+        if (range.myEndIndex > range.myStartIndex && myEvents.get(range.myEndIndex).x < maxUs) {
+          result.add(myEvents.get(range.myEndIndex));
+        }
+      }
+      return result;
+    }
+
+    private long getActiveGroupCount(long timeUs) {
+      int rangeIndex = findLastRangeStartingUntil(timeUs);
+      if (rangeIndex < 0) {
+        return 0;
+      }
+      // No group is active at the start of the range, so only its events are counted.
+      Set<Integer> activeEventGroups = new HashSet<>();
+      for (int index = myRanges.get(rangeIndex).myStartIndex; index < myEvents.size() && myEvents.get(index).x <= timeUs; index++) {
+        EnergyEvent event = myEvents.get(index).value;
+        if (!event.getIsTerminal()) {
+          activeEventGroups.add(event.getEventId());
+        }
+        else {
+          activeEventGroups.remove(event.getEventId());
+        }
+      }
+      return activeEventGroups.size();
+    }
+
+    private long getEndUs(@NotNull MergedRange range) {
+      return range.myEndIndex < 0 ? Long.MAX_VALUE : myEvents.get(range.myEndIndex).x;
+    }
+
+    /**
+     * @return the number of events at or before the given time.
+     */
+    private int countEventsUntil(long timeUs) {
+      int low = 0;
+      int high = myEvents.size();
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (myEvents.get(middle).x <= timeUs) {
+          low = middle + 1;
+        }
+        else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return the index of the last range starting at or before the given time, or -1 if there is none.
+     */
+    private int findLastRangeStartingUntil(long timeUs) {
+      int low = 0;
+      int high = myRanges.size();
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (myEvents.get(myRanges.get(middle).myStartIndex).x <= timeUs) {
+          low = middle + 1;
+        }
+        else {
+          high = middle;
+        }
+      }
+      return low - 1;
+    }
+  }
+
+  /**
+   * A merged range, given by the indexes of its first and last events. The last one is -1 while the range is still active.
+   */
+  private static final class MergedRange {
+    private final int myStartIndex;
+    private int myEndIndex = -1;
+
+    private MergedRange(int startIndex) {
+      myStartIndex = startIndex;
+    }
+  }
+}
@@ -73,9 +73,12 @@ public class EnergyProfilerStage extends Stage implements CodeNavigator.Listener
     myEventMonitor = new EventMonitor(profilers);
     myLegends = new EnergyUsageLegends(myDetailedUsage, profilers.getTimeline().getDataRange());
     myUsageTooltipLegends = new EnergyUsageLegends(myDetailedUsage, profilers.getTimeline().getTooltipRange());
-    myEventTooltipLegends = new EnergyEventLegends(new DetailedEnergyEventsCount(profilers), profilers.getTimeline().getTooltipRange());
 
     EnergyEventsDataSeries eventsDataSeries = new EnergyEventsDataSeries(profilers.getClient(), profilers.getSession());
+    // Shared by the event series, so that the events are only queried and merged once.
+    EnergyEventsIndex eventsIndex = new EnergyEventsIndex(eventsDataSeries);
+    myEventTooltipLegends =
+      new EnergyEventLegends(new DetailedEnergyEventsCount(profilers, eventsIndex), profilers.getTimeline().getTooltipRange());
 
     mySelectionModel = new SelectionModel(profilers.getTimeline().getSelectionRange());
     mySelectionModel.setSelectionEnabled(profilers.isAgentAttached());
@@ -113,9 +116,9 @@ public class EnergyProfilerStage extends Stage implements CodeNavigator.Listener
     Range range = profilers.getTimeline().getViewRange();
     // StateChart renders series in reverse order
     myEventModel.addSeries(
-      new RangedSeries<>(range, new MergedEnergyEventsDataSeries(eventsDataSeries, EnergyDuration.Kind.ALARM, EnergyDuration.Kind.JOB)));
-    myEventModel.addSeries(new RangedSeries<>(range, new MergedEnergyEventsDataSeries(eventsDataSeries, EnergyDuration.Kind.WAKE_LOCK)));
-    myEventModel.addSeries(new RangedSeries<>(range, new MergedEnergyEventsDataSeries(eventsDataSeries, EnergyDuration.Kind.LOCATION)));
+      new RangedSeries<>(range, new MergedEnergyEventsDataSeries(eventsIndex, EnergyDuration.Kind.ALARM, EnergyDuration.Kind.JOB)));
+    myEventModel.addSeries(new RangedSeries<>(range, new MergedEnergyEventsDataSeries(eventsIndex, EnergyDuration.Kind.WAKE_LOCK)));
+    myEventModel.addSeries(new RangedSeries<>(range, new MergedEnergyEventsDataSeries(eventsIndex, EnergyDuration.Kind.LOCATION)));
 
     myInstructionsEaseOutModel = new EaseOutModel(profilers.getUpdater(), PROFILING_INSTRUCTIONS_EASE_OUT_NS);
 
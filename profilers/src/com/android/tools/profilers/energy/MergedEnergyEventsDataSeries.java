@@ -21,7 +21,8 @@ import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.EnergyProfiler.EnergyEvent;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.*;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * A data series where multiple, separate series are merged into one.
@@ -44,7 +45,7 @@ import java.util.*;
  */
 public final class MergedEnergyEventsDataSeries implements DataSeries<EnergyEvent> {
 
-  @NotNull private final EnergyEventsDataSeries myDelegateSeries;
+  @NotNull private final EnergyEventsIndex myIndex;
   private final List<EnergyDuration.Kind> myKindsFilter;
 
   /**
@@ -52,46 +53,20 @@ public final class MergedEnergyEventsDataSeries implements DataSeries<EnergyEven
    * @param kindsFilter A list of one or more event kinds to merge into a single bar
    */
   public MergedEnergyEventsDataSeries(@NotNull EnergyEventsDataSeries delegateSeries, @NotNull EnergyDuration.Kind... kindsFilter) {
-    myDelegateSeries = delegateSeries;
+    this(new EnergyEventsIndex(delegateSeries), kindsFilter);
+  }
+
+  /**
+   * @param index An index of events, which already merges them and may be shared with other series
+   * @param kindsFilter A list of one or more event kinds to merge into a single bar
+   */
+  public MergedEnergyEventsDataSeries(@NotNull EnergyEventsIndex index, @NotNull EnergyDuration.Kind... kindsFilter) {
+    myIndex = index;
     myKindsFilter = Arrays.asList(kindsFilter);
   }
 
   @Override
   public List<SeriesData<EnergyEvent>> getDataForXRange(Range xRange) {
-    List<SeriesData<EnergyEvent>> sourceData = myDelegateSeries.getDataForXRange(xRange);
-    List<SeriesData<EnergyEvent>> destData = new ArrayList<>();
-    Set<Integer> activeEventGroups = new HashSet<>();
-
-    for (SeriesData<EnergyEvent> eventData : sourceData) {
-      if (!myKindsFilter.contains(EnergyDuration.Kind.from(eventData.value))) {
-        continue;
-      }
-
-      // Here, we are going to combine separate event groups into one. We basically loop through
-      // all events (which are in sorted order), and create new, fake event groups on the fly that
-      // are a superset of those groups. We keep track of all active event groups (those that have
-      // been started but not yet finished), so the superset group starts when we get our first
-      // active event, and it ends when we get a terminal event while no other groups are active.
-      //
-      //   t0   t1   t2   t3   t4   t5
-      //    [=========]                  <- Active t0 - t2
-      //    |   [===============]        <- Active t1 - t4
-      //    |             [=========]    <- Active t3 - t5
-      //    |                       |
-      //  start                    end
-      if (!eventData.value.getIsTerminal()) {
-        if (activeEventGroups.isEmpty()) {
-          destData.add(eventData);
-        }
-        activeEventGroups.add(eventData.value.getEventId());
-      }
-      else {
-        activeEventGroups.remove(eventData.value.getEventId());
-        if (activeEventGroups.isEmpty()) {
-          destData.add(eventData);
-        }
-      }
-    }
-    return destData;
+    return myIndex.getMergedEvents(xRange, myKindsFilter);
   }
 }
@@ -404,6 +404,46 @@ public class MemoryProfilerStage extends Stage implements CodeNavigator.Listener
     return myHeapDumpDurations;
   }
 
+  /**
+   * @return the completed heap dumps within the data range, any two of which can be compared with {@link #selectHeapDumpDiff}.
+   */
+  @NotNull
+  public List<HeapDumpInfo> getCompletedHeapDumpInfos() {
+    Range dataRange = getStudioProfilers().getTimeline().getDataRange();
+    ListHeapDumpInfosResponse response = myClient.listHeapDumpInfos(
+      ListDumpInfosRequest.newBuilder()
+        .setSession(mySessionData)
+        .setStartTime(TimeUnit.MICROSECONDS.toNanos((long)dataRange.getMin()))
+        .setEndTime(TimeUnit.MICROSECONDS.toNanos((long)dataRange.getMax()))
+        .build());
+
+    List<HeapDumpInfo> infos = new ArrayList<>();
+    for (HeapDumpInfo info : response.getInfosList()) {
+      if (info.getEndTime() != Long.MAX_VALUE) {
+        infos.add(info);
+      }
+    }
+    return infos;
+  }
+
+  /**
+   * Selects the differences between two heap dumps, the earlier of which is the baseline. The dumps are loaded by the diff on its own,
+   * rather than as captures of this stage.
+   *
+   * @param joiner if specified, the load operation of the diff will be joined via this executor, as in {@link #selectCaptureDuration}.
+   */
+  public void selectHeapDumpDiff(@NotNull HeapDumpInfo info, @NotNull HeapDumpInfo otherInfo, @Nullable Executor joiner) {
+    HeapDumpInfo baselineInfo = info.getStartTime() <= otherInfo.getStartTime() ? info : otherInfo;
+    HeapDumpInfo laterInfo = baselineInfo == info ? otherInfo : info;
+    FeatureTracker featureTracker = getStudioProfilers().getIdeServices().getFeatureTracker();
+    CaptureEntry<CaptureObject> captureEntry = new CaptureEntry<>(
+      Arrays.asList(baselineInfo, laterInfo),
+      () -> new HeapDumpDiffCaptureObject(new HeapDumpCaptureObject(myClient, mySessionData, baselineInfo, null, featureTracker, this),
+                                          new HeapDumpCaptureObject(myClient, mySessionData, laterInfo, null, featureTracker, this)));
+    long durationUs = TimeUnit.NANOSECONDS.toMicros(laterInfo.getEndTime() - baselineInfo.getStartTime());
+    selectCaptureDuration(new CaptureDurationData<>(durationUs, false, false, captureEntry), joiner);
+  }
+
   /**
    * @param enabled whether to enable or disable allocation tracking.
    * @return the actual status, which may be different from the input
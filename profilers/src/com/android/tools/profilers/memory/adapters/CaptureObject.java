@@ -116,6 +116,14 @@ public interface CaptureObject extends MemoryObject {
     return null;
   }
 
+  /**
+   * @return whether the instances of the {@link ClassSet}s can be listed, which isn't the case where the sets only sum up the counts and
+   * sizes of their instances.
+   */
+  default boolean canListInstances() {
+    return true;
+  }
+
   @Nullable
   default Common.Session getSession() {
     return null;
@@ -134,7 +134,7 @@ public abstract class ClassifierSet implements MemoryObject {
       mySnapshotInstances.add(instanceObject);
     }
 
-    mySnapshotObjectCount++;
+    mySnapshotObjectCount += instanceObject.getInstanceCount();
     myTotalNativeSize += instanceObject.getNativeSize() == INVALID_VALUE ? 0 : instanceObject.getNativeSize();
     myTotalShallowSize += instanceObject.getShallowSize() == INVALID_VALUE ? 0 : instanceObject.getShallowSize();
     myTotalRetainedSize += instanceObject.getRetainedSize() == INVALID_VALUE ? 0 : instanceObject.getRetainedSize();
@@ -158,7 +158,7 @@ public abstract class ClassifierSet implements MemoryObject {
       mySnapshotInstances.remove(instanceObject);
     }
 
-    mySnapshotObjectCount--;
+    mySnapshotObjectCount -= instanceObject.getInstanceCount();
     myTotalNativeSize -= instanceObject.getNativeSize() == INVALID_VALUE ? 0 : instanceObject.getNativeSize();
     myTotalShallowSize -= instanceObject.getShallowSize() == INVALID_VALUE ? 0 : instanceObject.getShallowSize();
     myTotalRetainedSize -= instanceObject.getRetainedSize() == INVALID_VALUE ? 0 : instanceObject.getRetainedSize();
@@ -210,10 +210,10 @@ public abstract class ClassifierSet implements MemoryObject {
     }
 
     if (isAllocation) {
-      myDeltaAllocations++;
+      myDeltaAllocations += instanceObject.getInstanceCount();
     }
     else {
-      myDeltaDeallocations++;
+      myDeltaDeallocations += instanceObject.getInstanceCount();
     }
 
     // TODO update deltas instead.
@@ -249,10 +249,10 @@ public abstract class ClassifierSet implements MemoryObject {
     }
 
     if (isAllocation) {
-      myDeltaAllocations--;
+      myDeltaAllocations -= instanceObject.getInstanceCount();
     }
     else {
-      myDeltaDeallocations--;
+      myDeltaDeallocations -= instanceObject.getInstanceCount();
     }
 
     // TODO update deltas instead.
@@ -21,20 +21,29 @@ import com.android.tools.perflib.heap.Heap;
 import com.android.tools.perflib.heap.Instance;
 import com.android.tools.perflib.heap.Snapshot;
 import com.android.tools.perflib.heap.ext.NativeRegistryPostProcessor;
+import com.android.tools.perflib.heap.io.HprofBuffer;
 import com.android.tools.perflib.heap.io.InMemoryBuffer;
+import com.android.tools.perflib.heap.io.MemoryMappedFileBuffer;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler.DumpDataRequest;
 import com.android.tools.profiler.proto.MemoryProfiler.DumpDataResponse;
 import com.android.tools.profiler.proto.MemoryProfiler.HeapDumpInfo;
 import com.android.tools.profiler.proto.MemoryServiceGrpc.MemoryServiceBlockingStub;
+import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profilers.analytics.FeatureTracker;
 import com.android.tools.profilers.memory.MemoryProfiler;
 import com.android.tools.profilers.memory.MemoryProfilerStage;
 import com.android.tools.proguard.ProguardMap;
 import com.google.common.annotations.VisibleForTesting;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import gnu.trove.TLongObjectHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.util.*;
 import java.util.concurrent.Executor;
@@ -45,6 +54,10 @@ import static com.android.tools.profilers.memory.adapters.CaptureObject.Classifi
 
 public class HeapDumpCaptureObject implements CaptureObject {
 
+  private static Logger getLogger() {
+    return Logger.getInstance(HeapDumpCaptureObject.class);
+  }
+
   @NotNull
   private final MemoryServiceBlockingStub myClient;
 
@@ -60,8 +73,11 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @NotNull
   private final Map<ClassObj, InstanceObject> myClassObjectIndex = new HashMap<>();
 
+  /**
+   * Map between the ids of the instances, other than the {@link ClassObj}s which are in {@link #myClassObjectIndex}, and their objects.
+   */
   @NotNull
-  private final Map<Instance, InstanceObject> myInstanceIndex = new HashMap<>();
+  private final TLongObjectHashMap<InstanceObject> myInstanceIndex = new TLongObjectHashMap<>();
 
   @NotNull
   private final ClassDb myClassDb = new ClassDb();
@@ -75,6 +91,22 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @Nullable
   private volatile Snapshot mySnapshot;
 
+  /**
+   * The temporary file the heap dump is mapped from, if {@link com.android.tools.profilers.FeatureConfig#isMemoryMappedHeapDumpEnabled},
+   * and the buffer mapping it. Both are released by {@link #unload()}. Guarded by {@code this}.
+   */
+  @Nullable
+  private File myHeapDumpFile;
+  @Nullable
+  private MemoryMappedFileBuffer myHeapDumpBuffer;
+
+  /**
+   * Whether {@link #load} is reading the snapshot, in which case {@link #unload()} leaves the heap dump to be released once it's done, as
+   * reading a buffer after it's unmapped would crash. Guarded by {@code this}.
+   */
+  private boolean myIsLoading;
+  private boolean myIsUnloaded;
+
   private volatile boolean myIsLoadingError = false;
 
   private boolean myHasNativeAllocations;
@@ -160,44 +192,43 @@ public class HeapDumpCaptureObject implements CaptureObject {
     return myHeapDumpInfo.getEndTime();
   }
 
+  @NotNull
+  public HeapDumpInfo getHeapDumpInfo() {
+    return myHeapDumpInfo;
+  }
+
   public boolean getHasNativeAllocations() {
     return myHasNativeAllocations;
   }
 
   @Override
   public boolean load(@Nullable Range queryRange, @Nullable Executor queryJoiner) {
-    DumpDataResponse response;
-    while (true) {
-      // TODO move this to another thread and complete before we notify
-      response = myClient.getHeapDump(DumpDataRequest.newBuilder()
-                                        .setSession(mySession)
-                                        .setDumpTime(myHeapDumpInfo.getStartTime()).build());
-      if (response.getStatus() == DumpDataResponse.Status.SUCCESS) {
-        break;
+    synchronized (this) {
+      if (myIsUnloaded) {
+        return false;
       }
-      else if (response.getStatus() == DumpDataResponse.Status.NOT_READY) {
-        try {
-          Thread.sleep(50L);
-        }
-        catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
-          myIsLoadingError = true;
-          return false;
-        }
-        continue;
+      myIsLoading = true;
+    }
+    try {
+      return loadObjects();
+    }
+    finally {
+      boolean isUnloaded;
+      synchronized (this) {
+        myIsLoading = false;
+        isUnloaded = myIsUnloaded;
+      }
+      if (isUnloaded) {
+        releaseHeapDump();
       }
-      myIsLoadingError = true;
-      return false;
     }
+  }
 
-    InMemoryBuffer buffer = new InMemoryBuffer(response.getData().asReadOnlyByteBuffer());
-    Snapshot snapshot;
+  private boolean loadObjects() {
     NativeRegistryPostProcessor nativeRegistryPostProcessor = new NativeRegistryPostProcessor();
-    if (myProguardMap != null) {
-      snapshot = Snapshot.createSnapshot(buffer, myProguardMap, Collections.singletonList(nativeRegistryPostProcessor));
-    }
-    else {
-      snapshot = Snapshot.createSnapshot(buffer, new ProguardMap(), Collections.singletonList(nativeRegistryPostProcessor));
+    Snapshot snapshot = loadSnapshot(nativeRegistryPostProcessor);
+    if (snapshot == null) {
+      return false;
     }
     snapshot.computeDominators();
     myHasNativeAllocations = nativeRegistryPostProcessor.getHasNativeAllocations();
@@ -222,7 +253,6 @@ public class HeapDumpCaptureObject implements CaptureObject {
       HeapSet heapSet = heapSets.get(heap);
       heap.getClasses().forEach(classObj -> {
         InstanceObject classObject = createClassObjectInstance(finalJavaLangClassObject, classObj);
-        myInstanceIndex.put(classObj, classObject);
         heapSet.addDeltaInstanceObject(classObject);
       });
     }
@@ -235,7 +265,7 @@ public class HeapDumpCaptureObject implements CaptureObject {
         InstanceObject instanceObject =
           new HeapDumpInstanceObject(this, getClassObjectInstance(instance), instance,
                                      myClassDb.registerClass(classObj.getClassLoaderId(), classObj.getClassName()), null);
-        myInstanceIndex.put(instance, instanceObject);
+        myInstanceIndex.put(instance.getId(), instanceObject);
         heapSet.addDeltaInstanceObject(instanceObject);
         return true;
       });
@@ -256,6 +286,70 @@ public class HeapDumpCaptureObject implements CaptureObject {
     return true;
   }
 
+  /**
+   * Fetches the heap dump and parses it into a {@link Snapshot}, without computing its dominators nor building the objects of this capture.
+   *
+   * @return the snapshot, or null if the heap dump couldn't be fetched.
+   */
+  @Nullable
+  Snapshot loadSnapshot(@NotNull NativeRegistryPostProcessor nativeRegistryPostProcessor) {
+    DumpDataResponse response;
+    while (true) {
+      // TODO move this to another thread and complete before we notify
+      response = myClient.getHeapDump(DumpDataRequest.newBuilder()
+                                        .setSession(mySession)
+                                        .setDumpTime(myHeapDumpInfo.getStartTime()).build());
+      if (response.getStatus() == DumpDataResponse.Status.SUCCESS) {
+        break;
+      }
+      else if (response.getStatus() == DumpDataResponse.Status.NOT_READY) {
+        try {
+          Thread.sleep(50L);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          myIsLoadingError = true;
+          return null;
+        }
+        continue;
+      }
+      myIsLoadingError = true;
+      return null;
+    }
+
+    HprofBuffer buffer;
+    if (myStage.getStudioProfilers().getIdeServices().getFeatureConfig().isMemoryMappedHeapDumpEnabled()) {
+      try {
+        buffer = mapHeapDump(response.getData());
+      }
+      catch (IOException e) {
+        getLogger().warn("Failed to write the heap dump to a temporary file:\n" + e);
+        releaseHeapDump();
+        myIsLoadingError = true;
+        return null;
+      }
+      // Lets the dump be collected while the snapshot is built, as the buffer reads it from the file.
+      response = null;
+    }
+    else {
+      buffer = new InMemoryBuffer(response.getData().asReadOnlyByteBuffer());
+    }
+
+    boolean isCreated = false;
+    try {
+      Snapshot snapshot = Snapshot.createSnapshot(buffer, myProguardMap != null ? myProguardMap : new ProguardMap(),
+                                                  Collections.singletonList(nativeRegistryPostProcessor));
+      isCreated = true;
+      return snapshot;
+    }
+    finally {
+      if (!isCreated) {
+        // Otherwise the temporary file would only be deleted on exit.
+        releaseHeapDump();
+      }
+    }
+  }
+
   @Override
   public boolean isDoneLoading() {
     return mySnapshot != null || myIsLoadingError;
@@ -268,7 +362,53 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   @Override
   public void unload() {
+    synchronized (this) {
+      myIsUnloaded = true;
+      if (myIsLoading) {
+        return;
+      }
+    }
+    releaseHeapDump();
+  }
 
+  /**
+   * Disposes the snapshot and unmaps the heap dump, so that its temporary file can be deleted. Only called once the snapshot isn't read.
+   */
+  private synchronized void releaseHeapDump() {
+    Snapshot snapshot = mySnapshot;
+    if (snapshot != null) {
+      mySnapshot = null;
+      snapshot.dispose();
+    }
+    if (myHeapDumpBuffer != null) {
+      myHeapDumpBuffer.dispose();
+      myHeapDumpBuffer = null;
+    }
+    if (myHeapDumpFile != null) {
+      FileUtil.delete(myHeapDumpFile);
+      myHeapDumpFile = null;
+    }
+  }
+
+  /**
+   * Writes the downloaded heap dump to a temporary file and maps it, so that the dump can be collected while the snapshot is built from it.
+   * The dump is still downloaded whole, and the snapshot still holds all its instances in memory.
+   */
+  @NotNull
+  private HprofBuffer mapHeapDump(@NotNull ByteString data) throws IOException {
+    File file = FileUtil.createTempFile(String.format("heap_dump_%d", myHeapDumpInfo.getStartTime()), ".hprof", true);
+    synchronized (this) {
+      myHeapDumpFile = file;
+    }
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      // Written without copying the dump into a byte array first, as it can be hundreds of MB.
+      data.writeTo(out);
+    }
+    MemoryMappedFileBuffer buffer = new MemoryMappedFileBuffer(file);
+    synchronized (this) {
+      myHeapDumpBuffer = buffer;
+    }
+    return buffer;
   }
 
   @NotNull
@@ -295,7 +435,10 @@ public class HeapDumpCaptureObject implements CaptureObject {
       return null;
     }
 
-    return myInstanceIndex.get(instance);
+    if (instance instanceof ClassObj) {
+      return myClassObjectIndex.get(instance);
+    }
+    return myInstanceIndex.get(instance.getId());
   }
 
   @NotNull
@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.perflib.heap.ClassObj;
+import com.android.tools.perflib.heap.Heap;
+import com.android.tools.perflib.heap.Snapshot;
+import com.android.tools.perflib.heap.ext.NativeRegistryPostProcessor;
+import gnu.trove.TObjectIntHashMap;
+import gnu.trove.TObjectLongHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import sun.reflect.generics.reflectiveObjects.NotImplementedException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.android.tools.profilers.memory.adapters.CaptureObject.ClassifierAttribute.*;
+
+/**
+ * The differences between two heap dumps, in the number of instances of each class and in their shallow and retained sizes. A class with
+ * more instances in the later dump has as many allocations, and one with fewer instances has as many deallocations, so that the total
+ * counts and sizes of the {@link HeapSet}s and their {@link ClassSet}s are the deltas between the dumps.
+ * <p>
+ * The instances themselves aren't part of the diff, as their ids are their addresses, which a moving GC changes between the dumps. Classes
+ * are matched by name, as the ids of their objects and class loaders also differ between dumps. A class whose instances changed in size but
+ * not in number, e.g. arrays, doesn't show up, although its size delta is part of the one of its heap. Like in a heap dump, the retained
+ * size of a class is the sum of the retained sizes of its instances, and it is only part of the diff for the classes that show up.
+ */
+public class HeapDumpDiffCaptureObject implements CaptureObject {
+
+  @NotNull
+  private final HeapDumpCaptureObject myBaselineCapture;
+
+  @NotNull
+  private final HeapDumpCaptureObject myCapture;
+
+  @NotNull
+  private final ClassDb myClassDb = new ClassDb();
+
+  @NotNull
+  private final Map<Integer, HeapSet> myHeapSets = new HashMap<>();
+
+  private volatile boolean myIsDoneLoading = false;
+
+  private volatile boolean myIsLoadingError = false;
+
+  /**
+   * @param baselineCapture the earlier heap dump
+   * @param capture         the later heap dump
+   */
+  public HeapDumpDiffCaptureObject(@NotNull HeapDumpCaptureObject baselineCapture, @NotNull HeapDumpCaptureObject capture) {
+    myBaselineCapture = baselineCapture;
+    myCapture = capture;
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return "Heap Dump Diff";
+  }
+
+  @Nullable
+  @Override
+  public String getExportableExtension() {
+    return null;
+  }
+
+  @Override
+  public void saveToFile(@NotNull OutputStream outputStream) throws IOException {
+    throw new NotImplementedException();
+  }
+
+  @Override
+  public boolean canListInstances() {
+    return false;
+  }
+
+  @NotNull
+  @Override
+  public Collection<HeapSet> getHeapSets() {
+    if (!myIsDoneLoading) {
+      return Collections.emptyList();
+    }
+    return myHeapSets.values();
+  }
+
+  @Nullable
+  @Override
+  public HeapSet getHeapSet(int heapId) {
+    return myHeapSets.getOrDefault(heapId, null);
+  }
+
+  @NotNull
+  @Override
+  public Stream<InstanceObject> getInstances() {
+    return getHeapSets().stream().map(ClassifierSet::getInstancesStream).flatMap(Function.identity());
+  }
+
+  @Override
+  public long getStartTimeNs() {
+    return myBaselineCapture.getStartTimeNs();
+  }
+
+  @Override
+  public long getEndTimeNs() {
+    return myCapture.getEndTimeNs();
+  }
+
+  /**
+   * Counts the instances of each class of either dump, then adds the differences to the heaps. Neither dump is loaded as a capture: each of
+   * them is parsed, counted and released in turn, so that at most one of their snapshots is in memory at any time.
+   */
+  @Override
+  public boolean load(@Nullable Range queryRange, @Nullable Executor queryJoiner) {
+    Map<Integer, HeapHistogram> baselineHistograms = computeHistograms(myBaselineCapture);
+    Map<Integer, HeapHistogram> histograms = baselineHistograms == null ? null : computeHistograms(myCapture);
+    if (histograms == null) {
+      myIsLoadingError = true;
+      return false;
+    }
+
+    Set<Integer> heapIds = new TreeSet<>(baselineHistograms.keySet());
+    heapIds.addAll(histograms.keySet());
+    long diffTimeNs = myCapture.getStartTimeNs();
+    for (int heapId : heapIds) {
+      HeapHistogram baselineHistogram = baselineHistograms.get(heapId);
+      HeapHistogram histogram = histograms.get(heapId);
+      String heapName = histogram != null ? histogram.myName : baselineHistogram.myName;
+      // Like heap dump captures, the default heap is left out where it's empty and there are other heaps.
+      if (DEFAULT_HEAP_NAME.equals(heapName) && heapIds.size() > 1 &&
+          (baselineHistogram == null || baselineHistogram.isEmpty()) && (histogram == null || histogram.isEmpty())) {
+        continue;
+      }
+
+      HeapSet heapSet = new HeapSet(this, heapName, heapId);
+      Set<String> classNames = new LinkedHashSet<>();
+      if (baselineHistogram != null) {
+        baselineHistogram.myInstanceCounts.forEachKey(className -> {
+          classNames.add(className);
+          return true;
+        });
+      }
+      if (histogram != null) {
+        histogram.myInstanceCounts.forEachKey(className -> {
+          classNames.add(className);
+          return true;
+        });
+      }
+      for (String className : classNames) {
+        int baselineCount = baselineHistogram == null ? 0 : baselineHistogram.myInstanceCounts.get(className);
+        int count = histogram == null ? 0 : histogram.myInstanceCounts.get(className);
+        long baselineSize = baselineHistogram == null ? 0 : baselineHistogram.myShallowSizes.get(className);
+        long size = histogram == null ? 0 : histogram.myShallowSizes.get(className);
+        long baselineRetainedSize = baselineHistogram == null ? 0 : baselineHistogram.myRetainedSizes.get(className);
+        long retainedSize = histogram == null ? 0 : histogram.myRetainedSizes.get(className);
+        if (count == baselineCount && size == baselineSize) {
+          continue;
+        }
+
+        // The sizes of both dumps are added, so that the sizes of the class are their deltas whichever way its count changed.
+        ClassDb.ClassEntry classEntry = myClassDb.registerClass(DEFAULT_CLASSLOADER_ID, className);
+        heapSet.addDeltaInstanceObject(
+          new ClassDeltaObject(classEntry, heapId, Math.max(count - baselineCount, 0), size, retainedSize, diffTimeNs, Long.MAX_VALUE));
+        heapSet.freeDeltaInstanceObject(
+          new ClassDeltaObject(classEntry, heapId, Math.max(baselineCount - count, 0), baselineSize, baselineRetainedSize, Long.MIN_VALUE,
+                               diffTimeNs));
+      }
+      myHeapSets.put(heapId, heapSet);
+    }
+
+    myIsDoneLoading = true;
+    return true;
+  }
+
+  /**
+   * @return the histograms of the heaps of a dump by heap id, or null if the dump couldn't be loaded. The heaps are counted in parallel,
+   * as the snapshot is only read once its dominators are computed.
+   */
+  @Nullable
+  private static Map<Integer, HeapHistogram> computeHistograms(@NotNull HeapDumpCaptureObject capture) {
+    // The capture is only used to fetch and parse its dump, so the stage isn't notified and neither the snapshot nor the objects built
+    // from it are kept.
+    Snapshot snapshot = capture.loadSnapshot(new NativeRegistryPostProcessor());
+    if (snapshot == null) {
+      return null;
+    }
+
+    try {
+      snapshot.computeDominators();
+      return snapshot.getHeaps().parallelStream().collect(Collectors.toMap(Heap::getId, HeapDumpDiffCaptureObject::computeHistogram));
+    }
+    finally {
+      capture.unload();
+    }
+  }
+
+  @NotNull
+  private static HeapHistogram computeHistogram(@NotNull Heap heap) {
+    HeapHistogram histogram = new HeapHistogram(heap.getName());
+    for (ClassObj classObj : heap.getClasses()) {
+      histogram.add(ClassDb.JAVA_LANG_CLASS, classObj.getSize(), classObj.getTotalRetainedSize());
+    }
+    heap.forEachInstance(instance -> {
+      histogram.add(instance.getClassObj().getClassName(), instance.getSize(), instance.getTotalRetainedSize());
+      return true;
+    });
+    return histogram;
+  }
+
+  @Override
+  public boolean isDoneLoading() {
+    return myIsDoneLoading || myIsLoadingError;
+  }
+
+  @Override
+  public boolean isError() {
+    return myIsLoadingError;
+  }
+
+  @Override
+  public void unload() {
+    // The dumps are released as soon as they are counted.
+  }
+
+  @NotNull
+  @Override
+  public List<ClassifierAttribute> getClassifierAttributes() {
+    return Arrays.asList(LABEL, ALLOCATIONS, DEALLOCATIONS, TOTAL_COUNT, SHALLOW_SIZE, RETAINED_SIZE);
+  }
+
+  @NotNull
+  @Override
+  public List<InstanceAttribute> getInstanceAttributes() {
+    return Collections.singletonList(InstanceAttribute.LABEL);
+  }
+
+  /**
+   * The number of instances of each class of a heap, and their total shallow and retained sizes.
+   */
+  private static final class HeapHistogram {
+    @NotNull private final String myName;
+    @NotNull private final TObjectIntHashMap<String> myInstanceCounts = new TObjectIntHashMap<>();
+    @NotNull private final TObjectLongHashMap<String> myShallowSizes = new TObjectLongHashMap<>();
+    @NotNull private final TObjectLongHashMap<String> myRetainedSizes = new TObjectLongHashMap<>();
+
+    private HeapHistogram(@NotNull String name) {
+      myName = name;
+    }
+
+    private void add(@NotNull String className, int shallowSize, long retainedSize) {
+      // The maps return 0 for the classes not found yet.
+      myInstanceCounts.put(className, myInstanceCounts.get(className) + 1);
+      myShallowSizes.put(className, myShallowSizes.get(className) + shallowSize);
+      myRetainedSizes.put(className, myRetainedSizes.get(className) + retainedSize);
+    }
+
+    private boolean isEmpty() {
+      return myInstanceCounts.isEmpty();
+    }
+  }
+
+  /**
+   * The instances of a class allocated or deallocated when the later dump was taken, which {@link ClassifierSet}s count as many. Having
+   * time data lets them keep it as an allocation or a deallocation when they partition their instances again.
+   */
+  private static final class ClassDeltaObject implements InstanceObject {
+    @NotNull private final ClassDb.ClassEntry myClassEntry;
+    private final int myHeapId;
+    private final int myInstanceCount;
+    private final long myShallowSize;
+    private final long myRetainedSize;
+    private final long myAllocTime;
+    private final long myDeallocTime;
+
+    private ClassDeltaObject(@NotNull ClassDb.ClassEntry classEntry,
+                             int heapId,
+                             int instanceCount,
+                             long shallowSize,
+                             long retainedSize,
+                             long allocTime,
+                             long deallocTime) {
+      myClassEntry = classEntry;
+      myHeapId = heapId;
+      myInstanceCount = instanceCount;
+      myShallowSize = shallowSize;
+      myRetainedSize = retainedSize;
+      myAllocTime = allocTime;
+      myDeallocTime = deallocTime;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+      return myClassEntry.getClassName();
+    }
+
+    @Override
+    public int getHeapId() {
+      return myHeapId;
+    }
+
+    @NotNull
+    @Override
+    public ClassDb.ClassEntry getClassEntry() {
+      return myClassEntry;
+    }
+
+    @Nullable
+    @Override
+    public InstanceObject getClassObject() {
+      return null;
+    }
+
+    @NotNull
+    @Override
+    public ValueType getValueType() {
+      return ValueType.OBJECT;
+    }
+
+    @Override
+    public int getInstanceCount() {
+      return myInstanceCount;
+    }
+
+    @Override
+    public int getShallowSize() {
+      // A heap of the app can't hold more than 2 GB, let alone the instances of one of its classes.
+      return (int)Math.min(myShallowSize, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getRetainedSize() {
+      return myRetainedSize;
+    }
+
+    @Override
+    public long getAllocTime() {
+      return myAllocTime;
+    }
+
+    @Override
+    public long getDeallocTime() {
+      return myDeallocTime;
+    }
+
+    @Override
+    public boolean hasTimeData() {
+      return true;
+    }
+
+    @Override
+    public boolean hasAllocTime() {
+      return myAllocTime != Long.MIN_VALUE;
+    }
+
+    @Override
+    public boolean hasDeallocTime() {
+      return myDeallocTime != Long.MAX_VALUE;
+    }
+  }
+}
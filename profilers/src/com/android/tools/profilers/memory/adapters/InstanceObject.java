@@ -128,6 +128,14 @@ public interface InstanceObject extends ValueObject {
     return false;
   }
 
+  /**
+   * @return the number of instances this object accounts for in the counts of the {@link ClassifierSet}s, which differs from one where it
+   * sums up instances rather than being one of them.
+   */
+  default int getInstanceCount() {
+    return 1;
+  }
+
   default boolean hasTimeData() {
     return false;
   }
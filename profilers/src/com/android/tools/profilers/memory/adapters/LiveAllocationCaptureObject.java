@@ -29,6 +29,7 @@ import com.android.tools.profilers.stacktrace.ThreadId;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.intellij.openapi.diagnostic.Logger;
+import gnu.trove.TIntLongHashMap;
 import gnu.trove.TIntObjectHashMap;
 import gnu.trove.TLongObjectHashMap;
 import org.jetbrains.annotations.NotNull;
@@ -53,6 +54,22 @@ public class LiveAllocationCaptureObject implements CaptureObject {
 
   @VisibleForTesting static final String SAMPLING_INFO_MESSAGE = "Selected region does not have full tracking. Data may be inaccurate.";
 
+  /**
+   * How long after the checkpoint the instances alive are computed from the checkpoint and the events in between, instead of being queried.
+   */
+  private static final long MAX_CHECKPOINT_DISTANCE_NS = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * How many queried allocation events are kept, not counting the ones of the current query which are always kept.
+   */
+  private static final int MAX_CACHED_ALLOCATION_EVENTS = 200_000;
+
+  /**
+   * How long before the latest allocation time events may still reach the datastore, as it accepts late events. The events and snapshots
+   * within that margin are queried again each time instead of being cached.
+   */
+  private static final long LATE_ALLOCATION_EVENTS_NS = TimeUnit.SECONDS.toNanos(5);
+
   @Nullable private MemoryProfilerStage myStage;
 
   @VisibleForTesting final ExecutorService myExecutorService;
@@ -63,6 +80,24 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   private final TIntObjectHashMap<ThreadId> myThreadIdMap;
   private final TLongObjectHashMap<StackFrameInfoResponse> myFrameInfoResponseMap;
 
+  /**
+   * Map between the start times of the disjoint intervals allocation events were queried for, and these events. Selections moving back and
+   * forth get their events from here instead of querying them again.
+   */
+  private final TreeMap<Long, AllocationEventsInterval> myAllocationEventsCache;
+  private int myCachedAllocationEventsCount;
+
+  /**
+   * Map between the tags of the instances alive at {@link #myCheckpointTimeNs}, and these instances, which are the ones of
+   * {@link #myInstanceMap}. Null until the first snapshot, or if the last one may still miss late events.
+   */
+  @Nullable private TIntObjectHashMap<LiveAllocationInstanceObject> myCheckpointInstances;
+  /**
+   * The allocation times of {@link #myCheckpointInstances}, as the instances' own are reset when the selection moves.
+   */
+  @Nullable private TIntLongHashMap myCheckpointAllocTimes;
+  private long myCheckpointTimeNs;
+
   private final MemoryServiceBlockingStub myClient;
   private final Common.Session mySession;
   private final long myCaptureStartTime;
@@ -98,6 +133,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     myCallstackMap = new TIntObjectHashMap<>();
     myThreadIdMap = new TIntObjectHashMap<>();
     myFrameInfoResponseMap = new TLongObjectHashMap<>();
+    myAllocationEventsCache = new TreeMap<>();
 
     myClient = client;
     mySession = session;
@@ -465,22 +501,75 @@ public class LiveAllocationCaptureObject implements CaptureObject {
       return;
     }
 
-    BatchAllocationSample sampleResponse = myClient.getAllocations(AllocationSnapshotRequest.newBuilder().setSession(mySession)
-                                                                     .setEndTime(newTimeNs).setLiveObjectsOnly(true).build());
-
-    for (AllocationEvent event : sampleResponse.getEventsList()) {
-      if (event.getEventCase() == AllocationEvent.EventCase.ALLOC_DATA) {
-        AllocationEvent.Allocation allocation = event.getAllocData();
-        LiveAllocationInstanceObject instance =
-          getOrCreateInstanceObject(allocation.getTag(), allocation.getClassTag(), allocation.getStackId(), allocation.getThreadId(),
-                                    allocation.getSize(), allocation.getHeapId());
-        instance.setAllocationTime(event.getTimestamp());
-        setAllocationList.add(instance);
+    TIntObjectHashMap<LiveAllocationInstanceObject> liveInstances;
+    TIntLongHashMap allocTimes;
+    if (myCheckpointInstances != null && myCheckpointAllocTimes != null &&
+        myCheckpointTimeNs <= newTimeNs && newTimeNs - myCheckpointTimeNs <= MAX_CHECKPOINT_DISTANCE_NS) {
+      // The instances of the checkpoint are reused, so that each tag keeps a single instance object. Their time data and JNI references
+      // may have changed as the selection moved, so they are reset, and the heap sets still holding them are cleared before they're added.
+      liveInstances = new TIntObjectHashMap<>(myCheckpointInstances.size());
+      myCheckpointInstances.forEachEntry((tag, instance) -> {
+        instance.reset();
+        myInstanceMap.put(tag, instance);
+        liveInstances.put(tag, instance);
+        return true;
+      });
+      allocTimes = myCheckpointAllocTimes;
+
+      // Moves the checkpoint forward. As in the snapshots of the datastore, the instances alive at a time are the ones allocated before it
+      // and freed after it, so the deallocations at the new time are included. Tags are unique, so all the allocations can be added before
+      // the deallocations are removed.
+      List<AllocationEvent> events = getAllocationEvents(myCheckpointTimeNs, newTimeNs + 1);
+      for (AllocationEvent event : events) {
+        if (event.getEventCase() == AllocationEvent.EventCase.ALLOC_DATA && event.getTimestamp() < newTimeNs) {
+          AllocationEvent.Allocation allocation = event.getAllocData();
+          liveInstances.put(allocation.getTag(), getOrCreateInstanceObject(allocation.getTag(), allocation.getClassTag(),
+                                                                           allocation.getStackId(), allocation.getThreadId(),
+                                                                           allocation.getSize(), allocation.getHeapId()));
+          allocTimes.put(allocation.getTag(), event.getTimestamp());
+        }
       }
-      else {
-        assert false;
+      for (AllocationEvent event : events) {
+        if (event.getEventCase() == AllocationEvent.EventCase.FREE_DATA) {
+          liveInstances.remove(event.getFreeData().getTag());
+          allocTimes.remove(event.getFreeData().getTag());
+        }
+      }
+    }
+    else {
+      BatchAllocationSample sampleResponse = myClient.getAllocations(AllocationSnapshotRequest.newBuilder().setSession(mySession)
+                                                                       .setEndTime(newTimeNs).setLiveObjectsOnly(true).build());
+      liveInstances = new TIntObjectHashMap<>(sampleResponse.getEventsCount());
+      allocTimes = new TIntLongHashMap(sampleResponse.getEventsCount());
+      for (AllocationEvent event : sampleResponse.getEventsList()) {
+        if (event.getEventCase() == AllocationEvent.EventCase.ALLOC_DATA) {
+          AllocationEvent.Allocation allocation = event.getAllocData();
+          liveInstances.put(allocation.getTag(), getOrCreateInstanceObject(allocation.getTag(), allocation.getClassTag(),
+                                                                           allocation.getStackId(), allocation.getThreadId(),
+                                                                           allocation.getSize(), allocation.getHeapId()));
+          allocTimes.put(allocation.getTag(), event.getTimestamp());
+        }
+        else {
+          assert false;
+        }
       }
     }
+
+    if (newTimeNs <= getStableTimeNs()) {
+      myCheckpointInstances = liveInstances;
+      myCheckpointAllocTimes = allocTimes;
+      myCheckpointTimeNs = newTimeNs;
+    }
+    else {
+      myCheckpointInstances = null;
+      myCheckpointAllocTimes = null;
+    }
+
+    liveInstances.forEachEntry((tag, instance) -> {
+      instance.setAllocationTime(allocTimes.get(tag));
+      setAllocationList.add(instance);
+      return true;
+    });
   }
 
   private void queryJniReferencesSnapshot(long newTimeNs, @NotNull List<InstanceObject> setAllocationList) {
@@ -535,10 +624,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
       return;
     }
 
-    BatchAllocationSample sampleResponse = myClient.getAllocations(
-      AllocationSnapshotRequest.newBuilder().setSession(mySession).setStartTime(startTimeNs).setEndTime(endTimeNs).build());
-
-    for (AllocationEvent event : sampleResponse.getEventsList()) {
+    for (AllocationEvent event : getAllocationEvents(startTimeNs, endTimeNs)) {
       if (event.getEventCase() == AllocationEvent.EventCase.ALLOC_DATA) {
         AllocationEvent.Allocation allocation = event.getAllocData();
         LiveAllocationInstanceObject instance =
@@ -561,6 +647,84 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
   }
 
+  /**
+   * @return the allocation and deallocation events within the given time range, only querying the parts not in the cache.
+   */
+  @NotNull
+  private List<AllocationEvent> getAllocationEvents(long startTimeNs, long endTimeNs) {
+    List<AllocationEvent> events = new ArrayList<>();
+    List<AllocationEventsInterval> queriedIntervals = new ArrayList<>();
+    long timeNs = startTimeNs;
+    // The interval starting before the range may still overlap with it.
+    Long floorStartTimeNs = myAllocationEventsCache.floorKey(startTimeNs);
+    for (AllocationEventsInterval interval : myAllocationEventsCache.tailMap(floorStartTimeNs == null ? startTimeNs : floorStartTimeNs)
+                                                                    .values()) {
+      if (interval.myStartTimeNs >= endTimeNs) {
+        break;
+      }
+      if (interval.myEndTimeNs <= timeNs) {
+        continue;
+      }
+      if (interval.myStartTimeNs > timeNs) {
+        AllocationEventsInterval queriedInterval = queryAllocationEvents(timeNs, interval.myStartTimeNs);
+        queriedIntervals.add(queriedInterval);
+        events.addAll(queriedInterval.myEvents);
+      }
+      interval.collectEvents(startTimeNs, endTimeNs, events);
+      timeNs = interval.myEndTimeNs;
+    }
+    if (timeNs < endTimeNs) {
+      AllocationEventsInterval queriedInterval = queryAllocationEvents(timeNs, endTimeNs);
+      queriedIntervals.add(queriedInterval);
+      events.addAll(queriedInterval.myEvents);
+    }
+
+    long stableTimeNs = getStableTimeNs();
+    for (AllocationEventsInterval interval : queriedIntervals) {
+      // Late events may still arrive after the stable time, so that part is queried again next time.
+      AllocationEventsInterval stableInterval = interval.truncate(stableTimeNs);
+      if (stableInterval != null) {
+        myAllocationEventsCache.put(stableInterval.myStartTimeNs, stableInterval);
+        myCachedAllocationEventsCount += stableInterval.myEvents.size();
+      }
+    }
+    evictAllocationEvents(startTimeNs, endTimeNs);
+    return events;
+  }
+
+  /**
+   * @return the time before which no more allocation events are expected, see {@link #LATE_ALLOCATION_EVENTS_NS}.
+   */
+  private long getStableTimeNs() {
+    return myEventsEndTimeNs == Long.MIN_VALUE ? Long.MIN_VALUE : myEventsEndTimeNs - LATE_ALLOCATION_EVENTS_NS;
+  }
+
+  @NotNull
+  private AllocationEventsInterval queryAllocationEvents(long startTimeNs, long endTimeNs) {
+    BatchAllocationSample sampleResponse = myClient.getAllocations(
+      AllocationSnapshotRequest.newBuilder().setSession(mySession).setStartTime(startTimeNs).setEndTime(endTimeNs).build());
+    return new AllocationEventsInterval(startTimeNs, endTimeNs, sampleResponse.getEventsList());
+  }
+
+  /**
+   * Evicts the cached intervals farthest from the given time range, until there are at most {@link #MAX_CACHED_ALLOCATION_EVENTS} events
+   * or only intervals overlapping with the range are left.
+   */
+  private void evictAllocationEvents(long startTimeNs, long endTimeNs) {
+    while (myCachedAllocationEventsCount > MAX_CACHED_ALLOCATION_EVENTS) {
+      AllocationEventsInterval first = myAllocationEventsCache.firstEntry().getValue();
+      AllocationEventsInterval last = myAllocationEventsCache.lastEntry().getValue();
+      long firstDistanceNs = startTimeNs - first.myEndTimeNs;
+      long lastDistanceNs = last.myStartTimeNs - endTimeNs;
+      if (firstDistanceNs < 0 && lastDistanceNs < 0) {
+        break;
+      }
+      AllocationEventsInterval evicted = firstDistanceNs >= lastDistanceNs ? first : last;
+      myAllocationEventsCache.remove(evicted.myStartTimeNs);
+      myCachedAllocationEventsCount -= evicted.myEvents.size();
+    }
+  }
+
   private void queryJniReferencesDelta(long startTimeNs,
                                        long endTimeNs,
                                        @NotNull List<InstanceObject> allocationList,
@@ -617,4 +781,50 @@ public class LiveAllocationCaptureObject implements CaptureObject {
       }
     }
   }
+
+  /**
+   * The allocation and deallocation events queried for a time range.
+   */
+  private static final class AllocationEventsInterval {
+    private final long myStartTimeNs;
+    private final long myEndTimeNs;
+    @NotNull private final List<AllocationEvent> myEvents;
+
+    private AllocationEventsInterval(long startTimeNs, long endTimeNs, @NotNull List<AllocationEvent> events) {
+      myStartTimeNs = startTimeNs;
+      myEndTimeNs = endTimeNs;
+      myEvents = events;
+    }
+
+    /**
+     * @return the part of this interval before the given time, or null if it starts at or after it.
+     */
+    @Nullable
+    private AllocationEventsInterval truncate(long endTimeNs) {
+      if (myEndTimeNs <= endTimeNs) {
+        return this;
+      }
+      if (myStartTimeNs >= endTimeNs) {
+        return null;
+      }
+      List<AllocationEvent> events = new ArrayList<>();
+      collectEvents(myStartTimeNs, endTimeNs, events);
+      return new AllocationEventsInterval(myStartTimeNs, endTimeNs, events);
+    }
+
+    /**
+     * Adds the events within the given time range to the given list.
+     */
+    private void collectEvents(long startTimeNs, long endTimeNs, @NotNull List<AllocationEvent> events) {
+      if (startTimeNs <= myStartTimeNs && myEndTimeNs <= endTimeNs) {
+        events.addAll(myEvents);
+        return;
+      }
+      for (AllocationEvent event : myEvents) {
+        if (startTimeNs <= event.getTimestamp() && event.getTimestamp() < endTimeNs) {
+          events.add(event);
+        }
+      }
+    }
+  }
 }
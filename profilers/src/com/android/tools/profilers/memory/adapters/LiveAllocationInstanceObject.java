@@ -65,6 +65,15 @@ public class LiveAllocationInstanceObject implements InstanceObject {
     }
   }
 
+  /**
+   * Clears the time data and JNI references of this instance, so that it can be added again as if it was just created.
+   */
+  void reset() {
+    myAllocTime = Long.MIN_VALUE;
+    myDeallocTime = Long.MAX_VALUE;
+    myJniRefs = null;
+  }
+
   @Override
   public long getAllocTime() {
     return myAllocTime;
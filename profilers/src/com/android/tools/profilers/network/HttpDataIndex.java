@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.network;
+
+import com.android.tools.profilers.network.httpdata.HttpData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * An index of {@link HttpData} by the time ranges of their connections, which finds the connections overlapping a range in logarithmic
+ * time per connection found, rather than going through all of them. Connections which haven't ended, i.e. whose end time is 0, overlap
+ * any range after their start.
+ *
+ * The connections are kept in an array sorted by start time, over which a segment tree holds the latest end time of each subarray, so that
+ * the subarrays without any connection overlapping a range are skipped. Connections are expected to be mostly added in order of start time,
+ * which only appends to the array and updates a path of the tree.
+ *
+ * The index also tracks the time ranges over which it is known to have all the connections, so that its owner only queries the others.
+ */
+final class HttpDataIndex {
+  /**
+   * Connections sorted by start time, then by id.
+   */
+  @NotNull private final List<HttpData> myDataList = new ArrayList<>();
+
+  @NotNull private final Map<Long, HttpData> myDataById = new HashMap<>();
+
+  /**
+   * The segment tree of the end times of {@link #myDataList}, where the node {@code i} has the children {@code 2 * i} and
+   * {@code 2 * i + 1}, and the leaves start at {@code myLeafCount}. Connections which haven't ended have {@link Long#MAX_VALUE}.
+   */
+  @NotNull private long[] myMaxEndTimesUs = {Long.MIN_VALUE, Long.MIN_VALUE};
+
+  private int myLeafCount = 1;
+
+  /**
+   * The start times of the ranges known to have all their connections, mapped to their end times. The ranges are disjoint, and not
+   * adjacent as they are merged.
+   */
+  @NotNull private final TreeMap<Long, Long> myCoveredRangesUs = new TreeMap<>();
+
+  @Nullable
+  public HttpData get(long id) {
+    return myDataById.get(id);
+  }
+
+  /**
+   * Adds a connection, replacing the one of the same id if any.
+   */
+  public void put(@NotNull HttpData data) {
+    HttpData previousData = myDataById.put(data.getId(), data);
+    if (previousData != null) {
+      int index = indexOf(previousData);
+      if (previousData.getStartTimeUs() == data.getStartTimeUs()) {
+        myDataList.set(index, data);
+        updateEndTime(index);
+        return;
+      }
+      myDataList.remove(index);
+      rebuild(index);
+    }
+
+    int index = -Collections.binarySearch(myDataList, data, HttpDataIndex::compare) - 1;
+    myDataList.add(index, data);
+    if (myDataList.size() > myLeafCount) {
+      rebuild(0);
+    }
+    else if (index == myDataList.size() - 1) {
+      updateEndTime(index);
+    }
+    else {
+      rebuild(index);
+    }
+  }
+
+  /**
+   * @return the connections overlapping the given range, bounds included, sorted by start time.
+   */
+  @NotNull
+  public List<HttpData> getOverlapping(long minUs, long maxUs) {
+    // Only the connections starting before the end of the range may overlap it.
+    int count = countStartingBefore(maxUs);
+    List<HttpData> result = new ArrayList<>();
+    collectOverlapping(1, 0, myLeafCount, count, minUs, result);
+    return result;
+  }
+
+  /**
+   * @return the earliest start time of the connections which haven't ended, or {@link Long#MAX_VALUE} if there is none.
+   */
+  public long getEarliestUnfinishedStartTimeUs() {
+    if (myMaxEndTimesUs[1] != Long.MAX_VALUE) {
+      return Long.MAX_VALUE;
+    }
+    // Follows the first subtree which has a connection that hasn't ended.
+    int node = 1;
+    while (node < myLeafCount) {
+      node = myMaxEndTimesUs[2 * node] == Long.MAX_VALUE ? 2 * node : 2 * node + 1;
+    }
+    return myDataList.get(node - myLeafCount).getStartTimeUs();
+  }
+
+  /**
+   * Records that all the connections overlapping the given range were added.
+   */
+  public void markCovered(long minUs, long maxUs) {
+    if (minUs > maxUs) {
+      return;
+    }
+    Map.Entry<Long, Long> floor = myCoveredRangesUs.floorEntry(minUs);
+    if (floor != null && floor.getValue() >= minUs - 1) {
+      minUs = floor.getKey();
+      maxUs = Math.max(maxUs, floor.getValue());
+    }
+    // Merges the ranges starting within or right after the new one.
+    Map.Entry<Long, Long> next;
+    while ((next = myCoveredRangesUs.ceilingEntry(minUs)) != null && next.getKey() <= maxUs + 1) {
+      maxUs = Math.max(maxUs, next.getValue());
+      myCoveredRangesUs.remove(next.getKey());
+    }
+    myCoveredRangesUs.put(minUs, maxUs);
+  }
+
+  /**
+   * @return the parts of the given range which aren't known to have all their connections, as pairs of bounds.
+   */
+  @NotNull
+  public List<long[]> getUncoveredRanges(long minUs, long maxUs) {
+    List<long[]> ranges = new ArrayList<>();
+    long startUs = minUs;
+    Map.Entry<Long, Long> floor = myCoveredRangesUs.floorEntry(minUs);
+    if (floor != null && floor.getValue() >= minUs) {
+      startUs = floor.getValue() + 1;
+    }
+    for (Map.Entry<Long, Long> covered : myCoveredRangesUs.subMap(minUs, false, maxUs, true).entrySet()) {
+      if (covered.getKey() > startUs) {
+        ranges.add(new long[]{startUs, covered.getKey() - 1});
+      }
+      startUs = Math.max(startUs, covered.getValue() + 1);
+    }
+    if (startUs <= maxUs) {
+      ranges.add(new long[]{startUs, maxUs});
+    }
+    return ranges;
+  }
+
+  private void collectOverlapping(int node, int nodeStart, int nodeEnd, int count, long minUs, @NotNull List<HttpData> result) {
+    if (nodeStart >= count || myMaxEndTimesUs[node] < minUs) {
+      return;
+    }
+    if (node >= myLeafCount) {
+      result.add(myDataList.get(nodeStart));
+      return;
+    }
+    int middle = (nodeStart + nodeEnd) >>> 1;
+    collectOverlapping(2 * node, nodeStart, middle, count, minUs, result);
+    collectOverlapping(2 * node + 1, middle, nodeEnd, count, minUs, result);
+  }
+
+  /**
+   * @return the number of connections starting at or before the given time.
+   */
+  private int countStartingBefore(long timeUs) {
+    int low = 0;
+    int high = myDataList.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (myDataList.get(middle).getStartTimeUs() <= timeUs) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private int indexOf(@NotNull HttpData data) {
+    return Collections.binarySearch(myDataList, data, HttpDataIndex::compare);
+  }
+
+  /**
+   * Updates the tree from the leaf of the given connection to the root.
+   */
+  private void updateEndTime(int index) {
+    int node = myLeafCount + index;
+    myMaxEndTimesUs[node] = getEndTimeUs(myDataList.get(index));
+    for (node /= 2; node >= 1; node /= 2) {
+      myMaxEndTimesUs[node] = Math.max(myMaxEndTimesUs[2 * node], myMaxEndTimesUs[2 * node + 1]);
+    }
+  }
+
+  /**
+   * Rebuilds the tree from the leaf of the given connection, growing it first if it can't fit all the connections.
+   */
+  private void rebuild(int fromIndex) {
+    if (myDataList.size() > myLeafCount) {
+      while (myDataList.size() > myLeafCount) {
+        myLeafCount *= 2;
+      }
+      myMaxEndTimesUs = new long[2 * myLeafCount];
+      fromIndex = 0;
+    }
+    for (int index = fromIndex; index < myLeafCount; index++) {
+      myMaxEndTimesUs[myLeafCount + index] = index < myDataList.size() ? getEndTimeUs(myDataList.get(index)) : Long.MIN_VALUE;
+    }
+    for (int node = myLeafCount - 1; node >= 1; node--) {
+      myMaxEndTimesUs[node] = Math.max(myMaxEndTimesUs[2 * node], myMaxEndTimesUs[2 * node + 1]);
+    }
+  }
+
+  private static long getEndTimeUs(@NotNull HttpData data) {
+    return data.getEndTimeUs() == 0 ? Long.MAX_VALUE : data.getEndTimeUs();
+  }
+
+  private static int compare(@NotNull HttpData data1, @NotNull HttpData data2) {
+    int result = Long.compare(data1.getStartTimeUs(), data2.getStartTimeUs());
+    return result != 0 ? result : Long.compare(data1.getId(), data2.getId());
+  }
+}
@@ -17,6 +17,7 @@ package com.android.tools.profilers.network;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profilers.network.httpdata.HttpData;
+import com.android.tools.profilers.network.httpdata.PayloadCache;
 import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import org.jetbrains.annotations.NotNull;
 
@@ -45,4 +46,11 @@ public interface NetworkConnectionsModel {
    */
   @NotNull
   ByteString requestBytes(@NotNull String id);
+
+  /**
+   * Returns the cache which the payloads fetched from this model are decoded into, so that they are only fetched once for as long as
+   * they aren't evicted.
+   */
+  @NotNull
+  PayloadCache getPayloadCache();
 }
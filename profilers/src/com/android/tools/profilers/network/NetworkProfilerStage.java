@@ -63,7 +63,7 @@ public class NetworkProfilerStage extends Stage implements CodeNavigator.Listene
   private final NetworkConnectionsModel myConnectionsModel =
     new RpcNetworkConnectionsModel(getStudioProfilers().getClient().getProfilerClient(),
                                    getStudioProfilers().getClient().getNetworkClient(),
-                                   getStudioProfilers().getSession());
+                                   getStudioProfilers()::getSession);
 
   private final DetailedNetworkUsage myDetailedNetworkUsage;
   private final NetworkStageLegends myLegends;
@@ -192,6 +192,8 @@ public class NetworkProfilerStage extends Stage implements CodeNavigator.Listene
     getStudioProfilers().getIdeServices().getCodeNavigator().removeListener(this);
 
     mySelectionModel.clearListeners();
+
+    myConnectionsModel.getPayloadCache().clear();
   }
 
   @NotNull
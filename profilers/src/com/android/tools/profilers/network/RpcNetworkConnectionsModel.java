@@ -21,15 +21,18 @@ import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
 import com.android.tools.profiler.proto.Profiler.BytesRequest;
 import com.android.tools.profiler.proto.Profiler.BytesResponse;
+import com.android.tools.profiler.proto.Profiler.TimeRequest;
 import com.android.tools.profiler.proto.ProfilerServiceGrpc;
 import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profilers.network.httpdata.HttpData;
+import com.android.tools.profilers.network.httpdata.PayloadCache;
+import com.android.tools.profilers.sessions.SessionsManager;
 import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -37,13 +40,27 @@ import java.util.stream.Collectors;
  * data queries may need change datastore.
  */
 public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
+  /**
+   * How long connections may take to reach the datastore after the device recorded them, as the datastore polls the device periodically.
+   */
+  private static final long LATE_DATA_DELAY_US = TimeUnit.SECONDS.toMicros(5);
+
   @NotNull private final ProfilerServiceGrpc.ProfilerServiceBlockingStub myProfilerService;
   @NotNull private final NetworkServiceGrpc.NetworkServiceBlockingStub myNetworkService;
-  @NotNull private final Common.Session mySession;
+  /**
+   * Supplies the current state of the session, whose end is only known by reading it again.
+   */
+  @NotNull private final Supplier<Common.Session> mySession;
+  @NotNull private final PayloadCache myPayloadCache = new PayloadCache();
+
+  /**
+   * The connections queried so far, so that a range is only queried again if it may have changed.
+   */
+  @NotNull private final HttpDataIndex myIndex = new HttpDataIndex();
 
   public RpcNetworkConnectionsModel(@NotNull ProfilerServiceGrpc.ProfilerServiceBlockingStub profilerService,
                                     @NotNull NetworkServiceGrpc.NetworkServiceBlockingStub networkService,
-                                    @NotNull Common.Session session) {
+                                    @NotNull Supplier<Common.Session> session) {
     myProfilerService = profilerService;
     myNetworkService = networkService;
     mySession = session;
@@ -52,19 +69,47 @@ public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
   @NotNull
   @Override
   public List<HttpData> getData(@NotNull Range timeCurrentRangeUs) {
+    long minUs = (long)timeCurrentRangeUs.getMin();
+    long maxUs = (long)timeCurrentRangeUs.getMax();
+    for (long[] uncoveredRangeUs : myIndex.getUncoveredRanges(minUs, maxUs)) {
+      queryData(uncoveredRangeUs[0], uncoveredRangeUs[1]);
+    }
+    return myIndex.getOverlapping(minUs, maxUs);
+  }
+
+  /**
+   * Adds the connections overlapping the given range to the index, only building the ones which are new or whose times changed.
+   */
+  private void queryData(long minUs, long maxUs) {
+    Common.Session session = mySession.get();
+    // The time is read before querying, so that the connections recorded up to then are in the response.
+    long latestTimeUs = Long.MAX_VALUE;
+    if (SessionsManager.isSessionAlive(session)) {
+      latestTimeUs = TimeUnit.NANOSECONDS.toMicros(
+        myProfilerService.getCurrentTime(TimeRequest.newBuilder().setDeviceId(session.getDeviceId()).build()).getTimestampNs());
+    }
+
     NetworkProfiler.HttpRangeRequest request = NetworkProfiler.HttpRangeRequest.newBuilder()
-      .setSession(mySession)
-      .setStartTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMin()))
-      .setEndTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax())).build();
+      .setSession(session)
+      .setStartTimestamp(TimeUnit.MICROSECONDS.toNanos(minUs))
+      .setEndTimestamp(TimeUnit.MICROSECONDS.toNanos(maxUs)).build();
     NetworkProfiler.HttpRangeResponse response = myNetworkService.getHttpRange(request);
 
-    List<HttpData> httpDataList = new ArrayList<>(response.getDataList().size());
     for (NetworkProfiler.HttpConnectionData connection : response.getDataList()) {
       long startTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getStartTimestamp());
       long uploadedTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getUploadedTimestamp());
       long downloadingTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getDownloadingTimestamp());
       long endTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getEndTimestamp());
 
+      HttpData indexedData = myIndex.get(connection.getConnId());
+      if (indexedData != null &&
+          indexedData.getStartTimeUs() == startTimeUs &&
+          indexedData.getUploadedTimeUs() == uploadedTimeUs &&
+          indexedData.getDownloadingTimeUs() == downloadingTimeUs &&
+          indexedData.getEndTimeUs() == endTimeUs) {
+        continue;
+      }
+
       HttpData.Builder httpBuilder =
         new HttpData.Builder(
           connection.getConnId(),
@@ -83,10 +128,16 @@ public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
         requestHttpResponse(connection.getConnId(), httpBuilder);
         requestHttpResponseBody(connection.getConnId(), httpBuilder);
       }
-      httpDataList.add(httpBuilder.build());
+      myIndex.put(httpBuilder.build());
     }
 
-    return httpDataList;
+    // The connections may still change after the start of the unfinished ones, and the ones recorded shortly before the latest time may
+    // not have reached the datastore yet, so these parts of the range are queried again next time.
+    long stableTimeUs = latestTimeUs;
+    if (SessionsManager.isSessionAlive(session)) {
+      stableTimeUs = Math.min(latestTimeUs - LATE_DATA_DELAY_US, myIndex.getEarliestUnfinishedStartTimeUs() - 1);
+    }
+    myIndex.markCovered(minUs, Math.min(maxUs, stableTimeUs));
   }
 
   private void requestHttpRequest(long connectionId, @NotNull HttpData.Builder httpBuilder) {
@@ -119,13 +170,19 @@ public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
 
     BytesRequest request = BytesRequest.newBuilder()
       .setId(id)
-      .setSession(mySession)
+      .setSession(mySession.get())
       .build();
 
     BytesResponse response = myProfilerService.getBytes(request);
     return response.getContents();
   }
 
+  @NotNull
+  @Override
+  public PayloadCache getPayloadCache() {
+    return myPayloadCache;
+  }
+
   private void requestHttpResponse(long connectionId, @NotNull HttpData.Builder httpBuilder) {
     NetworkProfiler.HttpDetailsResponse response = getDetails(connectionId, NetworkProfiler.HttpDetailsRequest.Type.RESPONSE);
     httpBuilder.setResponseFields(response.getResponse().getFields());
@@ -140,6 +197,6 @@ public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
 
   private NetworkProfiler.HttpDetailsResponse getDetails(long connectionId, NetworkProfiler.HttpDetailsRequest.Type type) {
     return myNetworkService.getHttpDetails(
-      NetworkProfiler.HttpDetailsRequest.newBuilder().setConnId(connectionId).setSession(mySession).setType(type).build());
+      NetworkProfiler.HttpDetailsRequest.newBuilder().setConnId(connectionId).setSession(mySession.get()).setType(type).build());
   }
 }
@@ -17,21 +17,26 @@ package com.android.tools.profilers.network.httpdata;
 
 import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profilers.network.NetworkConnectionsModel;
-import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.zip.GZIPInputStream;
 
 /**
  * A class for fetching the payload data associated with an {@link HttpData} instance.
+ *
+ * The payload is decompressed into the {@link PayloadCache} of the model, instead of being held by this object, and read back from
+ * there, either in ranges or as a whole.
  */
 public abstract class Payload {
+  private static Logger getLogger() {
+    return Logger.getInstance(Payload.class);
+  }
+
   @NotNull private final NetworkConnectionsModel myModel;
-  @Nullable private ByteString myCachedBytes;
 
   /**
    * Construct this class using {@link #newRequestPayload(NetworkConnectionsModel, HttpData)}
@@ -78,20 +83,72 @@ public abstract class Payload {
   @NotNull
   protected abstract HttpData.Header getHeader();
 
+  /**
+   * @return the size of this payload, after decompression.
+   */
+  public final long getSize() {
+    String id = getId();
+    if (StringUtil.isEmpty(id)) {
+      return 0;
+    }
+    long size;
+    // The payload is fetched again if it was evicted from the cache, or never fetched.
+    while ((size = myModel.getPayloadCache().getSize(getCacheKey(id))) < 0) {
+      ByteString uncachedBytes = fetch(id);
+      if (uncachedBytes != null) {
+        return uncachedBytes.size();
+      }
+    }
+    return size;
+  }
+
+  public final boolean isEmpty() {
+    return getSize() == 0;
+  }
+
   /**
    * Get this payload as a byte string.
    */
   @NotNull
   public final ByteString getBytes() {
-    if (myCachedBytes != null) {
-      return myCachedBytes;
+    return getBytes(0, (int)Math.min(getSize(), Integer.MAX_VALUE));
+  }
+
+  /**
+   * Get up to {@code length} bytes of this payload as a byte string, starting at {@code offset}. For example, this is used to preview
+   * large payloads from their first bytes.
+   */
+  @NotNull
+  public final ByteString getBytes(long offset, int length) {
+    String id = getId();
+    if (StringUtil.isEmpty(id)) {
+      return ByteString.EMPTY;
+    }
+    ByteString bytes;
+    while ((bytes = myModel.getPayloadCache().read(getCacheKey(id), offset, length)) == null) {
+      ByteString uncachedBytes = fetch(id);
+      if (uncachedBytes != null) {
+        int start = (int)Math.min(offset, uncachedBytes.size());
+        return uncachedBytes.substring(start, (int)Math.min(uncachedBytes.size(), (long)start + length));
+      }
     }
+    return bytes;
+  }
 
-    myCachedBytes = myModel.requestBytes(getId());
-    String contentEncoding = getHeader().getContentEncoding();
-    if (StringUtil.toLowerCase(contentEncoding).contains("gzip")) {
-      try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(myCachedBytes.toByteArray()))) {
-        myCachedBytes = ByteString.copyFrom(FileUtil.loadBytes(inputStream));
+  /**
+   * Fetches this payload into the cache of the model, decompressing it on the way if needed.
+   *
+   * @return null if the payload was cached, otherwise its contents, which are then only kept by the caller.
+   */
+  @Nullable
+  private ByteString fetch(@NotNull String id) {
+    ByteString bytes = myModel.requestBytes(id);
+    PayloadCache cache = myModel.getPayloadCache();
+    String key = getCacheKey(id);
+    if (isGzipped()) {
+      try (GZIPInputStream inputStream = new GZIPInputStream(bytes.newInput())) {
+        cache.put(key, inputStream);
+        return null;
       }
       catch (IOException ignored) {
         // If we got here, it means we failed to unzip data that was supposedly zipped. Just
@@ -99,7 +156,26 @@ public abstract class Payload {
       }
     }
 
-    return myCachedBytes;
+    try {
+      cache.put(key, bytes.newInput());
+      return null;
+    }
+    catch (IOException e) {
+      getLogger().warn("Failed to cache payload " + id, e);
+      return bytes;
+    }
+  }
+
+  private boolean isGzipped() {
+    return StringUtil.toLowerCase(getHeader().getContentEncoding()).contains("gzip");
+  }
+
+  /**
+   * The same contents may be sent both compressed and not, e.g. as a request and its response, which are then decoded differently.
+   */
+  @NotNull
+  private String getCacheKey(@NotNull String id) {
+    return isGzipped() ? id + ".gz" : id;
   }
 
   @NotNull
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.network.httpdata;
+
+import com.android.tools.profiler.protobuf3jarjar.ByteString;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of the decoded contents of {@link Payload}s, which keeps them in temporary files rather than in memory, so that large or many
+ * payloads can be inspected without holding them in the heap. Contents are read back in ranges, as the viewers need them.
+ *
+ * The total size of the files is bounded, by deleting the least recently used ones when new contents are added.
+ */
+public final class PayloadCache {
+  /**
+   * The default bound on the total size of the cached contents.
+   */
+  public static final long DEFAULT_MAX_SIZE_BYTES = 256L * 1024 * 1024;
+
+  private static Logger getLogger() {
+    return Logger.getInstance(PayloadCache.class);
+  }
+
+  private final long myMaxSizeBytes;
+
+  /**
+   * The files of the cached contents by payload id, in access order so that the first ones are the least recently used.
+   */
+  private final LinkedHashMap<String, File> myFiles = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long mySizeBytes;
+
+  public PayloadCache() {
+    this(DEFAULT_MAX_SIZE_BYTES);
+  }
+
+  public PayloadCache(long maxSizeBytes) {
+    myMaxSizeBytes = maxSizeBytes;
+  }
+
+  /**
+   * @return the size of the contents of a payload, or -1 if they aren't cached.
+   */
+  public synchronized long getSize(@NotNull String id) {
+    File file = myFiles.get(id);
+    return file == null ? -1 : file.length();
+  }
+
+  /**
+   * Writes the given stream to a temporary file as the contents of a payload, replacing the previous ones, if any. Least recently used
+   * contents are then deleted until the cache is within its bound, although the new ones are kept even if they alone exceed it.
+   *
+   * The stream is read outside of the lock of the cache, as it may be slow, e.g. because it decompresses the contents.
+   */
+  public void put(@NotNull String id, @NotNull InputStream contents) throws IOException {
+    File file = FileUtil.createTempFile("payload", ".tmp", true);
+    try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+      FileUtil.copy(contents, output);
+    }
+    catch (IOException e) {
+      FileUtil.delete(file);
+      throw e;
+    }
+
+    synchronized (this) {
+      File previousFile = myFiles.put(id, file);
+      if (previousFile != null) {
+        mySizeBytes -= previousFile.length();
+        FileUtil.delete(previousFile);
+      }
+      mySizeBytes += file.length();
+
+      Iterator<Map.Entry<String, File>> iterator = myFiles.entrySet().iterator();
+      while (mySizeBytes > myMaxSizeBytes && iterator.hasNext()) {
+        Map.Entry<String, File> entry = iterator.next();
+        if (entry.getKey().equals(id)) {
+          continue;
+        }
+        mySizeBytes -= entry.getValue().length();
+        FileUtil.delete(entry.getValue());
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * @return up to {@code length} bytes of the contents of a payload, starting at {@code offset}, or null if they aren't cached.
+   */
+  @Nullable
+  public synchronized ByteString read(@NotNull String id, long offset, int length) {
+    File file = myFiles.get(id);
+    if (file == null) {
+      return null;
+    }
+
+    try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+      byte[] bytes = new byte[(int)Math.max(0, Math.min(length, input.length() - offset))];
+      input.seek(offset);
+      input.readFully(bytes);
+      return ByteString.copyFrom(bytes);
+    }
+    catch (IOException e) {
+      // Forgets the contents, so that they are fetched again.
+      getLogger().warn("Failed to read the cached contents of payload " + id, e);
+      mySizeBytes -= file.length();
+      FileUtil.delete(file);
+      myFiles.remove(id);
+      return null;
+    }
+  }
+
+  /**
+   * Deletes the files of all the cached contents.
+   */
+  public synchronized void clear() {
+    myFiles.values().forEach(FileUtil::delete);
+    myFiles.clear();
+    mySizeBytes = 0;
+  }
+}
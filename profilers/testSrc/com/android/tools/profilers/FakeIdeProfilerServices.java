@@ -93,6 +93,11 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
    */
   private boolean myLiveTrackingEnabled = false;
 
+  /**
+   * Can toggle for tests via {@link #enableMemoryMappedHeapDump(boolean)}, but each test starts with this defaulted to false.
+   */
+  private boolean myMemoryMappedHeapDumpEnabled = false;
+
   /**
    * Toggle for faking memory snapshot support in tests.
    */
@@ -273,6 +278,11 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
         return false;
       }
 
+      @Override
+      public boolean isMemoryMappedHeapDumpEnabled() {
+        return myMemoryMappedHeapDumpEnabled;
+      }
+
       @Override
       public boolean isMemorySnapshotEnabled() {
         return myMemorySnapshotEnabled;
@@ -422,6 +432,10 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
     myLiveTrackingEnabled = enabled;
   }
 
+  public void enableMemoryMappedHeapDump(boolean enabled) {
+    myMemoryMappedHeapDumpEnabled = enabled;
+  }
+
   public void enableSessionsView(boolean enabled) {
     mySessionsViewEnabled = enabled;
   }
@@ -26,7 +26,7 @@ public class CaptureNodeTest {
 
   @Test
   public void captureNodeSpecificMethods() throws IOException {
-    CaptureNode node = new CaptureNode(new StubCaptureNodeModel());
+    CaptureNode node = new DefaultCaptureNode(new StubCaptureNodeModel());
     assertEquals(ClockType.GLOBAL, node.getClockType());
 
     node.setStartThread(3);
@@ -44,7 +44,7 @@ public class CaptureNodeTest {
 
   @Test
   public void hNodeApiMethods() throws IOException {
-    CaptureNode node = new CaptureNode(new StubCaptureNodeModel());
+    CaptureNode node = new DefaultCaptureNode(new StubCaptureNodeModel());
 
     node.setStartThread(0);
     node.setEndThread(10);
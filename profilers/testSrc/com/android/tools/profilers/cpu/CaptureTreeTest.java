@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CaptureTreeTest {
+
+  @Test
+  public void nodesKeepTheStructureTheyWereBuiltWith() {
+    CaptureNodeModel model = new StubCaptureNodeModel();
+    CaptureTree.Builder builder = new CaptureTree.Builder();
+    int root = builder.addNode(model);
+    int child1 = builder.addNode(model);
+    int grandChild = builder.addNode(model);
+    int child2 = builder.addNode(model);
+    builder.addChild(root, child1);
+    builder.addChild(child1, grandChild);
+    builder.addChild(root, child2);
+    builder.setStartGlobal(grandChild, 7);
+    builder.setStartGlobal(child2, 11);
+    // Not under the root, so not part of the tree.
+    builder.addNode(model);
+
+    CaptureTree tree = builder.build(root);
+    assertEquals(4, tree.size());
+
+    CaptureNode rootNode = tree.getRoot();
+    assertNull(rootNode.getParent());
+    assertEquals(0, rootNode.getDepth());
+    assertEquals(2, rootNode.getChildCount());
+    assertEquals(2, rootNode.getChildren().size());
+
+    CaptureNode child1Node = rootNode.getChildAt(0);
+    assertEquals(rootNode, child1Node.getParent());
+    assertEquals(1, child1Node.getDepth());
+    assertEquals(1, child1Node.getChildCount());
+
+    CaptureNode grandChildNode = child1Node.getChildAt(0);
+    assertEquals(child1Node, grandChildNode.getParent());
+    assertEquals(2, grandChildNode.getDepth());
+    assertEquals(0, grandChildNode.getChildCount());
+    assertEquals(7, grandChildNode.getStartGlobal());
+
+    CaptureNode child2Node = rootNode.getChildren().get(1);
+    assertEquals(1, child2Node.getDepth());
+    assertEquals(11, child2Node.getStartGlobal());
+    assertSame(model, child2Node.getData());
+  }
+
+  @Test
+  public void nodesAreViewsOfTheTree() {
+    CaptureTree.Builder builder = new CaptureTree.Builder();
+    int root = builder.addNode(new StubCaptureNodeModel());
+    builder.addChild(root, builder.addNode(new StubCaptureNodeModel()));
+    CaptureTree tree = builder.build(root);
+
+    CaptureNode node = tree.getRoot().getChildAt(0);
+    node.setStartThread(0);
+    node.setEndThread(10);
+    node.setStartGlobal(20);
+    node.setEndGlobal(70);
+    node.setFilterType(CaptureNode.FilterType.UNMATCH);
+
+    CaptureNode sameNode = tree.getNode(1);
+    assertSame(node, sameNode);
+    assertNotSame(tree.getRoot(), sameNode);
+    assertEquals(0, sameNode.getStartThread());
+    assertEquals(10, sameNode.getEndThread());
+    assertEquals(20, sameNode.getStartGlobal());
+    assertEquals(70, sameNode.getEndGlobal());
+    assertEquals(0.2, sameNode.threadGlobalRatio(), 0.0001);
+    assertEquals(CaptureNode.FilterType.UNMATCH, sameNode.getFilterType());
+    assertEquals(CaptureNode.FilterType.MATCH, tree.getRoot().getFilterType());
+
+    assertEquals(ClockType.GLOBAL, sameNode.getClockType());
+    assertEquals(50, sameNode.getDuration());
+    node.setClockType(ClockType.THREAD);
+    assertEquals(ClockType.THREAD, sameNode.getClockType());
+    assertEquals(0, sameNode.getStart());
+    assertEquals(10, sameNode.getEnd());
+  }
+}
@@ -73,7 +73,7 @@ public class CpuCaptureTest {
     CpuThreadInfo info = new CpuThreadInfo(10, "Thread1", false);
     Range range = new Range(0, 30);
     Map<CpuThreadInfo, CaptureNode> captureTrees =
-      new ImmutableMap.Builder<CpuThreadInfo, CaptureNode>().put(info, new CaptureNode(new SingleNameModel("Thread1"))).build();
+      new ImmutableMap.Builder<CpuThreadInfo, CaptureNode>().put(info, new DefaultCaptureNode(new SingleNameModel("Thread1"))).build();
     CpuCapture capture =
       new CpuCapture(new FakeTraceParser(range, captureTrees, true), 20, CpuProfiler.CpuProfilerType.UNSPECIFIED_PROFILER);
     // Test if we don't have an actual main thread, we still get a main thread id.
@@ -87,8 +87,8 @@ public class CpuCaptureTest {
     CpuThreadInfo other = new CpuThreadInfo(11, "Other");
     Range range = new Range(0, 30);
     Map<CpuThreadInfo, CaptureNode> captureTrees =
-      new ImmutableMap.Builder<CpuThreadInfo, CaptureNode>().put(valid, new CaptureNode(new SingleNameModel("Valid")))
-                                                            .put(other, new CaptureNode(new SingleNameModel("Other"))).build();
+      new ImmutableMap.Builder<CpuThreadInfo, CaptureNode>().put(valid, new DefaultCaptureNode(new SingleNameModel("Valid")))
+                                                            .put(other, new DefaultCaptureNode(new SingleNameModel("Other"))).build();
     CpuCapture capture =
       new CpuCapture(new FakeTraceParser(range, captureTrees, true), 20, CpuProfiler.CpuProfilerType.UNSPECIFIED_PROFILER);
     // Test if we don't have a main thread, and we pass in an invalid name we still get a main thread id.
@@ -103,9 +103,9 @@ public class CpuCaptureTest {
     CpuThreadInfo notMain = new CpuThreadSliceInfo(12, "MainThread", main.getProcessId(), main.getProcessName());
     Range range = new Range(0, 30);
     Map<CpuThreadInfo, CaptureNode> captureTrees =
-      new ImmutableMap.Builder<CpuThreadInfo, CaptureNode>().put(notMain, new CaptureNode(new SingleNameModel("MainThread")))
-                                                            .put(other, new CaptureNode(new SingleNameModel("Other")))
-                                                            .put(main, new CaptureNode(new SingleNameModel("MainThread"))).build();
+      new ImmutableMap.Builder<CpuThreadInfo, CaptureNode>().put(notMain, new DefaultCaptureNode(new SingleNameModel("MainThread")))
+                                                            .put(other, new DefaultCaptureNode(new SingleNameModel("Other")))
+                                                            .put(main, new DefaultCaptureNode(new SingleNameModel("MainThread"))).build();
     CpuCapture capture =
       new CpuCapture(new FakeTraceParser(range, captureTrees, true), 20, CpuProfiler.CpuProfilerType.UNSPECIFIED_PROFILER);
     // Test if we don't have a main thread, and we pass in an invalid name we still get a main thread id.
@@ -193,7 +193,7 @@ public class CpuCaptureTest {
     CpuThreadInfo info = new CpuThreadInfo(10, "main");
     Range range = new Range(0, 30);
     Map<CpuThreadInfo, CaptureNode> captureTrees =
-      new ImmutableMap.Builder<CpuThreadInfo, CaptureNode>().put(info, new CaptureNode(new StubCaptureNodeModel())).build();
+      new ImmutableMap.Builder<CpuThreadInfo, CaptureNode>().put(info, new DefaultCaptureNode(new StubCaptureNodeModel())).build();
     CpuCapture capture =
       new CpuCapture(new FakeTraceParser(range, captureTrees, true), 20, CpuProfiler.CpuProfilerType.UNSPECIFIED_PROFILER);
     assertThat(capture.isDualClock()).isTrue();
@@ -208,7 +208,7 @@ public class CpuCaptureTest {
     CpuThreadInfo info = new CpuThreadInfo(10, "main");
     Range range = new Range(0, 30);
     Map<CpuThreadInfo, CaptureNode> captureTrees =
-      new ImmutableMap.Builder<CpuThreadInfo, CaptureNode>().put(info, new CaptureNode(new StubCaptureNodeModel())).build();
+      new ImmutableMap.Builder<CpuThreadInfo, CaptureNode>().put(info, new DefaultCaptureNode(new StubCaptureNodeModel())).build();
     TraceParser parser = new FakeTraceParser(range, captureTrees, false);
 
     CpuCapture capture = new CpuCapture(parser, traceId1, CpuProfiler.CpuProfilerType.UNSPECIFIED_PROFILER);
@@ -225,7 +225,7 @@ public class CpuCaptureTest {
     CpuThreadInfo info = new CpuThreadInfo(10, "main");
     Range range = new Range(0, 30);
     Map<CpuThreadInfo, CaptureNode> captureTrees =
-      new ImmutableMap.Builder<CpuThreadInfo, CaptureNode>().put(info, new CaptureNode(new StubCaptureNodeModel())).build();
+      new ImmutableMap.Builder<CpuThreadInfo, CaptureNode>().put(info, new DefaultCaptureNode(new StubCaptureNodeModel())).build();
     TraceParser parser = new FakeTraceParser(range, captureTrees, false);
 
     CpuCapture capture = new CpuCapture(parser, traceId, CpuProfiler.CpuProfilerType.ART);
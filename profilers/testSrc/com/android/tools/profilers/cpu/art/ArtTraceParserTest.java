@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.art;
+
+import com.android.tools.perflib.vmtrace.VmTraceParser;
+import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.CpuProfilerTestUtils;
+import com.android.tools.profilers.cpu.CpuThreadInfo;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ArtTraceParserTest {
+  @Test
+  public void treesMatchTheOnesBuiltFromPerflibEvents() throws IOException {
+    for (String traceName : new String[]{"basic.trace", "valid_trace.trace"}) {
+      File trace = CpuProfilerTestUtils.getTraceFile(traceName);
+      ArtTraceParser parser = new ArtTraceParser();
+      parser.parse(trace, 1);
+
+      ArtTraceHandler handler = new ArtTraceHandler();
+      new VmTraceParser(trace, handler).parse();
+
+      assertEquals(handler.getStartTimeUs(), (long)parser.getRange().getMin());
+      assertEquals(handler.getStartTimeUs() + handler.getElapsedTimeUs(), (long)parser.getRange().getMax());
+
+      Map<CpuThreadInfo, CaptureNode> expected = handler.getThreadsGraph();
+      Map<CpuThreadInfo, CaptureNode> actual = parser.getCaptureTrees();
+      assertEquals(expected.size(), actual.size());
+      for (Map.Entry<CpuThreadInfo, CaptureNode> entry : expected.entrySet()) {
+        CaptureNode tree = findTree(actual, entry.getKey());
+        assertNotNull(tree);
+        assertEquals(describe(entry.getValue()), describe(tree));
+      }
+    }
+  }
+
+  @Test
+  public void progressIsReportedUntilTheWholeTraceIsParsed() throws IOException {
+    List<Double> progress = new ArrayList<>();
+    ArtTraceParser parser = new ArtTraceParser();
+    parser.setProgressListener(fraction -> {
+      synchronized (progress) {
+        progress.add(fraction);
+      }
+    });
+    parser.parse(CpuProfilerTestUtils.getTraceFile("valid_trace.trace"), 1);
+
+    assertFalse(progress.isEmpty());
+    assertEquals(1.0, progress.stream().mapToDouble(Double::doubleValue).max().getAsDouble(), 0);
+  }
+
+  @Test(expected = BufferUnderflowException.class)
+  public void truncatedRecordsThrowException() throws IOException {
+    // The last record of the corrupted trace is truncated.
+    new ArtTraceParser().parse(CpuProfilerTestUtils.getTraceFile("corrupted_trace.trace"), 1);
+  }
+
+  private static CaptureNode findTree(Map<CpuThreadInfo, CaptureNode> trees, CpuThreadInfo thread) {
+    for (Map.Entry<CpuThreadInfo, CaptureNode> entry : trees.entrySet()) {
+      if (entry.getKey().getId() == thread.getId()) {
+        assertEquals(thread.getName(), entry.getKey().getName());
+        assertEquals(thread.isMainThread(), entry.getKey().isMainThread());
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  private static String describe(CaptureNode node) {
+    StringBuilder builder = new StringBuilder();
+    describe(node, builder);
+    return builder.toString();
+  }
+
+  private static void describe(CaptureNode node, StringBuilder builder) {
+    builder.append(String.format("%s global: %d-%d, thread: %d-%d, depth: %d%n", node.getData().getId(), node.getStartGlobal(),
+                                 node.getEndGlobal(), node.getStartThread(), node.getEndThread(), node.getDepth()));
+    for (CaptureNode child : node.getChildren()) {
+      describe(child, builder);
+    }
+  }
+}
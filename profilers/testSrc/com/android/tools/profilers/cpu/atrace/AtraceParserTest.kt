@@ -25,6 +25,8 @@ import com.google.common.collect.Iterables
 import com.google.common.truth.Truth.assertThat
 import org.junit.Before
 import org.junit.Test
+import trebuchet.task.ImportTask
+import trebuchet.util.PrintlnImportFeedback
 import java.util.concurrent.TimeUnit
 
 class AtraceParserTest {
@@ -133,6 +135,17 @@ class AtraceParserTest {
     assertThat(dataSeries[0]!![2].value.name).matches("rcu_preempt")
   }
 
+  @Test
+  fun testCpuSeriesAreSortedByTime() {
+    // Range queries on the series look for their start with a binary search.
+    for (i in 0 until myParser.cpuCount) {
+      val times = myParser.getCpuThreadSliceInfoStates(i).map { it.x }
+      assertThat(times).isOrdered()
+    }
+    assertThat(myParser.cpuUtilizationSeries.map { it.x }).isOrdered()
+    assertThat(myParser.getCpuThreadSliceInfoStates(myParser.cpuCount)).isEmpty()
+  }
+
   @Test
   fun testInvalidProcessIdThrows() {
     var expectedExceptionCaught = false
@@ -145,6 +158,19 @@ class AtraceParserTest {
     assertThat(expectedExceptionCaught).isTrue()
   }
 
+  @Test
+  fun slicesOfOtherProcessesAreNotImported() {
+    val file = CpuProfilerTestUtils.getTraceFile("atrace.ctrace")
+    val model = ImportTask(PrintlnImportFeedback()).importBuffer(AtraceDecompressor(file))
+    val filteredModel = ImportTask(PrintlnImportFeedback(), { it == TEST_PID }).importBuffer(AtraceDecompressor(file))
+
+    assertThat(filteredModel.processes[TEST_PID]!!.threads.sumBy { it.slices.size })
+      .isEqualTo(model.processes[TEST_PID]!!.threads.sumBy { it.slices.size })
+    assertThat(filteredModel.processes.values.filter { it.id != TEST_PID }.flatMap { it.threads }.sumBy { it.slices.size }).isEqualTo(0)
+    // The scheduling of every process is still imported.
+    assertThat(filteredModel.cpus.sumBy { it.slices.size }).isEqualTo(model.cpus.sumBy { it.slices.size })
+  }
+
   @Test
   fun framesEndWithEmptyFrame() {
     val frameFilter = AtraceFrameFilterConfig(APP_MAIN_THREAD_FRAME_ID_MPLUS, AtraceTestUtils.TEST_PID,
@@ -158,6 +184,17 @@ class AtraceParserTest {
     }
   }
 
+  @Test
+  fun framesAreBuiltOncePerFilter() {
+    val frames = myParser.getFrames(AtraceFrameFilterConfig(APP_MAIN_THREAD_FRAME_ID_MPLUS, AtraceTestUtils.TEST_PID,
+                                                            TimeUnit.MILLISECONDS.toMicros(30)))
+    // Frames models create a new filter whenever the capture is selected again.
+    assertThat(myParser.getFrames(AtraceFrameFilterConfig(APP_MAIN_THREAD_FRAME_ID_MPLUS, AtraceTestUtils.TEST_PID,
+                                                          TimeUnit.MILLISECONDS.toMicros(30)))).isSameAs(frames)
+    assertThat(myParser.getFrames(AtraceFrameFilterConfig(APP_MAIN_THREAD_FRAME_ID_MPLUS, AtraceTestUtils.TEST_PID,
+                                                          TimeUnit.MILLISECONDS.toMicros(10)))).isNotSameAs(frames)
+  }
+
   @Test
   fun getProcessListReturnsProcessList() {
     val headOfListExpected = arrayOf(CpuThreadInfo(1510, "system_server"),
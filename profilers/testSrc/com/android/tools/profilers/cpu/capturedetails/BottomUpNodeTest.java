@@ -17,6 +17,7 @@ package com.android.tools.profilers.cpu.capturedetails;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.DefaultCaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
@@ -79,13 +80,14 @@ public class BottomUpNodeTest {
     );
 
     // Construct the tree
-    CaptureNode root = newNode("main", 0, 20);
-    CaptureNode childA = newNode("A", 0, 10);
+    DefaultCaptureNode root = newNode("main", 0, 20);
+    DefaultCaptureNode childA = newNode("A", 0, 10);
     root.addChild(childA);
     root.addChild(newNode("B", 15, 20));
 
-    childA.addChild(newNode("B", 2, 7));
-    childA.getChildren().get(0).addChild(newNode("C", 3, 4));
+    DefaultCaptureNode childAB = newNode("B", 2, 7);
+    childA.addChild(childAB);
+    childAB.addChild(newNode("C", 3, 4));
 
     traverseAndCheck(root, expectedNodes);
   }
@@ -119,7 +121,7 @@ public class BottomUpNodeTest {
       new ExpectedNode("main", 2.0, 0.0)
     );
     // Construct the tree
-    CaptureNode root = newNode("main", 0, 20);
+    DefaultCaptureNode root = newNode("main", 0, 20);
     addChainSubtree(root, newNode("A", 0, 15), newNode("B", 3, 13),
                     newNode("B", 5, 10), newNode("B", 5, 7));
     traverseAndCheck(root, expectedNodes);
@@ -163,7 +165,7 @@ public class BottomUpNodeTest {
     );
 
     // Construct the tree
-    CaptureNode root = newNode("main", 0, 30);
+    DefaultCaptureNode root = newNode("main", 0, 30);
     addChainSubtree(root, newNode("A", 5, 25), newNode("B", 5, 20),
                     newNode("A", 10, 20), newNode("B", 15, 16));
 
@@ -223,7 +225,7 @@ public class BottomUpNodeTest {
       new ExpectedNode("main", 10.0, 5.0)
     );
 
-    CaptureNode root = newNode("main", 0, 40);
+    DefaultCaptureNode root = newNode("main", 0, 40);
     addChainSubtree(root, newNode("A", 0, 25), newNode("B", 0, 20),
                     newNode("C", 5, 15));
     addChainSubtree(root, newNode("D", 30, 40), newNode("C", 30, 35),
@@ -245,13 +247,14 @@ public class BottomUpNodeTest {
    */
   @Test
   public void testPartialRangeWithMixedTwoMethods() {
-    CaptureNode root = newNode("main", 0, 100);
+    DefaultCaptureNode root = newNode("main", 0, 100);
 
-    addChainSubtree(root, newNode("A", 0, 100), newNode("A", 0, 40),
+    DefaultCaptureNode childA = newNode("A", 0, 100);
+    addChainSubtree(root, childA, newNode("A", 0, 40),
                     newNode("A", 0, 20));
-    addChainSubtree(root.getChildren().get(0), newNode("B", 45, 100), newNode("A", 50, 70),
+    addChainSubtree(childA, newNode("B", 45, 100), newNode("A", 50, 70),
                     newNode("B", 55, 65));
-    addChainSubtree(root.getChildren().get(0), newNode("B", 21, 40),
+    addChainSubtree(childA, newNode("B", 21, 40),
                     newNode("A", 25, 28));
 
     BottomUpNode node = new BottomUpNode(root);
@@ -283,12 +286,13 @@ public class BottomUpNodeTest {
    */
   @Test
   public void testWithUnmatchedNodes() {
-    CaptureNode root = newNode("main", 0, 100);
-    addChildren(root, newNode("A", 0, 50, true),
-                          newNode("A", 51, 100, false));
-    addChildren(root.getChildAt(0), newNode("B", 0, 50, true));
-    addChildren(root.getChildAt(1), newNode("B", 51, 75),
-                                        newNode("B", 76, 99, true));
+    DefaultCaptureNode root = newNode("main", 0, 100);
+    DefaultCaptureNode unmatchedA = newNode("A", 0, 50, true);
+    DefaultCaptureNode matchedA = newNode("A", 51, 100, false);
+    addChildren(root, unmatchedA, matchedA);
+    addChildren(unmatchedA, newNode("B", 0, 50, true));
+    addChildren(matchedA, newNode("B", 51, 75),
+                          newNode("B", 76, 99, true));
 
     List<ExpectedNode> expectedNodes = Arrays.asList(
       new ExpectedNode("Root", 100.0, 99.0, false),
@@ -331,15 +335,15 @@ public class BottomUpNodeTest {
     checkTraverseOrder(expectedNodes, traverseOrder);
   }
 
-  private static void addChildren(CaptureNode node, CaptureNode... children) {
+  private static void addChildren(DefaultCaptureNode node, DefaultCaptureNode... children) {
     for (int i = 0; i < children.length; ++i) {
       node.addChild(children[i]);
     }
   }
 
-  private static void addChainSubtree(CaptureNode root, CaptureNode... chainNodes) {
-    CaptureNode last = root;
-    for (CaptureNode node : chainNodes) {
+  private static void addChainSubtree(DefaultCaptureNode root, DefaultCaptureNode... chainNodes) {
+    DefaultCaptureNode last = root;
+    for (DefaultCaptureNode node : chainNodes) {
       last.addChild(node);
       last = node;
     }
@@ -364,8 +368,8 @@ public class BottomUpNodeTest {
     }
   }
 
-  private static CaptureNode newNode(String method, long start, long end, boolean unmatched) {
-    CaptureNode node = new CaptureNode(new SingleNameModel(method));
+  private static DefaultCaptureNode newNode(String method, long start, long end, boolean unmatched) {
+    DefaultCaptureNode node = new DefaultCaptureNode(new SingleNameModel(method));
     node.setStartGlobal(start);
     node.setEndGlobal(end);
     node.setStartThread(start);
@@ -375,23 +379,24 @@ public class BottomUpNodeTest {
   }
 
   @NotNull
-  private static CaptureNode newNode(String method, long start, long end) {
+  private static DefaultCaptureNode newNode(String method, long start, long end) {
     return newNode(method, start, end, false);
   }
 
   @NotNull
   public static CaptureNode createComplexTree() {
-    CaptureNode root = newNode("main", 0, 40);
-    CaptureNode childA = newNode("A", 0, 15);
-    CaptureNode childC = newNode("C", 20, 30);
-    CaptureNode childB = newNode("B", 35, 40);
+    DefaultCaptureNode root = newNode("main", 0, 40);
+    DefaultCaptureNode childA = newNode("A", 0, 15);
+    DefaultCaptureNode childC = newNode("C", 20, 30);
+    DefaultCaptureNode childB = newNode("B", 35, 40);
 
     root.addChild(childA);
     root.addChild(childC);
     root.addChild(childB);
     childA.addChild(newNode("B", 5, 10));
-    childC.addChild(newNode("A", 20, 25));
-    childC.getChildren().get(0).addChild(newNode("B", 20, 25));
+    DefaultCaptureNode childCA = newNode("A", 20, 25);
+    childC.addChild(childCA);
+    childCA.addChild(newNode("B", 20, 25));
     return root;
   }
 
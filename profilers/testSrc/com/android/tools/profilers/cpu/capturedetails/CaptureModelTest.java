@@ -81,26 +81,30 @@ public class CaptureModelTest {
    *        -> otherPackage.method4 [860..900]
    */
   private static CaptureNode createFilterTestTree() {
-    CaptureNode root = createNode("mainPackage.main", 0, 1000);
-    root.addChild(createNode("otherPackage.method1", 0, 500));
-    root.addChild(createNode("myPackage.method1", 600, 700));
-    root.addChild(createNode("otherPackage.method2", 800, 1000));
+    DefaultCaptureNode root = createNode("mainPackage.main", 0, 1000);
+    DefaultCaptureNode first = createNode("otherPackage.method1", 0, 500);
+    DefaultCaptureNode second = createNode("myPackage.method1", 600, 700);
+    DefaultCaptureNode third = createNode("otherPackage.method2", 800, 1000);
+    root.addChild(first);
+    root.addChild(second);
+    root.addChild(third);
 
-    root.getChildAt(1).addChild(createNode("otherPackage.method3", 600, 650));
-    root.getChildAt(1).addChild(createNode("otherPackage.method4", 660, 700));
+    second.addChild(createNode("otherPackage.method3", 600, 650));
+    second.addChild(createNode("otherPackage.method4", 660, 700));
 
-    root.getChildAt(2).addChild(createNode("otherPackage.method3", 800, 850));
-    root.getChildAt(2).addChild(createNode("otherPackage.method4", 860, 900));
+    third.addChild(createNode("otherPackage.method3", 800, 850));
+    third.addChild(createNode("otherPackage.method4", 860, 900));
 
-    CaptureNode first = root.getFirstChild();
-    first.addChild(createNode("myPackage.method2", 0, 200));
-    first.addChild(createNode("otherPackage.method3", 300, 500));
+    DefaultCaptureNode firstChild = createNode("myPackage.method2", 0, 200);
+    DefaultCaptureNode secondChild = createNode("otherPackage.method3", 300, 500);
+    first.addChild(firstChild);
+    first.addChild(secondChild);
 
-    first.getChildAt(0).addChild(createNode("otherPackage.method4", 0, 100));
-    first.getChildAt(0).addChild(createNode("myPackage.method3", 101, 200));
+    firstChild.addChild(createNode("otherPackage.method4", 0, 100));
+    firstChild.addChild(createNode("myPackage.method3", 101, 200));
 
-    first.getChildAt(1).addChild(createNode("otherPackage.method4", 300, 400));
-    first.getChildAt(1).addChild(createNode("otherPackage.method4", 401, 500));
+    secondChild.addChild(createNode("otherPackage.method4", 300, 400));
+    secondChild.addChild(createNode("otherPackage.method4", 401, 500));
 
     return root;
   }
@@ -235,13 +239,13 @@ public class CaptureModelTest {
     }
   }
 
-  private static CaptureNode createNode(String fullMethodName, long start, long end) {
+  private static DefaultCaptureNode createNode(String fullMethodName, long start, long end) {
     int index = fullMethodName.lastIndexOf('.');
     assert index != -1;
     String className = fullMethodName.substring(0, index);
     String methodName = fullMethodName.substring(index + 1);
 
-    CaptureNode node = new CaptureNode(new JavaMethodModel(methodName, className));
+    DefaultCaptureNode node = new DefaultCaptureNode(new JavaMethodModel(methodName, className));
     node.setClockType(ClockType.GLOBAL);
     node.setStartGlobal(start);
     node.setEndGlobal(end);
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.capturedetails;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.DefaultCaptureNode;
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntervalSumsTest {
+
+  @Test
+  public void sumsMatchTheIntersectionsOfEveryNode() {
+    Random random = new Random(42);
+    List<CaptureNode> nodes = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      // Overlapping nodes, like the ones of recursive calls.
+      long start = random.nextInt(1000);
+      nodes.add(newNode(start, start + random.nextInt(100), start + 1, start + 1 + random.nextInt(50)));
+    }
+    IntervalSums globalSums = new IntervalSums(nodes, ClockType.GLOBAL);
+    IntervalSums threadSums = new IntervalSums(nodes, ClockType.THREAD);
+
+    for (int i = 0; i < 200; i++) {
+      double min = random.nextInt(1200) - 100 + random.nextDouble();
+      Range range = new Range(min, min + random.nextInt(300));
+      double expectedGlobal = 0;
+      double expectedThread = 0;
+      for (CaptureNode node : nodes) {
+        expectedGlobal += getIntersection(range, node.getStartGlobal(), node.getEndGlobal());
+        expectedThread += getIntersection(range, node.getStartThread(), node.getEndThread());
+      }
+      assertEquals(expectedGlobal, globalSums.getIntersectionLength(range), 1e-6);
+      assertEquals(expectedThread, threadSums.getIntersectionLength(range), 1e-6);
+    }
+  }
+
+  @Test
+  public void epochBasedTimesDontOverflow() {
+    long start = 1374703971214985L;
+    List<CaptureNode> nodes = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      nodes.add(newNode(start + i * 10, start + i * 10 + 5, 0, 0));
+    }
+    IntervalSums sums = new IntervalSums(nodes, ClockType.GLOBAL);
+    assertEquals(50000, sums.getIntersectionLength(new Range(start, start + 100000)), 0);
+    assertEquals(6, sums.getIntersectionLength(new Range(start + 2, start + 13)), 0);
+  }
+
+  @Test
+  public void emptyRangesAndNodesDontIntersect() {
+    IntervalSums sums = new IntervalSums(Arrays.asList(newNode(10, 20, 10, 20), newNode(20, 10, 20, 10)), ClockType.GLOBAL);
+    assertEquals(0, sums.getIntersectionLength(new Range()), 0);
+    assertEquals(10, sums.getIntersectionLength(new Range(0, 30)), 0);
+    assertEquals(0, new IntervalSums(new ArrayList<>(), ClockType.GLOBAL).getIntersectionLength(new Range(0, 30)), 0);
+  }
+
+  @Test
+  public void intersectsOnlyWhenNodesOverlapTheOpenRange() {
+    IntervalSums sums = new IntervalSums(Arrays.asList(newNode(10, 20, 0, 0), newNode(30, 40, 0, 0)), ClockType.GLOBAL);
+    assertTrue(sums.intersects(new Range(0, 11)));
+    assertTrue(sums.intersects(new Range(15, 35)));
+    assertFalse(sums.intersects(new Range(0, 10)));
+    assertFalse(sums.intersects(new Range(20, 30)));
+    assertFalse(sums.intersects(new Range(40, 50)));
+  }
+
+  private static double getIntersection(@NotNull Range range, long start, long end) {
+    Range intersection = range.getIntersection(new Range(start, end));
+    return intersection.isEmpty() ? 0.0 : intersection.getLength();
+  }
+
+  @NotNull
+  private static DefaultCaptureNode newNode(long startGlobal, long endGlobal, long startThread, long endThread) {
+    DefaultCaptureNode node = new DefaultCaptureNode(new SingleNameModel("node"));
+    node.setStartGlobal(startGlobal);
+    node.setEndGlobal(endGlobal);
+    node.setStartThread(startThread);
+    node.setEndThread(endThread);
+    return node;
+  }
+}
@@ -20,6 +20,7 @@ import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.intellij.openapi.util.io.FileUtil;
 import org.junit.Before;
 import org.junit.Test;
@@ -27,8 +28,9 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 import static com.android.tools.profilers.cpu.CpuProfilerTestUtils.traceFileToByteString;
 import static org.junit.Assert.*;
@@ -148,6 +150,25 @@ public class SimpleperfTraceParserTest {
     assertEquals(appPid, capture.getMainThreadId());
   }
 
+  @Test
+  public void callsToTheSameSymbolShareTheirModel() throws IOException {
+    myParser.parse(myTraceFile, 0);
+    // The trees of the threads are built in parallel, but their calls to __start_thread should still share its model.
+    List<CaptureNodeModel> startThreadModels = new ArrayList<>();
+    for (CaptureNode tree : myParser.getCaptureTrees().values()) {
+      for (CaptureNode child : tree.getChildren()) {
+        if (child.getData().getFullName().startsWith("__start_thread")) {
+          startThreadModels.add(child.getData());
+        }
+      }
+    }
+
+    assertTrue(startThreadModels.size() > 1);
+    for (CaptureNodeModel model : startThreadModels) {
+      assertSame(startThreadModels.get(0), model);
+    }
+  }
+
   @Test
   public void invalidFileShouldFailDueToMagicNumberMismatch() throws IOException {
     ByteString traceBytes = traceFileToByteString("simpleperf_malformed.trace");
@@ -169,8 +190,13 @@ public class SimpleperfTraceParserTest {
   @Test
   public void rangeShouldBeFromFirstToLastTimestamp() throws IOException {
     myParser.parse(myTraceFile, 0);
-    long startTimeUs = TimeUnit.NANOSECONDS.toMicros(myParser.mySamples.get(0).getTime());
-    long endTimeUs = TimeUnit.NANOSECONDS.toMicros( myParser.mySamples.get(myParser.mySamples.size() - 1).getTime());
+    // The tree of each thread starts at the first sample of the thread, and ends at the last sample of the trace.
+    long startTimeUs = Long.MAX_VALUE;
+    long endTimeUs = Long.MIN_VALUE;
+    for (CaptureNode tree : myParser.getCaptureTrees().values()) {
+      startTimeUs = Math.min(startTimeUs, tree.getStartGlobal());
+      endTimeUs = Math.max(endTimeUs, tree.getEndGlobal());
+    }
     Range expected = new Range(startTimeUs, endTimeUs);
     assertEquals(expected.getMin(), myParser.getRange().getMin(), 0);
     assertEquals(expected.getMax(), myParser.getRange().getMax(), 0);
@@ -14,7 +14,6 @@
 package com.android.tools.profilers.energy
 
 import com.android.tools.adtui.model.Range
-import com.android.tools.adtui.model.RangedSeries
 import com.android.tools.profiler.proto.EnergyProfiler.*
 import com.android.tools.profilers.FakeGrpcChannel
 import com.android.tools.profilers.ProfilersTestData
@@ -112,10 +111,10 @@ class EnergyEventsCountDataSeriesTest {
   @Test
   fun testEventsCount() {
     val dataSeries = EnergyEventsDataSeries(grpcChannel.client, ProfilersTestData.SESSION_DATA)
-    val rangedSeries = RangedSeries(Range(0.0, Double.MAX_VALUE), dataSeries);
-    testEventsCount(EnergyEventsCountDataSeries(rangedSeries, EnergyDuration.Kind.LOCATION))
-    testEventsCount(EnergyEventsCountDataSeries(rangedSeries, EnergyDuration.Kind.WAKE_LOCK))
-    testEventsCount(EnergyEventsCountDataSeries(rangedSeries, EnergyDuration.Kind.ALARM, EnergyDuration.Kind.JOB))
+    val index = EnergyEventsIndex(dataSeries)
+    testEventsCount(EnergyEventsCountDataSeries(index, EnergyDuration.Kind.LOCATION))
+    testEventsCount(EnergyEventsCountDataSeries(index, EnergyDuration.Kind.WAKE_LOCK))
+    testEventsCount(EnergyEventsCountDataSeries(index, EnergyDuration.Kind.ALARM, EnergyDuration.Kind.JOB))
   }
 
   private fun testEventsCount(countDataSeries: EnergyEventsCountDataSeries) {
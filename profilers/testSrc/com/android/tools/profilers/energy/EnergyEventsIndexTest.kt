@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.energy
+
+import com.android.tools.adtui.model.Range
+import com.android.tools.profiler.proto.EnergyProfiler.*
+import com.android.tools.profilers.FakeGrpcChannel
+import com.android.tools.profilers.ProfilersTestData
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import java.util.concurrent.TimeUnit.SECONDS
+
+class EnergyEventsIndexTest {
+
+  private val eventList = ArrayList<EnergyEvent>()
+
+  private val service = FakeEnergyService(eventList = eventList)
+
+  @get:Rule
+  val grpcChannel = FakeGrpcChannel("EnergyEventsIndexTest", service)
+
+  @Test
+  fun testEventsMergedIncrementally() {
+    val index = EnergyEventsIndex(EnergyEventsDataSeries(grpcChannel.client, ProfilersTestData.SESSION_DATA))
+    val kinds = listOf(EnergyDuration.Kind.WAKE_LOCK)
+    val acquired1 = wakeLock(1, 100, false)
+    val released1 = wakeLock(1, 200, true)
+    val acquired2 = wakeLock(2, 300, false)
+    eventList.addAll(listOf(acquired1, released1, acquired2))
+
+    assertThat(index.getMergedEvents(Range(0.0, SECONDS.toMicros(350).toDouble()), kinds).map { it.value })
+      .containsExactly(acquired1, released1, acquired2).inOrder()
+
+    val released2 = wakeLock(2, 400, true)
+    eventList.add(released2)
+    // Only the merged range overlapping the range is returned, even though it starts before it.
+    assertThat(index.getMergedEvents(Range(SECONDS.toMicros(350).toDouble(), SECONDS.toMicros(450).toDouble()), kinds).map { it.value })
+      .containsExactly(acquired2, released2).inOrder()
+    assertThat(index.getActiveGroupCount(SECONDS.toMicros(350), kinds)).isEqualTo(1)
+    assertThat(index.getActiveGroupCount(SECONDS.toMicros(400), kinds)).isEqualTo(0)
+  }
+
+  @Test
+  fun testLateEventsMerged() {
+    val index = EnergyEventsIndex(EnergyEventsDataSeries(grpcChannel.client, ProfilersTestData.SESSION_DATA))
+    val kinds = listOf(EnergyDuration.Kind.WAKE_LOCK)
+    val acquired1 = wakeLock(1, 100, false)
+    val released1 = wakeLock(1, 299, true)
+    eventList.addAll(listOf(acquired1, released1))
+
+    assertThat(index.getMergedEvents(Range(0.0, SECONDS.toMicros(300).toDouble()), kinds).map { it.value })
+      .containsExactly(acquired1, released1).inOrder()
+
+    // The second wake lock reaches the datastore after the first one was released, although it was acquired before.
+    val acquired2 = wakeLock(2, 297, false)
+    val released2 = wakeLock(2, 320, true)
+    eventList.addAll(listOf(acquired2, released2))
+
+    assertThat(index.getMergedEvents(Range(0.0, SECONDS.toMicros(400).toDouble()), kinds).map { it.value })
+      .containsExactly(acquired1, released2).inOrder()
+    assertThat(index.getActiveGroupCount(SECONDS.toMicros(298), kinds)).isEqualTo(2)
+    assertThat(index.getActiveGroupCount(SECONDS.toMicros(310), kinds)).isEqualTo(1)
+  }
+
+  private fun wakeLock(id: Int, timeS: Long, isTerminal: Boolean): EnergyEvent {
+    val builder = EnergyEvent.newBuilder().setEventId(id).setTimestamp(SECONDS.toNanos(timeS)).setIsTerminal(isTerminal)
+    if (isTerminal) {
+      builder.wakeLockReleased = WakeLockReleased.getDefaultInstance()
+    }
+    else {
+      builder.wakeLockAcquired = WakeLockAcquired.getDefaultInstance()
+    }
+    return builder.build()
+  }
+}
@@ -65,8 +65,10 @@ import com.android.tools.profiler.proto.MemoryServiceGrpc;
 import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import io.grpc.stub.StreamObserver;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -132,11 +134,13 @@ public class FakeMemoryService extends MemoryServiceGrpc.MemoryServiceImplBase {
   private HeapDumpInfo myExplicitHeapDumpInfo = null;
   private DumpDataResponse.Status myExplicitDumpDataStatus = null;
   private byte[] myExplicitSnapshotBuffer = null;
+  private final Map<Long, byte[]> myExplicitSnapshotBuffers = new HashMap<>();
   private MemoryData myMemoryData = null;
   private ListHeapDumpInfosResponse.Builder myHeapDumpInfoBuilder = ListHeapDumpInfosResponse.newBuilder();
   private LegacyAllocationEventsResponse.Builder myAllocationEventsBuilder = LegacyAllocationEventsResponse.newBuilder();
   private AllocationContextsResponse.Builder myAllocationContextBuilder = AllocationContextsResponse.newBuilder();
   private int myTrackAllocationCount;
+  private int myGetAllocationsCount;
   private Common.Session mySession;
   private int mySamplingRate = 1;
 
@@ -212,7 +216,10 @@ public class FakeMemoryService extends MemoryServiceGrpc.MemoryServiceImplBase {
     if (myExplicitDumpDataStatus != null) {
       response.setStatus(myExplicitDumpDataStatus);
     }
-    if (myExplicitSnapshotBuffer != null) {
+    if (myExplicitSnapshotBuffers.containsKey(request.getDumpTime())) {
+      response.setData(ByteString.copyFrom(myExplicitSnapshotBuffers.get(request.getDumpTime())));
+    }
+    else if (myExplicitSnapshotBuffer != null) {
       response.setData(ByteString.copyFrom(myExplicitSnapshotBuffer));
     }
     responseObserver.onNext(response.build());
@@ -279,6 +286,7 @@ public class FakeMemoryService extends MemoryServiceGrpc.MemoryServiceImplBase {
   @Override
   public void getAllocations(AllocationSnapshotRequest request,
                              StreamObserver<BatchAllocationSample> responseObserver) {
+    myGetAllocationsCount++;
     boolean liveObjectsOnly = request.getLiveObjectsOnly();
     long startTime = Math.max(0, request.getStartTime());
     startTime = (long)Math.ceil(startTime / (float)US_TO_NS) * US_TO_NS;
@@ -547,6 +555,14 @@ public class FakeMemoryService extends MemoryServiceGrpc.MemoryServiceImplBase {
     return this;
   }
 
+  /**
+   * Sets the buffer of the heap dump which started at {@code dumpTime}, which takes precedence over {@link #setExplicitSnapshotBuffer}.
+   */
+  public FakeMemoryService setExplicitSnapshotBuffer(long dumpTime, @NotNull byte[] bytes) {
+    myExplicitSnapshotBuffers.put(dumpTime, bytes);
+    return this;
+  }
+
   public FakeMemoryService setExplicitDumpDataStatus(DumpDataResponse.Status status) {
     myExplicitDumpDataStatus = status;
     return this;
@@ -560,6 +576,10 @@ public class FakeMemoryService extends MemoryServiceGrpc.MemoryServiceImplBase {
     myTrackAllocationCount = 0;
   }
 
+  public int getGetAllocationsCount() {
+    return myGetAllocationsCount;
+  }
+
   public int getSamplingRate() {
     return mySamplingRate;
   }
@@ -18,6 +18,7 @@ package com.android.tools.profilers.memory;
 import com.android.tools.adtui.model.*;
 import com.android.tools.adtui.model.filter.Filter;
 import com.android.tools.adtui.model.legend.SeriesLegend;
+import com.android.tools.perflib.heap.SnapshotBuilder;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler.*;
 import com.android.tools.profiler.proto.Profiler.AgentStatusResponse;
@@ -223,6 +224,38 @@ public class MemoryProfilerStageTest extends MemoryProfilerTestBase {
     assertThat(myProfilers.getTimeline().isStreaming()).isTrue();
   }
 
+  @Test
+  public void testSelectHeapDumpDiff() {
+    myMockLoader.setReturnImmediateFuture(true);
+    HeapDumpInfo laterInfo = HeapDumpInfo.newBuilder().setStartTime(TimeUnit.MICROSECONDS.toNanos(20))
+      .setEndTime(TimeUnit.MICROSECONDS.toNanos(25)).build();
+    HeapDumpInfo baselineInfo = HeapDumpInfo.newBuilder().setStartTime(TimeUnit.MICROSECONDS.toNanos(5))
+      .setEndTime(TimeUnit.MICROSECONDS.toNanos(10)).build();
+    HeapDumpInfo ongoingInfo = HeapDumpInfo.newBuilder().setStartTime(TimeUnit.MICROSECONDS.toNanos(30)).setEndTime(Long.MAX_VALUE).build();
+    myService.addExplicitHeapDumpInfo(baselineInfo).addExplicitHeapDumpInfo(laterInfo).addExplicitHeapDumpInfo(ongoingInfo);
+    assertThat(myStage.getCompletedHeapDumpInfos()).containsExactly(baselineInfo, laterInfo);
+
+    myService.setExplicitDumpDataStatus(DumpDataResponse.Status.SUCCESS);
+    myService.setExplicitSnapshotBuffer(baselineInfo.getStartTime(),
+                                        new SnapshotBuilder(2, 0, 0).addReferences(1, 2).addRoot(1).getByteBuffer());
+    myService.setExplicitSnapshotBuffer(laterInfo.getStartTime(),
+                                        new SnapshotBuilder(3, 0, 0).addReferences(1, 2).addRoot(1).getByteBuffer());
+    // The earlier dump is the baseline, whichever order the dumps are given in.
+    myStage.selectHeapDumpDiff(laterInfo, baselineInfo, null);
+    assertThat(myStage.getSelectedCapture()).isInstanceOf(HeapDumpDiffCaptureObject.class);
+    CaptureObject diff = myStage.getSelectedCapture();
+    assertThat(diff.isDoneLoading()).isTrue();
+    assertThat(diff.isError()).isFalse();
+    assertThat(diff.getStartTimeNs()).isEqualTo(baselineInfo.getStartTime());
+    assertThat(diff.getEndTimeNs()).isEqualTo(laterInfo.getEndTime());
+    assertThat(myProfilers.getTimeline().getSelectionRange().getMin()).isWithin(0).of(5);
+    assertThat(myProfilers.getTimeline().getSelectionRange().getMax()).isWithin(0).of(25);
+    assertThat(myStage.getSelectedHeapSet()).isNotNull();
+    HeapSet testHeap = diff.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().orElse(null);
+    assertThat(testHeap).isNotNull();
+    assertThat(testHeap.getTotalObjectCount()).isEqualTo(2);
+  }
+
   @Test
   public void defaultHeapSetTest() {
     myMockLoader.setReturnImmediateFuture(true);
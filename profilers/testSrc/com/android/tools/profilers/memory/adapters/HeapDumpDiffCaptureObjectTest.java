@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.adtui.model.FakeTimer;
+import com.android.tools.perflib.heap.SnapshotBuilder;
+import com.android.tools.profiler.proto.MemoryProfiler;
+import com.android.tools.profilers.FakeGrpcChannel;
+import com.android.tools.profilers.FakeIdeProfilerServices;
+import com.android.tools.profilers.ProfilersTestData;
+import com.android.tools.profilers.StudioProfilers;
+import com.android.tools.profilers.memory.FakeCaptureObjectLoader;
+import com.android.tools.profilers.memory.FakeMemoryService;
+import com.android.tools.profilers.memory.MemoryProfilerStage;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static com.android.tools.profilers.memory.MemoryProfilerConfiguration.ClassGrouping.ARRANGE_BY_PACKAGE;
+import static com.android.tools.profilers.memory.MemoryProfilerTestUtils.findChildClassSetWithName;
+import static org.junit.Assert.*;
+
+public class HeapDumpDiffCaptureObjectTest {
+
+  @NotNull private final FakeMemoryService myService = new FakeMemoryService();
+
+  @NotNull private final FakeIdeProfilerServices myIdeProfilerServices = new FakeIdeProfilerServices();
+
+  @Rule
+  public FakeGrpcChannel myGrpcChannel = new FakeGrpcChannel("HeapDumpDiffCaptureObjectTest", myService);
+
+  private MemoryProfilerStage myStage;
+
+  @Before
+  public void setUp() {
+    myStage = new MemoryProfilerStage(new StudioProfilers(myGrpcChannel.getClient(), myIdeProfilerServices, new FakeTimer()),
+                                      new FakeCaptureObjectLoader());
+  }
+
+  @Test
+  public void testClassesWithMoreInstancesInTheLaterDumpHaveAllocations() {
+    HeapDumpCaptureObject baselineCapture = createHeapDump(3, 8, new SnapshotBuilder(2, 0, 0).addReferences(1, 2).addRoot(1));
+    HeapDumpCaptureObject capture = createHeapDump(13, 18, new SnapshotBuilder(3, 0, 0).addReferences(1, 2).addRoot(1));
+
+    HeapDumpDiffCaptureObject diff = new HeapDumpDiffCaptureObject(baselineCapture, capture);
+    assertEquals(3, diff.getStartTimeNs());
+    assertEquals(18, diff.getEndTimeNs());
+    assertFalse(diff.canListInstances());
+    assertFalse(diff.isDoneLoading());
+    assertTrue(diff.load(null, null));
+    assertTrue(diff.isDoneLoading());
+    assertFalse(diff.isError());
+    // The dumps are only counted, rather than loaded as captures.
+    assertFalse(baselineCapture.isDoneLoading());
+    assertFalse(capture.isDoneLoading());
+
+    HeapSet testHeap = diff.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().orElse(null);
+    assertNotNull(testHeap);
+    // The new instance, and the object of its class.
+    assertEquals(2, testHeap.getTotalObjectCount());
+
+    ClassSet newClassSet = findChildClassSetWithName(testHeap, "Class2");
+    assertEquals(1, newClassSet.getDeltaAllocationCount());
+    assertEquals(0, newClassSet.getDeltaDeallocationCount());
+    assertEquals(1, newClassSet.getTotalObjectCount());
+    assertTrue(newClassSet.getTotalShallowSize() > 0);
+    assertTrue(newClassSet.getTotalRetainedSize() >= newClassSet.getTotalShallowSize());
+
+    // Classes with as many instances of the same size in both dumps are not part of the diff.
+    assertTrue(testHeap.getChildrenClassifierSets().stream()
+                 .noneMatch(classSet -> "Class0".equals(((ClassSet)classSet).getClassEntry().getClassName())));
+  }
+
+  @Test
+  public void testClassesWithFewerInstancesInTheLaterDumpHaveDeallocations() {
+    HeapDumpCaptureObject baselineCapture = createHeapDump(3, 8, new SnapshotBuilder(3, 0, 0).addReferences(1, 2).addRoot(1));
+    HeapDumpCaptureObject capture = createHeapDump(13, 18, new SnapshotBuilder(2, 0, 0).addReferences(1, 2).addRoot(1));
+
+    HeapDumpDiffCaptureObject diff = new HeapDumpDiffCaptureObject(baselineCapture, capture);
+    assertTrue(diff.load(null, null));
+
+    HeapSet testHeap = diff.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().orElse(null);
+    assertNotNull(testHeap);
+    assertEquals(-2, testHeap.getTotalObjectCount());
+
+    ClassSet freedClassSet = findChildClassSetWithName(testHeap, "Class2");
+    assertEquals(0, freedClassSet.getDeltaAllocationCount());
+    assertEquals(1, freedClassSet.getDeltaDeallocationCount());
+    assertEquals(-1, freedClassSet.getTotalObjectCount());
+    assertTrue(freedClassSet.getTotalShallowSize() < 0);
+    assertTrue(freedClassSet.getTotalRetainedSize() <= freedClassSet.getTotalShallowSize());
+
+    // Regrouping the heap keeps the deallocations as such.
+    testHeap.setClassGrouping(ARRANGE_BY_PACKAGE);
+    assertEquals(-2, testHeap.getTotalObjectCount());
+    assertEquals(testHeap.getDeltaDeallocationCount(),
+                 testHeap.getChildrenClassifierSets().stream().mapToInt(ClassifierSet::getDeltaDeallocationCount).sum());
+  }
+
+  @Test
+  public void testDumpsWithTheSameClassHistogramsHaveNoDifferences() {
+    HeapDumpCaptureObject baselineCapture = createHeapDump(3, 8, new SnapshotBuilder(3, 0, 0).addReferences(1, 2).addRoot(1));
+    HeapDumpCaptureObject capture = createHeapDump(13, 18, new SnapshotBuilder(3, 0, 0).addReferences(1, 3).addRoot(2));
+
+    HeapDumpDiffCaptureObject diff = new HeapDumpDiffCaptureObject(baselineCapture, capture);
+    assertTrue(diff.load(null, null));
+
+    HeapSet testHeap = diff.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().orElse(null);
+    assertNotNull(testHeap);
+    assertEquals(0, testHeap.getDeltaAllocationCount());
+    assertEquals(0, testHeap.getDeltaDeallocationCount());
+    assertTrue(testHeap.getChildrenClassifierSets().isEmpty());
+  }
+
+  @Test
+  public void testLoadingFailsWhenEitherDumpFails() {
+    HeapDumpCaptureObject baselineCapture = createHeapDump(3, 8, new SnapshotBuilder(2, 0, 0).addReferences(1, 2).addRoot(1));
+    HeapDumpCaptureObject capture = createHeapDump(13, 18, new SnapshotBuilder(3, 0, 0).addReferences(1, 2).addRoot(1));
+    myService.setExplicitDumpDataStatus(MemoryProfiler.DumpDataResponse.Status.FAILURE_UNKNOWN);
+
+    HeapDumpDiffCaptureObject diff = new HeapDumpDiffCaptureObject(baselineCapture, capture);
+    assertFalse(diff.load(null, null));
+    assertTrue(diff.isDoneLoading());
+    assertTrue(diff.isError());
+    assertTrue(diff.getHeapSets().isEmpty());
+  }
+
+  @NotNull
+  private HeapDumpCaptureObject createHeapDump(long startTimeNs, long endTimeNs, @NotNull SnapshotBuilder snapshotBuilder) {
+    MemoryProfiler.HeapDumpInfo dumpInfo =
+      MemoryProfiler.HeapDumpInfo.newBuilder().setStartTime(startTimeNs).setEndTime(endTimeNs).build();
+    myService.setExplicitSnapshotBuffer(startTimeNs, snapshotBuilder.getByteBuffer());
+    myService.setExplicitDumpDataStatus(MemoryProfiler.DumpDataResponse.Status.SUCCESS);
+    return new HeapDumpCaptureObject(myGrpcChannel.getClient().getMemoryClient(), ProfilersTestData.SESSION_DATA, dumpInfo, null,
+                                     myIdeProfilerServices.getFeatureTracker(), myStage);
+  }
+}
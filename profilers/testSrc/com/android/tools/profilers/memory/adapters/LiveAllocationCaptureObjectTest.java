@@ -500,6 +500,56 @@ public class LiveAllocationCaptureObjectTest {
       verifyClassifierResult(heapSet, new LinkedList<>(expected_0_to_4), 0);
     }
 
+    @Test
+    public void testSelectionShiftReusesQueriedEvents() throws Exception {
+      LiveAllocationCaptureObject capture = new LiveAllocationCaptureObject(myGrpcChannel.getClient().getMemoryClient(),
+                                                                            ProfilersTestData.SESSION_DATA,
+                                                                            CAPTURE_START_TIME,
+                                                                            LOAD_SERVICE,
+                                                                            myStage);
+      HeapSet heapSet = capture.getHeapSet(myHeapId);
+      Range loadRange = new Range(CAPTURE_START_TIME, CAPTURE_START_TIME + 4);
+      // The instances alive at 0, then the events within {0,4}.
+      capture.load(loadRange, LOAD_JOINER);
+      assertThat(myService.getGetAllocationsCount()).isEqualTo(2);
+      assertThat(heapSet.getInstancesCount()).isEqualTo(4);
+
+      // The instances alive at 4 are computed from the ones alive at 0 and the events within {0,4}, so only the deallocations at 4 and the
+      // events within {4,8} are queried.
+      loadRange.set(CAPTURE_START_TIME + 4, CAPTURE_START_TIME + 8);
+      assertThat(myService.getGetAllocationsCount()).isEqualTo(4);
+      assertThat(heapSet.getInstancesCount()).isEqualTo(6);
+
+      // Going back before the checkpoint queries the instances alive at 0 again, but not the events within {0,4}.
+      loadRange.set(CAPTURE_START_TIME, CAPTURE_START_TIME + 4);
+      assertThat(myService.getGetAllocationsCount()).isEqualTo(5);
+      assertThat(heapSet.getInstancesCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void testEventsNearLatestAllocationTimeAreQueriedAgain() throws Exception {
+      // Late events may still reach the datastore within seconds of the latest allocation time, so nothing before it is kept.
+      myService.setLatestAllocationTime(TimeUnit.MICROSECONDS.toNanos(CAPTURE_START_TIME + 8));
+      LiveAllocationCaptureObject capture = new LiveAllocationCaptureObject(myGrpcChannel.getClient().getMemoryClient(),
+                                                                            ProfilersTestData.SESSION_DATA,
+                                                                            CAPTURE_START_TIME,
+                                                                            LOAD_SERVICE,
+                                                                            myStage);
+      HeapSet heapSet = capture.getHeapSet(myHeapId);
+      Range loadRange = new Range(CAPTURE_START_TIME, CAPTURE_START_TIME + 4);
+      capture.load(loadRange, LOAD_JOINER);
+      assertThat(myService.getGetAllocationsCount()).isEqualTo(2);
+      assertThat(heapSet.getInstancesCount()).isEqualTo(4);
+
+      loadRange.set(CAPTURE_START_TIME + 4, CAPTURE_START_TIME + 8);
+      assertThat(myService.getGetAllocationsCount()).isEqualTo(4);
+      assertThat(heapSet.getInstancesCount()).isEqualTo(6);
+
+      loadRange.set(CAPTURE_START_TIME, CAPTURE_START_TIME + 4);
+      assertThat(myService.getGetAllocationsCount()).isEqualTo(6);
+      assertThat(heapSet.getInstancesCount()).isEqualTo(4);
+    }
+
     @Test
     public void testInfoMessageBasedOnSelection() {
       MemoryProfiler.MemoryData memoryData = MemoryProfiler.MemoryData.newBuilder().setEndTimestamp(1)
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.network;
+
+import com.android.tools.profilers.network.httpdata.HttpData;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class HttpDataIndexTest {
+  @Test
+  public void overlappingConnectionsAreFound() {
+    HttpDataIndex index = new HttpDataIndex();
+    index.put(TestHttpData.newBuilder(1, 1, 6).build());
+    index.put(TestHttpData.newBuilder(5, 8, 9, 10, 12).build());
+    // Added out of order of start time.
+    index.put(TestHttpData.newBuilder(2, 2, 5).build());
+    index.put(TestHttpData.newBuilder(3, 3, 0, 0, 0).build());
+    index.put(TestHttpData.newBuilder(4, 4, 5, 0, 0).build());
+
+    checkOverlapping(index, 0, 10, 1, 2, 3, 4, 5);
+    checkOverlapping(index, 0, 6, 1, 2, 3, 4);
+    checkOverlapping(index, 8, 12, 3, 4, 5);
+    checkOverlapping(index, 1000, 1001, 3, 4);
+    checkOverlapping(index, 6, 8, 1, 3, 4, 5);
+    checkOverlapping(index, 0, 0);
+  }
+
+  @Test
+  public void replacedConnectionsAreUpdated() {
+    HttpDataIndex index = new HttpDataIndex();
+    index.put(TestHttpData.newBuilder(1, 1, 2).build());
+    index.put(TestHttpData.newBuilder(2, 3, 0, 0, 0).build());
+    assertThat(index.getEarliestUnfinishedStartTimeUs()).isEqualTo(TimeUnit.SECONDS.toMicros(3));
+    checkOverlapping(index, 100, 200, 2);
+
+    HttpData finishedData = TestHttpData.newBuilder(2, 3, 4).build();
+    index.put(finishedData);
+    assertThat(index.get(2)).isSameAs(finishedData);
+    assertThat(index.getEarliestUnfinishedStartTimeUs()).isEqualTo(Long.MAX_VALUE);
+    checkOverlapping(index, 100, 200);
+    checkOverlapping(index, 0, 200, 1, 2);
+  }
+
+  @Test
+  public void uncoveredRangesAreTheGapsBetweenCoveredRanges() {
+    HttpDataIndex index = new HttpDataIndex();
+    assertThat(getUncoveredRanges(index, 0, 100)).containsExactly("0-100");
+
+    index.markCovered(10, 20);
+    index.markCovered(40, 50);
+    assertThat(getUncoveredRanges(index, 0, 100)).containsExactly("0-9", "21-39", "51-100").inOrder();
+    assertThat(getUncoveredRanges(index, 15, 45)).containsExactly("21-39");
+    assertThat(getUncoveredRanges(index, 12, 18)).isEmpty();
+
+    // Adjacent and overlapping ranges are merged.
+    index.markCovered(21, 45);
+    assertThat(getUncoveredRanges(index, 0, 100)).containsExactly("0-9", "51-100").inOrder();
+  }
+
+  private static List<String> getUncoveredRanges(HttpDataIndex index, long minUs, long maxUs) {
+    return index.getUncoveredRanges(minUs, maxUs).stream().map(range -> range[0] + "-" + range[1]).collect(Collectors.toList());
+  }
+
+  private static void checkOverlapping(HttpDataIndex index, long minS, long maxS, long... expectedIds) {
+    List<Long> ids = index.getOverlapping(TimeUnit.SECONDS.toMicros(minS), TimeUnit.SECONDS.toMicros(maxS)).stream()
+      .map(HttpData::getId).collect(Collectors.toList());
+    assertThat(ids).containsExactlyElementsIn(Arrays.stream(expectedIds).boxed().collect(Collectors.toList())).inOrder();
+  }
+}
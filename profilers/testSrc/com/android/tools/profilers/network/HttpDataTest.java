@@ -19,6 +19,7 @@ import com.android.tools.adtui.model.Range;
 import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profilers.network.httpdata.HttpData;
 import com.android.tools.profilers.network.httpdata.Payload;
+import com.android.tools.profilers.network.httpdata.PayloadCache;
 import com.android.tools.profilers.network.httpdata.StackTrace;
 import com.google.common.collect.ImmutableMap;
 import org.jetbrains.annotations.NotNull;
@@ -215,6 +216,38 @@ public class HttpDataTest {
     assertThat(Payload.newResponsePayload(connectionsModel, data).getBytes().toStringUtf8()).isEqualTo(responsePayload);
   }
 
+  @Test
+  public void payloadIsReadInRanges() {
+    FakeNetworkConnectionsModel connectionsModel = new FakeNetworkConnectionsModel();
+    connectionsModel.addBytes("rangePayloadId", ByteString.copyFromUtf8("0123456789"));
+    HttpData data = TestHttpData.newBuilder(1).setResponsePayloadId("rangePayloadId").build();
+
+    Payload payload = Payload.newResponsePayload(connectionsModel, data);
+    assertThat(payload.getSize()).isEqualTo(10);
+    assertThat(payload.isEmpty()).isFalse();
+    assertThat(payload.getBytes(0, 4).toStringUtf8()).isEqualTo("0123");
+    assertThat(payload.getBytes(8, 4).toStringUtf8()).isEqualTo("89");
+    assertThat(payload.getBytes(12, 4).toStringUtf8()).isEmpty();
+    assertThat(Payload.newRequestPayload(connectionsModel, data).isEmpty()).isTrue();
+  }
+
+  @Test
+  public void evictedPayloadIsFetchedAgain() {
+    FakeNetworkConnectionsModel connectionsModel = new FakeNetworkConnectionsModel(new PayloadCache(15));
+    connectionsModel.addBytes("firstPayloadId", ByteString.copyFromUtf8("first payload"));
+    connectionsModel.addBytes("secondPayloadId", ByteString.copyFromUtf8("second payload"));
+    HttpData firstData = TestHttpData.newBuilder(1).setResponsePayloadId("firstPayloadId").build();
+    HttpData secondData = TestHttpData.newBuilder(2).setResponsePayloadId("secondPayloadId").build();
+
+    assertThat(Payload.newResponsePayload(connectionsModel, firstData).getBytes().toStringUtf8()).isEqualTo("first payload");
+    assertThat(connectionsModel.getPayloadCache().getSize("firstPayloadId")).isEqualTo(13);
+    assertThat(Payload.newResponsePayload(connectionsModel, secondData).getBytes().toStringUtf8()).isEqualTo("second payload");
+    // Both payloads don't fit in the cache, so the least recently used one is evicted.
+    assertThat(connectionsModel.getPayloadCache().getSize("firstPayloadId")).isEqualTo(-1);
+    assertThat(Payload.newResponsePayload(connectionsModel, firstData).getBytes().toStringUtf8()).isEqualTo("first payload");
+    assertThat(connectionsModel.getPayloadCache().getSize("secondPayloadId")).isEqualTo(-1);
+  }
+
   @Test
   public void getMimeTypeFromContentType() {
     assertThat(new HttpData.ContentType("text/html; charset=utf-8").getMimeType()).isEqualTo("text/html");
@@ -270,6 +303,15 @@ public class HttpDataTest {
 
   private static final class FakeNetworkConnectionsModel implements NetworkConnectionsModel {
     private static final Map<String, ByteString> myBytesCache = new HashMap<>();
+    private final PayloadCache myPayloadCache;
+
+    FakeNetworkConnectionsModel() {
+      this(new PayloadCache());
+    }
+
+    FakeNetworkConnectionsModel(@NotNull PayloadCache payloadCache) {
+      myPayloadCache = payloadCache;
+    }
 
     public void addBytes(@NotNull String id, @NotNull ByteString bytes) {
       myBytesCache.put(id, bytes);
@@ -286,5 +328,11 @@ public class HttpDataTest {
     public ByteString requestBytes(@NotNull String id) {
       return myBytesCache.getOrDefault(id, ByteString.EMPTY);
     }
+
+    @NotNull
+    @Override
+    public PayloadCache getPayloadCache() {
+      return myPayloadCache;
+    }
   }
 }
@@ -17,6 +17,7 @@ package com.android.tools.profilers.network;
 
 import com.android.tools.adtui.model.FakeTimer;
 import com.android.tools.adtui.model.Range;
+import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profilers.*;
 import com.android.tools.profilers.network.httpdata.HttpData;
@@ -27,8 +28,10 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.google.common.truth.Truth.assertThat;
 
@@ -73,16 +76,18 @@ public class RpcNetworkConnectionsModelTest {
       .build();
 
   private FakeProfilerService myProfilerService = new FakeProfilerService(false);
+  private final List<HttpData> myHttpDataList = new ArrayList<>(FAKE_DATA);
 
   @Rule public FakeGrpcChannel myGrpcChannel = new FakeGrpcChannel("RpcNetworkConnectionsModelTest", myProfilerService,
-                                                                   FakeNetworkService.newBuilder().setHttpDataList(FAKE_DATA).build());
+                                                                   FakeNetworkService.newBuilder().setHttpDataList(myHttpDataList).build());
   private NetworkConnectionsModel myModel;
+  private Common.Session mySession = ProfilersTestData.SESSION_DATA;
 
   @Before
   public void setUp() {
     StudioProfilers profilers = new StudioProfilers(myGrpcChannel.getClient(), new FakeIdeProfilerServices(), new FakeTimer());
     myModel = new RpcNetworkConnectionsModel(profilers.getClient().getProfilerClient(), profilers.getClient().getNetworkClient(),
-                                             ProfilersTestData.SESSION_DATA);
+                                             () -> mySession);
 
     for (int i = 0; i < FAKE_DATA.size(); i++) {
       long id = FAKE_DATA.get(i).getId();
@@ -127,6 +132,61 @@ public class RpcNetworkConnectionsModelTest {
     checkGetData(6, 8, 1, 3, 4, 5);
   }
 
+  @Test
+  public void queriedConnectionsAreReused() {
+    Range range = new Range(TimeUnit.SECONDS.toMicros(0), TimeUnit.SECONDS.toMicros(10));
+    List<HttpData> dataList = myModel.getData(range);
+    range.set(TimeUnit.SECONDS.toMicros(8), TimeUnit.SECONDS.toMicros(12));
+    List<HttpData> overlappingDataList = myModel.getData(range);
+    assertThat(overlappingDataList).hasSize(3);
+    for (HttpData data : overlappingDataList) {
+      assertThat(data).isSameAs(dataList.stream().filter(d -> d.getId() == data.getId()).findFirst().get());
+    }
+  }
+
+  @Test
+  public void connectionsAfterTheCurrentTimeAreQueriedAgain() {
+    myHttpDataList.removeIf(data -> data.getEndTimeUs() == 0);
+    mySession = mySession.toBuilder().setEndTimestamp(Long.MAX_VALUE).build();
+    myProfilerService.setTimestampNs(TimeUnit.SECONDS.toNanos(12));
+
+    Range range = new Range(TimeUnit.SECONDS.toMicros(0), TimeUnit.SECONDS.toMicros(20));
+    assertThat(myModel.getData(range).stream().map(HttpData::getId).collect(Collectors.toList())).containsExactly(1L, 2L, 5L).inOrder();
+
+    myHttpDataList.add(TestHttpData.newBuilder(6, 14, 16, new HttpData.JavaThread(6, "threadF")).build());
+    assertThat(myModel.getData(range).stream().map(HttpData::getId).collect(Collectors.toList())).containsExactly(1L, 2L, 5L, 6L).inOrder();
+  }
+
+  @Test
+  public void connectionsShortlyBeforeTheCurrentTimeAreQueriedAgain() {
+    myHttpDataList.removeIf(data -> data.getEndTimeUs() == 0);
+    mySession = mySession.toBuilder().setEndTimestamp(Long.MAX_VALUE).build();
+    myProfilerService.setTimestampNs(TimeUnit.SECONDS.toNanos(20));
+
+    Range range = new Range(TimeUnit.SECONDS.toMicros(0), TimeUnit.SECONDS.toMicros(20));
+    assertThat(myModel.getData(range)).hasSize(3);
+
+    // Recorded before the current time, but only reached the datastore after the previous query.
+    myHttpDataList.add(TestHttpData.newBuilder(6, 17, 18, new HttpData.JavaThread(6, "threadF")).build());
+    assertThat(myModel.getData(range).stream().map(HttpData::getId).collect(Collectors.toList())).containsExactly(1L, 2L, 5L, 6L).inOrder();
+  }
+
+  @Test
+  public void rangesAreCoveredOnceTheSessionEnds() {
+    myHttpDataList.removeIf(data -> data.getEndTimeUs() == 0);
+    mySession = mySession.toBuilder().setEndTimestamp(Long.MAX_VALUE).build();
+    Range range = new Range(TimeUnit.SECONDS.toMicros(0), TimeUnit.SECONDS.toMicros(20));
+    assertThat(myModel.getData(range)).hasSize(3);
+
+    // The session ends after the model was created, and the connections recorded until then are the last ones.
+    mySession = mySession.toBuilder().setEndTimestamp(TimeUnit.SECONDS.toNanos(20)).build();
+    myHttpDataList.add(TestHttpData.newBuilder(6, 14, 16, new HttpData.JavaThread(6, "threadF")).build());
+    assertThat(myModel.getData(range)).hasSize(4);
+
+    myHttpDataList.add(TestHttpData.newBuilder(7, 17, 18, new HttpData.JavaThread(7, "threadG")).build());
+    assertThat(myModel.getData(range)).hasSize(4);
+  }
+
   private void checkGetData(long startTimeS, long endTimeS, long... expectedIds) {
     Range range = new Range(TimeUnit.SECONDS.toMicros(startTimeS), TimeUnit.SECONDS.toMicros(endTimeS));
     List<HttpData> actualData = myModel.getData(range);
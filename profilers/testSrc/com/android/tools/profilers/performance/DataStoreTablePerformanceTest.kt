@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.datastore.database.CpuTable
+import com.android.tools.datastore.database.MemoryLiveAllocationTable
+import com.android.tools.datastore.database.MemoryStatsTable
+import com.android.tools.datastore.database.NetworkTable
+import com.android.tools.datastore.database.UnifiedEventsTable
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.CpuProfiler
+import com.android.tools.profiler.proto.MemoryProfiler
+import com.android.tools.profiler.proto.NetworkProfiler
+import com.android.tools.profiler.proto.Profiler
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+import java.io.File
+import java.time.Instant
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the insert throughput and range query latency of the datastore tables, against both kinds of databases, on a synthetic
+ * session. Unlike [DataSeriesPerformanceTest], which goes through the pollers and the gRPC services, this isolates the storage layer so
+ * changes to it can be compared on their own.
+ *
+ * The size of the session can be changed through system properties, e.g. -Dprofiler.datastore.benchmark.threads=500 to reproduce a game
+ * process with hundreds of threads.
+ */
+@RunWith(Parameterized::class)
+class DataStoreTablePerformanceTest(private val characteristic: DataStoreDatabase.Characteristic) {
+  companion object {
+    @JvmStatic
+    @Parameterized.Parameters(name = "{0}")
+    fun characteristics() = DataStoreDatabase.Characteristic.values().toList()
+
+    /**
+     * Number of samples of each series, 30 minutes worth at the default sampling interval.
+     */
+    private val SAMPLE_COUNT = Integer.getInteger("profiler.datastore.benchmark.samples", 9000)
+    private val THREAD_COUNT = Integer.getInteger("profiler.datastore.benchmark.threads", 50)
+    private val ALLOCATIONS_PER_SAMPLE = Integer.getInteger("profiler.datastore.benchmark.allocations", 100)
+    private val INTERVAL = TimeUnit.MILLISECONDS.toNanos(200)
+    private val QUERY_INTERVAL = TimeUnit.SECONDS.toNanos(60)
+    private val THREAD_STATES = listOf(CpuProfiler.GetThreadsResponse.State.RUNNING, CpuProfiler.GetThreadsResponse.State.SLEEPING,
+                                       CpuProfiler.GetThreadsResponse.State.WAITING)
+
+    private val insertBenchmark = Benchmark.Builder("DataStore Insert Throughput (samples per second)")
+      .setProject("Android Studio Profilers").build()
+    private val queryBenchmark = Benchmark.Builder("DataStore Query Timings (Nanos)").setProject("Android Studio Profilers").build()
+  }
+
+  private val session = Common.Session.newBuilder().setSessionId(1).setPid(1).build()
+  private val random = Random(1)
+  private lateinit var database: DataStoreDatabase
+
+  @Before
+  fun setUp() {
+    val file = File.createTempFile("DataStoreTablePerformanceTest", "sql")
+    file.deleteOnExit()
+    database = DataStoreDatabase(file.absolutePath, characteristic, FakeLogService())
+  }
+
+  @After
+  fun tearDown() {
+    database.disconnect()
+  }
+
+  @Test
+  fun cpuTable() {
+    val table = CpuTable()
+    table.initialize(database)
+    measureInserts("Cpu") { timestamp ->
+      table.insert(session, CpuProfiler.CpuUsageData.newBuilder().setEndTimestamp(timestamp).setAppCpuTimeInMillisec(timestamp).build())
+      // About a tenth of the threads change state in every sample.
+      for (i in 0 until Math.max(1, THREAD_COUNT / 10)) {
+        val tid = random.nextInt(THREAD_COUNT)
+        val state = THREAD_STATES[random.nextInt(THREAD_STATES.size)]
+        table.insertActivities(session, tid, "Thread $tid", listOf(
+          CpuProfiler.GetThreadsResponse.ThreadActivity.newBuilder().setTimestamp(timestamp).setNewState(state).build()))
+      }
+    }
+    measureQueries("Cpu-Usage") { start, end ->
+      table.getCpuDataByRequest(CpuProfiler.CpuDataRequest.newBuilder().setSession(session).setStartTimestamp(start)
+                                  .setEndTimestamp(end).build())
+    }
+    measureQueries("Cpu-Threads") { start, end ->
+      table.getThreadsDataByRequest(CpuProfiler.GetThreadsRequest.newBuilder().setSession(session).setStartTimestamp(start)
+                                      .setEndTimestamp(end).build())
+    }
+  }
+
+  @Test
+  fun memoryStatsTable() {
+    val table = MemoryStatsTable()
+    table.initialize(database)
+    measureInserts("Memory-Stats") { timestamp ->
+      table.insertMemory(session, listOf(MemoryProfiler.MemoryData.MemorySample.newBuilder().setTimestamp(timestamp)
+                                           .setJavaMem(random.nextLong()).setTotalMem(random.nextLong()).build()))
+      table.insertAllocStats(session, listOf(MemoryProfiler.MemoryData.AllocStatsSample.newBuilder().setTimestamp(timestamp)
+                                               .setJavaAllocationCount(random.nextInt()).build()))
+    }
+    measureQueries("Memory-Stats") { start, end ->
+      table.getData(MemoryProfiler.MemoryRequest.newBuilder().setSession(session).setStartTime(start).setEndTime(end).build())
+    }
+  }
+
+  @Test
+  fun memoryLiveAllocationTable() {
+    val table = MemoryLiveAllocationTable(FakeLogService())
+    table.initialize(database)
+    var nextTag = 0
+    measureInserts("Memory-LiveAllocation") { timestamp ->
+      val sample = MemoryProfiler.BatchAllocationSample.newBuilder()
+      for (i in 0 until ALLOCATIONS_PER_SAMPLE) {
+        sample.addEvents(MemoryProfiler.AllocationEvent.newBuilder().setTimestamp(timestamp).setAllocData(
+          MemoryProfiler.AllocationEvent.Allocation.newBuilder().setTag(nextTag++).setClassTag(random.nextInt(100))
+            .setSize(random.nextInt(1024).toLong()).setThreadId(random.nextInt(THREAD_COUNT))))
+      }
+      // Free most of the objects allocated so far, so the live set keeps growing slowly.
+      for (i in 0 until ALLOCATIONS_PER_SAMPLE * 9 / 10) {
+        sample.addEvents(MemoryProfiler.AllocationEvent.newBuilder().setTimestamp(timestamp).setFreeData(
+          MemoryProfiler.AllocationEvent.Deallocation.newBuilder().setTag(random.nextInt(nextTag))))
+      }
+      table.insertAllocationData(session, sample.build())
+    }
+    measureQueries("Memory-LiveAllocation-Snapshot") { _, end -> table.getSnapshot(session, end) }
+    measureQueries("Memory-LiveAllocation-Events") { start, end -> table.getAllocations(session, start, end) }
+  }
+
+  @Test
+  fun networkTable() {
+    val table = NetworkTable()
+    table.initialize(database)
+    measureInserts("Network") { timestamp ->
+      table.insert(session, NetworkProfiler.NetworkProfilerData.newBuilder().setEndTimestamp(timestamp).setSpeedData(
+        NetworkProfiler.SpeedData.newBuilder().setReceived(random.nextInt(1024).toLong()).setSent(random.nextInt(1024).toLong())).build())
+    }
+    measureQueries("Network") { start, end ->
+      table.getNetworkDataByRequest(NetworkProfiler.NetworkDataRequest.newBuilder().setSession(session).setStartTimestamp(start)
+                                      .setEndTimestamp(end).setType(NetworkProfiler.NetworkDataRequest.Type.SPEED).build())
+    }
+  }
+
+  @Test
+  fun unifiedEventsTable() {
+    val table = UnifiedEventsTable()
+    table.initialize(database)
+    var eventId = 0L
+    measureInserts("UnifiedEvents") { timestamp ->
+      table.insertUnifiedEvents(1, listOf(Profiler.Event.newBuilder().setSessionId(session.sessionId).setEventId(eventId++)
+                                            .setKind(Profiler.Event.Kind.SESSION).setType(Profiler.Event.Type.SESSION_STARTED)
+                                            .setTimestamp(timestamp).build()))
+    }
+    measureQueries("UnifiedEvents") { start, end ->
+      table.queryUnifiedEvents(Profiler.GetEventsRequest.newBuilder().setFromTimestamp(start).setToTimestamp(end).build())
+    }
+  }
+
+  /**
+   * Inserts [SAMPLE_COUNT] samples, one every [INTERVAL], and records how many were written per second, including the time it took for
+   * the writes to reach the database.
+   */
+  private fun measureInserts(name: String, insert: (Long) -> Unit) {
+    val startTime = System.nanoTime()
+    for (i in 0 until SAMPLE_COUNT) {
+      insert(i * INTERVAL)
+    }
+    database.writeQueue?.flush()
+    database.connection.commit()
+    val elapsedNs = System.nanoTime() - startTime
+    val metric = Metric("$name-Insert-$characteristic")
+    metric.addSamples(insertBenchmark, Metric.MetricSample(Instant.now().toEpochMilli(),
+                                                           SAMPLE_COUNT * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNs)))
+    commit(metric, insertBenchmark)
+  }
+
+  /**
+   * Queries the session in windows of [QUERY_INTERVAL], the range the UI typically shows, and records the latency of each query.
+   */
+  private fun measureQueries(name: String, query: (Long, Long) -> Unit) {
+    val metric = Metric("$name-Query-$characteristic")
+    val sessionEnd = SAMPLE_COUNT * INTERVAL
+    for (start in 0L..sessionEnd step QUERY_INTERVAL / 2) {
+      val startTime = System.nanoTime()
+      query(start, start + QUERY_INTERVAL)
+      // We ignore the first query as it warms up the statements and caches.
+      if (start != 0L) {
+        metric.addSamples(queryBenchmark, Metric.MetricSample(Instant.now().toEpochMilli(), System.nanoTime() - startTime))
+      }
+    }
+    commit(metric, queryBenchmark)
+  }
+
+  private fun commit(metric: Metric, benchmark: Benchmark) {
+    metric.setAnalyzers(benchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                           .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                           .build()))
+    metric.commit()
+  }
+}